@@ -0,0 +1,44 @@
+package com.techtest.recorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.techtest.recorder.impl.StatisticsAnalyzer;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Per-PDU cost of the analyzers the recorder runs on its receive thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+    private RecordedPdu[] recorded;
+    private StatisticsAnalyzer statistics;
+    private int next;
+
+    @Setup
+    public void setup() {
+        recorded = PduMix.record(PduMix.DEFAULT_SCENARIO, PduMix.SIZE, "bench");
+        statistics = new StatisticsAnalyzer();
+    }
+
+    @Benchmark
+    public void statistics() {
+        statistics.analyzePdu(recorded[next]);
+        next = (next + 1) & (PduMix.SIZE - 1);
+    }
+}
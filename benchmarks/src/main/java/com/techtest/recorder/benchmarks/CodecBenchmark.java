@@ -0,0 +1,69 @@
+package com.techtest.recorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.techtest.recorder.impl.PduCodec;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * Decoding and encoding of a realistic PDU mix. {@code decode} is the work
+ * MulticastPduRecorder does per received datagram and {@code encode} the work
+ * MulticastPduReplayer does per replayed PDU that has no raw bytes stored.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({PduMix.DEFAULT_SCENARIO})
+    public String scenario;
+
+    private byte[][] data;
+    private Pdu[] pdus;
+    private int next;
+
+    @Setup
+    public void setup() {
+        data = PduMix.generate(scenario, PduMix.SIZE);
+        pdus = new Pdu[data.length];
+        for (int i = 0; i < data.length; i++) {
+            pdus[i] = PduCodec.decode(data[i]);
+        }
+    }
+
+    @Benchmark
+    public Pdu decode() {
+        return PduCodec.decode(data[nextIndex()]);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return PduCodec.encode(pdus[nextIndex()]);
+    }
+
+    @Benchmark
+    public int pduType() {
+        return PduCodec.pduType(data[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1) & (PduMix.SIZE - 1);
+        return index;
+    }
+}
@@ -0,0 +1,85 @@
+package com.techtest.recorder.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Collects garbage collection pauses as the JVM reports them. Collections by concurrent
+ * collector threads are left out, since they do not stop the application.
+ */
+final class GcMonitor implements AutoCloseable {
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::handleNotification;
+    private volatile long pauses;
+    private volatile long totalPauseMillis;
+    private volatile long maxPauseMillis;
+
+    GcMonitor() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    /**
+     * Forget the pauses seen so far.
+     */
+    synchronized void reset() {
+        pauses = 0;
+        totalPauseMillis = 0;
+        maxPauseMillis = 0;
+    }
+
+    long getPauses() {
+        return pauses;
+    }
+
+    long getTotalPauseMillis() {
+        return totalPauseMillis;
+    }
+
+    long getMaxPauseMillis() {
+        return maxPauseMillis;
+    }
+
+    private synchronized void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        String name = info.getGcName();
+        if (name.contains("Concurrent") || name.contains("Cycles")) {
+            return;
+        }
+        long duration = info.getGcInfo().getDuration();
+        pauses++;
+        totalPauseMillis += duration;
+        if (duration > maxPauseMillis) {
+            maxPauseMillis = duration;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (Exception e) {
+                // Already removed
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.techtest.recorder.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.techtest.recorder.metrics.Histogram;
+
+/**
+ * Minimal streaming JSON writer for benchmark reports, so they can be compared
+ * between builds by scripts without any extra dependencies.
+ */
+final class JsonWriter {
+    private final StringBuilder out = new StringBuilder();
+    private final Deque<Boolean> firstInScope = new ArrayDeque<>();
+    private boolean afterName;
+
+    JsonWriter beginObject() {
+        separate();
+        out.append('{');
+        firstInScope.push(true);
+        return this;
+    }
+
+    JsonWriter endObject() {
+        firstInScope.pop();
+        out.append('}');
+        return this;
+    }
+
+    JsonWriter beginArray() {
+        separate();
+        out.append('[');
+        firstInScope.push(true);
+        return this;
+    }
+
+    JsonWriter endArray() {
+        firstInScope.pop();
+        out.append(']');
+        return this;
+    }
+
+    JsonWriter name(String name) {
+        separate();
+        quote(name);
+        out.append(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            out.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    JsonWriter value(double value) {
+        separate();
+        if (Double.isFinite(value)) {
+            out.append(value);
+        } else {
+            out.append("null");
+        }
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    JsonWriter field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, double value) {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    /**
+     * Write the percentiles and extremes of a histogram as an object of microsecond values.
+     *
+     * @param name The field name
+     * @param histogram The histogram
+     * @return This writer
+     */
+    JsonWriter micros(String name, Histogram histogram) {
+        return name(name).beginObject()
+            .field("count", histogram.getCount())
+            .field("mean", histogram.getMean() / 1000.0)
+            .field("p50", histogram.getValueAtPercentile(50) / 1000.0)
+            .field("p90", histogram.getValueAtPercentile(90) / 1000.0)
+            .field("p99", histogram.getValueAtPercentile(99) / 1000.0)
+            .field("p999", histogram.getValueAtPercentile(99.9) / 1000.0)
+            .field("max", histogram.getMax() / 1000.0)
+            .endObject();
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!firstInScope.isEmpty()) {
+            if (!firstInScope.pop()) {
+                out.append(',');
+            }
+            firstInScope.push(false);
+        }
+    }
+
+    private void quote(String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,266 @@
+package com.techtest.recorder.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.techtest.recorder.controller.LoadGenerator;
+import com.techtest.recorder.controller.LoadProfile;
+import com.techtest.recorder.factory.RecorderFactory;
+import com.techtest.recorder.impl.MulticastPduRecorder;
+import com.techtest.recorder.metrics.Histogram;
+
+/**
+ * End-to-end throughput and loss benchmark. Sends Entity State PDUs over loopback multicast
+ * into a MulticastPduRecorder, raising the rate step by step, and reports for each step how
+ * many PDUs were stored, the loss, the receive-to-store latency and the GC pauses.
+ * <p>
+ * The ramp stops at the maximum rate or once loss exceeds the allowed fraction. The report
+ * is written as JSON so runs of different builds can be compared:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.techtest.recorder.benchmarks.LoopbackThroughputBenchmark \
+ *     --start-rate 10000 --max-rate 400000 --step-seconds 5 --output loopback.json
+ * </pre>
+ * Multicast loopback must be possible on the host, i.e. a route for the group exists.
+ */
+public final class LoopbackThroughputBenchmark {
+    private static final String USAGE = String.join("\n",
+        "Usage: LoopbackThroughputBenchmark [options]",
+        "  --group <address>      multicast group (default 239.1.2.250)",
+        "  --port <port>          port (default 3999)",
+        "  --start-rate <n>       rate of the first step in PDUs/s (default 10000)",
+        "  --max-rate <n>         highest rate to try (default 1000000)",
+        "  --factor <x>           rate multiplier between steps (default 1.5)",
+        "  --step-seconds <s>     length of each step (default 5)",
+        "  --entities <n>         simulated entities (default 1000)",
+        "  --threads <n>          sender threads (default 1)",
+        "  --storage <type>       recorder storage: memory, offheap, file, tiered (default memory)",
+        "  --max-loss <fraction>  stop once a step loses more than this (default 0.01)",
+        "  --output <file>        JSON report (default loopback-report.json)");
+
+    private static final long JOIN_MILLIS = 200;
+    private static final long DRAIN_QUIET_MILLIS = 250;
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+
+    private final String group;
+    private final int port;
+    private final int startRate;
+    private final int maxRate;
+    private final double factor;
+    private final long stepMillis;
+    private final int entities;
+    private final int threads;
+    private final String storageType;
+    private final double maxLoss;
+
+    private LoopbackThroughputBenchmark(Options options) {
+        group = options.get("group", "239.1.2.250");
+        port = options.getInt("port", 3999);
+        startRate = options.getInt("start-rate", 10_000);
+        maxRate = Math.min(options.getInt("max-rate", 1_000_000), LoadProfile.MAX_RATE);
+        factor = options.getDouble("factor", 1.5);
+        stepMillis = Math.round(options.getDouble("step-seconds", 5) * 1000);
+        entities = options.getInt("entities", 1000);
+        threads = options.getInt("threads", 1);
+        storageType = options.get("storage", "memory");
+        maxLoss = options.getDouble("max-loss", 0.01);
+        if (factor <= 1 || startRate < 1 || stepMillis <= 0) {
+            throw new IllegalArgumentException("Rates must increase and steps must have a length");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.has("help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        Path output = Paths.get(options.get("output", "loopback-report.json"));
+        new LoopbackThroughputBenchmark(options).run(output);
+    }
+
+    private void run(Path output) throws IOException, InterruptedException {
+        List<Step> steps = new ArrayList<>();
+        try (GcMonitor gc = new GcMonitor()) {
+            int rate = startRate;
+            while (true) {
+                Step step = runStep(steps.size(), rate, gc);
+                steps.add(step);
+                System.out.println(step);
+                if (step.getLoss() > maxLoss || rate >= maxRate) {
+                    break;
+                }
+                rate = (int) Math.min(maxRate, Math.ceil(rate * factor));
+            }
+        }
+
+        Files.write(output, report(steps).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Highest rate with loss <= " + maxLoss + ": " + sustainedRate(steps) + " PDUs/s");
+        System.out.println("Report written to " + output.toAbsolutePath());
+    }
+
+    private Step runStep(int index, int rate, GcMonitor gc) throws InterruptedException {
+        String exerciseId = "loopback-" + index;
+        TimedStorage storage = new TimedStorage(RecorderFactory.createStorage(storageType));
+        MulticastPduRecorder recorder = new MulticastPduRecorder(storage, group, port);
+        recorder.startRecording(exerciseId);
+        Thread.sleep(JOIN_MILLIS);
+
+        // Start each step from a clean heap so pauses belong to the step that caused them
+        System.gc();
+        gc.reset();
+        LoadGenerator generator = new LoadGenerator(group, port,
+            LoadProfile.steady(entities, rate).withDuration(stepMillis), Math.min(threads, entities));
+        generator.start();
+        while (generator.isRunning()) {
+            Thread.sleep(50);
+        }
+        generator.stop();
+        awaitDrain(storage);
+        recorder.stopRecording();
+
+        Step step = new Step(rate, generator, storage, gc);
+        storage.clearExercise(exerciseId);
+        return step;
+    }
+
+    /**
+     * Wait until the recorder has stored everything still queued in the socket buffer.
+     */
+    private static void awaitDrain(TimedStorage storage) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        long last = -1;
+        while (System.currentTimeMillis() < deadline) {
+            long stored = storage.getStored();
+            if (stored == last) {
+                return;
+            }
+            last = stored;
+            Thread.sleep(DRAIN_QUIET_MILLIS);
+        }
+    }
+
+    private int sustainedRate(List<Step> steps) {
+        int best = 0;
+        for (Step step : steps) {
+            if (step.getLoss() <= maxLoss && step.targetRate > best) {
+                best = step.targetRate;
+            }
+        }
+        return best;
+    }
+
+    private String report(List<Step> steps) {
+        JsonWriter json = new JsonWriter().beginObject()
+            .field("benchmark", "loopback-throughput")
+            .field("time", Instant.now().toString())
+            .field("java", System.getProperty("java.version"))
+            .field("vm", System.getProperty("java.vm.name"))
+            .field("os", System.getProperty("os.name") + " " + System.getProperty("os.version"))
+            .field("processors", Runtime.getRuntime().availableProcessors())
+            .field("gcs", String.join(",", gcNames()));
+        json.name("config").beginObject()
+            .field("group", group)
+            .field("port", port)
+            .field("startRate", startRate)
+            .field("maxRate", maxRate)
+            .field("factor", factor)
+            .field("stepMillis", stepMillis)
+            .field("entities", entities)
+            .field("threads", threads)
+            .field("storage", storageType)
+            .field("maxLoss", maxLoss)
+            .endObject();
+        json.field("sustainedRate", sustainedRate(steps));
+        json.name("steps").beginArray();
+        for (Step step : steps) {
+            step.write(json);
+        }
+        return json.endArray().endObject().toString() + "\n";
+    }
+
+    private static List<String> gcNames() {
+        List<String> names = new ArrayList<>();
+        ManagementFactory.getGarbageCollectorMXBeans().forEach(gc -> names.add(gc.getName()));
+        return names;
+    }
+
+    /**
+     * Results of one rate step.
+     */
+    private static final class Step {
+        private final int targetRate;
+        private final long sent;
+        private final long sendErrors;
+        private final double sendRate;
+        private final long maxSendLagNanos;
+        private final long stored;
+        private final double storeRate;
+        private final Histogram latency;
+        private final long gcPauses;
+        private final long gcPauseMillis;
+        private final long gcMaxPauseMillis;
+
+        Step(int targetRate, LoadGenerator generator, TimedStorage storage, GcMonitor gc) {
+            this.targetRate = targetRate;
+            this.sent = generator.getPdusSent();
+            this.sendErrors = generator.getSendErrors();
+            this.sendRate = generator.getAchievedRate();
+            this.maxSendLagNanos = generator.getMaxLagNanos();
+            this.stored = storage.getStored();
+            this.storeRate = storage.getStoreRate();
+            this.latency = storage.getLatency();
+            this.gcPauses = gc.getPauses();
+            this.gcPauseMillis = gc.getTotalPauseMillis();
+            this.gcMaxPauseMillis = gc.getMaxPauseMillis();
+        }
+
+        double getLoss() {
+            return sent == 0 ? 0 : Math.max(0, sent - stored) / (double) sent;
+        }
+
+        void write(JsonWriter json) {
+            json.beginObject()
+                .field("targetRate", targetRate)
+                .field("sent", sent)
+                .field("sendErrors", sendErrors)
+                .field("sendRate", sendRate)
+                .field("maxSendLagMicros", maxSendLagNanos / 1000.0)
+                .field("stored", stored)
+                .field("throughput", storeRate)
+                .field("loss", getLoss())
+                .micros("receiveToStoreMicros", latency);
+            json.name("gc").beginObject()
+                .field("pauses", gcPauses)
+                .field("totalPauseMillis", gcPauseMillis)
+                .field("maxPauseMillis", gcMaxPauseMillis)
+                .endObject();
+            json.endObject();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%8d PDUs/s: sent %d at %.0f/s, stored %d at %.0f/s, loss %.3f%%, "
+                    + "latency p50 %.1f us p99 %.1f us max %.1f us, gc %d pauses %d ms (max %d ms)",
+                targetRate, sent, sendRate, stored, storeRate, getLoss() * 100,
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getMax() / 1000.0, gcPauses, gcPauseMillis, gcMaxPauseMillis);
+        }
+    }
+}
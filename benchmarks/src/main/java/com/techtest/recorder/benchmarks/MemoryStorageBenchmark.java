@@ -0,0 +1,79 @@
+package com.techtest.recorder.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.techtest.recorder.impl.MemoryPduStorage;
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Storing into and reading back from MemoryPduStorage. The read benchmarks run against
+ * an exercise of {@link #EXERCISE_SIZE} PDUs and report the cost per PDU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryStorageBenchmark {
+    private static final String EXERCISE_ID = "bench";
+    private static final int EXERCISE_SIZE = 100_000;
+
+    private RecordedPdu[] recorded;
+    private MemoryPduStorage writeStorage;
+    private MemoryPduStorage readStorage;
+    private int next;
+
+    @Setup
+    public void setup() {
+        recorded = PduMix.record(PduMix.DEFAULT_SCENARIO, PduMix.SIZE, EXERCISE_ID);
+        readStorage = new MemoryPduStorage();
+        for (int i = 0; i < EXERCISE_SIZE; i++) {
+            RecordedPdu pdu = recorded[i & (PduMix.SIZE - 1)];
+            readStorage.storePdu(new RecordedPdu(pdu.getPdu(), i, EXERCISE_ID, pdu.getData()));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetWriteStorage() {
+        writeStorage = new MemoryPduStorage();
+    }
+
+    @Benchmark
+    public void store() {
+        writeStorage.storePdu(recorded[next]);
+        next = (next + 1) & (PduMix.SIZE - 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXERCISE_SIZE)
+    public List<RecordedPdu> getPdusForExercise() {
+        return readStorage.getPdusForExercise(EXERCISE_ID);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXERCISE_SIZE)
+    public void cursor(Blackhole blackhole) {
+        try (PduCursor cursor = readStorage.openCursor(EXERCISE_ID)) {
+            while (cursor.hasNext()) {
+                blackhole.consume(cursor.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.techtest.recorder.benchmarks;
+
+import java.nio.ByteBuffer;
+
+import com.techtest.recorder.controller.Scenario;
+import com.techtest.recorder.controller.ScenarioTraffic;
+import com.techtest.recorder.impl.PduCodec;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Realistic PDU traffic for the benchmarks, generated from a deterministic {@link Scenario}
+ * so every run measures exactly the same bytes.
+ */
+final class PduMix {
+    /**
+     * The default mix: mostly Entity State heartbeats from a mix of moving entities,
+     * with a few percent Fire and Detonation PDUs.
+     */
+    static final String DEFAULT_SCENARIO =
+        "entities=1000,rate=10000,movement=static+linear+circle+random-walk,fire=400,detonation=400,seed=42";
+
+    /** Number of distinct PDUs benchmarks cycle through; large enough to defeat branch prediction. */
+    static final int SIZE = 4096;
+
+    private PduMix() {
+    }
+
+    /**
+     * Generate raw PDUs in send order.
+     *
+     * @param scenario The scenario description
+     * @param count The number of PDUs
+     * @return The encoded PDUs
+     */
+    static byte[][] generate(String scenario, int count) {
+        ScenarioTraffic traffic = new ScenarioTraffic(Scenario.parse(scenario));
+        byte[][] pdus = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = traffic.next();
+            pdus[i] = new byte[buffer.remaining()];
+            buffer.get(pdus[i]);
+        }
+        return pdus;
+    }
+
+    /**
+     * Generate recorded PDUs as the recorder would store them, one millisecond apart.
+     *
+     * @param scenario The scenario description
+     * @param count The number of PDUs
+     * @param exerciseId The exercise the PDUs belong to
+     * @return The recorded PDUs
+     */
+    static RecordedPdu[] record(String scenario, int count, String exerciseId) {
+        byte[][] data = generate(scenario, count);
+        RecordedPdu[] recorded = new RecordedPdu[count];
+        for (int i = 0; i < count; i++) {
+            recorded[i] = new RecordedPdu(PduCodec.decode(data[i]), i, exerciseId, data[i]);
+        }
+        return recorded;
+    }
+}
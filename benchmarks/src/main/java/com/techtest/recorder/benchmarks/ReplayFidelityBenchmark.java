@@ -0,0 +1,348 @@
+package com.techtest.recorder.benchmarks;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.techtest.recorder.impl.EntityStateEncoder;
+import com.techtest.recorder.impl.MemoryPduStorage;
+import com.techtest.recorder.impl.MulticastPduReplayer;
+import com.techtest.recorder.impl.PduCodec;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Replay timing fidelity benchmark. Builds a synthetic exercise whose PDU times are known
+ * exactly, replays it with MulticastPduReplayer at each requested speed, captures the
+ * replayed datagrams over loopback multicast and compares their arrival times with the
+ * recorded times scaled by the speed.
+ * <p>
+ * Each PDU carries its sequence number as the x coordinate of its location, so lost and
+ * reordered datagrams are detected. For every speed the report gives the timing error of
+ * each packet relative to the first one received, the error of each inter-arrival gap and
+ * the drift: the least-squares slope of the error over the exercise and the mean error in
+ * each tenth of it.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.techtest.recorder.benchmarks.ReplayFidelityBenchmark \
+ *     --speeds 1,10,100 --exercise-seconds 30 --output replay.json
+ * </pre>
+ */
+public final class ReplayFidelityBenchmark {
+    private static final String USAGE = String.join("\n",
+        "Usage: ReplayFidelityBenchmark [options]",
+        "  --group <address>         multicast group (default 239.1.2.251)",
+        "  --port <port>             port (default 3998)",
+        "  --speeds <list>           comma-separated replay speed factors (default 1,10,100)",
+        "  --exercise-seconds <s>    length of the synthetic exercise (default 30)",
+        "  --rate <n>                mean PDUs per second in the exercise (default 200)",
+        "  --seed <n>                random seed for the exercise timing (default 1)",
+        "  --output <file>           JSON report (default replay-report.json)");
+
+    private static final String EXERCISE_ID = "replay-fidelity";
+    private static final int SEGMENTS = 10;
+    private static final long SETTLE_MILLIS = 300;
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+    private static final int LOCATION_X_OFFSET = 48;
+
+    private final String group;
+    private final int port;
+    private final double[] speeds;
+    private final long exerciseMillis;
+    private final int rate;
+    private final long seed;
+
+    private ReplayFidelityBenchmark(Options options) {
+        group = options.get("group", "239.1.2.251");
+        port = options.getInt("port", 3998);
+        speeds = Arrays.stream(options.get("speeds", "1,10,100").split(","))
+            .mapToDouble(s -> Double.parseDouble(s.trim())).toArray();
+        exerciseMillis = Math.round(options.getDouble("exercise-seconds", 30) * 1000);
+        rate = options.getInt("rate", 200);
+        seed = options.getInt("seed", 1);
+        if (exerciseMillis <= 0 || rate < 1 || Arrays.stream(speeds).anyMatch(s -> s <= 0)) {
+            throw new IllegalArgumentException("Exercise length, rate and speeds must be positive");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.has("help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        Path output = Paths.get(options.get("output", "replay-report.json"));
+        new ReplayFidelityBenchmark(options).run(output);
+    }
+
+    private void run(Path output) throws Exception {
+        PduStorage storage = new MemoryPduStorage();
+        long[] recordedMillis = recordExercise(storage);
+        System.out.printf(Locale.ROOT, "Exercise of %d PDUs over %.1f s%n",
+            recordedMillis.length, recordedMillis[recordedMillis.length - 1] / 1000.0);
+
+        List<Result> results = new ArrayList<>();
+        for (double speed : speeds) {
+            long[] arrivals = replayAndCapture(storage, speed, recordedMillis.length);
+            Result result = new Result(speed, recordedMillis, arrivals);
+            results.add(result);
+            System.out.println(result);
+        }
+
+        JsonWriter json = new JsonWriter().beginObject()
+            .field("benchmark", "replay-fidelity")
+            .field("time", Instant.now().toString())
+            .field("java", System.getProperty("java.version"))
+            .field("os", System.getProperty("os.name") + " " + System.getProperty("os.version"))
+            .field("processors", Runtime.getRuntime().availableProcessors());
+        json.name("config").beginObject()
+            .field("group", group)
+            .field("port", port)
+            .field("exerciseMillis", exerciseMillis)
+            .field("rate", rate)
+            .field("seed", seed)
+            .field("pdus", recordedMillis.length)
+            .endObject();
+        json.name("speeds").beginArray();
+        for (Result result : results) {
+            result.write(json);
+        }
+        json.endArray().endObject();
+        Files.write(output, (json + "\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("Report written to " + output.toAbsolutePath());
+    }
+
+    /**
+     * Store the synthetic exercise. Gaps between PDUs are exponentially distributed and
+     * rounded down to whole milliseconds, as recorded timestamps are, so bursts of PDUs
+     * sharing a timestamp occur as they do in real recordings.
+     *
+     * @return The recorded timestamp of each PDU, in milliseconds from the first
+     */
+    private long[] recordExercise(PduStorage storage) {
+        SplittableRandom random = new SplittableRandom(seed);
+        EntityStateEncoder encoder = new EntityStateEncoder();
+        encoder.setExerciseId(1);
+        encoder.setEntityType(1, 1, 225, 1, 1, 0);
+        double meanGapMillis = 1000.0 / rate;
+        long start = System.currentTimeMillis();
+
+        List<Long> times = new ArrayList<>();
+        double time = 0;
+        while (time < exerciseMillis) {
+            int sequence = times.size();
+            long millis = (long) time;
+            encoder.setEntityId(1, 1, sequence % 0xFFFF + 1);
+            encoder.setLocation(sequence, 0, 0);
+            ByteBuffer buffer = encoder.encode();
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            storage.storePdu(new RecordedPdu(PduCodec.decode(data), start + millis, EXERCISE_ID, data));
+            times.add(millis);
+            time += -Math.log(1 - random.nextDouble()) * meanGapMillis;
+        }
+        return times.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Replay the exercise and capture the arrival time of every datagram.
+     *
+     * @return The {@link System#nanoTime()} each PDU arrived at, indexed by sequence, or 0 if lost
+     */
+    private long[] replayAndCapture(PduStorage storage, double speed, int count) throws Exception {
+        long[] arrivals = new long[count];
+        InetAddress groupAddress = InetAddress.getByName(group);
+        try (MulticastSocket socket = new MulticastSocket(port)) {
+            socket.setReceiveBufferSize(RECEIVE_BUFFER_BYTES);
+            socket.setSoTimeout(100);
+            socket.joinGroup(groupAddress);
+            Capture capture = new Capture(socket, arrivals);
+            Thread captureThread = new Thread(capture, "replay-capture");
+            captureThread.start();
+
+            MulticastPduReplayer replayer = new MulticastPduReplayer(storage, group, port);
+            replayer.startReplay(EXERCISE_ID, speed).get();
+            Thread.sleep(SETTLE_MILLIS);
+            capture.stop();
+            captureThread.join();
+            socket.leaveGroup(groupAddress);
+        }
+        return arrivals;
+    }
+
+    /**
+     * Receive loop timestamping each datagram as soon as it is taken off the socket.
+     */
+    private static final class Capture implements Runnable {
+        private final MulticastSocket socket;
+        private final long[] arrivals;
+        private volatile boolean running = true;
+
+        Capture(MulticastSocket socket, long[] arrivals) {
+            this.socket = socket;
+            this.arrivals = arrivals;
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[EntityStateEncoder.LENGTH * 2];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            ByteBuffer view = ByteBuffer.wrap(buffer);
+            while (running) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    long now = System.nanoTime();
+                    if (packet.getLength() >= LOCATION_X_OFFSET + Double.BYTES) {
+                        long sequence = (long) view.getDouble(LOCATION_X_OFFSET);
+                        if (sequence >= 0 && sequence < arrivals.length && arrivals[(int) sequence] == 0) {
+                            arrivals[(int) sequence] = now;
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    // Check whether to stop
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Capture failed: " + e.getMessage());
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Timing errors of one replay.
+     */
+    private static final class Result {
+        private final double speed;
+        private final int expected;
+        private int received;
+        private final Histogram absoluteError = new Histogram();
+        private final Histogram gapError = new Histogram();
+        private double meanErrorNanos;
+        private long maxLateNanos;
+        private long maxEarlyNanos;
+        private double driftPpm;
+        private final double[] segmentErrorNanos = new double[SEGMENTS];
+
+        Result(double speed, long[] recordedMillis, long[] arrivals) {
+            this.speed = speed;
+            this.expected = recordedMillis.length;
+
+            int anchor = -1;
+            for (int i = 0; i < arrivals.length; i++) {
+                if (arrivals[i] != 0) {
+                    anchor = i;
+                    break;
+                }
+            }
+            if (anchor < 0) {
+                return;
+            }
+
+            long span = Math.max(1, recordedMillis[recordedMillis.length - 1] - recordedMillis[anchor]);
+            int[] segmentCounts = new int[SEGMENTS];
+            double sumX = 0;
+            double sumY = 0;
+            double sumXX = 0;
+            double sumXY = 0;
+            int previous = -1;
+            for (int i = anchor; i < arrivals.length; i++) {
+                if (arrivals[i] == 0) {
+                    continue;
+                }
+                long target = scaledNanos(recordedMillis[i] - recordedMillis[anchor]);
+                long actual = arrivals[i] - arrivals[anchor];
+                long error = actual - target;
+                received++;
+                absoluteError.record(Math.abs(error));
+                meanErrorNanos += error;
+                maxLateNanos = Math.max(maxLateNanos, error);
+                maxEarlyNanos = Math.max(maxEarlyNanos, -error);
+
+                int segment = (int) Math.min(SEGMENTS - 1, (recordedMillis[i] - recordedMillis[anchor]) * SEGMENTS / span);
+                segmentErrorNanos[segment] += error;
+                segmentCounts[segment]++;
+
+                double x = target / 1e9;
+                sumX += x;
+                sumY += error;
+                sumXX += x * x;
+                sumXY += x * error;
+
+                if (previous >= 0) {
+                    long targetGap = scaledNanos(recordedMillis[i] - recordedMillis[previous]);
+                    gapError.record(Math.abs(arrivals[i] - arrivals[previous] - targetGap));
+                }
+                previous = i;
+            }
+
+            meanErrorNanos /= received;
+            for (int s = 0; s < SEGMENTS; s++) {
+                segmentErrorNanos[s] = segmentCounts[s] > 0 ? segmentErrorNanos[s] / segmentCounts[s] : Double.NaN;
+            }
+            double denominator = received * sumXX - sumX * sumX;
+            // Slope in nanoseconds of error per second of replay; microseconds per second are parts per million
+            driftPpm = denominator != 0 ? (received * sumXY - sumX * sumY) / denominator / 1000.0 : 0;
+        }
+
+        private long scaledNanos(long recordedMillis) {
+            return (long) (TimeUnit.MILLISECONDS.toNanos(recordedMillis) / speed);
+        }
+
+        void write(JsonWriter json) {
+            json.beginObject()
+                .field("speed", speed)
+                .field("expected", expected)
+                .field("received", received)
+                .field("meanErrorMicros", meanErrorNanos / 1000.0)
+                .field("maxLateMicros", maxLateNanos / 1000.0)
+                .field("maxEarlyMicros", maxEarlyNanos / 1000.0)
+                .field("driftPpm", driftPpm)
+                .micros("absoluteErrorMicros", absoluteError)
+                .micros("gapErrorMicros", gapError);
+            json.name("segmentMeanErrorMicros").beginArray();
+            for (double error : segmentErrorNanos) {
+                json.value(error / 1000.0);
+            }
+            json.endArray().endObject();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%6.1fx: received %d/%d, error p50 %.1f us p99 %.1f us max late %.1f us early %.1f us, "
+                    + "gap error p99 %.1f us, drift %.1f ppm",
+                speed, received, expected, absoluteError.getValueAtPercentile(50) / 1000.0,
+                absoluteError.getValueAtPercentile(99) / 1000.0, maxLateNanos / 1000.0, maxEarlyNanos / 1000.0,
+                gapError.getValueAtPercentile(99) / 1000.0, driftPpm);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.techtest.recorder.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.techtest.recorder.controller.Scenario;
+import com.techtest.recorder.controller.ScenarioTraffic;
+import com.techtest.recorder.impl.EntityStateEncoder;
+import com.techtest.recorder.impl.PduCodec;
+
+import edu.nps.moves.dis.EntityID;
+import edu.nps.moves.dis.EntityStatePdu;
+import edu.nps.moves.dis.Vector3Double;
+
+/**
+ * Cost of producing one outgoing Entity State PDU. {@code encoder} is the in-place path
+ * PduSender uses, {@code marshal} the open-dis object path it replaced, and
+ * {@code scenario} a full heartbeat of the load generator including movement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SenderEncodingBenchmark {
+    private static final int ENTITIES = 1000;
+
+    private final EntityStateEncoder encoder = new EntityStateEncoder();
+    private final EntityStatePdu pdu = new EntityStatePdu();
+    private ScenarioTraffic traffic;
+    private int entity;
+    private double x;
+
+    @Setup
+    public void setup() {
+        encoder.setExerciseId(1);
+        encoder.setForceId(1);
+        encoder.setEntityType(1, 1, 225, 1, 1, 0);
+        encoder.setMarking("BENCH");
+        pdu.setExerciseID((short) 1);
+        pdu.setForceId((short) 1);
+        traffic = new ScenarioTraffic(Scenario.parse(PduMix.DEFAULT_SCENARIO));
+    }
+
+    @Benchmark
+    public ByteBuffer encoder() {
+        int id = nextEntity();
+        x += 0.5;
+        encoder.setEntityId(1, 1, id);
+        encoder.setLocation(x, 2.0, 3.0);
+        encoder.setVelocity(1.0f, 0.0f, 0.0f);
+        return encoder.encode();
+    }
+
+    @Benchmark
+    public byte[] marshal() {
+        int id = nextEntity();
+        x += 0.5;
+        EntityID entityId = new EntityID();
+        entityId.setSite(1);
+        entityId.setApplication(1);
+        entityId.setEntity(id);
+        pdu.setEntityID(entityId);
+        Vector3Double location = new Vector3Double();
+        location.setX(x);
+        location.setY(2.0);
+        location.setZ(3.0);
+        pdu.setEntityLocation(location);
+        return PduCodec.encode(pdu);
+    }
+
+    @Benchmark
+    public ByteBuffer scenario() {
+        return traffic.next();
+    }
+
+    private int nextEntity() {
+        entity = entity == ENTITIES ? 1 : entity + 1;
+        return entity;
+    }
+}
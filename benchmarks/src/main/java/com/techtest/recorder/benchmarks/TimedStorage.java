@@ -0,0 +1,108 @@
+package com.techtest.recorder.benchmarks;
+
+import java.util.List;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Storage wrapper that measures, for each stored PDU, the time from the recorder
+ * receiving the datagram to the PDU being stored.
+ */
+final class TimedStorage implements PduStorage {
+    private final PduStorage delegate;
+    private final Histogram latency = new Histogram();
+    private volatile long stored;
+    private volatile long firstStoreNanos;
+    private volatile long lastStoreNanos;
+
+    TimedStorage(PduStorage delegate) {
+        this.delegate = delegate;
+    }
+
+    Histogram getLatency() {
+        return latency;
+    }
+
+    long getStored() {
+        return stored;
+    }
+
+    /**
+     * Get the rate PDUs were stored at, between the first and the last.
+     *
+     * @return The rate in PDUs per second
+     */
+    double getStoreRate() {
+        long elapsed = lastStoreNanos - firstStoreNanos;
+        return elapsed > 0 ? (stored - 1) * 1e9 / elapsed : 0;
+    }
+
+    @Override
+    public void storePdu(RecordedPdu recordedPdu) {
+        delegate.storePdu(recordedPdu);
+        long now = System.nanoTime();
+        if (recordedPdu.getReceiveNanos() != 0) {
+            latency.record(now - recordedPdu.getReceiveNanos());
+        }
+        // Only the recorder's receive thread stores
+        if (stored++ == 0) {
+            firstStoreNanos = now;
+        }
+        lastStoreNanos = now;
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusForExercise(String exerciseId) {
+        return delegate.getPdusForExercise(exerciseId);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId) {
+        return delegate.openCursor(exerciseId);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId, PduQuery query) {
+        return delegate.openCursor(exerciseId, query);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime) {
+        return delegate.getPdusInTimeRange(exerciseId, startTime, endTime);
+    }
+
+    @Override
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        return delegate.queryPdus(exerciseId, query);
+    }
+
+    @Override
+    public void clearExercise(String exerciseId) {
+        delegate.clearExercise(exerciseId);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public List<String> getExerciseIds() {
+        return delegate.getExerciseIds();
+    }
+
+    @Override
+    public ExerciseSummary getExerciseSummary(String exerciseId) {
+        return delegate.getExerciseSummary(exerciseId);
+    }
+
+    @Override
+    public List<ExerciseSummary> getExerciseSummaries() {
+        return delegate.getExerciseSummaries();
+    }
+}
@@ -0,0 +1,433 @@
+package com.techtest.recorder.controller;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.impl.EntityStateEncoder;
+import com.techtest.recorder.interfaces.TrafficSource;
+
+/**
+ * Sends PDUs for many simulated entities at a paced aggregate rate, for stress testing
+ * the recorder. The traffic is either random Entity State PDUs shaped by a {@link LoadProfile},
+ * or a deterministic {@link Scenario} whose PDUs are byte-identical from run to run.
+ * <p>
+ * The entities are sharded across one or more sender threads, each with its own channel
+ * and its share of the rate. All shards pace against a common start time, so together they
+ * follow the global schedule. Each thread keeps its send schedule in {@link System#nanoTime()}
+ * units: it parks until shortly before each PDU is due and spins for the remainder, so high
+ * rates are reached without the millisecond granularity of a scheduled executor. When a
+ * thread falls behind it sends back to back until it has caught up, and the lateness is
+ * reported as that shard's schedule lag.
+ * <p>
+ * PDUs are written in place by reusable encoders and sent from their buffers to a
+ * destination resolved once, so the send loops do not allocate.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long SPIN_THRESHOLD_NANOS = 50_000;
+
+    private final String multicastGroup;
+    private final int port;
+    private final LoadProfile profile;
+    private final Scenario scenario;
+    private final int threadCount;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger activeShards = new AtomicInteger();
+    private volatile List<Shard> shards = Collections.emptyList();
+
+    /**
+     * Create a new LoadGenerator with a single sender thread.
+     *
+     * @param multicastGroup The multicast group to send to
+     * @param port The port to send on
+     * @param profile The traffic to generate
+     */
+    public LoadGenerator(String multicastGroup, int port, LoadProfile profile) {
+        this(multicastGroup, port, profile, 1);
+    }
+
+    /**
+     * Create a new LoadGenerator.
+     *
+     * @param multicastGroup The multicast group to send to
+     * @param port The port to send on
+     * @param profile The traffic to generate
+     * @param threadCount The number of sender threads to shard the entities across
+     */
+    public LoadGenerator(String multicastGroup, int port, LoadProfile profile, int threadCount) {
+        this(multicastGroup, port, profile, null, threadCount, profile.getEntityCount());
+    }
+
+    /**
+     * Create a new LoadGenerator that executes a scenario on a single sender thread.
+     *
+     * @param multicastGroup The multicast group to send to
+     * @param port The port to send on
+     * @param scenario The scenario to execute
+     */
+    public LoadGenerator(String multicastGroup, int port, Scenario scenario) {
+        this(multicastGroup, port, scenario, 1);
+    }
+
+    /**
+     * Create a new LoadGenerator that executes a scenario.
+     * The PDUs sent are the same for any thread count; only their interleaving differs.
+     *
+     * @param multicastGroup The multicast group to send to
+     * @param port The port to send on
+     * @param scenario The scenario to execute
+     * @param threadCount The number of sender threads to shard the entities across
+     */
+    public LoadGenerator(String multicastGroup, int port, Scenario scenario, int threadCount) {
+        this(multicastGroup, port, null, scenario, threadCount, scenario.getEntityCount());
+    }
+
+    private LoadGenerator(String multicastGroup, int port, LoadProfile profile, Scenario scenario,
+                          int threadCount, int entityCount) {
+        if (threadCount < 1 || threadCount > entityCount) {
+            throw new IllegalArgumentException("Thread count must be between 1 and the entity count: " + threadCount);
+        }
+        this.multicastGroup = multicastGroup;
+        this.port = port;
+        this.profile = profile;
+        this.scenario = scenario;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Start generating load.
+     */
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            InetSocketAddress destination = new InetSocketAddress(multicastGroup, port);
+            List<Shard> started = new ArrayList<>(threadCount);
+            try {
+                for (int i = 0; i < threadCount; i++) {
+                    TrafficSource source = scenario != null
+                        ? new ScenarioTraffic(scenario, i, threadCount)
+                        : new ProfileTraffic(profile, i, threadCount);
+                    started.add(new Shard(i, source, DatagramChannel.open(StandardProtocolFamily.INET)));
+                }
+            } catch (IOException e) {
+                for (Shard shard : started) {
+                    shard.closeChannel();
+                }
+                running.set(false);
+                logger.error("Failed to start load generator: {}", e.getMessage(), e);
+                throw new RuntimeException("Failed to start load generator", e);
+            }
+
+            shards = Collections.unmodifiableList(started);
+            activeShards.set(threadCount);
+            long durationNanos = TimeUnit.MILLISECONDS.toNanos(
+                scenario != null ? scenario.getDurationMillis() : profile.getDurationMillis());
+            long start = System.nanoTime();
+            for (Shard shard : started) {
+                shard.thread = new Thread(() -> shard.run(destination, start, durationNanos),
+                    "dis-load-generator-" + shard.index);
+                shard.thread.start();
+            }
+            logger.info("Started load generator to {}:{} on {} threads: {}", multicastGroup, port, threadCount,
+                profile != null ? profile : scenario);
+        } else {
+            logger.warn("Load generator already running");
+        }
+    }
+
+    /**
+     * Stop generating load and wait for the sending threads to finish.
+     */
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            for (Shard shard : shards) {
+                Thread sender = shard.thread;
+                if (sender != null) {
+                    try {
+                        sender.join(TimeUnit.SECONDS.toMillis(5));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            logger.info("Stopped load generator: {}", getSummary());
+        }
+    }
+
+    /**
+     * Check if the generator is running.
+     *
+     * @return true if running, false otherwise
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Get the load profile.
+     *
+     * @return The profile, or null if the generator executes a scenario
+     */
+    public LoadProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Get the scenario.
+     *
+     * @return The scenario, or null if the generator sends random traffic
+     */
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Get the shards of the current or last run.
+     *
+     * @return The shards, one per sender thread
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public long getPdusSent() {
+        return shards.stream().mapToLong(Shard::getPdusSent).sum();
+    }
+
+    public long getBytesSent() {
+        return shards.stream().mapToLong(Shard::getBytesSent).sum();
+    }
+
+    public long getSendErrors() {
+        return shards.stream().mapToLong(Shard::getSendErrors).sum();
+    }
+
+    /**
+     * Get the largest delay of any shard between when a PDU was due and when it was sent.
+     *
+     * @return The maximum schedule lag in nanoseconds
+     */
+    public long getMaxLagNanos() {
+        return shards.stream().mapToLong(Shard::getMaxLagNanos).max().orElse(0);
+    }
+
+    /**
+     * Get the average delay between when a PDU was due and when it was sent.
+     *
+     * @return The mean schedule lag in nanoseconds
+     */
+    public long getMeanLagNanos() {
+        long sent = getPdusSent();
+        return sent == 0 ? 0 : shards.stream().mapToLong(s -> s.totalLagNanos).sum() / sent;
+    }
+
+    /**
+     * Get the aggregate rate achieved by all shards.
+     *
+     * @return The achieved rate in PDUs per second
+     */
+    public double getAchievedRate() {
+        return shards.stream().mapToDouble(Shard::getAchievedRate).sum();
+    }
+
+    /**
+     * Get a one-line description of the send-side counters.
+     *
+     * @return The summary
+     */
+    public String getSummary() {
+        return String.format("%d PDUs (%d bytes) sent at %.0f PDUs/s on %d threads, %d errors, "
+                + "lag mean %d us max %d us",
+            getPdusSent(), getBytesSent(), getAchievedRate(), threadCount, getSendErrors(),
+            getMeanLagNanos() / 1000, getMaxLagNanos() / 1000);
+    }
+
+    /**
+     * One sender thread with its own channel, traffic source and counters.
+     */
+    public final class Shard {
+        private final int index;
+        private final TrafficSource source;
+        private final DatagramChannel channel;
+        private Thread thread;
+
+        // Written only by the shard's thread
+        private volatile long startNanos;
+        private volatile long stopNanos;
+        private volatile long pdusSent;
+        private volatile long bytesSent;
+        private volatile long sendErrors;
+        private volatile long totalLagNanos;
+        private volatile long maxLagNanos;
+
+        Shard(int index, TrafficSource source, DatagramChannel channel) {
+            this.index = index;
+            this.source = source;
+            this.channel = channel;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getPdusSent() {
+            return pdusSent;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getSendErrors() {
+            return sendErrors;
+        }
+
+        /**
+         * Get the largest delay between when a PDU was due and when this shard sent it.
+         *
+         * @return The maximum schedule lag in nanoseconds
+         */
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        /**
+         * Get the average delay between when a PDU was due and when this shard sent it.
+         *
+         * @return The mean schedule lag in nanoseconds
+         */
+        public long getMeanLagNanos() {
+            long sent = pdusSent;
+            return sent == 0 ? 0 : totalLagNanos / sent;
+        }
+
+        /**
+         * Get the rate this shard achieved since it started.
+         *
+         * @return The achieved rate in PDUs per second
+         */
+        public double getAchievedRate() {
+            long start = startNanos;
+            if (start == 0) {
+                return 0;
+            }
+            long end = stopNanos == 0 ? System.nanoTime() : stopNanos;
+            return end > start ? pdusSent * 1e9 / (end - start) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("shard %d: %d PDUs at %.0f PDUs/s, %d errors, lag mean %d us max %d us",
+                index, pdusSent, getAchievedRate(), sendErrors, getMeanLagNanos() / 1000, maxLagNanos / 1000);
+        }
+
+        private void run(InetSocketAddress destination, long start, long durationNanos) {
+            startNanos = start;
+            try {
+                while (running.get()) {
+                    long due = source.nextDueNanos();
+                    if (durationNanos > 0 && due >= durationNanos) {
+                        break;
+                    }
+                    long wait = start + due - System.nanoTime();
+                    if (wait > SPIN_THRESHOLD_NANOS) {
+                        LockSupport.parkNanos(wait - SPIN_THRESHOLD_NANOS);
+                        continue;
+                    }
+                    if (wait > 0) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+
+                    long lag = -wait;
+                    totalLagNanos += lag;
+                    if (lag > maxLagNanos) {
+                        maxLagNanos = lag;
+                    }
+
+                    ByteBuffer pdu = source.next();
+                    try {
+                        bytesSent += channel.send(pdu, destination);
+                        pdusSent++;
+                    } catch (IOException e) {
+                        if (sendErrors++ == 0) {
+                            logger.error("Error sending PDU on shard {}: {}", index, e.getMessage(), e);
+                        }
+                    }
+                }
+            } finally {
+                stopNanos = System.nanoTime();
+                closeChannel();
+                // The last shard to finish ends a timed run
+                if (activeShards.decrementAndGet() == 0 && running.compareAndSet(true, false)) {
+                    logger.info("Load generator finished: {}", getSummary());
+                }
+            }
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing load generator channel: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Random Entity State PDUs, with a shard's entities sending in turn at its share of the rate.
+     */
+    private static final class ProfileTraffic implements TrafficSource {
+        private final LoadProfile profile;
+        private final int shardCount;
+        private final EntityStateEncoder encoder = new EntityStateEncoder();
+        private final SplittableRandom random;
+        private long due;
+        private int entityIndex;
+
+        ProfileTraffic(LoadProfile profile, int shard, int shardCount) {
+            this.profile = profile;
+            this.shardCount = shardCount;
+            // One generator per shard, so a shard's PDUs do not depend on how the others are scheduled
+            this.random = new SplittableRandom(profile.getSeed() * 0x9E3779B97F4A7C15L + shard);
+            this.entityIndex = shard;
+            // Stagger the shards so their PDUs interleave evenly
+            this.due = shard * 1_000_000_000L / profile.getRate();
+        }
+
+        @Override
+        public long nextDueNanos() {
+            return due;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            encoder.setEntityId(1, 1, entityIndex + 1);
+            encoder.setLocation(random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 100);
+            encoder.setOrientation((float) (random.nextDouble() * Math.PI * 2), 0, 0);
+            entityIndex += shardCount;
+            if (entityIndex >= profile.getEntityCount()) {
+                entityIndex %= shardCount;
+            }
+            due += shardCount * 1_000_000_000L / profile.rateAt(due);
+            return encoder.encode();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.techtest.recorder.controller;
+
+/**
+ * Describes the traffic produced by a {@link LoadGenerator}: how many entities are simulated,
+ * the aggregate rate they send at, optional periodic bursts and how long to run.
+ * <p>
+ * Entities send in turn, so each entity's heartbeat interval is the entity count divided by
+ * the current rate. During a burst the rate rises to the burst rate and heartbeats shorten
+ * accordingly. Entity positions are random but reproducible: each sender thread draws them
+ * from a generator derived from the profile's seed. Instances are immutable; the {@code with}
+ * methods return modified copies.
+ */
+public final class LoadProfile {
+    /** Highest aggregate rate a profile accepts, in PDUs per second, across all sender threads. */
+    public static final int MAX_RATE = 1_000_000;
+    /** Seed used unless {@link #withSeed(long)} sets another, so runs repeat by default. */
+    public static final long DEFAULT_SEED = 1;
+
+    private final int entityCount;
+    private final int rate;
+    private final int burstRate;
+    private final long burstMillis;
+    private final long burstPeriodMillis;
+    private final long durationMillis;
+    private final long seed;
+
+    private LoadProfile(int entityCount, int rate, int burstRate, long burstMillis, long burstPeriodMillis,
+                        long durationMillis, long seed) {
+        if (entityCount < 1 || entityCount > 0xFFFF) {
+            throw new IllegalArgumentException("Entity count must be between 1 and 65535: " + entityCount);
+        }
+        if (rate < 1 || rate > MAX_RATE || burstRate < 0 || burstRate > MAX_RATE) {
+            throw new IllegalArgumentException("Rates must be between 1 and " + MAX_RATE + " PDUs/second");
+        }
+        if (burstRate > 0 && (burstMillis <= 0 || burstPeriodMillis < burstMillis)) {
+            throw new IllegalArgumentException("Burst must be shorter than its period");
+        }
+        this.entityCount = entityCount;
+        this.rate = rate;
+        this.burstRate = burstRate;
+        this.burstMillis = burstMillis;
+        this.burstPeriodMillis = burstPeriodMillis;
+        this.durationMillis = durationMillis;
+        this.seed = seed;
+    }
+
+    /**
+     * Create a profile that sends at a constant rate until stopped.
+     *
+     * @param entityCount The number of simulated entities
+     * @param rate The aggregate rate in PDUs per second
+     * @return The profile
+     */
+    public static LoadProfile steady(int entityCount, int rate) {
+        return new LoadProfile(entityCount, rate, 0, 0, 0, 0, DEFAULT_SEED);
+    }
+
+    /**
+     * Add periodic bursts. Each period starts with a burst at the higher rate.
+     *
+     * @param burstRate The aggregate rate during a burst in PDUs per second
+     * @param burstMillis The length of each burst in milliseconds
+     * @param burstPeriodMillis The time from the start of one burst to the next in milliseconds
+     * @return A copy of this profile with bursts
+     */
+    public LoadProfile withBurst(int burstRate, long burstMillis, long burstPeriodMillis) {
+        return new LoadProfile(entityCount, rate, burstRate, burstMillis, burstPeriodMillis, durationMillis, seed);
+    }
+
+    /**
+     * Limit how long the generator runs.
+     *
+     * @param durationMillis The run time in milliseconds, or 0 to run until stopped
+     * @return A copy of this profile with the duration
+     */
+    public LoadProfile withDuration(long durationMillis) {
+        return new LoadProfile(entityCount, rate, burstRate, burstMillis, burstPeriodMillis, durationMillis, seed);
+    }
+
+    /**
+     * Set the seed the random entity positions are derived from.
+     *
+     * @param seed The seed
+     * @return A copy of this profile with the seed
+     */
+    public LoadProfile withSeed(long seed) {
+        return new LoadProfile(entityCount, rate, burstRate, burstMillis, burstPeriodMillis, durationMillis, seed);
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getBurstRate() {
+        return burstRate;
+    }
+
+    public long getBurstMillis() {
+        return burstMillis;
+    }
+
+    public long getBurstPeriodMillis() {
+        return burstPeriodMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the aggregate rate at a point in the run.
+     *
+     * @param elapsedNanos The time since the generator started
+     * @return The rate in PDUs per second
+     */
+    public int rateAt(long elapsedNanos) {
+        if (burstRate == 0) {
+            return rate;
+        }
+        long periodNanos = burstPeriodMillis * 1_000_000L;
+        return elapsedNanos % periodNanos < burstMillis * 1_000_000L ? burstRate : rate;
+    }
+
+    /**
+     * Get the heartbeat interval of each entity at the steady rate.
+     *
+     * @return The interval in nanoseconds
+     */
+    public long getHeartbeatNanos() {
+        return entityCount * 1_000_000_000L / rate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(entityCount).append(" entities at ").append(rate).append(" PDUs/s");
+        if (burstRate > 0) {
+            sb.append(", bursts of ").append(burstRate).append(" PDUs/s for ").append(burstMillis)
+                .append(" ms every ").append(burstPeriodMillis).append(" ms");
+        }
+        if (durationMillis > 0) {
+            sb.append(", for ").append(durationMillis).append(" ms");
+        }
+        if (seed != DEFAULT_SEED) {
+            sb.append(", seed ").append(seed);
+        }
+        return sb.toString();
+    }
+}
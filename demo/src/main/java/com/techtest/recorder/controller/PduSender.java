@@ -1,9 +1,9 @@
 package com.techtest.recorder.controller;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.DatagramChannel;
 import java.util.Random;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -14,28 +14,32 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.nps.moves.dis.EntityID;
-import edu.nps.moves.dis.EntityStatePdu;
-import edu.nps.moves.dis.Orientation;
-import edu.nps.moves.dis.Vector3Double;
+import com.techtest.recorder.impl.EntityStateEncoder;
 
 /**
  * A class for sending PDUs to a multicast group for testing purposes.
+ * Rates above {@value #MAX_SCHEDULED_RATE} PDUs per second are handed to a
+ * {@link LoadGenerator} simulating {@value #HIGH_RATE_ENTITIES} entities.
  */
 public class PduSender {
     private static final Logger logger = LoggerFactory.getLogger(PduSender.class);
     private static final String DEFAULT_MULTICAST_GROUP = "239.1.2.3";
     private static final int DEFAULT_PORT = 3000;
     private static final int DEFAULT_RATE = 1; // PDUs per second
+    private static final int MAX_SCHEDULED_RATE = 1000;
+    private static final int HIGH_RATE_ENTITIES = 1000;
     
     private final String multicastGroup;
     private final int port;
     private final int rate;
-    private MulticastSocket socket;
+    private DatagramChannel channel;
+    private InetSocketAddress destination;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private ScheduledExecutorService executorService;
+    private LoadGenerator loadGenerator;
     private final Random random = new Random();
     private final AtomicInteger entityCounter = new AtomicInteger(1);
+    private final EntityStateEncoder encoder = new EntityStateEncoder();
     
     /**
      * Create a new PduSender with default settings.
@@ -62,16 +66,28 @@ public class PduSender {
      */
     public void start() {
         if (running.compareAndSet(false, true)) {
+            if (rate > MAX_SCHEDULED_RATE) {
+                try {
+                    loadGenerator = new LoadGenerator(multicastGroup, port,
+                        LoadProfile.steady(HIGH_RATE_ENTITIES, rate));
+                    loadGenerator.start();
+                } catch (RuntimeException e) {
+                    running.set(false);
+                    throw e;
+                }
+                return;
+            }
             try {
-                socket = new MulticastSocket();
+                channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                destination = new InetSocketAddress(multicastGroup, port);
                 executorService = Executors.newSingleThreadScheduledExecutor();
                 
                 // Schedule PDU sending at the specified rate
                 executorService.scheduleAtFixedRate(
                     this::sendPdu, 
                     0, 
-                    1000 / rate, 
-                    TimeUnit.MILLISECONDS
+                    1_000_000_000L / rate, 
+                    TimeUnit.NANOSECONDS
                 );
                 
                 logger.info("Started sending PDUs to {}:{} at {} PDUs/second", 
@@ -91,14 +107,23 @@ public class PduSender {
      */
     public void stop() {
         if (running.compareAndSet(true, false)) {
+            if (loadGenerator != null) {
+                loadGenerator.stop();
+                loadGenerator = null;
+            }
+            
             if (executorService != null) {
                 executorService.shutdownNow();
                 executorService = null;
             }
             
-            if (socket != null) {
-                socket.close();
-                socket = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing sender channel: {}", e.getMessage());
+                }
+                channel = null;
             }
             
             logger.info("Stopped sending PDUs");
@@ -116,71 +141,26 @@ public class PduSender {
     
     /**
      * Send a PDU.
+     * Runs on the single scheduler thread, so the encoder is reused without locking.
      */
     private void sendPdu() {
         try {
-            // Create an Entity State PDU
-            EntityStatePdu pdu = createEntityStatePdu();
-            
-            // Convert PDU to bytes
-            byte[] pduBytes = pduToBytes(pdu);
+            // Encode an Entity State PDU with a new entity ID and a random location and orientation
+            int entity = entityCounter.getAndIncrement();
+            encoder.setEntityId(1, 1, entity);
+            encoder.setLocation(random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 100);
+            encoder.setOrientation((float) (random.nextDouble() * Math.PI * 2),
+                (float) (random.nextDouble() * Math.PI * 2),
+                (float) (random.nextDouble() * Math.PI * 2));
             
             // Send PDU
-            InetAddress group = InetAddress.getByName(multicastGroup);
-            DatagramPacket packet = new DatagramPacket(pduBytes, pduBytes.length, group, port);
-            socket.send(packet);
+            channel.send(encoder.encode(), destination);
             
-            logger.debug("Sent PDU: Entity ID {}", pdu.getEntityID().getEntity());
+            logger.debug("Sent PDU: Entity ID {}", entity);
         } catch (Exception e) {
             if (running.get()) {
                 logger.error("Error sending PDU: {}", e.getMessage(), e);
             }
         }
     }
-    
-    /**
-     * Create a random Entity State PDU.
-     * 
-     * @return The created PDU
-     */
-    private EntityStatePdu createEntityStatePdu() {
-        EntityStatePdu pdu = new EntityStatePdu();
-        
-        // Set the Entity ID
-        EntityID entityId = new EntityID();
-        entityId.setSite(1);
-        entityId.setApplication(1);
-        entityId.setEntity(entityCounter.getAndIncrement());
-        pdu.setEntityID(entityId);
-        
-        // Set Entity Location (random x, y, z coordinates)
-        Vector3Double location = new Vector3Double();
-        location.setX(random.nextDouble() * 1000);
-        location.setY(random.nextDouble() * 1000);
-        location.setZ(random.nextDouble() * 100);
-        pdu.setEntityLocation(location);
-        
-        // Set Entity Orientation (random orientation)
-        Orientation orientation = new Orientation();
-        orientation.setPsi((float)(random.nextDouble() * Math.PI * 2));
-        orientation.setTheta((float)(random.nextDouble() * Math.PI * 2));
-        orientation.setPhi((float)(random.nextDouble() * Math.PI * 2));
-        pdu.setEntityOrientation(orientation);
-        
-        return pdu;
-    }
-    
-    /**
-     * Convert a PDU to a byte array.
-     * 
-     * @param pdu The PDU to convert
-     * @return The byte array
-     * @throws IOException If an error occurs during conversion
-     */
-    private byte[] pduToBytes(EntityStatePdu pdu) throws IOException {
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        java.io.DataOutputStream dos = new java.io.DataOutputStream(baos);
-        pdu.marshal(dos);
-        return baos.toByteArray();
-    }
 }
@@ -1,6 +1,10 @@
 package com.techtest.recorder.controller;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.List;
+import java.util.SortedMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
@@ -11,12 +15,19 @@ import org.slf4j.LoggerFactory;
 import com.techtest.recorder.interfaces.PduRecorder;
 import com.techtest.recorder.interfaces.PduReplayer;
 import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.metrics.MetricsRegistry;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
+import com.techtest.recorder.model.RecordedPdu;
+import com.techtest.recorder.pcap.PcapConverter;
 
 /**
  * Controller for managing PDU recording and replay operations.
  */
 public class RecorderController {
     private static final Logger logger = LoggerFactory.getLogger(RecorderController.class);
+    /** JMX name the recorder metrics are registered under. */
+    public static final String METRICS_OBJECT_NAME = "com.techtest.recorder:type=Metrics";
     
     private final PduStorage storage;
     private final PduRecorder recorder;
@@ -33,6 +44,12 @@ public class RecorderController {
         this.storage = storage;
         this.recorder = recorder;
         this.replayer = replayer;
+        
+        try {
+            recorder.getMetrics().registerMBean(METRICS_OBJECT_NAME);
+        } catch (Exception e) {
+            logger.warn("Failed to register metrics MBean: {}", e.getMessage());
+        }
     }
     
     /**
@@ -84,6 +101,32 @@ public class RecorderController {
         }
     }
     
+    /**
+     * Continue the current recording in a new exercise without closing the socket.
+     * 
+     * @param exerciseId The exercise ID to record into from now on
+     * @return true if recording moved to the new exercise, false otherwise
+     */
+    public boolean rotateRecording(String exerciseId) {
+        if (!recorder.isRecording()) {
+            logger.warn("Not currently recording");
+            return false;
+        }
+        
+        if (exerciseId == null || exerciseId.trim().isEmpty()) {
+            logger.error("Exercise ID cannot be null or empty");
+            return false;
+        }
+        
+        try {
+            recorder.switchExercise(exerciseId);
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to rotate recording: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
     /**
      * Start replaying PDUs for a specific exercise.
      *
@@ -212,6 +255,65 @@ public class RecorderController {
         }
     }
     
+    /**
+     * Import the DIS PDUs in a pcap capture file into an exercise.
+     * 
+     * @param file The capture file path
+     * @param exerciseId The exercise ID to import into
+     * @return true if the file was imported, false otherwise
+     */
+    public boolean importPcap(String file, String exerciseId) {
+        if (exerciseId == null || exerciseId.trim().isEmpty()) {
+            logger.error("Exercise ID cannot be null or empty");
+            return false;
+        }
+        
+        try {
+            long count = PcapConverter.importExercise(Paths.get(file), storage, exerciseId, 0);
+            logger.info("Imported {} PDUs from {} into exercise: {}", count, file, exerciseId);
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to import pcap file: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Export an exercise to a new pcap capture file.
+     * 
+     * @param exerciseId The exercise ID
+     * @param file The capture file path
+     * @return true if the exercise was exported, false otherwise, e.g. if the file exists
+     */
+    public boolean exportPcap(String exerciseId, String file) {
+        return exportPcap(exerciseId, file, false);
+    }
+    
+    /**
+     * Export an exercise to a pcap capture file.
+     * 
+     * @param exerciseId The exercise ID
+     * @param file The capture file path
+     * @param overwrite true to replace an existing file
+     * @return true if the exercise was exported, false otherwise
+     */
+    public boolean exportPcap(String exerciseId, String file, boolean overwrite) {
+        if (exerciseId == null || exerciseId.trim().isEmpty()) {
+            logger.error("Exercise ID cannot be null or empty");
+            return false;
+        }
+        
+        try {
+            Path path = Paths.get(file);
+            long count = PcapConverter.exportExercise(storage, exerciseId, path, overwrite);
+            logger.info("Exported {} PDUs from exercise {} to {}", count, exerciseId, path);
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to export pcap file: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
     /**
      * Get all available exercise IDs.
      * 
@@ -221,6 +323,28 @@ public class RecorderController {
         return storage.getExerciseIds();
     }
     
+    /**
+     * Get the catalog details of all available exercises.
+     * 
+     * @return List of exercise summaries ordered by exercise ID
+     */
+    public List<ExerciseSummary> getExerciseSummaries() {
+        List<ExerciseSummary> summaries = storage.getExerciseSummaries();
+        summaries.sort(Comparator.comparing(ExerciseSummary::getExerciseId));
+        return summaries;
+    }
+    
+    /**
+     * Retrieve the PDUs of an exercise that match a query.
+     * 
+     * @param exerciseId The exercise ID
+     * @param query The time window, PDU type and entity criteria
+     * @return List of matching PDUs in timestamp order
+     */
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        return storage.queryPdus(exerciseId, query);
+    }
+    
     /**
      * Check if recording is active.
      * 
@@ -309,4 +433,23 @@ public class RecorderController {
             return false;
         }
     }
+    
+    /**
+     * Get the recorder's metrics registry.
+     * 
+     * @return The metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return recorder.getMetrics();
+    }
+    
+    /**
+     * Read the current value of every recorder metric.
+     * 
+     * @return The values by metric key, sorted by key
+     * @see MetricsRegistry#snapshot()
+     */
+    public SortedMap<String, Long> getMetricsSnapshot() {
+        return recorder.getMetrics().snapshot();
+    }
 }
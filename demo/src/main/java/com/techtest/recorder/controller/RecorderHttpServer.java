@@ -0,0 +1,567 @@
+package com.techtest.recorder.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.techtest.recorder.metrics.PrometheusFormat;
+import com.techtest.recorder.model.ExerciseSummary;
+
+/**
+ * Small HTTP interface to a {@link RecorderController}, for recorders running without a
+ * desktop session. Built on the JDK's {@code com.sun.net.httpserver}, so it needs no
+ * extra dependencies.
+ * <p>
+ * Read-only endpoints use GET; operations use POST with their arguments as query
+ * parameters. Operations answer {@code {"ok":true}} with status 200, or {@code {"ok":false}}
+ * with status 409 if the controller refused them.
+ * <p>
+ * pcap import and export can take minutes, so they run as jobs, one at a time, on a thread of
+ * their own and do not hold up other requests. They answer {@code {"ok":true,"job":N}} with
+ * status 202 once their arguments are checked, and {@code /status} lists the recent jobs with
+ * their state: queued, running, succeeded or failed.
+ * <p>
+ * A web page open on the recorder host can send simple requests to the server, so:
+ * <ul>
+ * <li>requests with an {@code Origin} header are refused with 403, as browsers add it to
+ *     cross-origin requests and no legitimate client of this server is a web page</li>
+ * <li>requests whose {@code Host} is not a loopback name or the address the server is bound
+ *     to are refused with 403, which defeats DNS rebinding</li>
+ * <li>POST requests must carry an {@code X-Recorder-Token} header, which a page cannot add
+ *     without a CORS preflight the server never answers. If a token is set with
+ *     {@link #setToken(String)} the header must match it, otherwise any value is accepted.
+ *     Missing or wrong tokens are refused with 401</li>
+ * <li>pcap files are only read and written inside the directory set with
+ *     {@link #setFileDirectory(Path)}; without one the pcap endpoints are disabled. Exports do
+ *     not replace an existing file unless {@code overwrite=true} is passed</li>
+ * </ul>
+ * <ul>
+ * <li>{@code GET /health} - liveness check</li>
+ * <li>{@code GET /metrics} - all recorder metrics in Prometheus text format</li>
+ * <li>{@code GET /status} - recording and replay state, and recent jobs</li>
+ * <li>{@code GET /exercises} - catalog summary of every exercise</li>
+ * <li>{@code POST /recording/start?exercise=ID}, {@code POST /recording/stop},
+ *     {@code POST /recording/rotate?exercise=ID}</li>
+ * <li>{@code POST /replay/start?exercise=ID&speed=1.0}, {@code POST /replay/stop}</li>
+ * <li>{@code POST /exercises/clear?exercise=ID}</li>
+ * <li>{@code POST /pcap/import?file=PATH&exercise=ID},
+ *     {@code POST /pcap/export?exercise=ID&file=PATH&overwrite=false}, with paths relative to
+ *     the file directory</li>
+ * </ul>
+ * The token is the only authentication, so by default the server only listens on the loopback
+ * interface.
+ */
+public class RecorderHttpServer {
+    private static final Logger logger = LoggerFactory.getLogger(RecorderHttpServer.class);
+    private static final String DEFAULT_HOST = "127.0.0.1";
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String TOKEN_HEADER = "X-Recorder-Token";
+    /** Finished jobs are forgotten beyond this many jobs. */
+    private static final int MAX_JOBS = 16;
+
+    private final RecorderController controller;
+    private final InetSocketAddress address;
+    private volatile byte[] token;
+    private volatile Path fileDirectory;
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, Job> jobs = new LinkedHashMap<>();
+    private HttpServer server;
+    private ExecutorService executorService;
+    private ExecutorService jobExecutor;
+
+    /**
+     * Create a new RecorderHttpServer listening on the loopback interface.
+     *
+     * @param controller The controller to expose
+     * @param port The port to listen on, or 0 for any free port
+     */
+    public RecorderHttpServer(RecorderController controller, int port) {
+        this(controller, DEFAULT_HOST, port);
+    }
+
+    /**
+     * Create a new RecorderHttpServer.
+     *
+     * @param controller The controller to expose
+     * @param host The address to listen on, e.g. 0.0.0.0 for all interfaces
+     * @param port The port to listen on, or 0 for any free port
+     */
+    public RecorderHttpServer(RecorderController controller, String host, int port) {
+        this.controller = controller;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Set the token POST requests must send in the {@code X-Recorder-Token} header.
+     *
+     * @param token The token, or null to accept any value as long as the header is present
+     */
+    public void setToken(String token) {
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Set the directory pcap files are imported from and exported to.
+     *
+     * @param fileDirectory The directory, or null to disable the pcap endpoints
+     */
+    public void setFileDirectory(Path fileDirectory) {
+        this.fileDirectory = fileDirectory == null ? null : fileDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Start serving requests.
+     */
+    public synchronized void start() {
+        if (server != null) {
+            logger.warn("HTTP server already running on port {}", getPort());
+            return;
+        }
+        try {
+            server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            logger.error("Failed to start HTTP server on {}: {}", address, e.getMessage(), e);
+            throw new RuntimeException("Failed to start HTTP server", e);
+        }
+        server.createContext("/health", get(exchange -> respond(exchange, 200, TEXT, "ok\n")));
+        server.createContext("/metrics", get(exchange -> respond(exchange, 200, PrometheusFormat.CONTENT_TYPE,
+            PrometheusFormat.format(controller.getMetrics()))));
+        server.createContext("/status", get(exchange -> respond(exchange, 200, JSON, status())));
+        server.createContext("/exercises", get(exchange -> respond(exchange, 200, JSON, exercises())));
+        server.createContext("/recording/start", post((exchange, params) ->
+            controller.startRecording(required(params, "exercise"))));
+        server.createContext("/recording/stop", post((exchange, params) -> controller.stopRecording()));
+        server.createContext("/recording/rotate", post((exchange, params) ->
+            controller.rotateRecording(required(params, "exercise"))));
+        server.createContext("/replay/start", post((exchange, params) ->
+            controller.startReplay(required(params, "exercise"), speed(params))));
+        server.createContext("/replay/stop", post((exchange, params) -> controller.stopReplay()));
+        server.createContext("/exercises/clear", post((exchange, params) ->
+            controller.clearExercise(required(params, "exercise"))));
+        server.createContext("/pcap/import", postJob("pcap-import", params -> {
+            String file = pcapFile(params, false).toString();
+            String exercise = required(params, "exercise");
+            return () -> controller.importPcap(file, exercise);
+        }));
+        server.createContext("/pcap/export", postJob("pcap-export", params -> {
+            String exercise = required(params, "exercise");
+            String file = pcapFile(params, true).toString();
+            boolean overwrite = Boolean.parseBoolean(params.getOrDefault("overwrite", "false"));
+            return () -> controller.exportPcap(exercise, file, overwrite);
+        }));
+
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recorder-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recorder-http-jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executorService);
+        server.start();
+        logger.info("HTTP server listening on {}:{}", address.getHostString(), getPort());
+    }
+
+    /**
+     * Stop serving requests, letting requests in progress finish for up to a second. Queued
+     * jobs are dropped and a running job is interrupted.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            server = null;
+            executorService.shutdownNow();
+            executorService = null;
+            jobExecutor.shutdownNow();
+            jobExecutor = null;
+            logger.info("Stopped HTTP server");
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Get the port the server listens on.
+     *
+     * @return The bound port, or the configured port if the server is not running
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : address.getPort();
+    }
+
+    private String status() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"recording\":").append(controller.isRecording());
+        json.append(",\"recordingExercise\":").append(quote(controller.getCurrentRecordingExerciseId()));
+        json.append(",\"replaying\":").append(controller.isReplaying());
+        json.append(",\"replayExercise\":").append(quote(controller.getCurrentReplayExerciseId()));
+        json.append(",\"replaySpeed\":").append(controller.getCurrentReplaySpeedFactor());
+        json.append(",\"jobs\":[");
+        List<Job> recent;
+        synchronized (jobs) {
+            recent = new ArrayList<>(jobs.values());
+        }
+        for (int i = 0; i < recent.size(); i++) {
+            Job job = recent.get(i);
+            json.append(i > 0 ? "," : "")
+                .append("{\"id\":").append(job.id)
+                .append(",\"operation\":").append(quote(job.operation))
+                .append(",\"exercise\":").append(quote(job.params.get("exercise")))
+                .append(",\"file\":").append(quote(job.params.get("file")))
+                .append(",\"state\":").append(quote(job.state))
+                .append(",\"error\":").append(quote(job.error))
+                .append(",\"submitted\":").append(job.submitted)
+                .append(",\"finished\":").append(job.finished)
+                .append('}');
+        }
+        return json.append("]}\n").toString();
+    }
+
+    /**
+     * Queue a job, forgetting the oldest finished jobs beyond {@link #MAX_JOBS}.
+     */
+    private Job submit(String operation, Map<String, String> params, Callable<Boolean> work) {
+        Job job = new Job(jobIds.incrementAndGet(), operation, params);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            Iterator<Job> oldest = jobs.values().iterator();
+            while (jobs.size() > MAX_JOBS && oldest.hasNext()) {
+                if (oldest.next().finished != 0) {
+                    oldest.remove();
+                }
+            }
+        }
+        jobExecutor.execute(() -> {
+            job.state = "running";
+            try {
+                job.state = work.call() ? "succeeded" : "failed";
+            } catch (Exception e) {
+                logger.error("Job {} {} failed: {}", job.id, operation, e.getMessage(), e);
+                job.error = e.getMessage();
+                job.state = "failed";
+            }
+            job.finished = System.currentTimeMillis();
+        });
+        return job;
+    }
+
+    private String exercises() {
+        StringBuilder json = new StringBuilder("[");
+        for (ExerciseSummary summary : controller.getExerciseSummaries()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(quote(summary.getExerciseId()))
+                .append(",\"startTime\":").append(summary.getStartTime())
+                .append(",\"endTime\":").append(summary.getEndTime())
+                .append(",\"pduCount\":").append(summary.getPduCount())
+                .append(",\"byteSize\":").append(summary.getByteSize())
+                .append(",\"entityCount\":").append(summary.getEntityCount())
+                .append(",\"pduCountsByType\":{");
+            boolean first = true;
+            for (Map.Entry<Integer, Long> entry : summary.getPduCountsByType().entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            }
+            json.append("}}");
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static double speed(Map<String, String> params) {
+        String speed = params.getOrDefault("speed", "1.0");
+        try {
+            double value = Double.parseDouble(speed);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Speed must be a positive number: " + speed);
+    }
+
+    /**
+     * Resolve the file of a pcap request inside the file directory.
+     *
+     * @param params The request parameters
+     * @param export true if the file is written, so only its directory has to exist
+     * @return The absolute path of the file
+     */
+    private Path pcapFile(Map<String, String> params, boolean export) throws IOException {
+        Path directory = fileDirectory;
+        if (directory == null) {
+            throw new IllegalArgumentException("pcap files are disabled: no file directory is configured");
+        }
+        String file = required(params, "file");
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory) || path.equals(directory)) {
+            throw new IllegalArgumentException("File must be inside " + directory + ": " + file);
+        }
+        // Symbolic links must not lead out of the directory either
+        Path realDirectory = directory.toRealPath();
+        Path existing = export ? path.getParent() : path;
+        if (Files.exists(existing) && !existing.toRealPath().startsWith(realDirectory)) {
+            throw new IllegalArgumentException("File must be inside " + directory + ": " + file);
+        }
+        if (export && Files.isSymbolicLink(path)) {
+            throw new IllegalArgumentException("Export file must not be a symbolic link: " + file);
+        }
+        return path;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private HttpHandler get(HttpHandler handler) {
+        return exchange -> {
+            try {
+                if (!isSameOrigin(exchange)) {
+                    respond(exchange, 403, TEXT, "Forbidden\n");
+                } else if (!"GET".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, TEXT, "Use GET\n");
+                } else if (!isExactPath(exchange)) {
+                    respond(exchange, 404, TEXT, "Not found\n");
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (Exception e) {
+                logger.error("Error handling {}: {}", exchange.getRequestURI(), e.getMessage(), e);
+                respond(exchange, 500, TEXT, "Internal error\n");
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private HttpHandler post(Operation operation) {
+        return postRequest((exchange, params) -> {
+            boolean ok = operation.run(exchange, params);
+            respond(exchange, ok ? 200 : 409, JSON, "{\"ok\":" + ok + "}\n");
+        });
+    }
+
+    private HttpHandler postJob(String operation, JobTask task) {
+        return postRequest((exchange, params) -> {
+            // Arguments are checked now, so mistakes are still answered with 400
+            Callable<Boolean> work = task.prepare(params);
+            Job job = submit(operation, params, work);
+            respond(exchange, 202, JSON, "{\"ok\":true,\"job\":" + job.id + "}\n");
+        });
+    }
+
+    private HttpHandler postRequest(RequestHandler handler) {
+        return exchange -> {
+            try {
+                if (!isSameOrigin(exchange)) {
+                    respond(exchange, 403, JSON, "{\"ok\":false,\"error\":\"Forbidden\"}\n");
+                } else if (!hasToken(exchange)) {
+                    respond(exchange, 401, JSON, "{\"ok\":false,\"error\":\"Missing or wrong " + TOKEN_HEADER + "\"}\n");
+                } else if (!"POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, TEXT, "Use POST\n");
+                } else if (!isExactPath(exchange)) {
+                    respond(exchange, 404, TEXT, "Not found\n");
+                } else {
+                    handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+                }
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, JSON, "{\"ok\":false,\"error\":" + quote(e.getMessage()) + "}\n");
+            } catch (Exception e) {
+                logger.error("Error handling {}: {}", exchange.getRequestURI(), e.getMessage(), e);
+                respond(exchange, 500, JSON, "{\"ok\":false}\n");
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /**
+     * Check that a request does not come from a web page: it has no {@code Origin} header
+     * and names a loopback host or the address the server is bound to.
+     */
+    private boolean isSameOrigin(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            return false;
+        }
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null) {
+            return true;
+        }
+        // Strip the port, and the brackets of an IPv6 literal
+        int colon = host.lastIndexOf(':');
+        if (colon >= 0 && host.indexOf(']') < colon) {
+            host = host.substring(0, colon);
+        }
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        if (host.equalsIgnoreCase("localhost")) {
+            return true;
+        }
+        InetAddress bound = address.getAddress();
+        if (bound != null && !bound.isAnyLocalAddress()
+                && (host.equalsIgnoreCase(address.getHostString()) || host.equals(bound.getHostAddress()))) {
+            return true;
+        }
+        return isLoopbackLiteral(host);
+    }
+
+    /**
+     * Check if a host is a loopback IP address literal, without resolving names.
+     */
+    private static boolean isLoopbackLiteral(String host) {
+        boolean ipv6 = host.indexOf(':') >= 0;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            boolean literal = ipv6 ? Character.digit(c, 16) >= 0 || c == ':' || c == '.'
+                : Character.isDigit(c) || c == '.';
+            if (!literal) {
+                return false;
+            }
+        }
+        try {
+            // Only IP literals get here, so this does not look anything up
+            return !host.isEmpty() && InetAddress.getByName(host).isLoopbackAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean hasToken(HttpExchange exchange) {
+        String sent = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (sent == null) {
+            return false;
+        }
+        byte[] expected = token;
+        return expected == null || MessageDigest.isEqual(expected, sent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Contexts match by prefix, so reject longer paths such as /exercises/unknown.
+     */
+    private static boolean isExactPath(HttpExchange exchange) {
+        return exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath());
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * A controller operation invoked by a POST request.
+     */
+    @FunctionalInterface
+    private interface Operation {
+        boolean run(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * A long operation invoked by a POST request: checks the parameters and returns the work
+     * to run as a job.
+     */
+    @FunctionalInterface
+    private interface JobTask {
+        Callable<Boolean> prepare(Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * A POST request that passed the origin and token checks.
+     */
+    @FunctionalInterface
+    private interface RequestHandler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * A long operation run on the job thread. The state fields are written by the job thread
+     * and read by {@code /status}.
+     */
+    private static final class Job {
+        final long id;
+        final String operation;
+        final Map<String, String> params;
+        final long submitted = System.currentTimeMillis();
+        volatile String state = "queued";
+        volatile String error;
+        volatile long finished;
+
+        Job(long id, String operation, Map<String, String> params) {
+            this.id = id;
+            this.operation = operation;
+            this.params = params;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.techtest.recorder.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.techtest.recorder.impl.KeyValues;
+
+/**
+ * A compact, deterministic description of simulated traffic: the entities, how they move,
+ * how often they fire and detonate, and the random seed everything is derived from.
+ * <p>
+ * Scenarios are written as comma-separated {@code key=value} pairs, for example
+ * {@code entities=500,rate=5000,movement=linear+circle,fire=20,detonation=20,seed=7,duration=60}.
+ * Keys that are left out take their default. Running the same scenario twice produces
+ * byte-identical PDUs in the same order; only the wall-clock send times differ.
+ * <p>
+ * Supported keys:
+ * <ul>
+ * <li>{@code entities} - number of simulated entities (default 100)</li>
+ * <li>{@code rate} - aggregate Entity State PDUs per second; each entity's heartbeat is
+ *     entities / rate seconds (default 1000)</li>
+ * <li>{@code movement} - movement models assigned to entities in turn, joined with {@code +}:
+ *     static, linear, circle, random-walk (default linear)</li>
+ * <li>{@code fire}, {@code detonation} - aggregate Fire and Detonation PDUs per second (default 0)</li>
+ * <li>{@code seed} - random seed (default 1)</li>
+ * <li>{@code duration} - run time in seconds, 0 to run until stopped (default 0)</li>
+ * <li>{@code exercise}, {@code site}, {@code application} - DIS identifiers (default 1)</li>
+ * <li>{@code lat}, {@code lon}, {@code area} - centre of the play box in degrees and its
+ *     width in meters (default 36.6, -121.9, 20000)</li>
+ * </ul>
+ */
+public final class Scenario {
+    /**
+     * How a simulated entity moves.
+     */
+    public enum Movement {
+        STATIC,
+        LINEAR,
+        CIRCLE,
+        RANDOM_WALK;
+
+        static Movement parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private final int entityCount;
+    private final int rate;
+    private final List<Movement> movements;
+    private final double fireRate;
+    private final double detonationRate;
+    private final long seed;
+    private final long durationMillis;
+    private final int exerciseId;
+    private final int site;
+    private final int application;
+    private final double latitude;
+    private final double longitude;
+    private final double areaMeters;
+
+    private Scenario(KeyValues values) {
+        entityCount = values.getInt("entities", 100);
+        rate = values.getInt("rate", 1000);
+        movements = values.get("movement", Scenario::parseMovements, Collections.singletonList(Movement.LINEAR));
+        fireRate = values.getDouble("fire", 0);
+        detonationRate = values.getDouble("detonation", 0);
+        seed = values.getLong("seed", 1);
+        durationMillis = Math.round(values.getDouble("duration", 0) * 1000);
+        exerciseId = values.getInt("exercise", 1);
+        site = values.getInt("site", 1);
+        application = values.getInt("application", 1);
+        latitude = values.getDouble("lat", 36.6);
+        longitude = values.getDouble("lon", -121.9);
+        areaMeters = values.getDouble("area", 20_000);
+    }
+
+    /**
+     * Parse a scenario description.
+     *
+     * @param description Comma-separated {@code key=value} pairs
+     * @return The scenario
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static Scenario parse(String description) {
+        Scenario scenario = new Scenario(KeyValues.parse(description, "scenario", "entities", "rate", "movement",
+            "fire", "detonation", "seed", "duration", "exercise", "site", "application", "lat", "lon", "area"));
+        scenario.validate();
+        return scenario;
+    }
+
+    private static List<Movement> parseMovements(String value) {
+        List<Movement> parsed = new ArrayList<>();
+        for (String name : value.split("\\+")) {
+            parsed.add(Movement.parse(name));
+        }
+        return Collections.unmodifiableList(parsed);
+    }
+
+    private void validate() {
+        if (entityCount < 1 || entityCount > 0xFFFF) {
+            throw new IllegalArgumentException("Entity count must be between 1 and 65535: " + entityCount);
+        }
+        if (rate < 1 || rate > LoadProfile.MAX_RATE) {
+            throw new IllegalArgumentException("Rate must be between 1 and " + LoadProfile.MAX_RATE + " PDUs/second");
+        }
+        if (fireRate < 0 || detonationRate < 0 || fireRate + detonationRate > LoadProfile.MAX_RATE) {
+            throw new IllegalArgumentException("Event rates must be between 0 and " + LoadProfile.MAX_RATE);
+        }
+        if (exerciseId < 0 || exerciseId > 0xFF || site < 0 || site > 0xFFFF
+                || application < 0 || application > 0xFFFF) {
+            throw new IllegalArgumentException("DIS identifiers out of range");
+        }
+        if (areaMeters <= 0 || Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            throw new IllegalArgumentException("Invalid play box");
+        }
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public List<Movement> getMovements() {
+        return movements;
+    }
+
+    public double getFireRate() {
+        return fireRate;
+    }
+
+    public double getDetonationRate() {
+        return detonationRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    public int getApplication() {
+        return application;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getAreaMeters() {
+        return areaMeters;
+    }
+
+    /**
+     * Get the movement model of an entity.
+     *
+     * @param entityIndex The zero-based entity index
+     * @return The movement model
+     */
+    public Movement movementOf(int entityIndex) {
+        return movements.get(entityIndex % movements.size());
+    }
+
+    /**
+     * Get the heartbeat interval of each entity.
+     *
+     * @return The interval in nanoseconds
+     */
+    public long getHeartbeatNanos() {
+        return entityCount * 1_000_000_000L / rate;
+    }
+
+    /**
+     * Get the description in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder movementKeys = new StringBuilder();
+        for (Movement movement : movements) {
+            if (movementKeys.length() > 0) {
+                movementKeys.append('+');
+            }
+            movementKeys.append(movement.key());
+        }
+        return "entities=" + entityCount + ",rate=" + rate + ",movement=" + movementKeys
+            + ",fire=" + fireRate + ",detonation=" + detonationRate + ",seed=" + seed
+            + ",duration=" + durationMillis / 1000.0 + ",exercise=" + exerciseId + ",site=" + site
+            + ",application=" + application + ",lat=" + latitude + ",lon=" + longitude + ",area=" + areaMeters;
+    }
+}
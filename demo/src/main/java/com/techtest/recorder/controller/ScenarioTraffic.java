@@ -0,0 +1,319 @@
+package com.techtest.recorder.controller;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import com.techtest.recorder.controller.Scenario.Movement;
+import com.techtest.recorder.impl.EntityStateEncoder;
+import com.techtest.recorder.impl.PduCodec;
+import com.techtest.recorder.impl.WeaponEventEncoder;
+import com.techtest.recorder.impl.Wgs84;
+import com.techtest.recorder.interfaces.TrafficSource;
+
+/**
+ * Executes a {@link Scenario} as a deterministic stream of PDUs.
+ * <p>
+ * Everything is derived from simulated time and from one random generator per entity seeded
+ * from the scenario seed, never from the wall clock: header timestamps are relative DIS
+ * timestamps of the simulated time, positions are functions of it, and fire and detonation
+ * events are drawn from each entity's own generator. Transcendental functions go through
+ * {@link StrictMath} so results do not depend on the JVM or CPU. The same scenario therefore
+ * yields byte-identical PDUs in the same order on every run.
+ * <p>
+ * Entities heartbeat at staggered, regular intervals; events follow a Poisson process per
+ * entity. A binary heap keyed on each entity's next due time merges them into one stream.
+ * <p>
+ * A scenario can be split into shards that each own every n-th entity. Because every entity
+ * depends only on its own generator, the shards together produce exactly the PDUs of the
+ * unsharded scenario.
+ */
+public final class ScenarioTraffic implements TrafficSource {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double MIN_SPEED = 5;
+    private static final double MAX_SPEED = 250;
+    private static final double MAX_ALTITUDE = 1000;
+    private static final double MAX_DETONATION_OFFSET = 2000;
+    private static final float MUNITION_SPEED = 300;
+    private static final int COUNTRY = 225;
+
+    private final Scenario scenario;
+    private final long heartbeatNanos;
+    private final double halfArea;
+    private final double[] origin;
+    private final double[][] axes;
+    private final EntityStateEncoder entityState = new EntityStateEncoder();
+    private final WeaponEventEncoder fire = WeaponEventEncoder.fire();
+    private final WeaponEventEncoder detonation = WeaponEventEncoder.detonation();
+
+    // Per-entity state, indexed by the entity's position in this shard
+    private final int entityCount;
+    private final int count;
+    private final int[] entityIndex;
+    private final SplittableRandom[] random;
+    private final Movement[] movement;
+    private final double[] east;
+    private final double[] north;
+    private final double[] altitude;
+    private final double[] speed;
+    private final double[] heading;
+    private final double[] radius;
+    private final double[] phase;
+    private final long[] lastUpdate;
+    private final long[] nextHeartbeat;
+    private final long[] nextFire;
+    private final long[] nextDetonation;
+    private final int[] eventNumber;
+
+    // Min-heap of entity indexes ordered by next due time
+    private final int[] heap;
+
+    /**
+     * Create the traffic for a scenario, positioned at simulated time zero.
+     *
+     * @param scenario The scenario to execute
+     */
+    public ScenarioTraffic(Scenario scenario) {
+        this(scenario, 0, 1);
+    }
+
+    /**
+     * Create the traffic for one shard of a scenario, positioned at simulated time zero.
+     *
+     * @param scenario The scenario to execute
+     * @param shard The zero-based shard index
+     * @param shardCount The number of shards; the shard owns entities whose index modulo this equals the shard
+     */
+    public ScenarioTraffic(Scenario scenario, int shard, int shardCount) {
+        if (shard < 0 || shard >= shardCount || shardCount > scenario.getEntityCount()) {
+            throw new IllegalArgumentException("Invalid shard " + shard + " of " + shardCount);
+        }
+        this.scenario = scenario;
+        this.entityCount = scenario.getEntityCount();
+        this.count = (entityCount - shard + shardCount - 1) / shardCount;
+        this.heartbeatNanos = scenario.getHeartbeatNanos();
+        this.halfArea = scenario.getAreaMeters() / 2;
+        this.origin = Wgs84.toGeocentric(scenario.getLatitude(), scenario.getLongitude(), 0);
+        this.axes = Wgs84.localAxes(scenario.getLatitude(), scenario.getLongitude());
+
+        entityIndex = new int[count];
+        random = new SplittableRandom[count];
+        movement = new Movement[count];
+        east = new double[count];
+        north = new double[count];
+        altitude = new double[count];
+        speed = new double[count];
+        heading = new double[count];
+        radius = new double[count];
+        phase = new double[count];
+        lastUpdate = new long[count];
+        nextHeartbeat = new long[count];
+        nextFire = new long[count];
+        nextDetonation = new long[count];
+        eventNumber = new int[count];
+        heap = new int[count];
+
+        double fireRatePerEntity = scenario.getFireRate() / entityCount;
+        double detonationRatePerEntity = scenario.getDetonationRate() / entityCount;
+        for (int i = 0; i < count; i++) {
+            int index = shard + i * shardCount;
+            SplittableRandom r = new SplittableRandom(scenario.getSeed() * 0x9E3779B97F4A7C15L + index);
+            entityIndex[i] = index;
+            random[i] = r;
+            movement[i] = scenario.movementOf(index);
+            east[i] = (r.nextDouble() * 2 - 1) * halfArea;
+            north[i] = (r.nextDouble() * 2 - 1) * halfArea;
+            altitude[i] = movement[i] == Movement.LINEAR || movement[i] == Movement.CIRCLE
+                ? r.nextDouble() * MAX_ALTITUDE : 0;
+            speed[i] = MIN_SPEED + r.nextDouble() * (MAX_SPEED - MIN_SPEED);
+            heading[i] = r.nextDouble() * 2 * Math.PI;
+            radius[i] = 100 + r.nextDouble() * halfArea / 4;
+            phase[i] = r.nextDouble() * 2 * Math.PI;
+            nextHeartbeat[i] = heartbeatNanos * index / entityCount;
+            nextFire[i] = interval(r, fireRatePerEntity);
+            nextDetonation[i] = interval(r, detonationRatePerEntity);
+            heap[i] = i;
+        }
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+
+        entityState.setExerciseId(scenario.getExerciseId());
+        fire.setExerciseId(scenario.getExerciseId());
+        detonation.setExerciseId(scenario.getExerciseId());
+        fire.setMunitionType(2, 9, COUNTRY, 2, 1, 0);
+        detonation.setMunitionType(2, 9, COUNTRY, 2, 1, 0);
+    }
+
+    @Override
+    public long nextDueNanos() {
+        return dueTime(heap[0]);
+    }
+
+    @Override
+    public ByteBuffer next() {
+        int i = heap[0];
+        long time = dueTime(i);
+        ByteBuffer pdu;
+
+        if (time == nextHeartbeat[i]) {
+            pdu = encodeEntityState(i, time);
+            nextHeartbeat[i] += heartbeatNanos;
+        } else if (time == nextFire[i]) {
+            pdu = encodeWeaponEvent(fire, i, time, 0);
+            nextFire[i] += interval(random[i], scenario.getFireRate() / entityCount);
+        } else {
+            pdu = encodeWeaponEvent(detonation, i, time, MAX_DETONATION_OFFSET);
+            nextDetonation[i] += interval(random[i], scenario.getDetonationRate() / entityCount);
+        }
+
+        siftDown(0);
+        return pdu;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    private ByteBuffer encodeEntityState(int i, long time) {
+        double seconds = time / NANOS_PER_SECOND;
+        double velocityEast;
+        double velocityNorth;
+        double e;
+        double n;
+
+        switch (movement[i]) {
+            case LINEAR:
+                velocityEast = speed[i] * StrictMath.sin(heading[i]);
+                velocityNorth = speed[i] * StrictMath.cos(heading[i]);
+                e = wrap(east[i] + velocityEast * seconds);
+                n = wrap(north[i] + velocityNorth * seconds);
+                break;
+            case CIRCLE:
+                double omega = speed[i] / radius[i];
+                double angle = phase[i] + omega * seconds;
+                e = east[i] + radius[i] * StrictMath.cos(angle);
+                n = north[i] + radius[i] * StrictMath.sin(angle);
+                velocityEast = -speed[i] * StrictMath.sin(angle);
+                velocityNorth = speed[i] * StrictMath.cos(angle);
+                heading[i] = StrictMath.atan2(velocityEast, velocityNorth);
+                break;
+            case RANDOM_WALK:
+                double elapsed = (time - lastUpdate[i]) / NANOS_PER_SECOND;
+                heading[i] += (random[i].nextDouble() - 0.5) * 0.6;
+                velocityEast = speed[i] * StrictMath.sin(heading[i]);
+                velocityNorth = speed[i] * StrictMath.cos(heading[i]);
+                east[i] = wrap(east[i] + velocityEast * elapsed);
+                north[i] = wrap(north[i] + velocityNorth * elapsed);
+                lastUpdate[i] = time;
+                e = east[i];
+                n = north[i];
+                break;
+            default:
+                velocityEast = 0;
+                velocityNorth = 0;
+                e = east[i];
+                n = north[i];
+                break;
+        }
+
+        boolean air = movement[i] == Movement.LINEAR || movement[i] == Movement.CIRCLE;
+        entityState.setTimestamp(PduCodec.toDisTimestamp(time, false));
+        entityState.setEntityId(scenario.getSite(), scenario.getApplication(), entityIndex[i] + 1);
+        entityState.setEntityType(1, air ? 2 : 1, COUNTRY, 1, 1, 0);
+        entityState.setLocation(x(e, n, altitude[i]), y(e, n, altitude[i]), z(e, n, altitude[i]));
+        entityState.setVelocity((float) (velocityEast * axes[0][0] + velocityNorth * axes[1][0]),
+            (float) (velocityEast * axes[0][1] + velocityNorth * axes[1][1]),
+            (float) (velocityEast * axes[0][2] + velocityNorth * axes[1][2]));
+        entityState.setOrientation((float) heading[i], 0, 0);
+        return entityState.encode();
+    }
+
+    private ByteBuffer encodeWeaponEvent(WeaponEventEncoder encoder, int i, long time, double maxOffset) {
+        SplittableRandom r = random[i];
+        int self = entityIndex[i];
+        int target = entityCount == 1 ? self : r.nextInt(entityCount - 1);
+        if (entityCount > 1 && target >= self) {
+            target++;
+        }
+        double e = wrap(east[i] + (r.nextDouble() * 2 - 1) * maxOffset);
+        double n = wrap(north[i] + (r.nextDouble() * 2 - 1) * maxOffset);
+        double direction = heading[i];
+        float velocityEast = (float) (MUNITION_SPEED * StrictMath.sin(direction));
+        float velocityNorth = (float) (MUNITION_SPEED * StrictMath.cos(direction));
+
+        int site = scenario.getSite();
+        int application = scenario.getApplication();
+        encoder.setTimestamp(PduCodec.toDisTimestamp(time, false));
+        encoder.setFiringEntityId(site, application, self + 1);
+        encoder.setTargetEntityId(site, application, target + 1);
+        encoder.setMunitionId(site, application, 0);
+        encoder.setEventId(site, application, eventNumber[i]++ & 0xFFFF);
+        encoder.setLocation(x(e, n, altitude[i]), y(e, n, altitude[i]), z(e, n, altitude[i]));
+        encoder.setVelocity((float) (velocityEast * axes[0][0] + velocityNorth * axes[1][0]),
+            (float) (velocityEast * axes[0][1] + velocityNorth * axes[1][1]),
+            (float) (velocityEast * axes[0][2] + velocityNorth * axes[1][2]));
+        return encoder.encode();
+    }
+
+    private double x(double e, double n, double u) {
+        return origin[0] + e * axes[0][0] + n * axes[1][0] + u * axes[2][0];
+    }
+
+    private double y(double e, double n, double u) {
+        return origin[1] + e * axes[0][1] + n * axes[1][1] + u * axes[2][1];
+    }
+
+    private double z(double e, double n, double u) {
+        return origin[2] + e * axes[0][2] + n * axes[1][2] + u * axes[2][2];
+    }
+
+    /**
+     * Fold a local coordinate back into the play box.
+     */
+    private double wrap(double value) {
+        double width = 2 * halfArea;
+        return value - width * Math.floor((value + halfArea) / width);
+    }
+
+    /**
+     * Draw the time to the next event of a Poisson process.
+     *
+     * @return The interval in nanoseconds, or Long.MAX_VALUE if the rate is zero
+     */
+    private static long interval(SplittableRandom r, double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            return Long.MAX_VALUE;
+        }
+        double seconds = -StrictMath.log(1 - r.nextDouble()) / ratePerSecond;
+        return Math.max(1, (long) (seconds * NANOS_PER_SECOND));
+    }
+
+    private long dueTime(int i) {
+        return Math.min(nextHeartbeat[i], Math.min(nextFire[i], nextDetonation[i]));
+    }
+
+    private boolean before(int a, int b) {
+        long dueA = dueTime(a);
+        long dueB = dueTime(b);
+        return dueA < dueB || (dueA == dueB && a < b);
+    }
+
+    private void siftDown(int position) {
+        int entity = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], entity)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = entity;
+    }
+}
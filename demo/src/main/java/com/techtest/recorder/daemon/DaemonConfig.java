@@ -0,0 +1,490 @@
+package com.techtest.recorder.daemon;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import com.techtest.recorder.impl.FsyncPolicy;
+import com.techtest.recorder.impl.HeaderRewrite;
+import com.techtest.recorder.impl.ReplayFilter;
+import com.techtest.recorder.impl.ReplayLoop;
+import com.techtest.recorder.impl.MulticastPduReplayer.TimeSource;
+import com.techtest.recorder.impl.RetentionPolicy;
+
+/**
+ * Settings of a {@link RecorderDaemon}, read from a Java properties file.
+ * <p>
+ * Sizes accept the suffixes {@code k}, {@code m} and {@code g} (powers of 1024, an optional
+ * trailing {@code b} is ignored). Durations accept {@code ms}, {@code s}, {@code m}, {@code h}
+ * and {@code d}; a plain number is milliseconds. Keys that are left out take their default,
+ * and unknown keys are rejected so typos do not go unnoticed.
+ * <p>
+ * Supported keys:
+ * <ul>
+ * <li>{@code multicast.group}, {@code multicast.port} - the DIS traffic to record
+ *     (default 239.1.2.3, 3000)</li>
+ * <li>{@code multicast.interface} - network interface to join the group on (default: system choice)</li>
+ * <li>{@code receive.buffer} - socket receive buffer to request (default 0, the system default)</li>
+ * <li>{@code receive.datagram} - largest datagram accepted (default 8k)</li>
+ * <li>{@code receive.cpus} - CPU list to pin the receive thread to, as accepted by
+ *     {@code taskset}, e.g. {@code 2} or {@code 2-3} (default: not pinned)</li>
+ * <li>{@code storage.type} - memory, offheap, file or tiered (default file)</li>
+ * <li>{@code storage.directory} - directory of file and tiered storage (default recordings)</li>
+ * <li>{@code storage.fsync} - {@code default}, {@code records:N}, {@code interval:DURATION} or
+ *     {@code group:BATCH:DURATION} (default: the file storage default)</li>
+ * <li>{@code storage.hot-tier} - memory budget of tiered storage (default 512m)</li>
+ * <li>{@code retention.max-age}, {@code retention.max-bytes} - delete idle exercises whose
+ *     last PDU is older, and the oldest idle exercises while all together are larger
+ *     (default: unlimited)</li>
+ * <li>{@code analyzers} - comma-separated analyzers to attach: statistics, loss (default none)</li>
+ * <li>{@code exercise.prefix} - prefix of the generated exercise IDs (default exercise)</li>
+ * <li>{@code exercise.rotate} - start a new exercise at every multiple of this interval,
+ *     0 to never rotate (default 0)</li>
+ * <li>{@code replay.timing} - pace replays on the {@code receive} time or the {@code dis} header
+ *     timestamp (default receive)</li>
+ * <li>{@code replay.rewrite} - how replayed PDUs are rewritten, as accepted by
+ *     {@link HeaderRewrite#parse(String)}, e.g. {@code exercise=7,timestamps=now} (default none)</li>
+ * <li>{@code replay.filter} - which PDUs are replayed, as accepted by
+ *     {@link ReplayFilter#parse(String)}, e.g. {@code entities=1:1:5} (default none)</li>
+ * <li>{@code replay.loop} - how often replays go through the exercise, as accepted by
+ *     {@link ReplayLoop#parse(String)}, e.g. {@code count=0,entity-offset=1000} (default once)</li>
+ * <li>{@code replay.destinations} - comma-separated {@code host:port} multicast groups and unicast
+ *     targets every replayed PDU is sent to (default: the multicast group and port)</li>
+ * <li>{@code http.host}, {@code http.port} - control and metrics endpoint, port 0 to disable
+ *     (default 127.0.0.1, 8080)</li>
+ * <li>{@code http.token} - value POST requests must send in the {@code X-Recorder-Token} header;
+ *     empty to accept any value (default empty). pcap files are imported from and exported to
+ *     the storage directory</li>
+ * </ul>
+ */
+public final class DaemonConfig {
+    private String multicastGroup = "239.1.2.3";
+    private int multicastPort = 3000;
+    private String networkInterface;
+    private int receiveBufferBytes;
+    private int datagramBufferBytes = 8192;
+    private String receiveCpus;
+    private String storageType = "file";
+    private String storageDirectory = "recordings";
+    private FsyncPolicy fsyncPolicy;
+    private long hotTierBytes = 512L * 1024 * 1024;
+    private long retentionMaxAgeMillis = Long.MAX_VALUE;
+    private long retentionMaxBytes = Long.MAX_VALUE;
+    private List<String> analyzers = Collections.emptyList();
+    private String exercisePrefix = "exercise";
+    private long rotateMillis;
+    private TimeSource replayTimeSource = TimeSource.RECEIVE_TIME;
+    private HeaderRewrite replayRewrite = HeaderRewrite.none();
+    private ReplayFilter replayFilter = ReplayFilter.none();
+    private ReplayLoop replayLoop = ReplayLoop.once();
+    private List<InetSocketAddress> replayDestinations = Collections.emptyList();
+    private String httpHost = "127.0.0.1";
+    private int httpPort = 8080;
+    private String httpToken = "";
+
+    private DaemonConfig() {
+    }
+
+    /**
+     * Get a configuration with every key at its default.
+     *
+     * @return The configuration
+     */
+    public static DaemonConfig defaults() {
+        return new DaemonConfig();
+    }
+
+    /**
+     * Read a configuration file.
+     *
+     * @param file The properties file
+     * @return The configuration
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static DaemonConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return from(properties);
+    }
+
+    /**
+     * Build a configuration from properties.
+     *
+     * @param properties The settings
+     * @return The configuration
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static DaemonConfig from(Properties properties) {
+        DaemonConfig config = new DaemonConfig();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            try {
+                config.set(key.trim().toLowerCase(Locale.ROOT), value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+            }
+        }
+        config.validate();
+        return config;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "multicast.group":
+                multicastGroup = value;
+                break;
+            case "multicast.port":
+                multicastPort = Integer.parseInt(value);
+                break;
+            case "multicast.interface":
+                networkInterface = value.isEmpty() ? null : value;
+                break;
+            case "receive.buffer":
+                receiveBufferBytes = Math.toIntExact(parseSize(value));
+                break;
+            case "receive.datagram":
+                datagramBufferBytes = Math.toIntExact(parseSize(value));
+                break;
+            case "receive.cpus":
+                receiveCpus = value.isEmpty() ? null : value;
+                break;
+            case "storage.type":
+                storageType = value.toLowerCase(Locale.ROOT);
+                break;
+            case "storage.directory":
+                storageDirectory = value;
+                break;
+            case "storage.fsync":
+                fsyncPolicy = parseFsync(value);
+                break;
+            case "storage.hot-tier":
+                hotTierBytes = parseSize(value);
+                break;
+            case "retention.max-age":
+                retentionMaxAgeMillis = value.isEmpty() ? Long.MAX_VALUE : parseDuration(value);
+                break;
+            case "retention.max-bytes":
+                retentionMaxBytes = value.isEmpty() ? Long.MAX_VALUE : parseSize(value);
+                break;
+            case "analyzers":
+                List<String> names = new ArrayList<>();
+                for (String name : value.split(",")) {
+                    if (!name.isBlank()) {
+                        names.add(name.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+                analyzers = Collections.unmodifiableList(names);
+                break;
+            case "exercise.prefix":
+                exercisePrefix = value;
+                break;
+            case "exercise.rotate":
+                rotateMillis = parseDuration(value);
+                break;
+            case "replay.timing":
+                replayTimeSource = parseTimeSource(value);
+                break;
+            case "replay.rewrite":
+                replayRewrite = value.isEmpty() ? HeaderRewrite.none() : HeaderRewrite.parse(value);
+                break;
+            case "replay.filter":
+                replayFilter = value.isEmpty() ? ReplayFilter.none() : ReplayFilter.parse(value);
+                break;
+            case "replay.loop":
+                replayLoop = value.isEmpty() ? ReplayLoop.once() : ReplayLoop.parse(value);
+                break;
+            case "replay.destinations":
+                List<InetSocketAddress> addresses = new ArrayList<>();
+                for (String address : value.split(",")) {
+                    if (!address.isBlank()) {
+                        addresses.add(parseDestination(address.trim()));
+                    }
+                }
+                replayDestinations = Collections.unmodifiableList(addresses);
+                break;
+            case "http.host":
+                httpHost = value;
+                break;
+            case "http.port":
+                httpPort = Integer.parseInt(value);
+                break;
+            case "http.token":
+                httpToken = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown configuration key: " + key);
+        }
+    }
+
+    private void validate() {
+        if (multicastPort < 1 || multicastPort > 0xFFFF || httpPort < 0 || httpPort > 0xFFFF) {
+            throw new IllegalArgumentException("Ports must be between 1 and 65535");
+        }
+        if (receiveBufferBytes < 0 || datagramBufferBytes < 12 || datagramBufferBytes > 65535) {
+            throw new IllegalArgumentException("Receive datagram size must be between 12 and 65535 bytes");
+        }
+        if (!storageType.matches("memory|offheap|file|tiered")) {
+            throw new IllegalArgumentException("Unknown storage type: " + storageType);
+        }
+        if (hotTierBytes <= 0 || retentionMaxAgeMillis <= 0 || retentionMaxBytes <= 0 || rotateMillis < 0) {
+            throw new IllegalArgumentException("Sizes and durations must be positive");
+        }
+        if (!exercisePrefix.matches("[A-Za-z0-9_.-]+")) {
+            throw new IllegalArgumentException("Exercise prefix may only contain letters, digits, '_', '.' and '-'");
+        }
+    }
+
+    /**
+     * Parse a size such as {@code 8m} or {@code 512MB}.
+     *
+     * @param value The size
+     * @return The size in bytes
+     */
+    static long parseSize(String value) {
+        String number = value.toLowerCase(Locale.ROOT);
+        if (number.endsWith("b")) {
+            number = number.substring(0, number.length() - 1);
+        }
+        long multiplier = 1;
+        if (number.endsWith("k")) {
+            multiplier = 1024;
+        } else if (number.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        } else if (number.endsWith("g")) {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if (multiplier > 1) {
+            number = number.substring(0, number.length() - 1);
+        }
+        return Math.multiplyExact(Long.parseLong(number.trim()), multiplier);
+    }
+
+    /**
+     * Parse a duration such as {@code 50ms}, {@code 30s} or {@code 1h}.
+     *
+     * @param value The duration
+     * @return The duration in milliseconds
+     */
+    static long parseDuration(String value) {
+        String number = value.toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        if (number.endsWith("ms")) {
+            number = number.substring(0, number.length() - 2);
+        } else if (number.endsWith("s")) {
+            multiplier = 1000;
+        } else if (number.endsWith("m")) {
+            multiplier = 60_000;
+        } else if (number.endsWith("h")) {
+            multiplier = 3_600_000;
+        } else if (number.endsWith("d")) {
+            multiplier = 86_400_000;
+        }
+        if (multiplier > 1) {
+            number = number.substring(0, number.length() - 1);
+        }
+        return Math.multiplyExact(Long.parseLong(number.trim()), multiplier);
+    }
+
+    private static FsyncPolicy parseFsync(String value) {
+        String[] parts = value.toLowerCase(Locale.ROOT).split(":");
+        switch (parts[0]) {
+            case "default":
+                if (parts.length == 1) {
+                    return null;
+                }
+                break;
+            case "records":
+                if (parts.length == 2) {
+                    return FsyncPolicy.everyRecords(Integer.parseInt(parts[1]));
+                }
+                break;
+            case "interval":
+                if (parts.length == 2) {
+                    return FsyncPolicy.interval(parseDuration(parts[1]));
+                }
+                break;
+            case "group":
+                if (parts.length == 3) {
+                    return FsyncPolicy.groupCommit(Integer.parseInt(parts[1]), parseDuration(parts[2]));
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Expected default, records:N, interval:DURATION or "
+            + "group:BATCH:DURATION for storage.fsync: " + value);
+    }
+
+    private static TimeSource parseTimeSource(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "receive":
+                return TimeSource.RECEIVE_TIME;
+            case "dis":
+                return TimeSource.DIS_TIMESTAMP;
+            default:
+                throw new IllegalArgumentException("Expected receive or dis for replay.timing: " + value);
+        }
+    }
+
+    /**
+     * Parse a {@code host:port} destination; IPv6 hosts are written in brackets.
+     * The host is resolved when a replay starts.
+     */
+    private static InetSocketAddress parseDestination(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port for replay.destinations: " + value);
+        }
+        String host = value.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int destinationPort = Integer.parseInt(value.substring(colon + 1));
+        if (destinationPort < 1 || destinationPort > 0xFFFF) {
+            throw new IllegalArgumentException("Port must be between 1 and 65535 in replay.destinations: " + value);
+        }
+        return InetSocketAddress.createUnresolved(host, destinationPort);
+    }
+
+    public String getMulticastGroup() {
+        return multicastGroup;
+    }
+
+    public int getMulticastPort() {
+        return multicastPort;
+    }
+
+    /**
+     * Get the network interface to join the multicast group on.
+     *
+     * @return The interface name, or null for the system default
+     */
+    public String getNetworkInterface() {
+        return networkInterface;
+    }
+
+    public int getReceiveBufferBytes() {
+        return receiveBufferBytes;
+    }
+
+    public int getDatagramBufferBytes() {
+        return datagramBufferBytes;
+    }
+
+    /**
+     * Get the CPUs the receive thread is pinned to.
+     *
+     * @return The CPU list in {@code taskset} syntax, or null if the thread is not pinned
+     */
+    public String getReceiveCpus() {
+        return receiveCpus;
+    }
+
+    public String getStorageType() {
+        return storageType;
+    }
+
+    public String getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * Get the fsync policy of file storage.
+     *
+     * @return The policy, or null for the storage's default
+     */
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getHotTierBytes() {
+        return hotTierBytes;
+    }
+
+    /**
+     * Get the retention limits.
+     *
+     * @return The policy, unlimited if neither limit is set
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        if (retentionMaxAgeMillis == Long.MAX_VALUE && retentionMaxBytes == Long.MAX_VALUE) {
+            return RetentionPolicy.unlimited();
+        }
+        return RetentionPolicy.of(retentionMaxAgeMillis, retentionMaxBytes);
+    }
+
+    public List<String> getAnalyzers() {
+        return analyzers;
+    }
+
+    public String getExercisePrefix() {
+        return exercisePrefix;
+    }
+
+    /**
+     * Get the exercise rotation interval.
+     *
+     * @return The interval in milliseconds, or 0 if exercises are not rotated
+     */
+    public long getRotateMillis() {
+        return rotateMillis;
+    }
+
+    public TimeSource getReplayTimeSource() {
+        return replayTimeSource;
+    }
+
+    public HeaderRewrite getReplayRewrite() {
+        return replayRewrite;
+    }
+
+    public ReplayFilter getReplayFilter() {
+        return replayFilter;
+    }
+
+    public ReplayLoop getReplayLoop() {
+        return replayLoop;
+    }
+
+    /**
+     * Get the destinations replayed PDUs are sent to.
+     *
+     * @return The destinations, or an empty list for the multicast group and port
+     */
+    public List<InetSocketAddress> getReplayDestinations() {
+        return replayDestinations;
+    }
+
+    public String getHttpHost() {
+        return httpHost;
+    }
+
+    /**
+     * Get the port of the HTTP endpoint.
+     *
+     * @return The port, or 0 if the endpoint is disabled
+     */
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * Get the token POST requests to the HTTP endpoint must send.
+     *
+     * @return The token, or an empty string to accept any value
+     */
+    public String getHttpToken() {
+        return httpToken;
+    }
+}
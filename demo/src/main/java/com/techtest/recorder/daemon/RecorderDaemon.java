@@ -0,0 +1,357 @@
+package com.techtest.recorder.daemon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.controller.RecorderController;
+import com.techtest.recorder.controller.RecorderHttpServer;
+import com.techtest.recorder.impl.FilePduStorage;
+import com.techtest.recorder.impl.LossAnalyzer;
+import com.techtest.recorder.impl.MemoryPduStorage;
+import com.techtest.recorder.impl.MulticastPduRecorder;
+import com.techtest.recorder.impl.MulticastPduReplayer;
+import com.techtest.recorder.impl.OffHeapPduStorage;
+import com.techtest.recorder.impl.RetentionPolicy;
+import com.techtest.recorder.impl.StatisticsAnalyzer;
+import com.techtest.recorder.impl.TieredPduStorage;
+import com.techtest.recorder.interfaces.PduAnalyzer;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.metrics.Counter;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.metrics.MetricsRegistry;
+import com.techtest.recorder.model.ExerciseSummary;
+
+/**
+ * Headless recorder for servers and containers: no console and no desktop classes, configured
+ * entirely by a {@link DaemonConfig} file and controlled over the HTTP endpoint.
+ * <p>
+ * The daemon starts recording as soon as it boots, into an exercise named after the configured
+ * prefix and the UTC start time. If rotation is configured, recording moves to a new exercise at
+ * every multiple of the rotation interval without closing the socket. Retention limits are
+ * enforced by the storage for tiered storage and by the daemon for the other storage types.
+ * On SIGTERM or SIGINT the daemon stops recording and replay, flushes the storage and closes it.
+ * <p>
+ * Usage: {@code java -cp dis-demo.jar com.techtest.recorder.daemon.RecorderDaemon [recorder.properties]}
+ */
+public class RecorderDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(RecorderDaemon.class);
+    private static final DateTimeFormatter EXERCISE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+        .withZone(ZoneOffset.UTC);
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 10_000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final DaemonConfig config;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private PduStorage storage;
+    private RecorderController controller;
+    private RecorderHttpServer httpServer;
+    private ScheduledExecutorService scheduler;
+    private List<PduAnalyzer> analyzers;
+    private long pinnedThreadId = -1;
+    private boolean running;
+
+    /**
+     * Create a new RecorderDaemon.
+     *
+     * @param config The daemon settings
+     */
+    public RecorderDaemon(DaemonConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Open the storage, start recording and start the HTTP endpoint and the rotation,
+     * retention and pinning schedule.
+     */
+    public synchronized void start() {
+        if (running) {
+            logger.warn("Recorder daemon already running");
+            return;
+        }
+        MetricsRegistry metrics = new MetricsRegistry();
+        analyzers = new ArrayList<>();
+        for (String name : config.getAnalyzers()) {
+            analyzers.add(createAnalyzer(name, metrics));
+        }
+        storage = createStorage();
+        MulticastPduRecorder recorder = new MulticastPduRecorder(storage, config.getMulticastGroup(),
+            config.getMulticastPort(), metrics);
+        recorder.setReceiveBufferSize(config.getReceiveBufferBytes());
+        recorder.setDatagramBufferSize(config.getDatagramBufferBytes());
+        recorder.setNetworkInterface(config.getNetworkInterface());
+        MulticastPduReplayer replayer = new MulticastPduReplayer(storage, config.getMulticastGroup(),
+            config.getMulticastPort(), metrics);
+        replayer.setDestinations(config.getReplayDestinations());
+        replayer.setTimeSource(config.getReplayTimeSource());
+        replayer.setHeaderRewrite(config.getReplayRewrite());
+        replayer.setFilter(config.getReplayFilter());
+        replayer.setLoop(config.getReplayLoop());
+        Counter replayPasses = metrics.counter("replay_passes_total");
+        Counter replayPdus = metrics.counter("replay_pdus_sent_total");
+        Histogram replayLateness = metrics.histogram("replay_pass_max_lateness_nanos");
+        replayer.setLoopListener(stats -> {
+            replayPasses.increment();
+            replayPdus.add(stats.getPdus());
+            replayLateness.record(stats.getMaxLatenessNanos());
+        });
+        controller = new RecorderController(storage, recorder, replayer);
+        analyzers.forEach(controller::addAnalyzer);
+
+        if (!controller.startRecording(nextExerciseId())) {
+            closeAnalyzers();
+            closeStorage();
+            throw new IllegalStateException("Failed to start recording on "
+                + config.getMulticastGroup() + ":" + config.getMulticastPort());
+        }
+        if (config.getHttpPort() > 0) {
+            httpServer = new RecorderHttpServer(controller, config.getHttpHost(), config.getHttpPort());
+            httpServer.setToken(config.getHttpToken());
+            httpServer.setFileDirectory(Paths.get(config.getStorageDirectory()));
+            httpServer.start();
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recorder-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long rotateMillis = config.getRotateMillis();
+        if (rotateMillis > 0) {
+            long delay = rotateMillis - System.currentTimeMillis() % rotateMillis;
+            scheduler.scheduleAtFixedRate(this::rotate, delay, rotateMillis, TimeUnit.MILLISECONDS);
+        }
+        // The first run waits briefly so the receive thread has started and can be found for pinning
+        scheduler.scheduleWithFixedDelay(this::maintain, 1000, MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        running = true;
+        logger.info("Recorder daemon started: {} storage, rotation {}, retention {}", config.getStorageType(),
+            rotateMillis > 0 ? "every " + rotateMillis + " ms" : "off", config.getRetentionPolicy());
+    }
+
+    /**
+     * Stop recording and replay, flush and close the storage and stop the HTTP endpoint.
+     * Called from the shutdown hook, so it must not depend on other shutdown hooks.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (httpServer != null) {
+            httpServer.stop();
+            httpServer = null;
+        }
+        if (controller.isReplaying()) {
+            controller.stopReplay();
+        }
+        if (controller.isRecording()) {
+            controller.stopRecording();
+        }
+        closeAnalyzers();
+        closeStorage();
+        logger.info("Recorder daemon stopped");
+        stopped.countDown();
+    }
+
+    /**
+     * Wait until the daemon has been stopped.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    public RecorderController getController() {
+        return controller;
+    }
+
+    private PduStorage createStorage() {
+        Path directory = Paths.get(config.getStorageDirectory());
+        try {
+            switch (config.getStorageType()) {
+                case "memory":
+                    return new MemoryPduStorage();
+                case "offheap":
+                    return new OffHeapPduStorage();
+                case "file":
+                    return openFileStorage(directory);
+                case "tiered":
+                    return new TieredPduStorage(new MemoryPduStorage(), openFileStorage(directory),
+                        config.getHotTierBytes(), config.getRetentionPolicy());
+                default:
+                    throw new IllegalArgumentException("Unknown storage type: " + config.getStorageType());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open storage in " + directory, e);
+        }
+    }
+
+    private FilePduStorage openFileStorage(Path directory) throws IOException {
+        return config.getFsyncPolicy() != null
+            ? new FilePduStorage(directory, config.getFsyncPolicy())
+            : new FilePduStorage(directory);
+    }
+
+    private PduAnalyzer createAnalyzer(String name, MetricsRegistry metrics) {
+        switch (name) {
+            case "statistics":
+                return new StatisticsAnalyzer();
+            case "loss":
+                return new LossAnalyzer(metrics, config.getMulticastPort());
+            default:
+                throw new IllegalArgumentException("Unknown analyzer: " + name);
+        }
+    }
+
+    private void closeAnalyzers() {
+        for (PduAnalyzer analyzer : analyzers) {
+            if (analyzer instanceof Closeable) {
+                try {
+                    ((Closeable) analyzer).close();
+                } catch (IOException e) {
+                    logger.warn("Error closing analyzer {}: {}", analyzer.getName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void closeStorage() {
+        try {
+            storage.flush();
+            if (storage instanceof Closeable) {
+                ((Closeable) storage).close();
+            }
+        } catch (Exception e) {
+            logger.error("Error closing storage: {}", e.getMessage(), e);
+        }
+    }
+
+    private String nextExerciseId() {
+        return config.getExercisePrefix() + "-" + EXERCISE_TIME.format(Instant.now());
+    }
+
+    /**
+     * Move the recording to a new exercise. A recording stopped over the HTTP endpoint stays stopped.
+     */
+    private void rotate() {
+        try {
+            if (controller.isRecording()) {
+                controller.rotateRecording(nextExerciseId());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to rotate exercise: {}", e.getMessage(), e);
+        }
+    }
+
+    private void maintain() {
+        try {
+            if (config.getReceiveCpus() != null) {
+                pinReceiveThread();
+            }
+            if (!(storage instanceof TieredPduStorage)) {
+                enforceRetention();
+            }
+        } catch (Exception e) {
+            logger.error("Daemon maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pin the receive thread, again whenever recording was restarted on a new thread.
+     */
+    private void pinReceiveThread() {
+        long threadId = ThreadAffinity.findThreadId(MulticastPduRecorder.RECEIVE_THREAD_NAME);
+        if (threadId < 0 || threadId == pinnedThreadId) {
+            return;
+        }
+        pinnedThreadId = threadId;
+        if (ThreadAffinity.pin(threadId, config.getReceiveCpus())) {
+            logger.info("Pinned receive thread {} to CPUs {}", threadId, config.getReceiveCpus());
+        }
+    }
+
+    /**
+     * Delete idle exercises past the maximum age, then the oldest idle exercises while all
+     * exercises together exceed the size limit. The exercises being recorded and replayed are kept.
+     */
+    private void enforceRetention() {
+        RetentionPolicy policy = config.getRetentionPolicy();
+        if (policy == RetentionPolicy.unlimited()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long totalBytes = 0;
+        List<ExerciseSummary> idle = new ArrayList<>();
+        for (ExerciseSummary summary : controller.getExerciseSummaries()) {
+            totalBytes += summary.getByteSize();
+            String exerciseId = summary.getExerciseId();
+            if (!Objects.equals(exerciseId, controller.getCurrentRecordingExerciseId())
+                    && !Objects.equals(exerciseId, controller.getCurrentReplayExerciseId())) {
+                idle.add(summary);
+            }
+        }
+        idle.sort(Comparator.comparingLong(ExerciseSummary::getEndTime));
+        for (ExerciseSummary summary : idle) {
+            boolean expired = now - summary.getEndTime() > policy.getMaxAgeMillis();
+            if (!expired && totalBytes <= policy.getMaxBytes()) {
+                break;
+            }
+            if (controller.clearExercise(summary.getExerciseId())) {
+                totalBytes -= summary.getByteSize();
+                logger.info("Retention deleted exercise {} ({} bytes, {})", summary.getExerciseId(),
+                    summary.getByteSize(), expired ? "expired" : "over size limit");
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: RecorderDaemon [config.properties]");
+            System.exit(2);
+        }
+        DaemonConfig config;
+        try {
+            config = args.length == 1 ? DaemonConfig.load(Paths.get(args[0])) : DaemonConfig.defaults();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid configuration: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        RecorderDaemon daemon = new RecorderDaemon(config);
+        try {
+            daemon.start();
+        } catch (RuntimeException e) {
+            logger.error("Recorder daemon failed to start: {}", e.getMessage(), e);
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "recorder-daemon-shutdown"));
+        try {
+            daemon.awaitStop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.techtest.recorder.daemon;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Best-effort CPU pinning of named threads on Linux.
+ * <p>
+ * The JDK has no affinity API, so the native thread is found by its name in
+ * {@code /proc/self/task/<tid>/comm} and pinned with the {@code taskset} utility.
+ * The JVM passes thread names to the kernel truncated to 15 characters.
+ */
+final class ThreadAffinity {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadAffinity.class);
+    private static final Path TASKS = Paths.get("/proc/self/task");
+    private static final long TASKSET_TIMEOUT_SECONDS = 5;
+
+    private ThreadAffinity() {
+    }
+
+    /**
+     * Find the kernel thread ID of a thread of this process.
+     *
+     * @param threadName The Java thread name
+     * @return The thread ID, or -1 if no thread has the name or /proc is unavailable
+     */
+    static long findThreadId(String threadName) {
+        String comm = threadName.length() > 15 ? threadName.substring(0, 15) : threadName;
+        try (Stream<Path> tasks = Files.list(TASKS)) {
+            return tasks
+                .filter(task -> comm.equals(readComm(task)))
+                .mapToLong(task -> Long.parseLong(task.getFileName().toString()))
+                .findFirst()
+                .orElse(-1);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Pin a thread to a set of CPUs.
+     *
+     * @param threadId The kernel thread ID
+     * @param cpus The CPU list in {@code taskset} syntax, e.g. {@code 2} or {@code 2-3}
+     * @return true if the thread was pinned, false otherwise
+     */
+    static boolean pin(long threadId, String cpus) {
+        ProcessBuilder builder = new ProcessBuilder("taskset", "-p", "-c", cpus, Long.toString(threadId))
+            .redirectErrorStream(true);
+        try {
+            Process process = builder.start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (!process.waitFor(TASKSET_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                logger.warn("taskset did not finish pinning thread {}", threadId);
+                return false;
+            }
+            if (process.exitValue() != 0) {
+                logger.warn("Failed to pin thread {} to CPUs {}: {}", threadId, cpus, output);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("Cannot pin thread {}: taskset is not available ({})", threadId, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String readComm(Path task) {
+        try {
+            return new String(Files.readAllBytes(task.resolve("comm")), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -1,26 +1,40 @@
 package com.techtest.recorder.examples;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
+import com.techtest.recorder.controller.LoadGenerator;
+import com.techtest.recorder.controller.LoadProfile;
 import com.techtest.recorder.controller.PduSender;
+import com.techtest.recorder.controller.RecorderHttpServer;
+import com.techtest.recorder.controller.Scenario;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.techtest.recorder.interfaces.PduAnalyzer;
+import com.techtest.recorder.impl.LossAnalyzer;
 import com.techtest.recorder.impl.StatisticsAnalyzer;
 import com.techtest.recorder.controller.RecorderController;
 import com.techtest.recorder.factory.RecorderFactory;
+import com.techtest.recorder.model.ExerciseSummary;
 
 /**
  * Demo application for DIS PDU recording and replay.
  */
 public class DisRecorderDemo {
     private static final Logger logger = LoggerFactory.getLogger(DisRecorderDemo.class);
+    private static final int DEFAULT_PORT = 3000;
     
     private final RecorderController controller;
+    private final int port;
     private final Scanner scanner;
     private PduSender sender;
+    private LoadGenerator loadGenerator;
+    private RecorderHttpServer httpServer;
+    private LossAnalyzer lossAnalyzer;
     
     /**
      * Create a new DisRecorderDemo with default components.
@@ -28,6 +42,7 @@ public class DisRecorderDemo {
     public DisRecorderDemo() {
         // Use the factory to create the controller with default components
         controller = RecorderFactory.createDefaultController();
+        port = DEFAULT_PORT;
         scanner = new Scanner(System.in);
     }
     
@@ -40,6 +55,7 @@ public class DisRecorderDemo {
     public DisRecorderDemo(String multicastGroup, int port) {
         // Use the factory to create the controller with custom network settings
         controller = RecorderFactory.createCustomNetworkController(multicastGroup, port);
+        this.port = port;
         scanner = new Scanner(System.in);
     }
     
@@ -81,9 +97,21 @@ public class DisRecorderDemo {
                     case "clear":
                         handleClear(parts);
                         break;
+                    case "import-pcap":
+                        handleImportPcap(parts);
+                        break;
+                    case "export-pcap":
+                        handleExportPcap(parts);
+                        break;
                     case "status":
                         handleStatus();
                         break;
+                    case "metrics":
+                        handleMetrics();
+                        break;
+                    case "loss":
+                        handleLoss();
+                        break;
                     case "add-analyzer":
                         handleAddAnalyzer(parts);
                         break;
@@ -96,6 +124,21 @@ public class DisRecorderDemo {
                     case "stop-sender":
                         handleStopSender();
                         break;
+                    case "start-load":
+                        handleStartLoad(parts);
+                        break;
+                    case "start-scenario":
+                        handleStartScenario(parts);
+                        break;
+                    case "stop-load":
+                        handleStopLoad();
+                        break;
+                    case "start-http":
+                        handleStartHttp(parts);
+                        break;
+                    case "stop-http":
+                        handleStopHttp();
+                        break;
                     case "help":
                         printHelp();
                         break;
@@ -126,6 +169,18 @@ public class DisRecorderDemo {
             sender.stop();
         }
         
+        if (loadGenerator != null && loadGenerator.isRunning()) {
+            loadGenerator.stop();
+        }
+        
+        if (httpServer != null) {
+            httpServer.stop();
+        }
+        
+        if (lossAnalyzer != null) {
+            lossAnalyzer.close();
+        }
+        
         scanner.close();
         System.out.println("Exiting...");
     }
@@ -143,11 +198,22 @@ public class DisRecorderDemo {
         System.out.println("  stop-replay                - Stop replaying PDUs");
         System.out.println("  list                       - List all available exercises");
         System.out.println("  clear <exercise-id>        - Clear all PDUs for the specified exercise");
+        System.out.println("  import-pcap <file> <exercise-id> - Import DIS PDUs from a pcap file");
+        System.out.println("  export-pcap <exercise-id> <file> - Export an exercise to a pcap file");
         System.out.println("  status                     - Show current recording/replay status");
-        System.out.println("  add-analyzer <type>        - Add an analyzer (types: statistics)");
-        System.out.println("  remove-analyzer <type>     - Remove an analyzer (types: statistics)");
+        System.out.println("  metrics                    - Show recorder metrics");
+        System.out.println("  loss                       - Show estimated PDU loss per sender (needs the loss analyzer)");
+        System.out.println("  add-analyzer <type>        - Add an analyzer (types: statistics, loss)");
+        System.out.println("  remove-analyzer <type>     - Remove an analyzer (types: statistics, loss)");
         System.out.println("  start-sender [<rate>]      - Start sending test PDUs (default rate: 1 PDU/sec)");
         System.out.println("  stop-sender                - Stop sending test PDUs");
+        System.out.println("  start-load [-t <threads>] <entities> <rate> [<seconds> [<burst-rate> <burst-ms> <period-ms>]]");
+        System.out.println("                             - Generate high-rate load from simulated entities");
+        System.out.println("  start-scenario [-t <threads>] <key=value,...> - Send a deterministic scenario, e.g.");
+        System.out.println("                               entities=500,rate=5000,movement=linear+circle,fire=20,seed=7");
+        System.out.println("  stop-load                  - Stop the load generator");
+        System.out.println("  start-http [<port>]        - Serve metrics and controls over HTTP on localhost (default port: 8080)");
+        System.out.println("  stop-http                  - Stop the HTTP server");
         System.out.println("  help                       - Show this help information");
         System.out.println("  exit                       - Exit the application");
         System.out.println();
@@ -239,14 +305,14 @@ public class DisRecorderDemo {
      * Handle the 'list' command.
      */
     private void handleList() {
-        List<String> exerciseIds = controller.getExerciseIds();
+        List<ExerciseSummary> summaries = controller.getExerciseSummaries();
         
-        if (exerciseIds.isEmpty()) {
+        if (summaries.isEmpty()) {
             System.out.println("No exercises available");
         } else {
             System.out.println("Available exercises:");
-            for (String exerciseId : exerciseIds) {
-                System.out.println("  " + exerciseId);
+            for (ExerciseSummary summary : summaries) {
+                System.out.println("  " + summary);
             }
         }
     }
@@ -273,6 +339,72 @@ public class DisRecorderDemo {
         }
     }
     
+    /**
+     * Handle the 'import-pcap' command.
+     * 
+     * @param parts Command parts
+     */
+    private void handleImportPcap(String[] parts) {
+        if (parts.length < 3) {
+            System.out.println("Error: Missing file or exercise ID");
+            System.out.println("Usage: import-pcap <file> <exercise-id>");
+            return;
+        }
+        
+        boolean success = controller.importPcap(parts[1], parts[2]);
+        
+        if (success) {
+            System.out.println("Imported " + parts[1] + " into exercise: " + parts[2]);
+        } else {
+            System.out.println("Failed to import pcap file");
+        }
+    }
+    
+    /**
+     * Handle the 'export-pcap' command.
+     * 
+     * @param parts Command parts
+     */
+    private void handleExportPcap(String[] parts) {
+        if (parts.length < 3) {
+            System.out.println("Error: Missing exercise ID or file");
+            System.out.println("Usage: export-pcap <exercise-id> <file>");
+            return;
+        }
+        
+        boolean success = controller.exportPcap(parts[1], parts[2]);
+        
+        if (success) {
+            System.out.println("Exported exercise " + parts[1] + " to " + parts[2]);
+        } else {
+            System.out.println("Failed to export pcap file");
+        }
+    }
+    
+    /**
+     * Handle the 'metrics' command.
+     */
+    private void handleMetrics() {
+        controller.getMetricsSnapshot().forEach((key, value) -> System.out.println("  " + key + " " + value));
+    }
+    
+    /**
+     * Handle the 'loss' command.
+     */
+    private void handleLoss() {
+        if (lossAnalyzer == null) {
+            System.out.println("Loss analyzer not added; use: add-analyzer loss");
+            return;
+        }
+        
+        System.out.println("Estimated missed updates: " + lossAnalyzer.getEstimatedMissed());
+        System.out.println("Recorder socket drops: " + lossAnalyzer.getSocketDrops());
+        System.out.println("UDP receive buffer errors (host): " + lossAnalyzer.getReceiveBufferErrors());
+        for (LossAnalyzer.SenderLoss sender : lossAnalyzer.getSenders()) {
+            System.out.println("  " + sender);
+        }
+    }
+    
     /**
      * Handle the 'status' command.
      */
@@ -299,6 +431,14 @@ public class DisRecorderDemo {
         } else {
             System.out.println("  PDU Sender: Stopped");
         }
+        
+        if (loadGenerator != null) {
+            System.out.println("  Load Generator: " + (loadGenerator.isRunning() ? "Running" : "Stopped"));
+            System.out.println("  Load: " + loadGenerator.getSummary());
+            for (LoadGenerator.Shard shard : loadGenerator.getShards()) {
+                System.out.println("    " + shard);
+            }
+        }
     }
     
     /**
@@ -310,7 +450,7 @@ public class DisRecorderDemo {
         if (parts.length < 2) {
             System.out.println("Error: Missing analyzer type");
             System.out.println("Usage: add-analyzer <analyzer-type>");
-            System.out.println("Available analyzer types: statistics");
+            System.out.println("Available analyzer types: statistics, loss");
             return;
         }
         
@@ -321,9 +461,17 @@ public class DisRecorderDemo {
             case "statistics":
                 analyzer = new StatisticsAnalyzer();
                 break;
+            case "loss":
+                if (lossAnalyzer != null) {
+                    System.out.println("Loss analyzer already added");
+                    return;
+                }
+                lossAnalyzer = new LossAnalyzer(controller.getMetrics(), port);
+                analyzer = lossAnalyzer;
+                break;
             default:
                 System.out.println("Error: Unknown analyzer type: " + analyzerType);
-                System.out.println("Available analyzer types: statistics");
+                System.out.println("Available analyzer types: statistics, loss");
                 return;
         }
         
@@ -345,7 +493,7 @@ public class DisRecorderDemo {
         if (parts.length < 2) {
             System.out.println("Error: Missing analyzer type");
             System.out.println("Usage: remove-analyzer <analyzer-type>");
-            System.out.println("Available analyzer types: statistics");
+            System.out.println("Available analyzer types: statistics, loss");
             return;
         }
         
@@ -356,13 +504,20 @@ public class DisRecorderDemo {
             case "statistics":
                 analyzer = new StatisticsAnalyzer();
                 break;
+            case "loss":
+                analyzer = lossAnalyzer;
+                lossAnalyzer = null;
+                break;
             default:
                 System.out.println("Error: Unknown analyzer type: " + analyzerType);
-                System.out.println("Available analyzer types: statistics");
+                System.out.println("Available analyzer types: statistics, loss");
                 return;
         }
         
         boolean success = controller.removeAnalyzer(analyzer);
+        if (analyzer instanceof LossAnalyzer) {
+            ((LossAnalyzer) analyzer).close();
+        }
         
         if (success) {
             System.out.println("Removed analyzer: " + analyzer.getName());
@@ -425,6 +580,184 @@ public class DisRecorderDemo {
         }
     }
     
+    /**
+     * Handle the 'start-load' command.
+     * 
+     * @param parts Command parts
+     */
+    private void handleStartLoad(String[] parts) {
+        String usage = "Usage: start-load [-t <threads>] <entities> <rate> "
+            + "[<seconds> [<burst-rate> <burst-ms> <period-ms>]]";
+        int threads = threadsOption(parts);
+        if (threads < 1) {
+            System.out.println("Error: Invalid thread count");
+            System.out.println(usage);
+            return;
+        }
+        parts = withoutThreadsOption(parts);
+        if (parts.length != 3 && parts.length != 4 && parts.length != 7) {
+            System.out.println("Error: Wrong number of arguments");
+            System.out.println(usage);
+            return;
+        }
+        
+        if (loadGenerator != null && loadGenerator.isRunning()) {
+            System.out.println("Load generator is already running");
+            return;
+        }
+        
+        LoadProfile profile;
+        try {
+            profile = LoadProfile.steady(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            if (parts.length >= 4) {
+                profile = profile.withDuration(Long.parseLong(parts[3]) * 1000);
+            }
+            if (parts.length == 7) {
+                profile = profile.withBurst(Integer.parseInt(parts[4]), Long.parseLong(parts[5]),
+                    Long.parseLong(parts[6]));
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            System.out.println(usage);
+            return;
+        }
+        
+        try {
+            loadGenerator = new LoadGenerator("239.1.2.3", 3000, profile, threads);
+            loadGenerator.start();
+            System.out.println("Started load generator on " + threads + " threads: " + profile);
+        } catch (Exception e) {
+            System.out.println("Failed to start load generator: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Handle the 'start-scenario' command.
+     * 
+     * @param parts Command parts
+     */
+    private void handleStartScenario(String[] parts) {
+        int threads = threadsOption(parts);
+        parts = withoutThreadsOption(parts);
+        if (parts.length < 2 || threads < 1) {
+            System.out.println("Error: Missing scenario description or invalid thread count");
+            System.out.println("Usage: start-scenario [-t <threads>] <key=value,...>");
+            return;
+        }
+        
+        if (loadGenerator != null && loadGenerator.isRunning()) {
+            System.out.println("Load generator is already running");
+            return;
+        }
+        
+        Scenario scenario;
+        try {
+            scenario = Scenario.parse(String.join(",", Arrays.copyOfRange(parts, 1, parts.length)));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            loadGenerator = new LoadGenerator("239.1.2.3", 3000, scenario, threads);
+            loadGenerator.start();
+            System.out.println("Started scenario on " + threads + " threads: " + scenario);
+        } catch (Exception e) {
+            System.out.println("Failed to start scenario: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get the value of a '-t &lt;threads&gt;' option.
+     * 
+     * @param parts Command parts
+     * @return The thread count, 1 if the option is absent, or 0 if it is invalid
+     */
+    private int threadsOption(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].equals("-t")) {
+                try {
+                    return i + 1 < parts.length ? Integer.parseInt(parts[i + 1]) : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+    
+    /**
+     * Remove a '-t &lt;threads&gt;' option from the command parts.
+     * 
+     * @param parts Command parts
+     * @return The remaining parts
+     */
+    private String[] withoutThreadsOption(String[] parts) {
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i].equals("-t")) {
+                i++;
+            } else {
+                remaining.add(parts[i]);
+            }
+        }
+        return remaining.toArray(new String[0]);
+    }
+    
+    /**
+     * Handle the 'stop-load' command.
+     */
+    private void handleStopLoad() {
+        if (loadGenerator == null || !loadGenerator.isRunning()) {
+            System.out.println("Load generator is not running");
+            return;
+        }
+        
+        loadGenerator.stop();
+        System.out.println("Stopped load generator: " + loadGenerator.getSummary());
+    }
+    
+    /**
+     * Handle the 'start-http' command.
+     * 
+     * @param parts Command parts
+     */
+    private void handleStartHttp(String[] parts) {
+        if (httpServer != null && httpServer.isRunning()) {
+            System.out.println("HTTP server already running on port " + httpServer.getPort());
+            return;
+        }
+        
+        int port = 8080;
+        if (parts.length >= 2) {
+            try {
+                port = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Error: Invalid port");
+                System.out.println("Usage: start-http [<port>]");
+                return;
+            }
+        }
+        
+        httpServer = new RecorderHttpServer(controller, port);
+        httpServer.setFileDirectory(Paths.get("").toAbsolutePath());
+        httpServer.start();
+        System.out.println("Serving http://127.0.0.1:" + httpServer.getPort() + "/metrics");
+    }
+    
+    /**
+     * Handle the 'stop-http' command.
+     */
+    private void handleStopHttp() {
+        if (httpServer == null || !httpServer.isRunning()) {
+            System.out.println("HTTP server is not running");
+            return;
+        }
+        
+        httpServer.stop();
+        System.out.println("Stopped HTTP server");
+    }
+    
     /**
      * Main entry point.
      * 
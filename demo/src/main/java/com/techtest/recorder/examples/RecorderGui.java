@@ -33,7 +33,9 @@ import org.slf4j.LoggerFactory;
 import com.techtest.recorder.impl.StatisticsAnalyzer;
 import com.techtest.recorder.controller.RecorderController;
 import com.techtest.recorder.factory.RecorderFactory;
+import com.techtest.recorder.controller.LoadProfile;
 import com.techtest.recorder.controller.PduSender;
+import com.techtest.recorder.model.ExerciseSummary;
 
 /**
  * A Swing GUI for the DIS PDU recorder and replayer.
@@ -57,8 +59,8 @@ public class RecorderGui extends JFrame {
     private JButton addAnalyzerButton;
     private JButton removeAnalyzerButton;
     private JComboBox<String> analyzerComboBox;
-    private JList<String> exerciseList;
-    private DefaultListModel<String> exerciseListModel;
+    private JList<ExerciseSummary> exerciseList;
+    private DefaultListModel<ExerciseSummary> exerciseListModel;
     private JTextArea statusArea;
     
     // State tracking
@@ -161,7 +163,7 @@ public class RecorderGui extends JFrame {
         // Sender rate spinner
         JPanel senderRatePanel = new JPanel(new BorderLayout());
         senderRatePanel.add(new JLabel("PDUs per second:"), BorderLayout.WEST);
-        senderRateSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 100, 1));
+        senderRateSpinner = new JSpinner(new SpinnerNumberModel(1, 1, LoadProfile.MAX_RATE, 1));
         senderRatePanel.add(senderRateSpinner, BorderLayout.CENTER);
         senderPanel.add(senderRatePanel);
         
@@ -505,15 +507,15 @@ public class RecorderGui extends JFrame {
      * Refresh the exercise list.
      */
     private void refreshExerciseList() {
-        List<String> exerciseIds = controller.getExerciseIds();
+        List<ExerciseSummary> summaries = controller.getExerciseSummaries();
         
         exerciseListModel.clear();
-        for (String exerciseId : exerciseIds) {
-            exerciseListModel.addElement(exerciseId);
+        for (ExerciseSummary summary : summaries) {
+            exerciseListModel.addElement(summary);
         }
         
         updateStatus("Refreshed exercise list");
-        logger.info("Refreshed exercise list, found {} exercises", exerciseIds.size());
+        logger.info("Refreshed exercise list, found {} exercises", summaries.size());
     }
     
     /**
@@ -522,7 +524,8 @@ public class RecorderGui extends JFrame {
      * @return The selected exercise ID, or null if none selected
      */
     private String getSelectedExercise() {
-        return exerciseList.getSelectedValue();
+        ExerciseSummary summary = exerciseList.getSelectedValue();
+        return summary != null ? summary.getExerciseId() : null;
     }
     
     /**
@@ -1,11 +1,18 @@
 package com.techtest.recorder.factory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 import com.techtest.recorder.controller.RecorderController;
+import com.techtest.recorder.impl.FilePduStorage;
 import com.techtest.recorder.impl.MulticastPduRecorder;
 import com.techtest.recorder.interfaces.PduRecorder;
 import com.techtest.recorder.impl.MulticastPduReplayer;
 import com.techtest.recorder.interfaces.PduReplayer;
 import com.techtest.recorder.impl.MemoryPduStorage;
+import com.techtest.recorder.impl.OffHeapPduStorage;
+import com.techtest.recorder.impl.RetentionPolicy;
+import com.techtest.recorder.impl.TieredPduStorage;
 import com.techtest.recorder.interfaces.PduStorage;
 
 /**
@@ -14,6 +21,8 @@ import com.techtest.recorder.interfaces.PduStorage;
  * storage, recorder, and replayer implementations.
  */
 public class RecorderFactory {
+    private static final String DEFAULT_FILE_STORAGE_DIRECTORY = "recordings";
+    private static final long DEFAULT_HOT_TIER_BYTES = 512L * 1024 * 1024;
     
     /**
      * Create a recorder controller with default components.
@@ -69,10 +78,22 @@ public class RecorderFactory {
         switch (storageType.toLowerCase()) {
             case "memory":
                 return new MemoryPduStorage();
+            case "offheap":
+                return new OffHeapPduStorage();
             case "file":
-                // Example of how a file-based storage could be created
-                // return new FilePduStorage("/path/to/storage");
-                throw new UnsupportedOperationException("File storage not implemented");
+                try {
+                    return new FilePduStorage(Paths.get(DEFAULT_FILE_STORAGE_DIRECTORY));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to open file storage", e);
+                }
+            case "tiered":
+                try {
+                    return new TieredPduStorage(new MemoryPduStorage(),
+                        new FilePduStorage(Paths.get(DEFAULT_FILE_STORAGE_DIRECTORY)),
+                        DEFAULT_HOT_TIER_BYTES, RetentionPolicy.unlimited());
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to open file storage", e);
+                }
             case "database":
                 // Example of how a database storage could be created
                 // return new DatabasePduStorage("jdbc:mysql://localhost:3306/dis_recorder");
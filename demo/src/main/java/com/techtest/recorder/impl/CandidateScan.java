@@ -0,0 +1,61 @@
+package com.techtest.recorder.impl;
+
+import com.techtest.recorder.model.PduQuery;
+
+/**
+ * Walks the candidates of a query through an {@link ExerciseIndex} a window of records at a
+ * time, for cursors that stream a large exercise, or follow one that is still being recorded,
+ * without materializing every candidate up front.
+ */
+final class CandidateScan {
+    private static final int WINDOW_RECORDS = 64 * ExerciseIndex.SEGMENT_SIZE;
+    private static final int[] EMPTY = new int[0];
+
+    private final ExerciseIndex index;
+    private final PduQuery query;
+    private int[] batch = EMPTY;
+    private int batchPosition;
+    private int scanned;
+
+    /**
+     * Create a new CandidateScan.
+     *
+     * @param index The index of the exercise
+     * @param query The query to find candidates for
+     */
+    CandidateScan(ExerciseIndex index, PduQuery query) {
+        this(index, query, 0);
+    }
+
+    /**
+     * Create a new CandidateScan that starts part way through the exercise.
+     *
+     * @param index The index of the exercise
+     * @param query The query to find candidates for
+     * @param from The first ordinal to consider
+     */
+    CandidateScan(ExerciseIndex index, PduQuery query, int from) {
+        this.index = index;
+        this.query = query;
+        this.scanned = from;
+    }
+
+    /**
+     * Get the next candidate ordinal.
+     *
+     * @param size The number of records published so far; only ordinals below it are returned
+     * @return The ordinal, or -1 if there is no candidate among the published records
+     */
+    int next(int size) {
+        while (batchPosition == batch.length) {
+            if (scanned >= size) {
+                return -1;
+            }
+            int limit = (int) Math.min(size, (long) scanned + WINDOW_RECORDS);
+            batch = index.candidates(query, scanned, limit);
+            batchPosition = 0;
+            scanned = limit;
+        }
+        return batch[batchPosition++];
+    }
+}
@@ -0,0 +1,256 @@
+package com.techtest.recorder.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Reconstructs when PDUs were sent from their DIS header timestamps, so that an exercise whose
+ * receive times were distorted, for example by an overloaded recorder that read a backlog of
+ * queued datagrams at once, replays with the timing of the original simulation.
+ * <p>
+ * Every sender, the site and application of a PDU's originating entity, has its own clock.
+ * Its timestamps are unwrapped across the hour and mapped onto the recorder's receive clock by
+ * an offset estimated as the smallest difference between receive time and timestamp seen so
+ * far: queuing only ever delays a PDU, so the least delayed one bounds the clock offset plus
+ * the network delay. The estimate may rise slowly to follow clock drift. Absolute timestamps
+ * are placed in the hour of their receive time, so their offset is the sender's clock error
+ * plus the delay; relative timestamps have an arbitrary origin. PDUs without an originating
+ * entity or with a zero timestamp keep their receive time.
+ * <p>
+ * PDUs are read ahead into a reorder buffer covering {@link #REORDER_WINDOW_NANOS} of receive
+ * time, which bounds both the memory used and the receive delay that is undone. A PDU's time is
+ * only fixed when it leaves the buffer, so the offset used has already seen the PDUs received
+ * in the window after it, and an exercise that starts with a bunch is scheduled correctly.
+ * Senders are scheduled independently, so PDUs can leave in a different order than they
+ * were received.
+ */
+final class DisTimestampSchedule {
+    private static final Logger logger = LoggerFactory.getLogger(DisTimestampSchedule.class);
+    /** Largest receive delay that is undone; PDUs delayed longer may be sent late. */
+    static final long REORDER_WINDOW_NANOS = 2_000_000_000L;
+    /** Clock drift the offset estimate follows, as a fraction of elapsed sender time. */
+    private static final double MAX_DRIFT = 1e-4;
+    private static final long HALF_HOUR_NANOS = PduCodec.NANOS_PER_HOUR / 2;
+
+    private final PduCursor cursor;
+    private final Map<Integer, SenderClock> senders = new HashMap<>();
+    /** PDUs without a usable timestamp, scheduled at their receive time. */
+    private final SenderClock unclocked = new SenderClock(0, false);
+    private final List<SenderClock> clocks = new ArrayList<>();
+    private int buffered;
+    private long lastReceiveNanos = Long.MIN_VALUE;
+    private boolean exhausted;
+    private long scheduledNanos;
+
+    /**
+     * Create a new DisTimestampSchedule.
+     *
+     * @param cursor The cursor to read PDUs from, in receive order
+     */
+    DisTimestampSchedule(PduCursor cursor) {
+        this.cursor = cursor;
+        clocks.add(unclocked);
+    }
+
+    /**
+     * Check if more PDUs are buffered or can be read.
+     *
+     * @return true if {@link #next()} returns a PDU
+     */
+    boolean hasNext() {
+        fill();
+        return buffered > 0;
+    }
+
+    /**
+     * Get the PDU scheduled next.
+     *
+     * @return The PDU, or null if there are no more
+     */
+    RecordedPdu next() {
+        fill();
+        SenderClock earliest = earliest();
+        if (earliest == null) {
+            return null;
+        }
+        Pending next = earliest.pending.poll();
+        buffered--;
+        scheduledNanos = earliest.scheduledNanos(next);
+        earliest.maxCorrectionNanos = Math.max(earliest.maxCorrectionNanos, next.receiveNanos - scheduledNanos);
+        return next.pdu;
+    }
+
+    /**
+     * Get when the PDU last returned by {@link #next()} was sent, on the receive clock.
+     *
+     * @return The reconstructed send time in nanoseconds since the epoch
+     */
+    long getScheduledNanos() {
+        return scheduledNanos;
+    }
+
+    /**
+     * Log the clock estimated for every sender.
+     *
+     * @param exerciseId The exercise being replayed
+     */
+    void logSenders(String exerciseId) {
+        List<SenderClock> sorted = new ArrayList<>(senders.values());
+        sorted.sort(Comparator.comparingInt(clock -> clock.key));
+        for (SenderClock clock : sorted) {
+            if (clock.absolute) {
+                logger.info("Exercise {} sender {}:{}: absolute clock, {} PDUs, offset {} ms, receive delay undone up to {} ms",
+                    exerciseId, clock.key >>> 16, clock.key & 0xFFFF, clock.pdus, clock.offsetNanos / 1e6,
+                    clock.maxCorrectionNanos / 1e6);
+            } else {
+                logger.info("Exercise {} sender {}:{}: relative clock, {} PDUs, receive delay undone up to {} ms",
+                    exerciseId, clock.key >>> 16, clock.key & 0xFFFF, clock.pdus, clock.maxCorrectionNanos / 1e6);
+            }
+        }
+        if (unclocked.pdus > 0) {
+            logger.info("Exercise {}: {} PDUs without a sender timestamp replayed at their receive time",
+                exerciseId, unclocked.pdus);
+        }
+    }
+
+    /**
+     * Read ahead until the buffer covers the reorder window past the earliest buffered PDU.
+     */
+    private void fill() {
+        while (!exhausted) {
+            SenderClock earliest = earliest();
+            if (earliest != null
+                    && lastReceiveNanos - earliest.scheduledNanos(earliest.pending.peek()) >= REORDER_WINDOW_NANOS) {
+                return;
+            }
+            RecordedPdu pdu = cursor.hasNext() ? cursor.next() : null;
+            if (pdu == null) {
+                exhausted = true;
+                return;
+            }
+            long receiveNanos = pdu.getTimestampNanos();
+            lastReceiveNanos = Math.max(lastReceiveNanos, receiveNanos);
+            add(pdu, receiveNanos);
+        }
+    }
+
+    private void add(RecordedPdu pdu, long receiveNanos) {
+        byte[] data = PduCodec.toBytes(pdu);
+        List<EntityKey> entities = data != null && data.length >= PduCodec.HEADER_SIZE
+            ? PduCodec.entitiesOf(data) : List.of();
+        int timestamp = entities.isEmpty() ? 0 : PduCodec.disTimestamp(data);
+        if (timestamp == 0) {
+            unclocked.pdus++;
+            unclocked.pending.add(new Pending(pdu, receiveNanos, receiveNanos));
+        } else {
+            EntityKey origin = entities.get(0);
+            SenderClock clock = senders.computeIfAbsent((origin.getSite() << 16) | origin.getApplication(), key -> {
+                SenderClock created = new SenderClock(key, true);
+                clocks.add(created);
+                return created;
+            });
+            clock.pending.add(new Pending(pdu, receiveNanos, clock.unwrap(timestamp, receiveNanos)));
+        }
+        buffered++;
+    }
+
+    /**
+     * Find the sender whose next buffered PDU is scheduled first.
+     *
+     * @return The sender, or null if nothing is buffered
+     */
+    private SenderClock earliest() {
+        SenderClock earliest = null;
+        long earliestNanos = Long.MAX_VALUE;
+        for (SenderClock clock : clocks) {
+            Pending head = clock.pending.peek();
+            if (head != null && clock.scheduledNanos(head) < earliestNanos) {
+                earliest = clock;
+                earliestNanos = clock.scheduledNanos(head);
+            }
+        }
+        return earliest;
+    }
+
+    private static final class Pending {
+        private final RecordedPdu pdu;
+        private final long receiveNanos;
+        /** The sender's time, unwrapped, or the receive time for PDUs without one. */
+        private final long senderNanos;
+
+        Pending(RecordedPdu pdu, long receiveNanos, long senderNanos) {
+            this.pdu = pdu;
+            this.receiveNanos = receiveNanos;
+            this.senderNanos = senderNanos;
+        }
+    }
+
+    /**
+     * The clock of one sender, unwrapped and mapped onto the receive clock, with the sender's
+     * buffered PDUs in receive order.
+     */
+    private static final class SenderClock {
+        private final int key;
+        private final boolean timestamped;
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+        private boolean absolute;
+        private long pdus;
+        private long lastPastHourNanos;
+        private long unwrappedNanos;
+        private long offsetNanos;
+        private long maxCorrectionNanos;
+
+        SenderClock(int key, boolean timestamped) {
+            this.key = key;
+            this.timestamped = timestamped;
+        }
+
+        /**
+         * Unwrap a timestamp and refine the offset estimate with it.
+         *
+         * @return The sender's time in nanoseconds
+         */
+        long unwrap(int timestamp, long receiveNanos) {
+            long pastHourNanos = PduCodec.fromDisTimestamp(timestamp);
+            if (pdus == 0) {
+                absolute = PduCodec.isAbsoluteTimestamp(timestamp);
+                // Absolute timestamps are placed in the hour nearest their receive time
+                unwrappedNanos = absolute
+                    ? receiveNanos - Math.floorMod(receiveNanos - pastHourNanos + HALF_HOUR_NANOS,
+                        PduCodec.NANOS_PER_HOUR) + HALF_HOUR_NANOS
+                    : pastHourNanos;
+                offsetNanos = receiveNanos - unwrappedNanos;
+            } else {
+                long elapsed = pastHourNanos - lastPastHourNanos;
+                if (elapsed < -HALF_HOUR_NANOS) {
+                    elapsed += PduCodec.NANOS_PER_HOUR;
+                } else if (elapsed > HALF_HOUR_NANOS) {
+                    elapsed -= PduCodec.NANOS_PER_HOUR;
+                }
+                unwrappedNanos += elapsed;
+                if (elapsed > 0) {
+                    offsetNanos += (long) (elapsed * MAX_DRIFT);
+                }
+                offsetNanos = Math.min(offsetNanos, receiveNanos - unwrappedNanos);
+            }
+            lastPastHourNanos = pastHourNanos;
+            pdus++;
+            return unwrappedNanos;
+        }
+
+        long scheduledNanos(Pending pdu) {
+            return timestamped ? pdu.senderNanos + offsetNanos : pdu.senderNanos;
+        }
+    }
+}
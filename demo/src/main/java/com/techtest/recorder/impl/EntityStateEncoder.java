@@ -0,0 +1,139 @@
+package com.techtest.recorder.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Entity State PDUs straight into a reusable direct buffer.
+ * <p>
+ * The buffer holds a complete 144-byte PDU. Fields that never change are written once when
+ * the encoder is created, and each setter patches its field in place, so encoding a PDU
+ * allocates nothing. Senders keep one encoder per thread, update the fields that changed
+ * and pass {@link #encode()} to a {@link java.nio.channels.DatagramChannel}.
+ * <p>
+ * The layout follows IEEE 1278.1 Entity State PDU with no articulation parameters.
+ */
+public final class EntityStateEncoder {
+    /** Size of an Entity State PDU without articulation parameters. */
+    public static final int LENGTH = 144;
+
+    private static final int PROTOCOL_VERSION = 6;
+    private static final int PROTOCOL_FAMILY_ENTITY_INFORMATION = 1;
+    private static final int EXERCISE_ID_OFFSET = 1;
+    private static final int TIMESTAMP_OFFSET = 4;
+    private static final int ENTITY_ID_OFFSET = 12;
+    private static final int FORCE_ID_OFFSET = 18;
+    private static final int ENTITY_TYPE_OFFSET = 20;
+    private static final int VELOCITY_OFFSET = 36;
+    private static final int LOCATION_OFFSET = 48;
+    private static final int ORIENTATION_OFFSET = 72;
+    private static final int APPEARANCE_OFFSET = 84;
+    private static final int DEAD_RECKONING_OFFSET = 88;
+    private static final int MARKING_OFFSET = 128;
+    private static final int MARKING_LENGTH = 11;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(LENGTH);
+
+    /**
+     * Create a new EntityStateEncoder with every variable field zeroed.
+     */
+    public EntityStateEncoder() {
+        buffer.put(0, (byte) PROTOCOL_VERSION);
+        buffer.put(2, (byte) PduCodec.PDU_TYPE_ENTITY_STATE);
+        buffer.put(3, (byte) PROTOCOL_FAMILY_ENTITY_INFORMATION);
+        buffer.putShort(8, (short) LENGTH);
+        buffer.put(MARKING_OFFSET, (byte) 1); // ASCII character set
+    }
+
+    public void setExerciseId(int exerciseId) {
+        buffer.put(EXERCISE_ID_OFFSET, (byte) exerciseId);
+    }
+
+    /**
+     * Set the header timestamp.
+     *
+     * @param timestamp The DIS timestamp, in units of 2^-31 hours with the absolute flag in bit 0
+     */
+    public void setTimestamp(int timestamp) {
+        buffer.putInt(TIMESTAMP_OFFSET, timestamp);
+    }
+
+    public void setEntityId(int site, int application, int entity) {
+        buffer.putShort(ENTITY_ID_OFFSET, (short) site);
+        buffer.putShort(ENTITY_ID_OFFSET + 2, (short) application);
+        buffer.putShort(ENTITY_ID_OFFSET + 4, (short) entity);
+    }
+
+    public void setForceId(int forceId) {
+        buffer.put(FORCE_ID_OFFSET, (byte) forceId);
+    }
+
+    /**
+     * Set the entity type.
+     *
+     * @param kind The entity kind
+     * @param domain The domain
+     * @param country The country code
+     * @param category The category
+     * @param subcategory The subcategory
+     * @param specific The specific type
+     */
+    public void setEntityType(int kind, int domain, int country, int category, int subcategory, int specific) {
+        buffer.put(ENTITY_TYPE_OFFSET, (byte) kind);
+        buffer.put(ENTITY_TYPE_OFFSET + 1, (byte) domain);
+        buffer.putShort(ENTITY_TYPE_OFFSET + 2, (short) country);
+        buffer.put(ENTITY_TYPE_OFFSET + 4, (byte) category);
+        buffer.put(ENTITY_TYPE_OFFSET + 5, (byte) subcategory);
+        buffer.put(ENTITY_TYPE_OFFSET + 6, (byte) specific);
+    }
+
+    public void setVelocity(float x, float y, float z) {
+        buffer.putFloat(VELOCITY_OFFSET, x);
+        buffer.putFloat(VELOCITY_OFFSET + 4, y);
+        buffer.putFloat(VELOCITY_OFFSET + 8, z);
+    }
+
+    public void setLocation(double x, double y, double z) {
+        buffer.putDouble(LOCATION_OFFSET, x);
+        buffer.putDouble(LOCATION_OFFSET + 8, y);
+        buffer.putDouble(LOCATION_OFFSET + 16, z);
+    }
+
+    public void setOrientation(float psi, float theta, float phi) {
+        buffer.putFloat(ORIENTATION_OFFSET, psi);
+        buffer.putFloat(ORIENTATION_OFFSET + 4, theta);
+        buffer.putFloat(ORIENTATION_OFFSET + 8, phi);
+    }
+
+    public void setAppearance(int appearance) {
+        buffer.putInt(APPEARANCE_OFFSET, appearance);
+    }
+
+    public void setDeadReckoningAlgorithm(int algorithm) {
+        buffer.put(DEAD_RECKONING_OFFSET, (byte) algorithm);
+    }
+
+    /**
+     * Set the entity marking. This allocates, so it is meant to be called once per entity type
+     * rather than per PDU.
+     *
+     * @param marking The marking text; characters beyond eleven are dropped
+     */
+    public void setMarking(String marking) {
+        byte[] text = marking.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < MARKING_LENGTH; i++) {
+            buffer.put(MARKING_OFFSET + 1 + i, i < text.length ? text[i] : 0);
+        }
+    }
+
+    /**
+     * Get the encoded PDU.
+     *
+     * @return The encoder's buffer, positioned at the start of the PDU with the limit at its end;
+     *         it is overwritten by the next setter call
+     */
+    public ByteBuffer encode() {
+        buffer.clear();
+        return buffer;
+    }
+}
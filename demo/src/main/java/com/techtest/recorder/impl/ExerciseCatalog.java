@@ -0,0 +1,280 @@
+package com.techtest.recorder.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.ExerciseSummary;
+
+/**
+ * Per-exercise summary counters, updated as PDUs are stored so that listing exercises
+ * with their details never has to read the PDUs themselves.
+ * <p>
+ * The catalog can be saved to and loaded from a small text file, one line per exercise.
+ * Distinct entities are tracked exactly while an exercise is being written; after a reload
+ * only their count is known until the exercise is rebuilt with {@link #reset(String)}.
+ */
+public class ExerciseCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseCatalog.class);
+    private static final String FILE_HEADER = "# exercise catalog v1";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Account for a stored PDU.
+     *
+     * @param exerciseId The exercise ID
+     * @param timestamp The PDU timestamp
+     * @param pduType The PDU type
+     * @param bytes The PDU size in bytes
+     * @param entities The entities the PDU refers to
+     */
+    public void record(String exerciseId, long timestamp, int pduType, int bytes, List<EntityKey> entities) {
+        Entry entry = entries.get(exerciseId);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(exerciseId, k -> new Entry());
+        }
+        entry.record(timestamp, pduType, bytes, entities);
+    }
+
+    /**
+     * Get the summary of an exercise.
+     *
+     * @param exerciseId The exercise ID
+     * @return The summary, or null if the exercise is not in the catalog
+     */
+    public ExerciseSummary getSummary(String exerciseId) {
+        Entry entry = entries.get(exerciseId);
+        return entry == null ? null : entry.toSummary(exerciseId);
+    }
+
+    /**
+     * Get the summaries of all exercises.
+     *
+     * @return List of summaries
+     */
+    public List<ExerciseSummary> getSummaries() {
+        List<ExerciseSummary> summaries = new ArrayList<>(entries.size());
+        entries.forEach((exerciseId, entry) -> summaries.add(entry.toSummary(exerciseId)));
+        return summaries;
+    }
+
+    /**
+     * Remove an exercise from the catalog.
+     *
+     * @param exerciseId The exercise ID
+     */
+    public void remove(String exerciseId) {
+        entries.remove(exerciseId);
+    }
+
+    /**
+     * Clear the counters of an exercise so it can be rebuilt from its PDUs.
+     *
+     * @param exerciseId The exercise ID
+     */
+    public void reset(String exerciseId) {
+        entries.put(exerciseId, new Entry());
+    }
+
+    /**
+     * Take over the counters of an exercise from another catalog, for an exercise that was
+     * rebuilt into a new log. Records added to either catalog afterwards update the same counters.
+     *
+     * @param exerciseId The exercise ID
+     * @param source The catalog the exercise was rebuilt with
+     */
+    public void adopt(String exerciseId, ExerciseCatalog source) {
+        Entry entry = source.entries.get(exerciseId);
+        if (entry != null) {
+            entries.put(exerciseId, entry);
+        }
+    }
+
+    /**
+     * Write the catalog to a file, replacing it atomically.
+     *
+     * @param file The catalog file
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(FILE_HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writer.write(e.getValue().toLine(URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8)));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replace the catalog contents with those of a saved file.
+     * Malformed lines are skipped.
+     *
+     * @param file The catalog file
+     * @throws IOException If the file cannot be read
+     */
+    public void load(Path file) throws IOException {
+        entries.clear();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split("\t", -1);
+                    entries.put(URLDecoder.decode(fields[0], StandardCharsets.UTF_8), Entry.fromFields(fields));
+                } catch (RuntimeException e) {
+                    logger.warn("Skipping malformed catalog line in {}: {}", file, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Counters for one exercise.
+     */
+    private static final class Entry {
+        private long startTime = Long.MAX_VALUE;
+        private long endTime = Long.MIN_VALUE;
+        private long pduCount;
+        private long byteSize;
+        private final long[] typeCounts = new long[256];
+        private final LongHashSet entities = new LongHashSet();
+        private int loadedEntityCount;
+
+        synchronized void record(long timestamp, int pduType, int bytes, List<EntityKey> entityKeys) {
+            if (timestamp < startTime) {
+                startTime = timestamp;
+            }
+            if (timestamp > endTime) {
+                endTime = timestamp;
+            }
+            pduCount++;
+            byteSize += bytes;
+            typeCounts[pduType & 0xFF]++;
+            for (EntityKey entity : entityKeys) {
+                entities.add(entity.pack());
+            }
+        }
+
+        synchronized ExerciseSummary toSummary(String exerciseId) {
+            Map<Integer, Long> byType = new HashMap<>();
+            for (int type = 0; type < typeCounts.length; type++) {
+                if (typeCounts[type] != 0) {
+                    byType.put(type, typeCounts[type]);
+                }
+            }
+            boolean empty = pduCount == 0;
+            return new ExerciseSummary(exerciseId, empty ? 0 : startTime, empty ? 0 : endTime, pduCount, byteSize,
+                Math.max(entities.size(), loadedEntityCount), byType);
+        }
+
+        synchronized String toLine(String encodedId) {
+            StringBuilder types = new StringBuilder();
+            for (int type = 0; type < typeCounts.length; type++) {
+                if (typeCounts[type] != 0) {
+                    if (types.length() > 0) {
+                        types.append(',');
+                    }
+                    types.append(type).append(':').append(typeCounts[type]);
+                }
+            }
+            return encodedId + '\t' + startTime + '\t' + endTime + '\t' + pduCount + '\t' + byteSize
+                + '\t' + Math.max(entities.size(), loadedEntityCount) + '\t' + types;
+        }
+
+        static Entry fromFields(String[] fields) {
+            Entry entry = new Entry();
+            entry.startTime = Long.parseLong(fields[1]);
+            entry.endTime = Long.parseLong(fields[2]);
+            entry.pduCount = Long.parseLong(fields[3]);
+            entry.byteSize = Long.parseLong(fields[4]);
+            entry.loadedEntityCount = Integer.parseInt(fields[5]);
+            if (!fields[6].isEmpty()) {
+                for (String typeCount : fields[6].split(",")) {
+                    int colon = typeCount.indexOf(':');
+                    entry.typeCounts[Integer.parseInt(typeCount.substring(0, colon)) & 0xFF] =
+                        Long.parseLong(typeCount.substring(colon + 1));
+                }
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Open-addressing set of longs, avoiding a boxed Long per entity.
+     */
+    private static final class LongHashSet {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private long[] slots = newSlots(64);
+        private int size;
+
+        void add(long value) {
+            if (value == EMPTY) {
+                value = EMPTY + 1; // packed entity IDs never use the sign bit
+            }
+            if ((size + 1) * 2 > slots.length) {
+                rehash();
+            }
+            int mask = slots.length - 1;
+            int slot = (int) mix(value) & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == value) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void rehash() {
+            long[] old = slots;
+            slots = newSlots(old.length * 2);
+            size = 0;
+            for (long value : old) {
+                if (value != EMPTY) {
+                    add(value);
+                }
+            }
+        }
+
+        private static long[] newSlots(int length) {
+            long[] slots = new long[length];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        }
+
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
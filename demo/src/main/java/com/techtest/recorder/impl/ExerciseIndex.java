@@ -0,0 +1,230 @@
+package com.techtest.recorder.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.PduQuery;
+
+/**
+ * Secondary index over the records of one exercise, addressed by record ordinal
+ * (the position of the record in storage order).
+ * <p>
+ * Records are grouped into fixed-size segments, each carrying its minimum and maximum
+ * timestamp and the set of PDU types it contains, so time and type filters can skip whole
+ * segments. A posting list per entity holds the ordinals of every record that refers to
+ * that entity. Storage implementations use {@link #candidates(PduQuery)} to find the few
+ * records worth loading and then check each candidate exactly.
+ * <p>
+ * The index has a single writer. Readers may run concurrently with it as long as they only
+ * ask about ordinals below a record count the writer has published through a volatile field
+ * after calling {@link #add}; array references and posting list lengths are volatile so a
+ * reader never sees a partially copied array.
+ */
+final class ExerciseIndex {
+    /** Number of records per segment. */
+    static final int SEGMENT_SIZE = 1024;
+    private static final int TYPE_WORDS = 4; // 256 PDU types
+
+    private volatile long[] segmentMin = new long[16];
+    private volatile long[] segmentMax = new long[16];
+    private volatile long[] segmentTypes = new long[16 * TYPE_WORDS];
+    private final Map<EntityKey, IntList> postings = new ConcurrentHashMap<>();
+    private volatile int size;
+
+    /**
+     * Add the next record to the index.
+     *
+     * @param timestamp The record timestamp
+     * @param pduType The PDU type of the record
+     * @param entities The entities the record refers to
+     * @return The ordinal assigned to the record
+     */
+    int add(long timestamp, int pduType, List<EntityKey> entities) {
+        int ordinal = size;
+        int segment = ordinal / SEGMENT_SIZE;
+
+        if (ordinal % SEGMENT_SIZE == 0) {
+            ensureSegmentCapacity(segment + 1);
+            segmentMin[segment] = timestamp;
+            segmentMax[segment] = timestamp;
+        } else {
+            long[] min = segmentMin;
+            long[] max = segmentMax;
+            min[segment] = Math.min(min[segment], timestamp);
+            max[segment] = Math.max(max[segment], timestamp);
+        }
+        segmentTypes[segment * TYPE_WORDS + ((pduType & 0xFF) >>> 6)] |= 1L << (pduType & 63);
+
+        for (EntityKey entity : entities) {
+            postings.computeIfAbsent(entity, k -> new IntList()).add(ordinal);
+        }
+
+        size = ordinal + 1;
+        return ordinal;
+    }
+
+    /**
+     * Get the number of indexed records.
+     *
+     * @return The number of records
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of distinct entities seen.
+     *
+     * @return The number of entities
+     */
+    int entityCount() {
+        return postings.size();
+    }
+
+    /**
+     * Find the ordinals of records that may match a query, in ascending order.
+     * Candidates are guaranteed to satisfy the entity filter; callers must still
+     * check time and type against each record.
+     *
+     * @param query The query
+     * @return The candidate ordinals
+     */
+    int[] candidates(PduQuery query) {
+        return candidates(query, size);
+    }
+
+    /**
+     * Find the ordinals below a limit of records that may match a query, in ascending order.
+     *
+     * @param query The query
+     * @param limit Only ordinals below this value are returned
+     * @return The candidate ordinals
+     */
+    int[] candidates(PduQuery query, int limit) {
+        return candidates(query, 0, limit);
+    }
+
+    /**
+     * Find the ordinals in a range of records that may match a query, in ascending order.
+     * Lets a cursor walk a large exercise a window at a time.
+     *
+     * @param query The query
+     * @param from Only ordinals at or above this value are returned
+     * @param limit Only ordinals below this value are returned
+     * @return The candidate ordinals
+     */
+    int[] candidates(PduQuery query, int from, int limit) {
+        limit = Math.min(limit, size);
+        IntList result = new IntList();
+
+        if (!query.getEntities().isEmpty()) {
+            // Merge the posting lists, skipping entries in segments that cannot match
+            for (EntityKey entity : query.getEntities()) {
+                IntList posting = postings.get(entity);
+                if (posting == null) {
+                    continue;
+                }
+                int count = posting.size;
+                int[] values = posting.values;
+                int lastSegment = -1;
+                boolean segmentMatches = false;
+                int first = from == 0 ? 0 : Arrays.binarySearch(values, 0, count, from);
+                for (int i = first < 0 ? -first - 1 : first; i < count; i++) {
+                    int ordinal = values[i];
+                    if (ordinal >= limit) {
+                        break;
+                    }
+                    int segment = ordinal / SEGMENT_SIZE;
+                    if (segment != lastSegment) {
+                        lastSegment = segment;
+                        segmentMatches = segmentMayMatch(segment, query);
+                    }
+                    if (segmentMatches) {
+                        result.add(ordinal);
+                    }
+                }
+            }
+            if (query.getEntities().size() > 1) {
+                result.sortDistinct();
+            }
+        } else {
+            int segments = (limit + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            for (int segment = from / SEGMENT_SIZE; segment < segments; segment++) {
+                if (segmentMayMatch(segment, query)) {
+                    int end = Math.min(limit, (segment + 1) * SEGMENT_SIZE);
+                    for (int ordinal = Math.max(from, segment * SEGMENT_SIZE); ordinal < end; ordinal++) {
+                        result.add(ordinal);
+                    }
+                }
+            }
+        }
+
+        return result.toArray();
+    }
+
+    private boolean segmentMayMatch(int segment, PduQuery query) {
+        if (segmentMax[segment] < query.getStartTime() || segmentMin[segment] >= query.getEndTime()) {
+            return false;
+        }
+        if (query.getPduTypes().isEmpty()) {
+            return true;
+        }
+        long[] types = segmentTypes;
+        for (int type : query.getPduTypes()) {
+            if ((types[segment * TYPE_WORDS + ((type & 0xFF) >>> 6)] & (1L << (type & 63))) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureSegmentCapacity(int segments) {
+        if (segments > segmentMin.length) {
+            int newLength = Math.max(segments, segmentMin.length * 2);
+            segmentMin = Arrays.copyOf(segmentMin, newLength);
+            segmentMax = Arrays.copyOf(segmentMax, newLength);
+            segmentTypes = Arrays.copyOf(segmentTypes, newLength * TYPE_WORDS);
+        }
+    }
+
+    /**
+     * Growable list of primitive ints. Posting lists are read concurrently with appends:
+     * an element is written before the volatile size that covers it, and a grown array is
+     * fully copied before it is published.
+     */
+    static final class IntList {
+        private volatile int[] values = new int[8];
+        private volatile int size;
+
+        void add(int value) {
+            int[] current = values;
+            int count = size;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+                values = current;
+            }
+            current[count] = value;
+            size = count + 1;
+        }
+
+        void sortDistinct() {
+            int[] current = values;
+            int count = size;
+            Arrays.sort(current, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || current[distinct - 1] != current[i]) {
+                    current[distinct++] = current[i];
+                }
+            }
+            size = distinct;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
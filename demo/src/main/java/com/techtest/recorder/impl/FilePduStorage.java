@@ -0,0 +1,1053 @@
+package com.techtest.recorder.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
+import com.techtest.recorder.model.RecordedPdu;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * File-backed implementation of PduStorage that survives a crash of the recorder.
+ * <p>
+ * Each exercise is an append-only log file in the storage directory. Every record is framed
+ * as {@code [int bodyLength][int crc32][long timestamp][pdu bytes]}, so a write torn by a crash
+ * is detected by its length or checksum. The timestamp is in nanoseconds since the epoch;
+ * logs of format version 1 stored milliseconds and are still read. When the storage is opened, each log is scanned,
+ * truncated after its last valid record, and its in-memory {@link ExerciseIndex} rebuilt from
+ * the raw PDU headers.
+ * <p>
+ * An {@link ExerciseCatalog} is saved next to the logs on {@link #flush()} and {@link #close()}.
+ * A log whose size matches its catalog entry was closed cleanly, so its scan is deferred until
+ * the exercise is first read or written; listing exercises never has to scan them.
+ * <p>
+ * Records are appended to an in-memory buffer and forced to disk according to the
+ * {@link FsyncPolicy}, so durability does not cost a system call per PDU.
+ */
+public class FilePduStorage implements PduStorage, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FilePduStorage.class);
+    private static final Comparator<RecordedPdu> BY_TIMESTAMP = Comparator.comparingLong(RecordedPdu::getTimestampNanos);
+
+    static final String FILE_SUFFIX = ".pdulog";
+    static final String CATALOG_FILE = "catalog.tsv";
+    static final int FILE_MAGIC = 0x44495352; // "DISR"
+    static final int FORMAT_VERSION = 2;
+    /** Format version whose timestamps are in milliseconds. */
+    static final int MILLISECOND_FORMAT_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int MAX_RECORD_BODY = 8 + 65535;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.groupCommit(1024, 100);
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final Map<String, ExerciseLog> logs = new ConcurrentHashMap<>();
+    private final ExerciseCatalog catalog = new ExerciseCatalog();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+    private ExecutorService syncExecutor;
+
+    // Group commit state
+    private final Object commitMonitor = new Object();
+    private final AtomicInteger pendingRecords = new AtomicInteger();
+    private volatile long oldestPendingNanos;
+
+    /**
+     * Open a file storage with the default group commit policy.
+     *
+     * @param directory The directory holding the exercise logs
+     * @throws IOException If the directory cannot be created or a log cannot be recovered
+     */
+    public FilePduStorage(Path directory) throws IOException {
+        this(directory, DEFAULT_FSYNC_POLICY);
+    }
+
+    /**
+     * Open a file storage, recovering any existing exercise logs.
+     *
+     * @param directory The directory holding the exercise logs
+     * @param fsyncPolicy When to force records to disk
+     * @throws IOException If the directory cannot be created or a log cannot be recovered
+     */
+    public FilePduStorage(Path directory, FsyncPolicy fsyncPolicy) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+        recover();
+        startSyncThread();
+        logger.info("Opened file storage in {} with {} exercises, fsync {}", directory, logs.size(), fsyncPolicy);
+    }
+
+    @Override
+    public void storePdu(RecordedPdu recordedPdu) {
+        byte[] data = PduCodec.toBytes(recordedPdu);
+        if (data == null) {
+            return;
+        }
+
+        String exerciseId = recordedPdu.getExerciseId();
+        try {
+            ExerciseLog log = logs.get(exerciseId);
+            if (log == null) {
+                log = logs.computeIfAbsent(exerciseId, this::createLog);
+            }
+            while (!log.append(recordedPdu.getTimestampNanos(), data)) {
+                // Replaced by a trimmed log meanwhile
+                log = logs.computeIfAbsent(exerciseId, this::createLog);
+            }
+            afterAppend(log);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store PDU for exercise " + exerciseId, e);
+        }
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusForExercise(String exerciseId) {
+        return queryPdus(exerciseId, PduQuery.all());
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId) {
+        return new FileCursor(logs.get(exerciseId), null);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId, PduQuery query) {
+        return new FileCursor(logs.get(exerciseId), query);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime) {
+        return queryPdus(exerciseId, PduQuery.timeRange(startTime, endTime));
+    }
+
+    @Override
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        ExerciseLog log = logs.get(exerciseId);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+
+        try {
+            List<RecordedPdu> result = log.read(query);
+            result.sort(BY_TIMESTAMP);
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read exercise " + exerciseId, e);
+        }
+    }
+
+    @Override
+    public void clearExercise(String exerciseId) {
+        ExerciseLog log = logs.remove(exerciseId);
+        catalog.remove(exerciseId);
+        if (log != null) {
+            try {
+                log.close();
+                Files.deleteIfExists(log.file);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to delete exercise " + exerciseId, e);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getExerciseIds() {
+        return new ArrayList<>(logs.keySet());
+    }
+
+    @Override
+    public ExerciseSummary getExerciseSummary(String exerciseId) {
+        return logs.containsKey(exerciseId) ? catalog.getSummary(exerciseId) : null;
+    }
+
+    @Override
+    public List<ExerciseSummary> getExerciseSummaries() {
+        List<ExerciseSummary> summaries = new ArrayList<>();
+        for (String exerciseId : logs.keySet()) {
+            ExerciseSummary summary = catalog.getSummary(exerciseId);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            syncAll();
+            catalog.save(directory.resolve(CATALOG_FILE));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush file storage", e);
+        }
+    }
+
+    /**
+     * Flush all exercise logs and release their files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open.compareAndSet(true, false)) {
+            return;
+        }
+
+        if (syncExecutor != null) {
+            synchronized (commitMonitor) {
+                commitMonitor.notifyAll();
+            }
+            syncExecutor.shutdownNow();
+            syncExecutor = null;
+        }
+
+        syncAll();
+        for (ExerciseLog log : logs.values()) {
+            log.close();
+        }
+        catalog.save(directory.resolve(CATALOG_FILE));
+        logger.info("Closed file storage in {}", directory);
+    }
+
+    /**
+     * Remove the oldest PDUs of an exercise, in the order a cursor serves them. The remaining
+     * records are written to a new log file without blocking writers; only the records stored
+     * during the copy are written while appends wait, before the new file replaces the old one.
+     * Cursors opened before the trim end at the old log.
+     *
+     * @param exerciseId The exercise ID
+     * @param dropBytes The size of the oldest PDUs to remove
+     * @return The size of the removed PDUs in bytes
+     */
+    long trimOldest(String exerciseId, long dropBytes) {
+        ExerciseLog log = logs.get(exerciseId);
+        if (log == null) {
+            return 0;
+        }
+
+        Path temp = log.file.resolveSibling(log.file.getFileName() + ".trim");
+        ExerciseLog trimmed = null;
+        boolean replaced = false;
+        try {
+            Files.deleteIfExists(temp);
+            // Build the trimmed log with its own catalog entry, so the old log keeps its counters meanwhile
+            ExerciseCatalog trimmedCatalog = new ExerciseCatalog();
+            trimmedCatalog.reset(exerciseId);
+            trimmed = new ExerciseLog(exerciseId, log.file, FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE), trimmedCatalog);
+            trimmed.writeHeader();
+
+            long dropped = 0;
+            try (PduCursor cursor = new FileCursor(log, null)) {
+                RecordedPdu recordedPdu;
+                while ((recordedPdu = cursor.next()) != null) {
+                    if (dropped < dropBytes) {
+                        dropped += recordedPdu.getData().length;
+                        continue;
+                    }
+                    trimmed.append(recordedPdu.getTimestampNanos(), recordedPdu.getData());
+                }
+
+                synchronized (log) {
+                    while ((recordedPdu = cursor.next()) != null) {
+                        trimmed.append(recordedPdu.getTimestampNanos(), recordedPdu.getData());
+                    }
+                    if (logs.get(exerciseId) != log) {
+                        // Cleared while it was being copied
+                        return 0;
+                    }
+                    trimmed.sync();
+                    Files.move(temp, log.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    logs.put(exerciseId, trimmed);
+                    catalog.adopt(exerciseId, trimmedCatalog);
+                    replaced = true;
+                    log.retire();
+                }
+            }
+            return dropped;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to trim exercise " + exerciseId, e);
+        } finally {
+            if (!replaced) {
+                try {
+                    if (trimmed != null) {
+                        trimmed.close();
+                    }
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    logger.warn("Failed to remove {}: {}", temp, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the size of an exercise's stored records.
+     *
+     * @param exerciseId The exercise ID
+     * @return The size in bytes, or 0 if the exercise does not exist
+     */
+    public long getExerciseBytes(String exerciseId) {
+        ExerciseLog log = logs.get(exerciseId);
+        return log == null ? 0 : log.writePosition - FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Get the latest PDU timestamp stored for an exercise.
+     *
+     * @param exerciseId The exercise ID
+     * @return The timestamp in milliseconds, or Long.MIN_VALUE if the exercise is empty or does not exist
+     */
+    public long getLastTimestamp(String exerciseId) {
+        ExerciseLog log = logs.get(exerciseId);
+        return log == null ? Long.MIN_VALUE : log.lastTimestamp;
+    }
+
+    /**
+     * Get the directory holding the exercise logs.
+     *
+     * @return The storage directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Apply the fsync policy after a record has been appended.
+     */
+    private void afterAppend(ExerciseLog log) throws IOException {
+        switch (fsyncPolicy.getMode()) {
+            case EVERY_N_RECORDS:
+                if (log.unsyncedRecords >= fsyncPolicy.getBatchSize()) {
+                    log.sync();
+                }
+                break;
+            case GROUP_COMMIT:
+                int pending = pendingRecords.incrementAndGet();
+                if (pending == 1) {
+                    oldestPendingNanos = System.nanoTime();
+                }
+                // Wake the committer for the first record of a batch and when a batch is full
+                if (pending == 1 || pending == fsyncPolicy.getBatchSize()) {
+                    synchronized (commitMonitor) {
+                        commitMonitor.notifyAll();
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startSyncThread() {
+        switch (fsyncPolicy.getMode()) {
+            case INTERVAL:
+                ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+                scheduler.scheduleAtFixedRate(this::syncQuietly,
+                    fsyncPolicy.getIntervalMillis(), fsyncPolicy.getIntervalMillis(), TimeUnit.MILLISECONDS);
+                syncExecutor = scheduler;
+                break;
+            case GROUP_COMMIT:
+                syncExecutor = Executors.newSingleThreadExecutor();
+                syncExecutor.submit(this::commitLoop);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Background committer for {@link FsyncPolicy.Mode#GROUP_COMMIT}.
+     */
+    private void commitLoop() {
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(fsyncPolicy.getIntervalMillis());
+
+        while (open.get() && !Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (commitMonitor) {
+                    while (open.get()) {
+                        int pending = pendingRecords.get();
+                        if (pending >= fsyncPolicy.getBatchSize()) {
+                            break;
+                        }
+                        if (pending == 0) {
+                            commitMonitor.wait();
+                            continue;
+                        }
+                        long remainingNanos = oldestPendingNanos + maxDelayNanos - System.nanoTime();
+                        if (remainingNanos <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(commitMonitor, remainingNanos);
+                    }
+                }
+                syncAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.error("Group commit failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            syncAll();
+        } catch (IOException e) {
+            logger.error("Periodic sync failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void syncAll() throws IOException {
+        pendingRecords.set(0);
+        for (ExerciseLog log : logs.values()) {
+            log.sync();
+        }
+    }
+
+    private ExerciseLog createLog(String exerciseId) {
+        Path file = directory.resolve(URLEncoder.encode(exerciseId, StandardCharsets.UTF_8) + FILE_SUFFIX);
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            ExerciseLog log = new ExerciseLog(exerciseId, file, channel, catalog);
+            log.writeHeader();
+            catalog.reset(exerciseId);
+            return log;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create log for exercise " + exerciseId, e);
+        }
+    }
+
+    /**
+     * Open every exercise log in the directory. Logs that match their catalog entry are
+     * scanned on first use; the others are scanned now, truncating torn records and
+     * rebuilding their indexes and catalog entries.
+     */
+    private void recover() throws IOException {
+        Path catalogFile = directory.resolve(CATALOG_FILE);
+        if (Files.exists(catalogFile)) {
+            catalog.load(catalogFile);
+        }
+        // Exercises only become visible through a log, so catalog entries without one are dropped
+        List<String> cataloged = new ArrayList<>();
+        for (ExerciseSummary summary : catalog.getSummaries()) {
+            cataloged.add(summary.getExerciseId());
+        }
+
+        long deferred = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String exerciseId = URLDecoder.decode(name.substring(0, name.length() - FILE_SUFFIX.length()),
+                    StandardCharsets.UTF_8);
+
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                ExerciseLog log = new ExerciseLog(exerciseId, file, channel, catalog);
+                cataloged.remove(exerciseId);
+                try {
+                    if (log.deferRecovery(catalog.getSummary(exerciseId))) {
+                        logs.put(exerciseId, log);
+                        deferred++;
+                    } else if (log.recover()) {
+                        logs.put(exerciseId, log);
+                    } else {
+                        log.close();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.close();
+                    throw e;
+                }
+            }
+        }
+        for (String exerciseId : cataloged) {
+            catalog.remove(exerciseId);
+        }
+        if (deferred > 0) {
+            logger.info("Deferred recovery of {} cleanly closed exercises", deferred);
+        }
+    }
+
+    /**
+     * The append-only log file of one exercise, with its record offsets and index.
+     * Appends, syncs and index access are guarded by the log's monitor; forcing to disk is
+     * done outside it so the writer is never blocked by a sync in progress.
+     */
+    private static final class ExerciseLog {
+        private final String exerciseId;
+        private final Path file;
+        private final FileChannel channel;
+        private final ExerciseCatalog catalog;
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private final ExerciseIndex index = new ExerciseIndex();
+        private long[] offsets = new long[1024];
+        private volatile long writePosition;
+        private volatile long lastTimestamp = Long.MIN_VALUE;
+        /** False once a record was appended with an earlier timestamp than its predecessor. */
+        private volatile boolean ordered = true;
+        private long lastTimestampNanos = Long.MIN_VALUE;
+        // Nanoseconds per stored timestamp unit, from the file's format version
+        private long timestampUnit = 1;
+        private int unsyncedRecords;
+        private boolean recovered = true;
+        /** Set once the log has been replaced by a trimmed copy; appends must go to the new log. */
+        private boolean retired;
+
+        ExerciseLog(String exerciseId, Path file, FileChannel channel, ExerciseCatalog catalog) {
+            this.exerciseId = exerciseId;
+            this.file = file;
+            this.channel = channel;
+            this.catalog = catalog;
+        }
+
+        synchronized void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(FILE_MAGIC).putInt(FORMAT_VERSION).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            writePosition = FILE_HEADER_SIZE;
+            timestampUnit = 1;
+        }
+
+        /**
+         * Append a record to the write buffer.
+         *
+         * @return false if the log was replaced and the record was not appended
+         */
+        synchronized boolean append(long timestampNanos, byte[] data) throws IOException {
+            if (retired) {
+                return false;
+            }
+            recoverIfDeferred();
+            int bodyLength = 8 + data.length;
+            if (bodyLength > MAX_RECORD_BODY) {
+                throw new IOException("PDU too large to store: " + data.length + " bytes");
+            }
+            if (writeBuffer.remaining() < RECORD_HEADER_SIZE + bodyLength) {
+                drain();
+            }
+
+            int start = writeBuffer.position();
+            writeBuffer.putInt(bodyLength);
+            writeBuffer.putInt(0);
+            writeBuffer.putLong(Math.floorDiv(timestampNanos, timestampUnit));
+            writeBuffer.put(data);
+
+            crc.reset();
+            crc.update(writeBuffer.duplicate().position(start + RECORD_HEADER_SIZE).limit(writeBuffer.position()));
+            writeBuffer.putInt(start + 4, (int) crc.getValue());
+
+            addToIndex(writePosition, timestampNanos, data);
+            writePosition += RECORD_HEADER_SIZE + bodyLength;
+            unsyncedRecords++;
+            return true;
+        }
+
+        /**
+         * Stop accepting appends and release the file after the log was replaced.
+         */
+        synchronized void retire() throws IOException {
+            retired = true;
+            channel.close();
+        }
+
+        /**
+         * Write buffered records to the file and force them to disk.
+         */
+        void sync() throws IOException {
+            synchronized (this) {
+                if (!channel.isOpen()) {
+                    return;
+                }
+                drain();
+                unsyncedRecords = 0;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Exercise cleared while syncing; nothing left to make durable
+            }
+        }
+
+        List<RecordedPdu> read(PduQuery query) throws IOException {
+            long[] positions;
+            long end;
+            synchronized (this) {
+                recoverIfDeferred();
+                // Make buffered records visible to positional reads
+                drain();
+                int[] candidates = index.candidates(query);
+                positions = new long[candidates.length];
+                for (int i = 0; i < candidates.length; i++) {
+                    positions[i] = offsets[candidates[i]];
+                }
+                end = writePosition;
+            }
+
+            List<RecordedPdu> result = new ArrayList<>(positions.length);
+            RecordReader reader = new RecordReader(channel, end, timestampUnit);
+            for (long position : positions) {
+                if (!reader.readAt(position)) {
+                    logger.warn("Skipping corrupt record at offset {} in exercise {}", position, exerciseId);
+                    continue;
+                }
+                if (!query.matchesTime(Math.floorDiv(reader.timestampNanos, 1_000_000L))
+                        || !query.matchesType(PduCodec.pduType(reader.data)) || !query.matchesRecord(reader.data)) {
+                    continue;
+                }
+                Pdu pdu = PduCodec.decode(reader.data);
+                if (pdu != null) {
+                    result.add(RecordedPdu.withTimestampNanos(pdu, reader.timestampNanos, exerciseId, reader.data));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Capture the current record count, and copy the records still in the write buffer to
+         * the cursor. Following a live exercise therefore never writes records early, which
+         * would defeat write batching and the fsync policy.
+         *
+         * @param cursor The cursor to update with the record count, end position and offsets
+         */
+        synchronized void refresh(FileCursor cursor) throws IOException {
+            recoverIfDeferred();
+            cursor.available = index.size();
+            cursor.offsets = offsets;
+            long bufferStart = writePosition - writeBuffer.position();
+            cursor.reader.setEnd(bufferStart, timestampUnit);
+            cursor.reader.copyTail(bufferStart, writeBuffer);
+        }
+
+        /**
+         * Trust the catalog entry of a cleanly closed log and postpone scanning it.
+         *
+         * @param summary The catalog entry of the exercise, or null if there is none
+         * @return true if the log size matches the entry and the scan was deferred
+         */
+        synchronized boolean deferRecovery(ExerciseSummary summary) throws IOException {
+            if (summary == null) {
+                return false;
+            }
+            long expectedSize = FILE_HEADER_SIZE + summary.getPduCount() * (RECORD_HEADER_SIZE + 8)
+                + summary.getByteSize();
+            if (channel.size() != expectedSize) {
+                return false;
+            }
+            writePosition = expectedSize;
+            lastTimestamp = summary.getPduCount() > 0 ? summary.getEndTime() : Long.MIN_VALUE;
+            recovered = false;
+            return true;
+        }
+
+        /**
+         * Validate the log, truncate it after the last valid record and rebuild the index
+         * and catalog entry.
+         *
+         * @return true if the file is a usable exercise log
+         */
+        synchronized boolean recover() throws IOException {
+            recovered = true;
+            lastTimestamp = Long.MIN_VALUE;
+            lastTimestampNanos = Long.MIN_VALUE;
+            ordered = true;
+            catalog.reset(exerciseId);
+            long size = channel.size();
+            if (size < FILE_HEADER_SIZE) {
+                // Crashed while creating the file
+                logger.warn("Rewriting incomplete header of exercise log {}", file);
+                channel.truncate(0);
+                writeHeader();
+                return true;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != FILE_MAGIC || (version != FORMAT_VERSION && version != MILLISECOND_FORMAT_VERSION)) {
+                logger.error("Ignoring {}: not an exercise log of format version {}", file, FORMAT_VERSION);
+                return false;
+            }
+            timestampUnit = version == MILLISECOND_FORMAT_VERSION ? 1_000_000L : 1;
+
+            RecordReader reader = new RecordReader(channel, size, timestampUnit);
+            long position = FILE_HEADER_SIZE;
+            while (position < size && reader.readAt(position)) {
+                addToIndex(position, reader.timestampNanos, reader.data);
+                position = reader.nextPosition;
+            }
+
+            if (position < size) {
+                logger.warn("Truncating {} bytes of incomplete or corrupt records from exercise {}",
+                    size - position, exerciseId);
+                channel.truncate(position);
+                channel.force(true);
+            }
+            writePosition = position;
+            logger.info("Recovered exercise {} with {} PDUs", exerciseId, index.size());
+            return true;
+        }
+
+        synchronized void close() throws IOException {
+            if (channel.isOpen()) {
+                drain();
+                channel.force(false);
+                channel.close();
+            }
+        }
+
+        private void recoverIfDeferred() throws IOException {
+            if (!recovered) {
+                recover();
+            }
+        }
+
+        private void addToIndex(long position, long timestampNanos, byte[] data) {
+            long timestamp = Math.floorDiv(timestampNanos, 1_000_000L);
+            int pduType = PduCodec.pduType(data);
+            List<EntityKey> entities = PduCodec.entitiesOf(data);
+            catalog.record(exerciseId, timestamp, pduType, data.length, entities);
+            int ordinal = index.add(timestamp, pduType, entities);
+            if (timestamp > lastTimestamp) {
+                lastTimestamp = timestamp;
+            }
+            if (timestampNanos < lastTimestampNanos) {
+                ordered = false;
+            } else {
+                lastTimestampNanos = timestampNanos;
+            }
+            if (ordinal == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[ordinal] = position;
+        }
+
+        private void drain() throws IOException {
+            writeBuffer.flip();
+            long position = writePosition - writeBuffer.remaining();
+            while (writeBuffer.hasRemaining()) {
+                position += channel.write(writeBuffer, position);
+            }
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Reads framed records through a window buffer, so runs of neighbouring records
+     * are served from a single file read. Records not yet written to the file are read from
+     * a copy of the log's write buffer.
+     */
+    private static final class RecordReader {
+        private final FileChannel channel;
+        private long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long bufferStart = -1;
+        private long timestampUnit;
+        // Copy of the write buffer, starting at file position tailStart
+        private ByteBuffer tail;
+        private long tailStart = -1;
+        // Where the record being read is: the window buffer or the tail
+        private ByteBuffer source;
+        private long sourceStart;
+
+        // Current record
+        private long timestampNanos;
+        private byte[] data;
+        private long nextPosition;
+
+        RecordReader(FileChannel channel, long end, long timestampUnit) {
+            this.channel = channel;
+            this.end = end;
+            this.timestampUnit = timestampUnit;
+            buffer.flip();
+        }
+
+        /**
+         * Extend the region readable from the file after more records have been written.
+         *
+         * @param end The end of the region written to the file
+         * @param timestampUnit Nanoseconds per stored timestamp unit, known once the log is recovered
+         */
+        void setEnd(long end, long timestampUnit) {
+            this.end = end;
+            this.timestampUnit = timestampUnit;
+        }
+
+        /**
+         * Copy the records of a write buffer that have not been written to the file. Only the
+         * bytes added since the last copy are copied while the buffer has not been drained.
+         *
+         * @param start The file position the buffer will be written to
+         * @param writeBuffer The write buffer, with its position at the end of the buffered records
+         */
+        void copyTail(long start, ByteBuffer writeBuffer) {
+            int length = writeBuffer.position();
+            int copied = tail != null && start == tailStart && tail.limit() <= length ? tail.limit() : 0;
+            if (tail == null || tail.capacity() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(length, tail == null ? 4096 : tail.capacity() * 2));
+                if (copied > 0) {
+                    grown.put(0, tail, 0, copied);
+                }
+                tail = grown;
+            }
+            writeBuffer.get(copied, tail.array(), copied, length - copied);
+            tail.limit(length);
+            tailStart = start;
+        }
+
+        /**
+         * Read and validate the record at a file position.
+         *
+         * @return true if a complete record with a valid checksum was read
+         */
+        boolean readAt(long position) throws IOException {
+            if (!ensure(position, RECORD_HEADER_SIZE)) {
+                return false;
+            }
+            int offset = (int) (position - sourceStart);
+            int bodyLength = source.getInt(offset);
+            int checksum = source.getInt(offset + 4);
+            if (bodyLength < 8 || bodyLength > MAX_RECORD_BODY
+                    || !ensure(position, RECORD_HEADER_SIZE + bodyLength)) {
+                return false;
+            }
+
+            offset = (int) (position - sourceStart) + RECORD_HEADER_SIZE;
+            crc.reset();
+            crc.update(source.array(), offset, bodyLength);
+            if ((int) crc.getValue() != checksum) {
+                return false;
+            }
+
+            timestampNanos = source.getLong(offset) * timestampUnit;
+            data = new byte[bodyLength - 8];
+            source.get(offset + 8, data);
+            nextPosition = position + RECORD_HEADER_SIZE + bodyLength;
+            return true;
+        }
+
+        private boolean ensure(long position, int length) throws IOException {
+            if (tail != null && position >= tailStart) {
+                source = tail;
+                sourceStart = tailStart;
+                return position + length <= tailStart + tail.limit();
+            }
+            if (position + length > end) {
+                return false;
+            }
+            source = buffer;
+            sourceStart = bufferStart;
+            if (bufferStart >= 0 && position >= bufferStart && position + length <= bufferStart + buffer.limit()) {
+                return true;
+            }
+
+            buffer.clear();
+            bufferStart = position;
+            sourceStart = position;
+            int wanted = (int) Math.min(buffer.capacity(), end - position);
+            buffer.limit(wanted);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.limit() >= length;
+        }
+    }
+
+    /**
+     * Cursor that reads an exercise log record by record, picking up records appended
+     * after it was opened. With a query, only the index candidates are read, and they are
+     * checked against the raw record before being decoded. If the log is unordered when the
+     * cursor is opened, the records present then are served from a sorted snapshot first.
+     */
+    private static final class FileCursor implements PduCursor {
+        private final ExerciseLog log;
+        private final RecordReader reader;
+        private final PduQuery query;
+        private final CandidateScan scan;
+        private final List<RecordedPdu> sorted;
+        private int sortedPosition;
+        private long[] offsets;
+        private int available;
+        private int position;
+        // Query cursors: the reader holds the next matching record
+        private boolean pending;
+
+        FileCursor(ExerciseLog log, PduQuery query) {
+            this.log = log;
+            this.reader = log != null ? new RecordReader(log.channel, 0, 1) : null;
+            this.query = query;
+            if (log == null || !refresh() || log.ordered) {
+                sorted = null;
+            } else {
+                sorted = readSnapshot(query != null ? query : PduQuery.all());
+                sorted.sort(BY_TIMESTAMP);
+                position = available;
+            }
+            this.scan = log != null && query != null ? new CandidateScan(log.index, query, position) : null;
+        }
+
+        /**
+         * Read the matching records below the record count captured by the last refresh.
+         */
+        private List<RecordedPdu> readSnapshot(PduQuery snapshotQuery) {
+            List<RecordedPdu> result = new ArrayList<>();
+            for (int ordinal : log.index.candidates(snapshotQuery, available)) {
+                try {
+                    if (!readMatching(ordinal, snapshotQuery)) {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Error reading exercise {}: {}", log.exerciseId, e.getMessage());
+                    break;
+                }
+                Pdu pdu = PduCodec.decode(reader.data);
+                if (pdu != null) {
+                    result.add(RecordedPdu.withTimestampNanos(pdu, reader.timestampNanos, log.exerciseId, reader.data));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (log == null) {
+                return false;
+            }
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return true;
+            }
+            if (scan != null) {
+                return findMatch();
+            }
+            if (position < available) {
+                return true;
+            }
+            return refresh() && position < available;
+        }
+
+        private boolean refresh() {
+            try {
+                log.refresh(this);
+                return true;
+            } catch (IOException e) {
+                logger.warn("Error reading exercise {}: {}", log.exerciseId, e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Read the record with an ordinal into the reader and check it against a query.
+         *
+         * @return true if the record is intact and matches
+         */
+        private boolean readMatching(int ordinal, PduQuery recordQuery) throws IOException {
+            long offset = offsets[ordinal];
+            if (!reader.readAt(offset)) {
+                logger.warn("Skipping corrupt record at offset {} in exercise {}", offset, log.exerciseId);
+                return false;
+            }
+            return recordQuery.matchesTime(Math.floorDiv(reader.timestampNanos, 1_000_000L))
+                && recordQuery.matchesType(PduCodec.pduType(reader.data)) && recordQuery.matchesRecord(reader.data);
+        }
+
+        private boolean findMatch() {
+            while (!pending) {
+                int ordinal = scan.next(available);
+                if (ordinal < 0) {
+                    if (!refresh()) {
+                        return false;
+                    }
+                    ordinal = scan.next(available);
+                    if (ordinal < 0) {
+                        return false;
+                    }
+                }
+                try {
+                    pending = readMatching(ordinal, query);
+                } catch (IOException e) {
+                    logger.warn("Error reading exercise {}: {}", log.exerciseId, e.getMessage());
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public RecordedPdu next() {
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return sorted.get(sortedPosition++);
+            }
+            if (scan != null) {
+                while (findMatch()) {
+                    pending = false;
+                    Pdu pdu = PduCodec.decode(reader.data);
+                    if (pdu != null) {
+                        return RecordedPdu.withTimestampNanos(pdu, reader.timestampNanos, log.exerciseId, reader.data);
+                    }
+                }
+                return null;
+            }
+            while (hasNext()) {
+                long offset = offsets[position++];
+                try {
+                    if (!reader.readAt(offset)) {
+                        logger.warn("Skipping corrupt record at offset {} in exercise {}", offset, log.exerciseId);
+                        continue;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Error reading exercise {}: {}", log.exerciseId, e.getMessage());
+                    return null;
+                }
+                Pdu pdu = PduCodec.decode(reader.data);
+                if (pdu != null) {
+                    return RecordedPdu.withTimestampNanos(pdu, reader.timestampNanos, log.exerciseId, reader.data);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            // The log's channel is shared and stays open
+        }
+    }
+}
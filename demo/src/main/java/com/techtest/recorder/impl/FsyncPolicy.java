@@ -0,0 +1,107 @@
+package com.techtest.recorder.impl;
+
+/**
+ * Controls when a file-backed storage forces written records to disk.
+ * <ul>
+ *   <li>{@link Mode#EVERY_N_RECORDS}: the writing thread syncs after every N records.</li>
+ *   <li>{@link Mode#INTERVAL}: a background thread syncs on a fixed interval.</li>
+ *   <li>{@link Mode#GROUP_COMMIT}: a background committer syncs as soon as a batch of records
+ *   is pending, or when the oldest pending record reaches the maximum delay, whichever comes first.</li>
+ * </ul>
+ * In every mode the writing thread only copies records into a buffer; a record can be lost on
+ * a crash only until the next sync point.
+ */
+public final class FsyncPolicy {
+    /**
+     * The sync strategy.
+     */
+    public enum Mode {
+        EVERY_N_RECORDS,
+        INTERVAL,
+        GROUP_COMMIT
+    }
+
+    private final Mode mode;
+    private final int batchSize;
+    private final long intervalMillis;
+
+    private FsyncPolicy(Mode mode, int batchSize, long intervalMillis) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Sync after every N records, on the writing thread.
+     *
+     * @param records The number of records between syncs
+     * @return The policy
+     */
+    public static FsyncPolicy everyRecords(int records) {
+        return new FsyncPolicy(Mode.EVERY_N_RECORDS, records, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sync on a fixed interval, from a background thread.
+     *
+     * @param intervalMillis The interval between syncs in milliseconds
+     * @return The policy
+     */
+    public static FsyncPolicy interval(long intervalMillis) {
+        return new FsyncPolicy(Mode.INTERVAL, Integer.MAX_VALUE, intervalMillis);
+    }
+
+    /**
+     * Sync from a background committer once a batch is pending or the oldest pending record
+     * has waited for the maximum delay.
+     *
+     * @param batchSize The number of pending records that triggers a commit
+     * @param maxDelayMillis The maximum time a record waits for a commit in milliseconds
+     * @return The policy
+     */
+    public static FsyncPolicy groupCommit(int batchSize, long maxDelayMillis) {
+        return new FsyncPolicy(Mode.GROUP_COMMIT, batchSize, maxDelayMillis);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the number of records between syncs for {@link Mode#EVERY_N_RECORDS}, or the batch
+     * size that triggers a commit for {@link Mode#GROUP_COMMIT}.
+     *
+     * @return The batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Get the sync interval for {@link Mode#INTERVAL}, or the maximum commit delay for
+     * {@link Mode#GROUP_COMMIT}.
+     *
+     * @return The interval in milliseconds
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case EVERY_N_RECORDS:
+                return "every " + batchSize + " records";
+            case INTERVAL:
+                return "every " + intervalMillis + " ms";
+            default:
+                return "group commit (" + batchSize + " records / " + intervalMillis + " ms)";
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.techtest.recorder.impl;
+
+/**
+ * Changes applied to PDUs as they are replayed, so a recording can be injected into a running
+ * exercise: a new exercise ID, remapped site and application numbers, and timestamps rebased
+ * to the time the PDU is sent. The rewrite patches the encoded bytes in place; PDUs are never
+ * decoded and encoded again.
+ * <p>
+ * Rewrites are written as comma-separated {@code key=value} pairs, for example
+ * {@code exercise=7,map=1:1>20:1+1:2>20:2,timestamps=now}. Supported keys:
+ * <ul>
+ * <li>{@code exercise} - exercise ID to send with, 1 to 255 (default: unchanged)</li>
+ * <li>{@code map} - site and application pairs to replace, as {@code site:app>site:app},
+ *     joined with {@code +}. Applies to the entity ID of Entity State PDUs and to the firing,
+ *     target and munition entity IDs and the event ID of Fire and Detonation PDUs
+ *     (default: unchanged)</li>
+ * <li>{@code timestamps} - {@code now} to stamp each PDU with its send time, keeping its
+ *     absolute or relative flag, or {@code original} (default original)</li>
+ * </ul>
+ */
+public final class HeaderRewrite {
+    private static final int[][] NO_MAPPING = {new int[0], new int[0]};
+    private static final HeaderRewrite NONE = new HeaderRewrite(-1, NO_MAPPING, false);
+
+    private static final int EXERCISE_ID_OFFSET = 1;
+    private static final int TIMESTAMP_OFFSET = 4;
+    /** Entity State PDU: entity ID. */
+    private static final int[] ENTITY_STATE_ID_OFFSETS = {12};
+    /** Fire and Detonation PDUs: firing entity, target entity, munition and event IDs. */
+    private static final int[] WEAPON_EVENT_ID_OFFSETS = {12, 18, 24, 30};
+
+    private final int exerciseId;
+    /** Site and application packed as {@code site << 16 | application}, with replacements at the same index. */
+    private final int[] mapFrom;
+    private final int[] mapTo;
+    private final boolean rebaseTimestamps;
+
+    private HeaderRewrite(int exerciseId, int[][] mapping, boolean rebaseTimestamps) {
+        this.exerciseId = exerciseId;
+        this.mapFrom = mapping[0];
+        this.mapTo = mapping[1];
+        this.rebaseTimestamps = rebaseTimestamps;
+    }
+
+    /**
+     * A rewrite that leaves PDUs unchanged.
+     *
+     * @return The rewrite
+     */
+    public static HeaderRewrite none() {
+        return NONE;
+    }
+
+    /**
+     * Parse a rewrite description.
+     *
+     * @param description Comma-separated {@code key=value} pairs, or {@code none}
+     * @return The rewrite
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static HeaderRewrite parse(String description) {
+        if (description.trim().equalsIgnoreCase("none")) {
+            return NONE;
+        }
+        KeyValues values = KeyValues.parse(description, "rewrite", "exercise", "map", "timestamps");
+        HeaderRewrite rewrite = new HeaderRewrite(
+            values.get("exercise", HeaderRewrite::parseExerciseId, -1),
+            values.get("map", HeaderRewrite::parseMapping, NO_MAPPING),
+            values.getChoice("timestamps", "now", "original", false));
+        return rewrite.changesNothing() ? NONE : rewrite;
+    }
+
+    private static int parseExerciseId(String value) {
+        int exerciseId = Integer.parseInt(value);
+        if (exerciseId < 1 || exerciseId > 0xFF) {
+            throw new IllegalArgumentException("Exercise ID must be between 1 and 255: " + value);
+        }
+        return exerciseId;
+    }
+
+    /**
+     * Parse {@code site:app>site:app} pairs joined with {@code +} into the packed sites and
+     * applications to replace, and their replacements.
+     */
+    private static int[][] parseMapping(String value) {
+        String[] mappings = value.split("\\+");
+        int[][] mapping = {new int[mappings.length], new int[mappings.length]};
+        for (int i = 0; i < mappings.length; i++) {
+            String[] sides = mappings[i].split(">");
+            if (sides.length != 2) {
+                throw new IllegalArgumentException("Expected site:app>site:app: " + mappings[i]);
+            }
+            mapping[0][i] = parseSiteApplication(sides[0]);
+            mapping[1][i] = parseSiteApplication(sides[1]);
+        }
+        return mapping;
+    }
+
+    private static int parseSiteApplication(String value) {
+        String[] parts = value.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected site:application: " + value.trim());
+        }
+        int site = Integer.parseInt(parts[0].trim());
+        int application = Integer.parseInt(parts[1].trim());
+        if (site < 0 || site > 0xFFFF || application < 0 || application > 0xFFFF) {
+            throw new IllegalArgumentException("Site and application must be between 0 and 65535: " + value.trim());
+        }
+        return (site << 16) | application;
+    }
+
+    private boolean changesNothing() {
+        return exerciseId < 0 && mapFrom.length == 0 && !rebaseTimestamps;
+    }
+
+    /**
+     * Check if the rewrite changes timestamps, and so needs the send time.
+     *
+     * @return true if timestamps are rebased to the send time
+     */
+    public boolean rebasesTimestamps() {
+        return rebaseTimestamps;
+    }
+
+    /**
+     * Rewrite a PDU in place.
+     *
+     * @param data The encoded PDU
+     * @param length The length of the PDU in {@code data}
+     * @param sendEpochNanos When the PDU is sent, in nanoseconds since the epoch;
+     *        only used if timestamps are rebased
+     */
+    public void apply(byte[] data, int length, long sendEpochNanos) {
+        if (length < PduCodec.HEADER_SIZE) {
+            return;
+        }
+        if (exerciseId >= 0) {
+            data[EXERCISE_ID_OFFSET] = (byte) exerciseId;
+        }
+        if (rebaseTimestamps) {
+            int timestamp = PduCodec.disTimestamp(data);
+            // A zero timestamp means the sender does not fill it in
+            if (timestamp != 0) {
+                PduBytes.putInt(data, TIMESTAMP_OFFSET,
+                    PduCodec.toDisTimestamp(sendEpochNanos, PduCodec.isAbsoluteTimestamp(timestamp)));
+            }
+        }
+        if (mapFrom.length > 0) {
+            switch (data[2] & 0xFF) {
+                case PduCodec.PDU_TYPE_ENTITY_STATE:
+                    remap(data, length, ENTITY_STATE_ID_OFFSETS);
+                    break;
+                case PduCodec.PDU_TYPE_FIRE:
+                case PduCodec.PDU_TYPE_DETONATION:
+                    remap(data, length, WEAPON_EVENT_ID_OFFSETS);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void remap(byte[] data, int length, int[] offsets) {
+        for (int offset : offsets) {
+            if (offset + 4 > length) {
+                return;
+            }
+            int siteApplication = PduBytes.getInt(data, offset);
+            for (int i = 0; i < mapFrom.length; i++) {
+                if (mapFrom[i] == siteApplication) {
+                    PduBytes.putInt(data, offset, mapTo[i]);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the description in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        if (exerciseId >= 0) {
+            description.append("exercise=").append(exerciseId);
+        }
+        for (int i = 0; i < mapFrom.length; i++) {
+            description.append(i == 0 ? (description.length() > 0 ? ",map=" : "map=") : "+")
+                .append(mapFrom[i] >>> 16).append(':').append(mapFrom[i] & 0xFFFF).append('>')
+                .append(mapTo[i] >>> 16).append(':').append(mapTo[i] & 0xFFFF);
+        }
+        if (rebaseTimestamps) {
+            description.append(description.length() > 0 ? "," : "").append("timestamps=now");
+        }
+        return description.length() > 0 ? description.toString() : "none";
+    }
+}
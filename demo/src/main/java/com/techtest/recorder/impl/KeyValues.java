@@ -0,0 +1,111 @@
+package com.techtest.recorder.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The comma-separated {@code key=value} pairs that replay rewrites, filters and loops and load
+ * scenarios are written in, for example {@code count=0,gap=5000}. Keys are case-insensitive and
+ * a key given twice takes its last value; lists inside a value are joined with {@code +}.
+ */
+public final class KeyValues {
+    private final Map<String, String> values;
+
+    private KeyValues(Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * Parse a description.
+     *
+     * @param description Comma-separated {@code key=value} pairs
+     * @param kind What the description describes, used in error messages
+     * @param keys The supported keys, in lower case
+     * @return The pairs
+     * @throws IllegalArgumentException If a pair has no value or a key is not supported
+     */
+    public static KeyValues parse(String description, String kind, String... keys) {
+        Set<String> supported = Set.of(keys);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String pair : description.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + pair.trim());
+            }
+            String key = pair.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+            if (!supported.contains(key)) {
+                throw new IllegalArgumentException("Unknown " + kind + " key: " + key);
+            }
+            values.put(key, pair.substring(equals + 1).trim());
+        }
+        return new KeyValues(values);
+    }
+
+    /**
+     * Check if a key was given.
+     *
+     * @param key The key
+     * @return true if the description has a value for the key
+     */
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Get the value of a key converted by a parser.
+     *
+     * @param key The key
+     * @param parser Converts and checks the value; number format errors are reported with the key
+     * @param defaultValue The value if the key was not given
+     * @return The converted value
+     * @throws IllegalArgumentException If the parser rejects the value
+     */
+    public <T> T get(String key, Function<String, T> parser, T defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return get(key, Integer::parseInt, defaultValue);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return get(key, Long::parseLong, defaultValue);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return get(key, Double::parseDouble, defaultValue);
+    }
+
+    /**
+     * Get the value of a key that is one of two words.
+     *
+     * @param key The key
+     * @param whenTrue The word for true, e.g. {@code now}
+     * @param whenFalse The word for false, e.g. {@code original}
+     * @param defaultValue The value if the key was not given
+     * @return true if the value is {@code whenTrue}
+     * @throws IllegalArgumentException If the value is neither word
+     */
+    public boolean getChoice(String key, String whenTrue, String whenFalse, boolean defaultValue) {
+        return get(key, value -> {
+            if (!value.equalsIgnoreCase(whenTrue) && !value.equalsIgnoreCase(whenFalse)) {
+                throw new IllegalArgumentException("Expected " + whenTrue + " or " + whenFalse + " for " + key + ": " + value);
+            }
+            return value.equalsIgnoreCase(whenTrue);
+        }, defaultValue);
+    }
+}
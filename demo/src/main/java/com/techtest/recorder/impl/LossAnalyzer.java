@@ -0,0 +1,551 @@
+package com.techtest.recorder.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.interfaces.PduAnalyzer;
+import com.techtest.recorder.metrics.Counter;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.metrics.MetricsRegistry;
+import com.techtest.recorder.metrics.UdpProtocolStats;
+import com.techtest.recorder.metrics.UdpSocketStats;
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Analyzer that estimates how many PDUs were lost before they reached the recorder.
+ * <p>
+ * DIS PDUs carry no sequence numbers, so loss is inferred from heartbeats: each entity
+ * sends Entity State PDUs at a regular interval, and a gap of several intervals means
+ * updates were missed. The analyzer learns every entity's interval and its regularity,
+ * and only estimates loss for entities that send regularly; entities that update on
+ * dead-reckoning thresholds are tracked but not counted. If an entity keeps arriving late
+ * it is assumed to have changed its rate and the interval is learned again. Entities that
+ * stay silent for ten heartbeats are forgotten, so departed entities do not accumulate and
+ * an entity that reappears is learned afresh instead of counting its absence as loss.
+ * <p>
+ * Arrivals, estimated missed updates and heartbeat intervals are kept per sending site and
+ * application, in the metrics registry as {@code loss_pdus_received_total},
+ * {@code loss_estimated_missed_total} and {@code loss_heartbeat_interval_nanos}, labelled
+ * {@code sender="site:application"}. The kernel's drop counters for the recorder's socket
+ * and for UDP as a whole are read alongside, so a report tells loss inside this host
+ * (the socket overflowed) apart from loss upstream on the network or at the sender.
+ * <p>
+ * The receive thread only does the heartbeat bookkeeping. Kernel counters are sampled and
+ * reports logged on a separate daemon thread every few seconds, and only if anything was lost;
+ * {@link #close()} stops that thread.
+ */
+public class LossAnalyzer implements PduAnalyzer, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LossAnalyzer.class);
+    private static final long DEFAULT_REPORT_INTERVAL_NANOS = 5_000_000_000L;
+    /** Intervals an entity must send before its heartbeat is trusted. */
+    private static final int WARMUP_INTERVALS = 4;
+    /** An interval this many times the learned heartbeat counts as a gap. */
+    private static final double GAP_FACTOR = 1.5;
+    /** Entities whose mean deviation exceeds this fraction of the heartbeat are irregular. */
+    private static final double MAX_IRREGULARITY = 0.25;
+    /** Consecutive gaps after which the entity is assumed to have slowed down. */
+    private static final int RELEARN_GAPS = 3;
+    private static final int SMOOTHING = 8;
+    /** Heartbeats an entity may stay silent before it is forgotten. */
+    private static final int EXPIRY_HEARTBEATS = 10;
+    /** Heartbeat assumed for entities seen only once: the DIS default for Entity State PDUs. */
+    private static final long DEFAULT_HEARTBEAT_NANOS = 5_000_000_000L;
+    /** Time between scans of a sender's entities for silent ones. */
+    private static final long EXPIRY_SCAN_NANOS = 5_000_000_000L;
+
+    private final MetricsRegistry metrics;
+    private final int port;
+    private final Map<Integer, Sender> senders = new ConcurrentHashMap<>();
+    /** The receive thread's own index of {@link #senders}, looked up without boxing the key. */
+    private final IntMap<Sender> senderIndex = new IntMap<>();
+    private final ScheduledExecutorService reporter;
+    private volatile int generation;
+    private int indexGeneration;
+    private long startSocketDrops;
+    private long startReceiveBufferErrors;
+    private long lastReportNanos;
+    private long lastReportMissed;
+    private long lastReportSocketDrops;
+    private long lastReportReceiveBufferErrors;
+
+    /**
+     * Create a new LossAnalyzer that reports every five seconds.
+     *
+     * @param metrics The registry to create the loss metrics in, usually the recorder's
+     * @param port The port the recorder listens on, whose socket drop counter is read
+     */
+    public LossAnalyzer(MetricsRegistry metrics, int port) {
+        this(metrics, port, DEFAULT_REPORT_INTERVAL_NANOS);
+    }
+
+    /**
+     * Create a new LossAnalyzer.
+     *
+     * @param metrics The registry to create the loss metrics in, usually the recorder's
+     * @param port The port the recorder listens on, whose socket drop counter is read
+     * @param reportIntervalNanos The time between loss reports in the log
+     */
+    public LossAnalyzer(MetricsRegistry metrics, int port, long reportIntervalNanos) {
+        this.metrics = metrics;
+        this.port = port;
+        resetKernelCounters();
+        metrics.gauge("loss_kernel_udp_in_errors", () -> UdpProtocolStats.read().getInErrors());
+        metrics.gauge("loss_kernel_udp_rcvbuf_errors", () -> UdpProtocolStats.read().getReceiveBufferErrors());
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loss-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, reportIntervalNanos, reportIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void analyzePdu(RecordedPdu recordedPdu) {
+        // The first entity is the sender: the entity itself, or the firing entity
+        byte[] data = recordedPdu.getData();
+        int pduType;
+        int site;
+        int application;
+        int entity;
+        if (data != null) {
+            pduType = PduCodec.pduType(data);
+            if (!PduCodec.isSupported(pduType) || data.length < PduCodec.HEADER_SIZE + 6) {
+                return;
+            }
+            // Every supported PDU starts its body with that entity's ID
+            site = PduBytes.getUnsignedShort(data, PduCodec.HEADER_SIZE);
+            application = PduBytes.getUnsignedShort(data, PduCodec.HEADER_SIZE + 2);
+            entity = PduBytes.getUnsignedShort(data, PduCodec.HEADER_SIZE + 4);
+        } else {
+            List<EntityKey> entities = PduCodec.entitiesOf(recordedPdu.getPdu());
+            if (entities.isEmpty()) {
+                return;
+            }
+            pduType = recordedPdu.getPdu().getPduType();
+            site = entities.get(0).getSite();
+            application = entities.get(0).getApplication();
+            entity = entities.get(0).getEntity();
+        }
+        long now = recordedPdu.getReceiveNanos() != 0
+            ? recordedPdu.getReceiveNanos()
+            : recordedPdu.getTimestamp() * 1_000_000L;
+
+        int current = generation;
+        if (current != indexGeneration) {
+            senderIndex.clear();
+            indexGeneration = current;
+        }
+        int key = (site << 16) | application;
+        Sender sender = senderIndex.get(key);
+        if (sender == null) {
+            sender = senders.computeIfAbsent(key, k -> new Sender(site, application));
+            senderIndex.put(key, sender);
+        }
+        sender.received.increment();
+        if (pduType == PduCodec.PDU_TYPE_ENTITY_STATE) {
+            sender.heartbeat(entity, now);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Loss Analyzer";
+    }
+
+    /**
+     * Get the loss estimate of every sender seen, most missed updates first.
+     *
+     * @return The per-sender estimates
+     */
+    public List<SenderLoss> getSenders() {
+        List<SenderLoss> result = new ArrayList<>();
+        for (Sender sender : senders.values()) {
+            result.add(new SenderLoss(sender.site, sender.application, sender.entityCount,
+                sender.getReceived(), sender.getMissed(), sender.heartbeats.getMean() / 1_000_000.0));
+        }
+        result.sort(Comparator.comparingLong(SenderLoss::getEstimatedMissed).reversed());
+        return result;
+    }
+
+    /**
+     * Get the updates estimated missing across all senders.
+     *
+     * @return The estimated number of missed updates
+     */
+    public long getEstimatedMissed() {
+        long missed = 0;
+        for (Sender sender : senders.values()) {
+            missed += sender.getMissed();
+        }
+        return missed;
+    }
+
+    /**
+     * Get the datagrams the kernel dropped on the recorder's socket since the analyzer was created.
+     *
+     * @return The drop count, or -1 if unknown
+     */
+    public long getSocketDrops() {
+        long drops = UdpSocketStats.forPort(port).getDrops();
+        return drops < 0 ? -1 : Math.max(0, drops - startSocketDrops);
+    }
+
+    /**
+     * Get the datagrams the kernel dropped on full receive buffers of any UDP socket on this
+     * host since the analyzer was created.
+     *
+     * @return The drop count, or -1 if unknown
+     */
+    public long getReceiveBufferErrors() {
+        long errors = UdpProtocolStats.read().getReceiveBufferErrors();
+        return errors < 0 ? -1 : Math.max(0, errors - startReceiveBufferErrors);
+    }
+
+    /**
+     * Forget all senders and start counting kernel drops again.
+     */
+    public synchronized void reset() {
+        senders.clear();
+        generation++;
+        lastReportMissed = 0;
+        resetKernelCounters();
+    }
+
+    /**
+     * Stop the report thread. The estimates can still be read afterwards.
+     */
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+    }
+
+    private void resetKernelCounters() {
+        startSocketDrops = Math.max(0, UdpSocketStats.forPort(port).getDrops());
+        startReceiveBufferErrors = Math.max(0, UdpProtocolStats.read().getReceiveBufferErrors());
+        lastReportSocketDrops = startSocketDrops;
+        lastReportReceiveBufferErrors = startReceiveBufferErrors;
+        lastReportNanos = System.nanoTime();
+    }
+
+    /**
+     * Log the loss since the previous report, if there was any. Runs on the report thread.
+     */
+    private synchronized void report() {
+        long now = System.nanoTime();
+        long missed = getEstimatedMissed();
+        long socketDrops = UdpSocketStats.forPort(port).getDrops();
+        long bufferErrors = UdpProtocolStats.read().getReceiveBufferErrors();
+        long newMissed = missed - lastReportMissed;
+        long newSocketDrops = socketDrops < 0 ? 0 : socketDrops - lastReportSocketDrops;
+        long newBufferErrors = bufferErrors < 0 ? 0 : bufferErrors - lastReportReceiveBufferErrors;
+
+        if (newMissed > 0 || newSocketDrops > 0) {
+            String where;
+            if (newSocketDrops >= newMissed) {
+                where = "receive buffer overflow on this host";
+            } else if (newSocketDrops == 0) {
+                where = "loss upstream of this host";
+            } else {
+                where = "partly receive buffer overflow, partly upstream";
+            }
+            logger.warn("Loss in the last {} s: ~{} missed updates estimated from heartbeats, {} datagrams "
+                    + "dropped by the recorder socket, {} UDP receive buffer errors host-wide ({})",
+                (now - lastReportNanos) / 1_000_000_000L, newMissed, newSocketDrops, newBufferErrors, where);
+            for (SenderLoss sender : getSenders()) {
+                if (sender.getEstimatedMissed() == 0) {
+                    break;
+                }
+                logger.warn("  {}", sender);
+            }
+        }
+
+        lastReportNanos = now;
+        lastReportMissed = missed;
+        lastReportSocketDrops = Math.max(0, socketDrops);
+        lastReportReceiveBufferErrors = Math.max(0, bufferErrors);
+    }
+
+    /**
+     * Arrivals from one site and application. Updated only on the recorder's receive thread.
+     * The registry's counters outlive a {@link #reset()}, so counts are taken from where they stood
+     * when the sender was first seen.
+     */
+    private final class Sender {
+        final int site;
+        final int application;
+        final Counter received;
+        final Counter missed;
+        final Histogram heartbeats;
+        final IntMap<Heartbeat> entities = new IntMap<>();
+        final long receivedBase;
+        final long missedBase;
+        volatile int entityCount;
+        long nextExpiryScan;
+
+        Sender(int site, int application) {
+            this.site = site;
+            this.application = application;
+            String label = site + ":" + application;
+            received = metrics.counter("loss_pdus_received_total", "sender", label);
+            missed = metrics.counter("loss_estimated_missed_total", "sender", label);
+            heartbeats = metrics.histogram("loss_heartbeat_interval_nanos", "sender", label);
+            receivedBase = received.get();
+            missedBase = missed.get();
+        }
+
+        long getReceived() {
+            return received.get() - receivedBase;
+        }
+
+        long getMissed() {
+            return missed.get() - missedBase;
+        }
+
+        void heartbeat(int entity, long now) {
+            if (now - nextExpiryScan >= 0) {
+                entities.removeIf(heartbeat -> heartbeat.isSilent(now));
+                entityCount = entities.size();
+                nextExpiryScan = now + EXPIRY_SCAN_NANOS;
+            }
+            Heartbeat heartbeat = entities.get(entity);
+            if (heartbeat == null) {
+                entities.put(entity, new Heartbeat(now));
+                entityCount = entities.size();
+                return;
+            }
+            long interval = now - heartbeat.lastArrival;
+            heartbeat.lastArrival = now;
+            if (interval <= 0) {
+                return;
+            }
+            long missedUpdates = heartbeat.update(interval);
+            if (missedUpdates > 0) {
+                missed.add(missedUpdates);
+            } else {
+                heartbeats.record(interval);
+            }
+        }
+    }
+
+    /**
+     * The learned heartbeat of one entity.
+     */
+    private static final class Heartbeat {
+        long lastArrival;
+        double interval;
+        double deviation;
+        int samples;
+        int consecutiveGaps;
+
+        Heartbeat(long arrival) {
+            this.lastArrival = arrival;
+        }
+
+        /**
+         * Check if the entity has missed so many heartbeats that it has probably left.
+         *
+         * @param now The current time in nanoseconds
+         * @return true if the entity should be forgotten
+         */
+        boolean isSilent(long now) {
+            double heartbeat = samples > 0 ? interval : DEFAULT_HEARTBEAT_NANOS;
+            return now - lastArrival > heartbeat * EXPIRY_HEARTBEATS;
+        }
+
+        /**
+         * Add an observed interval.
+         *
+         * @param observed The time since the previous update in nanoseconds
+         * @return The number of updates estimated missing in the interval
+         */
+        long update(long observed) {
+            if (samples < WARMUP_INTERVALS) {
+                learn(observed, samples == 0);
+                return 0;
+            }
+            if (observed < interval * GAP_FACTOR) {
+                consecutiveGaps = 0;
+                learn(observed, false);
+                return 0;
+            }
+            if (++consecutiveGaps >= RELEARN_GAPS) {
+                // Late every time: the entity has slowed down rather than lost updates
+                samples = 0;
+                consecutiveGaps = 0;
+                learn(observed, true);
+                return 0;
+            }
+            if (deviation > interval * MAX_IRREGULARITY) {
+                return 0;
+            }
+            return Math.round(observed / interval) - 1;
+        }
+
+        private void learn(long observed, boolean first) {
+            if (first) {
+                interval = observed;
+                deviation = 0;
+            } else {
+                deviation += (Math.abs(observed - interval) - deviation) / SMOOTHING;
+                interval += (observed - interval) / SMOOTHING;
+            }
+            samples++;
+        }
+    }
+
+    /**
+     * Open-addressing map from int keys, avoiding a boxed Integer per lookup. Not thread-safe.
+     */
+    private static final class IntMap<V> {
+        private int[] keys = new int[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        V get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return (V) values[slot];
+                }
+            }
+            return null;
+        }
+
+        void put(int key, V value) {
+            if ((size + 1) * 2 > keys.length) {
+                rebuild(keys.length * 2, v -> false);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        /**
+         * Remove the entries whose value matches, by rebuilding the table from the others.
+         *
+         * @param filter The values to remove
+         */
+        void removeIf(Predicate<V> filter) {
+            rebuild(keys.length, filter);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void rebuild(int length, Predicate<V> filter) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[length];
+            values = new Object[length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null && !filter.test((V) oldValues[i])) {
+                    put(oldKeys[i], (V) oldValues[i]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            key *= 0x9E3779B9;
+            return key ^ (key >>> 16);
+        }
+    }
+
+    /**
+     * Loss estimate of one sending site and application.
+     */
+    public static final class SenderLoss {
+        private final int site;
+        private final int application;
+        private final int entityCount;
+        private final long received;
+        private final long estimatedMissed;
+        private final double meanHeartbeatMillis;
+
+        SenderLoss(int site, int application, int entityCount, long received, long estimatedMissed,
+                   double meanHeartbeatMillis) {
+            this.site = site;
+            this.application = application;
+            this.entityCount = entityCount;
+            this.received = received;
+            this.estimatedMissed = estimatedMissed;
+            this.meanHeartbeatMillis = meanHeartbeatMillis;
+        }
+
+        public int getSite() {
+            return site;
+        }
+
+        public int getApplication() {
+            return application;
+        }
+
+        public int getEntityCount() {
+            return entityCount;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        public long getEstimatedMissed() {
+            return estimatedMissed;
+        }
+
+        /**
+         * Get the mean heartbeat interval of the sender's entities, excluding gaps.
+         *
+         * @return The mean interval in milliseconds, or 0 if no heartbeat was seen
+         */
+        public double getMeanHeartbeatMillis() {
+            return meanHeartbeatMillis;
+        }
+
+        /**
+         * Get the estimated fraction of the sender's PDUs that were lost.
+         *
+         * @return The loss ratio between 0 and 1
+         */
+        public double getLossRatio() {
+            long expected = received + estimatedMissed;
+            return expected == 0 ? 0 : (double) estimatedMissed / expected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("site %d app %d: %d entities, %d received, ~%d missed (%.2f%%), heartbeat %.1f ms",
+                site, application, entityCount, received, estimatedMissed, getLossRatio() * 100,
+                meanHeartbeatMillis);
+        }
+    }
+}
@@ -1,41 +1,345 @@
 package com.techtest.recorder.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.techtest.recorder.interfaces.PduCursor;
 import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
 import com.techtest.recorder.model.RecordedPdu;
 
+import edu.nps.moves.dis.Pdu;
+
 /**
  * In-memory implementation of PduStorage.
  * Stores PDUs in memory, organized by exercise ID.
+ * <p>
+ * Each exercise appends into fixed-size chunks and publishes its record count through a
+ * volatile high-water mark after every append. Readers (the replayer, the GUI, queries)
+ * never lock: they read the high-water mark and then only look at records below it, so
+ * an exercise can be replayed or queried while it is still being recorded. Appends are
+ * serialized per exercise; in normal operation the recorder thread is the only writer.
+ * <p>
+ * Live recordings arrive in timestamp order, so records are kept in arrival order and
+ * served without sorting. If a PDU ever arrives with an earlier timestamp than its
+ * predecessor (for example an imported capture that is out of order), the exercise is
+ * marked unordered and readers sort their snapshot instead. Cursors on an unordered exercise
+ * serve a sorted snapshot of the records present when they were opened, then follow later
+ * appends in arrival order.
  */
 public class MemoryPduStorage implements PduStorage {
-    private final Map<String, List<RecordedPdu>> storage = new HashMap<>();
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final Comparator<RecordedPdu> BY_TIMESTAMP = Comparator.comparingLong(RecordedPdu::getTimestampNanos);
+
+    private final Map<String, ExerciseLog> storage = new ConcurrentHashMap<>();
+    private final ExerciseCatalog catalog = new ExerciseCatalog();
 
     @Override
     public void storePdu(RecordedPdu recordedPdu) {
         String exerciseId = recordedPdu.getExerciseId();
-        storage.computeIfAbsent(exerciseId, k -> new ArrayList<>()).add(recordedPdu);
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            log = storage.computeIfAbsent(exerciseId, k -> new ExerciseLog());
+        }
+        while (!log.append(recordedPdu, catalog)) {
+            // Replaced by a trimmed log meanwhile
+            log = storage.computeIfAbsent(exerciseId, k -> new ExerciseLog());
+        }
     }
 
     @Override
     public List<RecordedPdu> getPdusForExercise(String exerciseId) {
-        return storage.getOrDefault(exerciseId, new ArrayList<>()).stream()
-                .sorted((pdu1, pdu2) -> Long.compare(pdu1.getTimestamp(), pdu2.getTimestamp()))
-                .collect(Collectors.toList());
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+
+        return snapshot(log, log.size);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId) {
+        ExerciseLog log = storage.get(exerciseId);
+        return new MemoryCursor(log != null ? log : new ExerciseLog(), null);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId, PduQuery query) {
+        ExerciseLog log = storage.get(exerciseId);
+        return new MemoryCursor(log != null ? log : new ExerciseLog(), query);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime) {
+        return queryPdus(exerciseId, PduQuery.timeRange(startTime, endTime));
+    }
+
+    @Override
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+
+        // Read the high-water mark first so the ordered flag covers every record below it
+        int size = log.size;
+        boolean ordered = log.ordered;
+        List<RecordedPdu> result = new ArrayList<>();
+        for (int ordinal : log.index.candidates(query, size)) {
+            RecordedPdu recordedPdu = log.get(ordinal);
+            if (matches(query, recordedPdu)) {
+                result.add(recordedPdu);
+            }
+        }
+        if (!ordered) {
+            result.sort(BY_TIMESTAMP);
+        }
+        return result;
     }
 
     @Override
     public void clearExercise(String exerciseId) {
         storage.remove(exerciseId);
+        catalog.remove(exerciseId);
     }
 
     @Override
     public List<String> getExerciseIds() {
         return new ArrayList<>(storage.keySet());
     }
+
+    @Override
+    public ExerciseSummary getExerciseSummary(String exerciseId) {
+        return catalog.getSummary(exerciseId);
+    }
+
+    @Override
+    public List<ExerciseSummary> getExerciseSummaries() {
+        return catalog.getSummaries();
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to persist
+    }
+
+    /**
+     * Remove the oldest PDUs of an exercise, in the order a cursor serves them. The remaining
+     * PDUs are copied into a new log without blocking writers; only the PDUs stored during the
+     * copy are copied while appends wait. Cursors opened before the trim end at the old log.
+     *
+     * @param exerciseId The exercise ID
+     * @param dropBytes The size of the oldest PDUs to remove
+     * @return The size of the removed PDUs in bytes
+     */
+    long trimOldest(String exerciseId, long dropBytes) {
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            return 0;
+        }
+
+        // Build the trimmed log with its own catalog entry, so the old log keeps its counters meanwhile
+        ExerciseCatalog trimmedCatalog = new ExerciseCatalog();
+        trimmedCatalog.reset(exerciseId);
+        ExerciseLog trimmed = new ExerciseLog();
+        long dropped = 0;
+        int size = log.size;
+        for (RecordedPdu recordedPdu : snapshot(log, size)) {
+            if (dropped < dropBytes) {
+                dropped += byteSize(recordedPdu);
+                continue;
+            }
+            trimmed.append(recordedPdu, trimmedCatalog);
+        }
+
+        synchronized (log) {
+            for (int i = size; i < log.size; i++) {
+                trimmed.append(log.get(i), trimmedCatalog);
+            }
+            if (!storage.replace(exerciseId, log, trimmed)) {
+                // Cleared while it was being copied
+                return 0;
+            }
+            log.retired = true;
+            catalog.adopt(exerciseId, trimmedCatalog);
+        }
+        return dropped;
+    }
+
+    /**
+     * Get the records below a high-water mark, sorted by timestamp.
+     */
+    private static List<RecordedPdu> snapshot(ExerciseLog log, int size) {
+        // Read the ordered flag after the high-water mark so it covers every record below it
+        boolean ordered = log.ordered;
+        List<RecordedPdu> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(log.get(i));
+        }
+        if (!ordered) {
+            result.sort(BY_TIMESTAMP);
+        }
+        return result;
+    }
+
+    private static int byteSize(RecordedPdu recordedPdu) {
+        byte[] data = recordedPdu.getData();
+        return data != null ? data.length : recordedPdu.getPdu().getMarshalledSize();
+    }
+
+    private static boolean matches(PduQuery query, RecordedPdu recordedPdu) {
+        return query.matchesTime(recordedPdu.getTimestamp())
+            && query.matchesType(recordedPdu.getPdu().getPduType())
+            && (!query.hasRecordFilter() || query.matchesRecord(PduCodec.toBytes(recordedPdu)));
+    }
+
+    /**
+     * The PDUs of one exercise in arrival order, with their index.
+     * Everything written by {@link #append} before the volatile store to {@code size}
+     * is visible to a reader that has read {@code size}.
+     */
+    private static final class ExerciseLog {
+        private volatile RecordedPdu[][] chunks = new RecordedPdu[16][];
+        private volatile int size;
+        private volatile boolean ordered = true;
+        private long lastTimestampNanos = Long.MIN_VALUE;
+        private final ExerciseIndex index = new ExerciseIndex();
+        /** Set once the log has been replaced by a trimmed copy; appends must go to the new log. */
+        private boolean retired;
+
+        /**
+         * Append a record.
+         *
+         * @return false if the log was replaced and the record was not appended
+         */
+        synchronized boolean append(RecordedPdu recordedPdu, ExerciseCatalog catalog) {
+            if (retired) {
+                return false;
+            }
+            int count = size;
+            int chunk = count >>> CHUNK_SHIFT;
+
+            RecordedPdu[][] directory = chunks;
+            if (chunk == directory.length) {
+                directory = Arrays.copyOf(directory, directory.length * 2);
+                chunks = directory;
+            }
+            if (directory[chunk] == null) {
+                directory[chunk] = new RecordedPdu[CHUNK_SIZE];
+            }
+            directory[chunk][count & CHUNK_MASK] = recordedPdu;
+
+            long timestampNanos = recordedPdu.getTimestampNanos();
+            if (timestampNanos < lastTimestampNanos) {
+                ordered = false;
+            } else {
+                lastTimestampNanos = timestampNanos;
+            }
+            long timestamp = recordedPdu.getTimestamp();
+
+            Pdu pdu = recordedPdu.getPdu();
+            List<EntityKey> entities = PduCodec.entitiesOf(pdu);
+            index.add(timestamp, pdu.getPduType(), entities);
+            catalog.record(recordedPdu.getExerciseId(), timestamp, pdu.getPduType(), byteSize(recordedPdu), entities);
+
+            // Publish the record
+            size = count + 1;
+            return true;
+        }
+
+        RecordedPdu get(int ordinal) {
+            return chunks[ordinal >>> CHUNK_SHIFT][ordinal & CHUNK_MASK];
+        }
+    }
+
+    /**
+     * Cursor that walks an exercise log up to its current high-water mark, either every
+     * record or only the index candidates of a query. If the log is unordered when the cursor
+     * is opened, the records below the high-water mark are served from a sorted snapshot first.
+     */
+    private static final class MemoryCursor implements PduCursor {
+        private final ExerciseLog log;
+        private final PduQuery query;
+        private final CandidateScan scan;
+        private final List<RecordedPdu> sorted;
+        private int sortedPosition;
+        private int position;
+        private int pending = -1;
+
+        MemoryCursor(ExerciseLog log, PduQuery query) {
+            this.log = log;
+            this.query = query;
+            // Read the high-water mark first so the ordered flag covers every record below it
+            int size = log.size;
+            if (log.ordered) {
+                sorted = null;
+            } else {
+                sorted = new ArrayList<>(query == null ? size : 16);
+                if (query == null) {
+                    for (int i = 0; i < size; i++) {
+                        sorted.add(log.get(i));
+                    }
+                } else {
+                    for (int ordinal : log.index.candidates(query, size)) {
+                        RecordedPdu recordedPdu = log.get(ordinal);
+                        if (matches(query, recordedPdu)) {
+                            sorted.add(recordedPdu);
+                        }
+                    }
+                }
+                sorted.sort(BY_TIMESTAMP);
+                position = size;
+            }
+            this.scan = query != null ? new CandidateScan(log.index, query, position) : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return true;
+            }
+            if (scan == null) {
+                return position < log.size;
+            }
+            while (pending < 0) {
+                int ordinal = scan.next(log.size);
+                if (ordinal < 0) {
+                    return false;
+                }
+                if (matches(query, log.get(ordinal))) {
+                    pending = ordinal;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public RecordedPdu next() {
+            if (!hasNext()) {
+                return null;
+            }
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return sorted.get(sortedPosition++);
+            }
+            if (scan == null) {
+                return log.get(position++);
+            }
+            RecordedPdu recordedPdu = log.get(pending);
+            pending = -1;
+            return recordedPdu;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
 }
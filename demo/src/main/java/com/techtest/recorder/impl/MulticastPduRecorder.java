@@ -1,18 +1,27 @@
 package com.techtest.recorder.impl;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.techtest.recorder.interfaces.PduRecorder;
+import com.techtest.recorder.jfr.AnalyzerInvocationEvent;
+import com.techtest.recorder.jfr.ReceiveBatchEvent;
+import com.techtest.recorder.jfr.RecordingSessionEvent;
+import com.techtest.recorder.metrics.Counter;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.metrics.MetricsRegistry;
+import com.techtest.recorder.metrics.UdpSocketStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,25 +30,76 @@ import com.techtest.recorder.model.RecordedPdu;
 import com.techtest.recorder.interfaces.PduStorage;
 
 import edu.nps.moves.dis.Pdu;
-import edu.nps.moves.disenum.PduType;
 
 /**
  * Implementation of PduRecorder that uses a multicast socket to record PDUs.
+ * <p>
+ * The receive path is instrumented with counters and histograms in a {@link MetricsRegistry}:
+ * <ul>
+ * <li>{@code recorder_datagrams_received_total}, {@code recorder_bytes_received_total} and
+ *     {@code recorder_pdus_recorded_total}</li>
+ * <li>{@code recorder_parse_failures_total} by {@code reason}: truncated, bad_version or decode_error</li>
+ * <li>{@code recorder_unsupported_pdus_total} by PDU {@code type}</li>
+ * <li>{@code recorder_receive_errors_total}, {@code recorder_processing_errors_total} and
+ *     {@code recorder_analyzer_errors_total}</li>
+ * <li>{@code recorder_storage_latency_nanos} and {@code recorder_analyzer_latency_nanos} by
+ *     {@code analyzer}</li>
+ * <li>gauges {@code recorder_recording}, and {@code recorder_socket_receive_queue_bytes} and
+ *     {@code recorder_socket_drops} from the kernel's socket table (Linux only). PDUs are processed
+ *     on the receive thread, so the socket receive queue is the recorder's only queue.</li>
+ * </ul>
+ * PDUs are timestamped by reading {@link System#nanoTime()} as soon as the receive call returns,
+ * before the datagram is copied or decoded, and converting it to wall-clock time with a
+ * {@link ReceiveClock}. The JDK does not expose the kernel's own receive timestamps
+ * ({@code SO_TIMESTAMPNS}), so this is the closest reading available.
+ * <p>
+ * When JDK Flight Recorder is running, the recorder also emits {@link RecordingSessionEvent},
+ * {@link ReceiveBatchEvent} and {@link AnalyzerInvocationEvent}. With the events disabled the
+ * receive path only checks a field per datagram.
  */
 public class MulticastPduRecorder implements PduRecorder {
     private static final Logger logger = LoggerFactory.getLogger(MulticastPduRecorder.class);
     private static final String DEFAULT_MULTICAST_GROUP = "239.1.2.3";
     private static final int DEFAULT_PORT = 3000;
     private static final int BUFFER_SIZE = 8192;
+    /** Name of the receive thread; short enough to be shown whole by {@code top} and {@code ps}. */
+    public static final String RECEIVE_THREAD_NAME = "dis-recorder-rx";
+    private static final int BATCH_DATAGRAMS = 1024;
+    private static final long BATCH_NANOS = 100_000_000L;
+    /** How long stopRecording waits for the receive thread to store its last PDU. */
+    private static final long STOP_TIMEOUT_SECONDS = 5;
 
     private final PduStorage storage;
     private final String multicastGroup;
     private final int port;
     private MulticastSocket socket;
     private final AtomicBoolean recording = new AtomicBoolean(false);
-    private String currentExerciseId;
+    private volatile String currentExerciseId;
+    private volatile ReceiveClock clock = ReceiveClock.anchor();
     private ExecutorService executorService;
-    private final List<PduAnalyzer> analyzers = new CopyOnWriteArrayList<>();
+    private int receiveBufferSize;
+    private int datagramBufferSize = BUFFER_SIZE;
+    private String networkInterface;
+    private final List<InstrumentedAnalyzer> analyzers = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry metrics;
+    private final Counter datagramsReceived;
+    private final Counter bytesReceived;
+    private final Counter pdusRecorded;
+    private final Counter receiveErrors;
+    private final Counter processingErrors;
+    private final Counter analyzerErrors;
+    private final Counter[] parseFailures = new Counter[ParseFailure.values().length];
+    private final Counter[] unsupportedTypes = new Counter[256];
+    private final Histogram storageLatency;
+    private RecordingSessionEvent session;
+    private long sessionStartDatagrams;
+    private long sessionStartPdus;
+    private long sessionStartBytes;
+    // Used only by the receive thread; null while batch events are disabled
+    private ReceiveBatchEvent batch;
+    private boolean analyzerEventsEnabled;
+    private int batchDatagrams;
+    private long batchStartNanos;
 
     /**
      * Create a new MulticastPduRecorder with default multicast group and port.
@@ -58,21 +118,93 @@ public class MulticastPduRecorder implements PduRecorder {
      * @param port The port to listen on
      */
     public MulticastPduRecorder(PduStorage storage, String multicastGroup, int port) {
+        this(storage, multicastGroup, port, new MetricsRegistry());
+    }
+
+    /**
+     * Create a new MulticastPduRecorder that reports into an existing metrics registry.
+     * 
+     * @param storage The storage to use for recorded PDUs
+     * @param multicastGroup The multicast group to join
+     * @param port The port to listen on
+     * @param metrics The registry to create the recorder's metrics in
+     */
+    public MulticastPduRecorder(PduStorage storage, String multicastGroup, int port, MetricsRegistry metrics) {
         this.storage = storage;
         this.multicastGroup = multicastGroup;
         this.port = port;
+        this.metrics = metrics;
+        datagramsReceived = metrics.counter("recorder_datagrams_received_total");
+        bytesReceived = metrics.counter("recorder_bytes_received_total");
+        pdusRecorded = metrics.counter("recorder_pdus_recorded_total");
+        receiveErrors = metrics.counter("recorder_receive_errors_total");
+        processingErrors = metrics.counter("recorder_processing_errors_total");
+        analyzerErrors = metrics.counter("recorder_analyzer_errors_total");
+        for (ParseFailure failure : ParseFailure.values()) {
+            parseFailures[failure.ordinal()] = metrics.counter("recorder_parse_failures_total", "reason", failure.label);
+        }
+        storageLatency = metrics.histogram("recorder_storage_latency_nanos");
+        metrics.gauge("recorder_recording", () -> recording.get() ? 1 : 0);
+        metrics.gauge("recorder_socket_receive_queue_bytes", () -> UdpSocketStats.forPort(port).getReceiveQueueBytes());
+        metrics.gauge("recorder_socket_drops", () -> UdpSocketStats.forPort(port).getDrops());
     }
 
+    /**
+     * Set the socket receive buffer (SO_RCVBUF) requested when recording starts. The kernel may
+     * grant less than requested (on Linux, up to {@code net.core.rmem_max}); a warning is logged if so.
+     * 
+     * @param bytes The requested size in bytes, or 0 for the system default
+     */
+    public void setReceiveBufferSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Receive buffer size cannot be negative: " + bytes);
+        }
+        this.receiveBufferSize = bytes;
+    }
+    
+    /**
+     * Set the largest datagram the recorder accepts; longer datagrams are truncated.
+     * Takes effect the next time recording starts.
+     * 
+     * @param bytes The datagram buffer size in bytes
+     */
+    public void setDatagramBufferSize(int bytes) {
+        if (bytes < PduCodec.HEADER_SIZE || bytes > 65535) {
+            throw new IllegalArgumentException("Datagram buffer size must be between "
+                + PduCodec.HEADER_SIZE + " and 65535: " + bytes);
+        }
+        this.datagramBufferSize = bytes;
+    }
+    
+    /**
+     * Set the network interface to join the multicast group on. Takes effect the next time
+     * recording starts.
+     * 
+     * @param name The interface name, e.g. {@code eth1}, or null for the system default
+     */
+    public void setNetworkInterface(String name) {
+        this.networkInterface = name;
+    }
+    
     @Override
     public void startRecording(String exerciseId) {
         if (recording.compareAndSet(false, true)) {
             this.currentExerciseId = exerciseId;
             try {
                 socket = new MulticastSocket(port);
-                InetAddress group = InetAddress.getByName(multicastGroup);
-                socket.joinGroup(group);
+                if (receiveBufferSize > 0) {
+                    socket.setReceiveBufferSize(receiveBufferSize);
+                    int granted = socket.getReceiveBufferSize();
+                    if (granted < receiveBufferSize) {
+                        logger.warn("Requested a {} byte receive buffer but the system granted {}",
+                            receiveBufferSize, granted);
+                    }
+                }
+                joinGroup();
                 
-                executorService = Executors.newSingleThreadExecutor();
+                anchorClock();
+                beginSession();
+                executorService = Executors.newSingleThreadExecutor(task -> new Thread(task, RECEIVE_THREAD_NAME));
                 executorService.submit(this::receiveLoop);
                 
                 logger.info("Started recording exercise: {} on {}:{}", 
@@ -80,6 +212,10 @@ public class MulticastPduRecorder implements PduRecorder {
             } catch (IOException e) {
                 recording.set(false);
                 currentExerciseId = null;
+                if (socket != null) {
+                    socket.close();
+                    socket = null;
+                }
                 logger.error("Failed to start recording: {}", e.getMessage(), e);
                 throw new RuntimeException("Failed to start recording", e);
             }
@@ -91,27 +227,93 @@ public class MulticastPduRecorder implements PduRecorder {
     @Override
     public void stopRecording() {
         if (recording.compareAndSet(true, false)) {
-            if (executorService != null) {
-                executorService.shutdownNow();
-                executorService = null;
-            }
-            
+            // Closing the socket unblocks receive(); the receive thread is not interrupted, since an
+            // interrupt during a storage write would close the storage's file channel
             if (socket != null) {
                 try {
-                    InetAddress group = InetAddress.getByName(multicastGroup);
-                    socket.leaveGroup(group);
+                    leaveGroup();
                 } catch (IOException e) {
                     logger.warn("Error leaving multicast group: {}", e.getMessage());
                 }
                 socket.close();
-                socket = null;
             }
             
+            if (executorService != null) {
+                executorService.shutdown();
+                try {
+                    if (!executorService.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        logger.warn("Receive thread did not stop within {} s", STOP_TIMEOUT_SECONDS);
+                        executorService.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                executorService = null;
+            }
+            socket = null;
+            
+            // The receive thread has stored its last PDU, so the flush covers the whole session
+            try {
+                storage.flush();
+            } catch (Exception e) {
+                logger.error("Error flushing storage: {}", e.getMessage(), e);
+            }
+            
+            endSession();
             logger.info("Stopped recording exercise: {}", currentExerciseId);
             currentExerciseId = null;
         }
     }
 
+    @Override
+    public void switchExercise(String exerciseId) {
+        if (!recording.get()) {
+            throw new IllegalStateException("Not recording");
+        }
+        try {
+            storage.flush();
+        } catch (Exception e) {
+            logger.error("Error flushing storage: {}", e.getMessage(), e);
+        }
+        String previous = currentExerciseId;
+        endSession();
+        anchorClock();
+        currentExerciseId = exerciseId;
+        beginSession();
+        logger.info("Switched recording from exercise {} to {}", previous, exerciseId);
+    }
+    
+    private void anchorClock() {
+        clock = ReceiveClock.anchor();
+        logger.debug("Anchored receive clock to the wall clock within {} ns", clock.getUncertaintyNanos());
+    }
+    
+    private void joinGroup() throws IOException {
+        InetAddress group = InetAddress.getByName(multicastGroup);
+        if (networkInterface == null) {
+            socket.joinGroup(group);
+        } else {
+            socket.joinGroup(new InetSocketAddress(group, port), findInterface());
+        }
+    }
+    
+    private void leaveGroup() throws IOException {
+        InetAddress group = InetAddress.getByName(multicastGroup);
+        if (networkInterface == null) {
+            socket.leaveGroup(group);
+        } else {
+            socket.leaveGroup(new InetSocketAddress(group, port), findInterface());
+        }
+    }
+    
+    private NetworkInterface findInterface() throws SocketException {
+        NetworkInterface result = NetworkInterface.getByName(networkInterface);
+        if (result == null) {
+            throw new SocketException("No such network interface: " + networkInterface);
+        }
+        return result;
+    }
+    
     @Override
     public boolean isRecording() {
         return recording.get();
@@ -125,64 +327,244 @@ public class MulticastPduRecorder implements PduRecorder {
     @Override
     public void addAnalyzer(PduAnalyzer analyzer) {
         if (analyzer != null) {
-            analyzers.add(analyzer);
+            analyzers.add(new InstrumentedAnalyzer(analyzer,
+                metrics.histogram("recorder_analyzer_latency_nanos", "analyzer", analyzer.getName())));
             logger.info("Added analyzer: {}", analyzer.getName());
         }
     }
     
     @Override
     public void removeAnalyzer(PduAnalyzer analyzer) {
-        if (analyzer != null && analyzers.remove(analyzer)) {
+        if (analyzer != null && analyzers.removeIf(entry -> entry.analyzer.equals(analyzer))) {
             logger.info("Removed analyzer: {}", analyzer.getName());
         }
     }
 
+    @Override
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     /**
      * Main receive loop that listens for PDUs on the multicast socket.
      */
     private void receiveLoop() {
-        byte[] buffer = new byte[BUFFER_SIZE];
+        MulticastSocket receiveSocket = socket;
+        byte[] buffer = new byte[datagramBufferSize];
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        beginBatch(System.nanoTime());
         
         while (recording.get() && !Thread.currentThread().isInterrupted()) {
             try {
-                socket.receive(packet);
+                long waitStart = batch != null ? System.nanoTime() : 0;
+                receiveSocket.receive(packet);
+                long receiveNanos = System.nanoTime();
+                
+                int length = packet.getLength();
+                datagramsReceived.increment();
+                bytesReceived.add(length);
+                if (batch != null) {
+                    batch.receiveWaitNanos += receiveNanos - waitStart;
+                    batch.datagrams++;
+                    batch.bytes += length;
+                }
                 
                 // Process the received packet
-                byte[] data = new byte[packet.getLength()];
-                System.arraycopy(packet.getData(), packet.getOffset(), data, 0, packet.getLength());
+                byte[] data = new byte[length];
+                System.arraycopy(packet.getData(), packet.getOffset(), data, 0, length);
                 
                 try {
-                    Pdu pdu = createPduFromData(data);
-                    if (pdu != null) {
-                        // Store PDU with current system time as timestamp
-                        RecordedPdu recordedPdu = new RecordedPdu(pdu, System.currentTimeMillis(), currentExerciseId);
-                        storage.storePdu(recordedPdu);
-                        
-                        // Run analyzers on the PDU
-                        for (PduAnalyzer analyzer : analyzers) {
-                            try {
-                                analyzer.analyzePdu(recordedPdu);
-                            } catch (Exception e) {
-                                logger.warn("Error in analyzer {}: {}", analyzer.getName(), e.getMessage());
-                            }
-                        }
-                        
-                        logger.debug("Recorded PDU type {} for exercise {}", 
-                            pdu.getClass().getSimpleName(), currentExerciseId);
-                    }
+                    processDatagram(data, receiveNanos);
                 } catch (Exception e) {
+                    processingErrors.increment();
                     logger.warn("Error processing PDU: {}", e.getMessage());
                 }
                 
+                if (++batchDatagrams >= BATCH_DATAGRAMS || receiveNanos - batchStartNanos >= BATCH_NANOS) {
+                    endBatch();
+                    beginBatch(receiveNanos);
+                }
+                
                 // Reset the packet for the next receive
                 packet.setLength(buffer.length);
             } catch (IOException e) {
-                if (!socket.isClosed() && recording.get()) {
+                if (receiveSocket.isClosed()) {
+                    break;
+                }
+                if (recording.get()) {
+                    receiveErrors.increment();
                     logger.error("Error receiving PDU: {}", e.getMessage());
                 }
             }
         }
+        endBatch();
+    }
+    
+    private void beginSession() {
+        session = new RecordingSessionEvent();
+        session.begin();
+        sessionStartDatagrams = datagramsReceived.get();
+        sessionStartPdus = pdusRecorded.get();
+        sessionStartBytes = bytesReceived.get();
+    }
+    
+    private void endSession() {
+        RecordingSessionEvent event = session;
+        session = null;
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.exerciseId = currentExerciseId;
+            event.multicastGroup = multicastGroup;
+            event.port = port;
+            event.datagrams = datagramsReceived.get() - sessionStartDatagrams;
+            event.pdus = pdusRecorded.get() - sessionStartPdus;
+            event.bytes = bytesReceived.get() - sessionStartBytes;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Start timing a batch of datagrams. Whether batch and analyzer events are enabled is
+     * checked once per batch, so a recording started later is picked up at the next batch.
+     * 
+     * @param now The current {@link System#nanoTime()}
+     */
+    private void beginBatch(long now) {
+        ReceiveBatchEvent event = new ReceiveBatchEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            event.exerciseId = currentExerciseId;
+            batch = event;
+        } else {
+            batch = null;
+        }
+        analyzerEventsEnabled = new AnalyzerInvocationEvent().isEnabled();
+        batchDatagrams = 0;
+        batchStartNanos = now;
+    }
+    
+    private void endBatch() {
+        if (batch != null && batch.datagrams > 0) {
+            batch.commit();
+        }
+        batch = null;
+    }
+    
+    /**
+     * Decode, store and analyze one received datagram.
+     * 
+     * @param data The datagram
+     * @param receiveNanos The {@link System#nanoTime()} at which it was received
+     */
+    private void processDatagram(byte[] data, long receiveNanos) {
+        ParseFailure failure = ParseFailure.check(data);
+        if (failure != null) {
+            parseFailures[failure.ordinal()].increment();
+            if (batch != null) {
+                batch.rejected++;
+            }
+            logger.debug("Dropped {} byte datagram: {}", data.length, failure.label);
+            return;
+        }
+        int pduType = PduCodec.pduType(data);
+        if (!PduCodec.isSupported(pduType)) {
+            unsupportedCounter(pduType).increment();
+            if (batch != null) {
+                batch.rejected++;
+            }
+            return;
+        }
+        
+        long decodeStart = batch != null ? System.nanoTime() : 0;
+        Pdu pdu = createPduFromData(data);
+        if (batch != null) {
+            batch.decodeNanos += System.nanoTime() - decodeStart;
+        }
+        if (pdu == null) {
+            parseFailures[ParseFailure.DECODE_ERROR.ordinal()].increment();
+            if (batch != null) {
+                batch.rejected++;
+            }
+            return;
+        }
+        
+        // Timestamp with the receive time rather than the time decoding finished
+        RecordedPdu recordedPdu = RecordedPdu.received(pdu, clock.toEpochNanos(receiveNanos), receiveNanos,
+            currentExerciseId, data);
+        long start = System.nanoTime();
+        storage.storePdu(recordedPdu);
+        long end = System.nanoTime();
+        long storeNanos = end - start;
+        storageLatency.record(storeNanos);
+        pdusRecorded.increment();
+        long analyzeStart = end;
+        
+        // Run analyzers on the PDU
+        for (InstrumentedAnalyzer entry : analyzers) {
+            start = end;
+            AnalyzerInvocationEvent event = analyzerEventsEnabled ? new AnalyzerInvocationEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            boolean failed = false;
+            try {
+                entry.analyzer.analyzePdu(recordedPdu);
+            } catch (Exception e) {
+                failed = true;
+                analyzerErrors.increment();
+                logger.warn("Error in analyzer {}: {}", entry.analyzer.getName(), e.getMessage());
+            }
+            end = System.nanoTime();
+            entry.latency.record(end - start);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.analyzer = entry.analyzer.getName();
+                    event.exerciseId = currentExerciseId;
+                    event.pduType = pduType;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+        
+        if (batch != null) {
+            batch.storeNanos += storeNanos;
+            batch.analyzeNanos += end - analyzeStart;
+            batch.pdus++;
+            countPduType(batch, pduType);
+        }
+        
+        logger.debug("Recorded PDU type {} for exercise {}", 
+            pdu.getClass().getSimpleName(), currentExerciseId);
+    }
+    
+    private static void countPduType(ReceiveBatchEvent event, int pduType) {
+        switch (pduType) {
+            case PduCodec.PDU_TYPE_ENTITY_STATE:
+                event.entityStatePdus++;
+                break;
+            case PduCodec.PDU_TYPE_FIRE:
+                event.firePdus++;
+                break;
+            case PduCodec.PDU_TYPE_DETONATION:
+                event.detonationPdus++;
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private Counter unsupportedCounter(int pduType) {
+        Counter counter = unsupportedTypes[pduType];
+        if (counter == null) {
+            counter = metrics.counter("recorder_unsupported_pdus_total", "type", Integer.toString(pduType));
+            unsupportedTypes[pduType] = counter;
+        }
+        return counter;
     }
     
     /**
@@ -192,48 +574,54 @@ public class MulticastPduRecorder implements PduRecorder {
      * @return The created PDU, or null if the data could not be parsed
      */
     private Pdu createPduFromData(byte[] data) {
-        if (data == null || data.length < 12) { // PDUs have at least a 12-byte header
-            return null;
+        return PduCodec.decode(data);
+    }
+    
+    /**
+     * An analyzer with the histogram its run time is recorded in.
+     */
+    private static final class InstrumentedAnalyzer {
+        private final PduAnalyzer analyzer;
+        private final Histogram latency;
+        
+        InstrumentedAnalyzer(PduAnalyzer analyzer, Histogram latency) {
+            this.analyzer = analyzer;
+            this.latency = latency;
         }
+    }
+    
+    /**
+     * Reasons a datagram is rejected before or during decoding.
+     */
+    private enum ParseFailure {
+        TRUNCATED("truncated"),
+        BAD_VERSION("bad_version"),
+        DECODE_ERROR("decode_error");
         
-        try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            DataInputStream dis = new DataInputStream(bais);
-            
-            // Read PDU header to determine type
-            dis.skipBytes(2); // Skip protocol version and exercise ID
-            int pduTypeValue = dis.readUnsignedByte();
-            
-            // Create appropriate PDU based on type
-            Pdu pdu = null;
-            PduType pduType = PduType.lookup[pduTypeValue];
-            
-            if (pduType != null) {
-                switch (pduType) {
-                    case ENTITY_STATE:
-                        pdu = new edu.nps.moves.dis.EntityStatePdu();
-                        break;
-                    case FIRE:
-                        pdu = new edu.nps.moves.dis.FirePdu();
-                        break;
-                    case DETONATION:
-                        pdu = new edu.nps.moves.dis.DetonationPdu();
-                        break;
-                    // Add more PDU types as needed
-                    default:
-                        logger.debug("Unsupported PDU type: {}", pduType);
-                        return null;
-                }
-                
-                // Reset stream and unmarshal the PDU
-                bais.reset();
-                pdu.unmarshal(dis);
-                return pdu;
-            }
-        } catch (Exception e) {
-            logger.warn("Error parsing PDU data: {}", e.getMessage());
+        private static final int MAX_PROTOCOL_VERSION = 7;
+        
+        private final String label;
+        
+        ParseFailure(String label) {
+            this.label = label;
         }
         
-        return null;
+        /**
+         * Check a datagram's header.
+         * 
+         * @param data The datagram
+         * @return The reason the datagram cannot be a PDU, or null if the header is plausible
+         */
+        static ParseFailure check(byte[] data) {
+            if (data.length < PduCodec.HEADER_SIZE) {
+                return TRUNCATED;
+            }
+            int version = data[0] & 0xFF;
+            if (version == 0 || version > MAX_PROTOCOL_VERSION) {
+                return BAD_VERSION;
+            }
+            int declaredLength = ((data[8] & 0xFF) << 8) | (data[9] & 0xFF);
+            return declaredLength > data.length ? TRUNCATED : null;
+        }
     }
 }
@@ -2,38 +2,98 @@ package com.techtest.recorder.impl;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
+import com.techtest.recorder.interfaces.PduCursor;
 import com.techtest.recorder.interfaces.PduReplayer;
+import com.techtest.recorder.jfr.ReplayBatchEvent;
+import com.techtest.recorder.jfr.ReplaySessionEvent;
+import com.techtest.recorder.jfr.ReplayTickEvent;
+import com.techtest.recorder.metrics.Counter;
+import com.techtest.recorder.metrics.Histogram;
+import com.techtest.recorder.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.techtest.recorder.model.RecordedPdu;
+import com.techtest.recorder.model.ReplayLoopStats;
 import com.techtest.recorder.interfaces.PduStorage;
 
 import edu.nps.moves.dis.Pdu;
 
 /**
  * Implementation of PduReplayer that uses a multicast socket to replay PDUs.
+ * Each PDU is sent to the multicast group, or to a list of multicast groups and unicast
+ * targets so one recording can feed several test rigs at once. The PDU is read, rewritten and
+ * paced once and the same buffer is sent to every destination in turn; per-destination counters
+ * and lag histograms go to a {@link MetricsRegistry}:
+ * <ul>
+ * <li>{@code replay_destination_pdus_sent_total}, {@code replay_destination_bytes_sent_total}
+ *     and {@code replay_destination_send_errors_total}, labelled with the destination</li>
+ * <li>{@code replay_destination_lag_nanos} - how long after its scheduled time each PDU was
+ *     sent to the destination, which grows with the destinations sent to before it</li>
+ * </ul>
+ * A failed send is counted against its destination and the replay carries on, so one
+ * unreachable rig does not stop the others.
+ * PDUs are sent as their recorded wire bytes, paced on their nanosecond receive timestamps
+ * against the monotonic clock; the replay thread parks until shortly before each send
+ * and spins for the rest, so spacing is kept to well under a millisecond.
+ * With {@link TimeSource#DIS_TIMESTAMP} PDUs are paced on the timestamps in their DIS headers
+ * instead, see {@link DisTimestampSchedule}, which restores the original simulation timing of
+ * exercises whose receive times were bunched by an overloaded recorder.
+ * A {@link HeaderRewrite} changes the exercise ID, site and application numbers and timestamps
+ * of the sent copies, so a recording can be injected into a running exercise, and a
+ * {@link ReplayFilter} restricts the replay to some PDU types, entities, forces or a region,
+ * reading only the records the storage indexes select.
+ * A {@link ReplayLoop} replays the exercise repeatedly for soak tests, streaming every pass from
+ * a new cursor, and reports statistics of each pass to a listener.
+ * When JDK Flight Recorder is running, each replay emits a {@link ReplaySessionEvent},
+ * {@link ReplayBatchEvent}s summarizing how late PDUs were sent against the schedule
+ * and, if enabled, a {@link ReplayTickEvent} per PDU.
  */
 public class MulticastPduReplayer implements PduReplayer {
+    /**
+     * The time PDUs are paced on.
+     */
+    public enum TimeSource {
+        /** The time the recorder received each PDU. */
+        RECEIVE_TIME,
+        /** The absolute or relative timestamp in each PDU's header, per sender. */
+        DIS_TIMESTAMP
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(MulticastPduReplayer.class);
     private static final String DEFAULT_MULTICAST_GROUP = "239.1.2.3";
     private static final int DEFAULT_PORT = 3000;
+    private static final int BATCH_PDUS = 1024;
+    private static final long BATCH_NANOS = 100_000_000L;
+    /** Waits shorter than this are spun rather than parked, as parking overshoots by about this much. */
+    private static final long SPIN_NANOS = 100_000L;
+    private static final int MAX_DATAGRAM_SIZE = 65535;
 
     private final PduStorage storage;
     private final String multicastGroup;
     private final int port;
+    private final MetricsRegistry metrics;
+    private volatile List<InetSocketAddress> destinations = List.of();
     private MulticastSocket socket;
     private final AtomicBoolean replaying = new AtomicBoolean(false);
     private String currentExerciseId;
     private double currentSpeedFactor;
+    private volatile TimeSource timeSource = TimeSource.RECEIVE_TIME;
+    private volatile HeaderRewrite headerRewrite = HeaderRewrite.none();
+    private volatile ReplayFilter filter = ReplayFilter.none();
+    private volatile ReplayLoop loop = ReplayLoop.once();
+    private volatile Consumer<ReplayLoopStats> loopListener;
     private ExecutorService executorService;
     private CompletableFuture<Void> replayFuture;
 
@@ -54,9 +114,109 @@ public class MulticastPduReplayer implements PduReplayer {
      * @param port The port to send on
      */
     public MulticastPduReplayer(PduStorage storage, String multicastGroup, int port) {
+        this(storage, multicastGroup, port, new MetricsRegistry());
+    }
+
+    /**
+     * Create a new MulticastPduReplayer that records send metrics in a shared registry.
+     *
+     * @param storage The storage to use for recorded PDUs
+     * @param multicastGroup The multicast group to send to unless destinations are set
+     * @param port The port to send on unless destinations are set
+     * @param metrics The registry to record per-destination metrics in
+     */
+    public MulticastPduReplayer(PduStorage storage, String multicastGroup, int port, MetricsRegistry metrics) {
         this.storage = storage;
         this.multicastGroup = multicastGroup;
         this.port = port;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the destinations every PDU is sent to, in the order they are sent. Takes effect at
+     * the next replay. Unresolved addresses are resolved when the replay starts.
+     *
+     * @param destinations Multicast groups and unicast targets, or an empty list for the
+     *        multicast group and port the replayer was created with
+     */
+    public void setDestinations(List<InetSocketAddress> destinations) {
+        this.destinations = List.copyOf(destinations);
+    }
+
+    /**
+     * Get the destinations every PDU is sent to.
+     *
+     * @return The destinations, or an empty list for the multicast group and port
+     */
+    public List<InetSocketAddress> getDestinations() {
+        return destinations;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the time PDUs are paced on. Takes effect at the next replay.
+     *
+     * @param timeSource The time source
+     */
+    public void setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Set how replayed PDUs are rewritten. Takes effect at the next replay; stored PDUs are
+     * never changed.
+     *
+     * @param headerRewrite The rewrite, or {@link HeaderRewrite#none()} to send PDUs as recorded
+     */
+    public void setHeaderRewrite(HeaderRewrite headerRewrite) {
+        this.headerRewrite = headerRewrite;
+    }
+
+    public HeaderRewrite getHeaderRewrite() {
+        return headerRewrite;
+    }
+
+    /**
+     * Set which PDUs are replayed. Takes effect at the next replay.
+     *
+     * @param filter The filter, or {@link ReplayFilter#none()} to replay every PDU
+     */
+    public void setFilter(ReplayFilter filter) {
+        this.filter = filter;
+    }
+
+    public ReplayFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Set how often an exercise is replayed. Takes effect at the next replay.
+     *
+     * @param loop The loop, or {@link ReplayLoop#once()} for a single pass
+     */
+    public void setLoop(ReplayLoop loop) {
+        this.loop = loop;
+    }
+
+    public ReplayLoop getLoop() {
+        return loop;
+    }
+
+    /**
+     * Set a listener called on the replay thread after every pass through an exercise,
+     * including the last one of a replay that is stopped.
+     *
+     * @param loopListener The listener, or null for none
+     */
+    public void setLoopListener(Consumer<ReplayLoopStats> loopListener) {
+        this.loopListener = loopListener;
     }
 
     @Override
@@ -80,8 +240,9 @@ public class MulticastPduReplayer implements PduReplayer {
                 executorService = Executors.newSingleThreadExecutor();
                 executorService.submit(() -> replayExercise(exerciseId, speedFactor, replayFuture));
                 
-                logger.info("Started replaying exercise: {} at {}x speed on {}:{}",
-                    exerciseId, speedFactor, multicastGroup, port);
+                logger.info("Started replaying exercise: {} at {}x speed to {}, paced on {}, rewrite {}, filter {}, loop {}",
+                    exerciseId, speedFactor, destinations.isEmpty() ? multicastGroup + ":" + port : destinations,
+                    timeSource, headerRewrite, filter, loop);
             } catch (IOException e) {
                 replaying.set(false);
                 currentExerciseId = null;
@@ -166,57 +327,113 @@ public class MulticastPduReplayer implements PduReplayer {
      * @param future The CompletableFuture to complete when replay finishes
      */
     private void replayExercise(String exerciseId, double speedFactor, CompletableFuture<Void> future) {
-        List<RecordedPdu> pdus = storage.getPdusForExercise(exerciseId);
-        
+        ReplayTiming timing = new ReplayTiming(exerciseId, speedFactor);
+        ReplayFilter replayFilter = filter;
+        ReplayLoop replayLoop = loop;
+        Consumer<ReplayLoopStats> listener = loopListener;
         try {
-            if (pdus.isEmpty()) {
-                logger.warn("No PDUs found for exercise: {}", exerciseId);
-                replaying.set(false);
-                currentExerciseId = null;
-                currentSpeedFactor = 0;
-                future.complete(null);
-                return;
-            }
+            List<Destination> targets = resolveDestinations();
+            // One packet carries every PDU to every destination; only its data and address change
+            DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+            HeaderRewrite rewrite = headerRewrite;
+            // Rewrites patch a copy, as the recorded bytes may be shared with the storage
+            byte[] sendBuffer = rewrite != HeaderRewrite.none() || !replayLoop.leavesUnchanged(1)
+                ? new byte[MAX_DATAGRAM_SIZE] : null;
+            ReceiveClock clock = ReceiveClock.anchor();
+            long startNanos = System.nanoTime();
+            // Recording time of the passes before, including the gaps between them
+            long shiftNanos = 0;
             
-            InetAddress group = InetAddress.getByName(multicastGroup);
-            long startTime = System.currentTimeMillis();
-            long firstPduTime = pdus.get(0).getTimestamp();
-            
-            for (int i = 0; i < pdus.size() && replaying.get(); i++) {
-                RecordedPdu recordedPdu = pdus.get(i);
-                Pdu pdu = recordedPdu.getPdu();
-                
-                // Calculate delay based on timestamps and speed factor
-                long pduTimestamp = recordedPdu.getTimestamp();
-                long elapsedRecordTime = pduTimestamp - firstPduTime;
-                long targetReplayTime = (long) (elapsedRecordTime / speedFactor);
-                long currentReplayTime = System.currentTimeMillis() - startTime;
-                
-                // Sleep if needed to maintain timing
-                if (targetReplayTime > currentReplayTime) {
-                    try {
-                        Thread.sleep(targetReplayTime - currentReplayTime);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        logger.info("Replay interrupted for exercise: {}", exerciseId);
+            for (long pass = 0; replaying.get(); pass++) {
+                boolean patch = rewrite != HeaderRewrite.none() || !replayLoop.leavesUnchanged(pass);
+                long firstPduNanos = Long.MIN_VALUE;
+                long lastPduNanos = Long.MIN_VALUE;
+                boolean passCompleted;
+                // Every pass streams from a new cursor, so PDUs still being recorded are replayed
+                // as well and memory does not grow with the number of passes
+                try (PduCursor cursor = replayFilter != ReplayFilter.none()
+                        ? storage.openCursor(exerciseId, replayFilter.getQuery()) : storage.openCursor(exerciseId)) {
+                    if (!cursor.hasNext()) {
+                        if (pass == 0) {
+                            logger.warn("No PDUs found for exercise: {}", exerciseId);
+                        } else {
+                            logger.warn("No PDUs left in exercise {}, stopping after {} passes", exerciseId, pass);
+                        }
                         break;
                     }
+                    
+                    DisTimestampSchedule schedule = timeSource == TimeSource.DIS_TIMESTAMP
+                        ? new DisTimestampSchedule(cursor) : null;
+                    timing.beginPass();
+                    
+                    while (replaying.get() && (schedule != null ? schedule.hasNext() : cursor.hasNext())) {
+                        RecordedPdu recordedPdu = schedule != null ? schedule.next() : cursor.next();
+                        if (recordedPdu == null) {
+                            break;
+                        }
+                        Pdu pdu = recordedPdu.getPdu();
+                        byte[] pduBytes = PduCodec.toBytes(recordedPdu);
+                        
+                        // Calculate the send time based on timestamps and speed factor
+                        long pduNanos = schedule != null ? schedule.getScheduledNanos() : recordedPdu.getTimestampNanos();
+                        if (firstPduNanos == Long.MIN_VALUE) {
+                            firstPduNanos = pduNanos;
+                        }
+                        lastPduNanos = Math.max(lastPduNanos, pduNanos);
+                        long sendAt = startNanos + (long) ((shiftNanos + pduNanos - firstPduNanos) / speedFactor);
+                        if (!waitUntil(sendAt)) {
+                            logger.info("Replay interrupted for exercise: {}", exerciseId);
+                            break;
+                        }
+                        
+                        // Check if we've been asked to stop
+                        if (!replaying.get()) {
+                            logger.info("Replay stopped for exercise: {}", exerciseId);
+                            break;
+                        }
+                        
+                        // Send the PDU
+                        long sendStart = System.nanoTime();
+                        long lateness = sendStart - sendAt;
+                        if (pduBytes != null) {
+                            int length = pduBytes.length;
+                            if (patch) {
+                                System.arraycopy(pduBytes, 0, sendBuffer, 0, length);
+                                replayLoop.apply(sendBuffer, length, pass, shiftNanos);
+                                rewrite.apply(sendBuffer, length, clock.toEpochNanos(sendAt));
+                                pduBytes = sendBuffer;
+                            }
+                            packet.setData(pduBytes, 0, length);
+                            for (Destination destination : targets) {
+                                destination.send(socket, packet, sendAt);
+                            }
+                            timing.sent(pdu.getPduType(), lateness, sendStart, System.nanoTime());
+                            logger.debug("Replayed PDU type {} for exercise {}",
+                                pdu.getClass().getSimpleName(), exerciseId);
+                        }
+                    }
+                    passCompleted = schedule != null ? !schedule.hasNext() : !cursor.hasNext();
+                    if (schedule != null && pass == 0) {
+                        schedule.logSenders(exerciseId);
+                    }
                 }
                 
-                // Check if we've been asked to stop
-                if (!replaying.get()) {
-                    logger.info("Replay stopped for exercise: {}", exerciseId);
-                    break;
+                ReplayLoopStats stats = timing.endPass(pass, passCompleted);
+                if (replayLoop != ReplayLoop.once()) {
+                    logger.info("Replayed {}", stats);
                 }
-                
-                // Send the PDU
-                byte[] pduBytes = pduToBytes(pdu);
-                if (pduBytes != null) {
-                    DatagramPacket packet = new DatagramPacket(pduBytes, pduBytes.length, group, port);
-                    socket.send(packet);
-                    logger.debug("Replayed PDU type {} for exercise {}",
-                        pdu.getClass().getSimpleName(), exerciseId);
+                if (listener != null) {
+                    try {
+                        listener.accept(stats);
+                    } catch (RuntimeException e) {
+                        logger.warn("Replay loop listener failed: {}", e.getMessage(), e);
+                    }
                 }
+                if (!passCompleted || !replayLoop.repeatsAfter(pass)) {
+                    timing.completed = passCompleted;
+                    break;
+                }
+                shiftNanos += lastPduNanos - firstPduNanos + replayLoop.getGapNanos();
             }
             
             // Successfully completed all PDUs or was manually stopped
@@ -241,25 +458,227 @@ public class MulticastPduReplayer implements PduReplayer {
                 future.complete(null);
             }
         } finally {
+            timing.finish();
             replaying.set(false);
         }
     }
     
     /**
-     * Convert a PDU to a byte array.
+     * Resolve the destinations of a replay and look up their metrics.
+     *
+     * @return The destinations in send order
+     * @throws IOException If a destination cannot be resolved
+     */
+    private List<Destination> resolveDestinations() throws IOException {
+        List<InetSocketAddress> addresses = destinations.isEmpty()
+            ? List.of(InetSocketAddress.createUnresolved(multicastGroup, port)) : destinations;
+        List<Destination> resolved = new ArrayList<>();
+        for (InetSocketAddress address : addresses) {
+            InetSocketAddress target = address.isUnresolved()
+                ? new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+            if (target.isUnresolved()) {
+                throw new IOException("Cannot resolve replay destination " + address.getHostString());
+            }
+            resolved.add(new Destination(target, metrics));
+        }
+        return resolved;
+    }
+    
+    /**
+     * Wait until a point on the monotonic clock.
      * 
-     * @param pdu The PDU to convert
-     * @return The byte array, or null if conversion failed
+     * @param deadline The {@link System#nanoTime()} to wait for
+     * @return true once the deadline has passed, false if the thread was interrupted
      */
-    private byte[] pduToBytes(Pdu pdu) {
-        try {
-            java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            java.io.DataOutputStream dos = new java.io.DataOutputStream(baos);
-            pdu.marshal(dos);
-            return baos.toByteArray();
-        } catch (Exception e) {
-            logger.warn("Error converting PDU to bytes: {}", e.getMessage());
-            return null;
+    private static boolean waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * A replay destination and its metrics.
+     */
+    private static final class Destination {
+        private final InetSocketAddress address;
+        private final String label;
+        private final Counter pdusSent;
+        private final Counter bytesSent;
+        private final Counter sendErrors;
+        private final Histogram lag;
+        private boolean failing;
+        
+        Destination(InetSocketAddress address, MetricsRegistry metrics) {
+            this.address = address;
+            this.label = address.getAddress().getHostAddress() + ":" + address.getPort();
+            this.pdusSent = metrics.counter("replay_destination_pdus_sent_total", "destination", label);
+            this.bytesSent = metrics.counter("replay_destination_bytes_sent_total", "destination", label);
+            this.sendErrors = metrics.counter("replay_destination_send_errors_total", "destination", label);
+            this.lag = metrics.histogram("replay_destination_lag_nanos", "destination", label);
+        }
+        
+        /**
+         * Send a packet to the destination, counting a failure rather than throwing it.
+         * 
+         * @param socket The socket to send with
+         * @param packet The packet, readdressed to this destination
+         * @param sendAt The {@link System#nanoTime()} the PDU was scheduled for
+         */
+        void send(MulticastSocket socket, DatagramPacket packet, long sendAt) {
+            packet.setSocketAddress(address);
+            try {
+                socket.send(packet);
+            } catch (IOException e) {
+                sendErrors.increment();
+                // Log when a destination starts failing, not for every PDU
+                if (!failing) {
+                    logger.warn("Failed to replay to {}: {}", label, e.getMessage());
+                    failing = true;
+                }
+                return;
+            }
+            if (failing) {
+                logger.info("Replaying to {} again", label);
+                failing = false;
+            }
+            pdusSent.increment();
+            bytesSent.add(packet.getLength());
+            lag.record(Math.max(System.nanoTime() - sendAt, 0));
+        }
+    }
+    
+    /**
+     * Flight Recorder events of one replay. Whether batch and tick events are enabled
+     * is checked once per batch, so the cost is a field check per PDU while they are off.
+     */
+    private static final class ReplayTiming {
+        private final String exerciseId;
+        private final ReplaySessionEvent session = new ReplaySessionEvent();
+        private ReplayBatchEvent batch;
+        private boolean ticksEnabled;
+        private long batchStartNanos;
+        private long batchLatenessNanos;
+        private long pdus;
+        private long maxLatenessNanos;
+        private boolean completed;
+        private long passes;
+        private long passPdus;
+        private long passLatenessNanos;
+        private long passMaxLatenessNanos;
+        private long passFirstSendNanos;
+        private long passLastSendNanos;
+        
+        ReplayTiming(String exerciseId, double speedFactor) {
+            this.exerciseId = exerciseId;
+            session.begin();
+            session.exerciseId = exerciseId;
+            session.speedFactor = speedFactor;
+            beginBatch(System.nanoTime());
+        }
+        
+        /**
+         * Account for a sent PDU.
+         * 
+         * @param pduType The PDU type
+         * @param latenessNanos How long after its scheduled time the PDU was sent
+         * @param sendStart The {@link System#nanoTime()} before encoding and sending
+         * @param sendEnd The {@link System#nanoTime()} after sending
+         */
+        void sent(int pduType, long latenessNanos, long sendStart, long sendEnd) {
+            if (latenessNanos > maxLatenessNanos) {
+                maxLatenessNanos = latenessNanos;
+            }
+            if (passPdus++ == 0) {
+                passFirstSendNanos = sendStart;
+            }
+            passLastSendNanos = sendStart;
+            passLatenessNanos += Math.max(latenessNanos, 0);
+            passMaxLatenessNanos = Math.max(passMaxLatenessNanos, latenessNanos);
+            if (ticksEnabled) {
+                ReplayTickEvent tick = new ReplayTickEvent();
+                tick.exerciseId = exerciseId;
+                tick.sequence = pdus;
+                tick.pduType = pduType;
+                tick.latenessNanos = latenessNanos;
+                tick.commit();
+            }
+            pdus++;
+            if (batch != null) {
+                batch.pdus++;
+                batch.sendNanos += sendEnd - sendStart;
+                batchLatenessNanos += Math.max(latenessNanos, 0);
+                if (latenessNanos > batch.maxLatenessNanos) {
+                    batch.maxLatenessNanos = latenessNanos;
+                }
+            }
+            if (pdus % BATCH_PDUS == 0 || sendEnd - batchStartNanos >= BATCH_NANOS) {
+                endBatch();
+                beginBatch(sendEnd);
+            }
+        }
+        
+        void beginPass() {
+            passPdus = 0;
+            passLatenessNanos = 0;
+            passMaxLatenessNanos = 0;
+            passFirstSendNanos = 0;
+            passLastSendNanos = 0;
+        }
+        
+        /**
+         * Summarize the PDUs sent since {@link #beginPass()}.
+         * 
+         * @param pass The pass, counting from 0
+         * @param passCompleted true if the pass reached the last PDU
+         * @return The statistics of the pass
+         */
+        ReplayLoopStats endPass(long pass, boolean passCompleted) {
+            passes++;
+            return new ReplayLoopStats(exerciseId, pass, passPdus, passLastSendNanos - passFirstSendNanos,
+                passPdus > 0 ? passLatenessNanos / passPdus : 0, passMaxLatenessNanos, passCompleted);
+        }
+        
+        void finish() {
+            endBatch();
+            session.end();
+            if (session.shouldCommit()) {
+                session.pdus = pdus;
+                session.passes = passes;
+                session.maxLatenessNanos = maxLatenessNanos;
+                session.completed = completed;
+                session.commit();
+            }
+        }
+        
+        private void beginBatch(long now) {
+            ReplayBatchEvent event = new ReplayBatchEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                event.exerciseId = exerciseId;
+                batch = event;
+            } else {
+                batch = null;
+            }
+            ticksEnabled = new ReplayTickEvent().isEnabled();
+            batchStartNanos = now;
+            batchLatenessNanos = 0;
+        }
+        
+        private void endBatch() {
+            if (batch != null && batch.pdus > 0) {
+                batch.meanLatenessNanos = batchLatenessNanos / batch.pdus;
+                batch.commit();
+            }
+            batch = null;
         }
     }
 }
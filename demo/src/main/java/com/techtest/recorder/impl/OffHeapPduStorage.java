@@ -0,0 +1,379 @@
+package com.techtest.recorder.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
+import com.techtest.recorder.model.RecordedPdu;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * In-memory implementation of PduStorage that keeps PDUs outside the Java heap.
+ * <p>
+ * Each exercise packs its raw datagrams into large direct-memory slabs as
+ * {@code [long timestamp][int length][pdu bytes]}, with a primitive array of record
+ * positions as the offset index. A stored PDU therefore costs its wire size plus 20 bytes,
+ * and the garbage collector never has to trace the recording. PDU objects are decoded
+ * on demand when records are read.
+ * <p>
+ * Like {@link MemoryPduStorage}, appends are serialized per exercise and published
+ * through a volatile high-water mark, so readers never lock. Slab memory is limited by
+ * {@code -XX:MaxDirectMemorySize} and is returned once a cleared exercise is collected.
+ */
+public class OffHeapPduStorage implements PduStorage {
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapPduStorage.class);
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int POSITION_CHUNK_SHIFT = 13;
+    private static final int POSITION_CHUNK_SIZE = 1 << POSITION_CHUNK_SHIFT;
+    private static final int POSITION_CHUNK_MASK = POSITION_CHUNK_SIZE - 1;
+    private static final Comparator<RecordedPdu> BY_TIMESTAMP = Comparator.comparingLong(RecordedPdu::getTimestampNanos);
+
+    private final int slabSize;
+    private final Map<String, ExerciseLog> storage = new ConcurrentHashMap<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final ExerciseCatalog catalog = new ExerciseCatalog();
+
+    /**
+     * Create an off-heap storage with 64 MB slabs.
+     */
+    public OffHeapPduStorage() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Create an off-heap storage.
+     *
+     * @param slabSize The size of each direct memory slab in bytes
+     */
+    public OffHeapPduStorage(int slabSize) {
+        if (slabSize < RECORD_HEADER_SIZE + 65535) {
+            throw new IllegalArgumentException("Slab size must hold at least one maximum-size PDU");
+        }
+        this.slabSize = slabSize;
+    }
+
+    @Override
+    public void storePdu(RecordedPdu recordedPdu) {
+        byte[] data = PduCodec.toBytes(recordedPdu);
+        if (data == null) {
+            return;
+        }
+
+        String exerciseId = recordedPdu.getExerciseId();
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            log = storage.computeIfAbsent(exerciseId, ExerciseLog::new);
+        }
+        log.append(recordedPdu.getTimestampNanos(), data);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusForExercise(String exerciseId) {
+        return queryPdus(exerciseId, PduQuery.all());
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId) {
+        return new OffHeapCursor(storage.get(exerciseId), null);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId, PduQuery query) {
+        return new OffHeapCursor(storage.get(exerciseId), query);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime) {
+        return queryPdus(exerciseId, PduQuery.timeRange(startTime, endTime));
+    }
+
+    @Override
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        ExerciseLog log = storage.get(exerciseId);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+
+        // Read the high-water mark first so the ordered flag covers every record below it
+        int size = log.size;
+        boolean ordered = log.ordered;
+        List<RecordedPdu> result = read(log, query, size);
+        if (!ordered) {
+            result.sort(BY_TIMESTAMP);
+        }
+        return result;
+    }
+
+    /**
+     * Read the records below a high-water mark that match a query, in storage order.
+     */
+    private static List<RecordedPdu> read(ExerciseLog log, PduQuery query, int size) {
+        List<RecordedPdu> result = new ArrayList<>();
+        for (int ordinal : log.index.candidates(query, size)) {
+            long position = log.position(ordinal);
+            long timestamp = Math.floorDiv(log.timestampNanos(position), 1_000_000L);
+            if (!query.matchesTime(timestamp) || !query.matchesType(log.pduType(position))) {
+                continue;
+            }
+            RecordedPdu recordedPdu = log.read(position, query);
+            if (recordedPdu != null) {
+                result.add(recordedPdu);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void clearExercise(String exerciseId) {
+        ExerciseLog log = storage.remove(exerciseId);
+        if (log != null) {
+            allocatedBytes.addAndGet(-log.allocatedBytes());
+        }
+        catalog.remove(exerciseId);
+    }
+
+    @Override
+    public List<String> getExerciseIds() {
+        return new ArrayList<>(storage.keySet());
+    }
+
+    @Override
+    public ExerciseSummary getExerciseSummary(String exerciseId) {
+        return catalog.getSummary(exerciseId);
+    }
+
+    @Override
+    public List<ExerciseSummary> getExerciseSummaries() {
+        return catalog.getSummaries();
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to persist
+    }
+
+    /**
+     * Get the amount of direct memory allocated for slabs.
+     *
+     * @return The allocated size in bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * The packed records of one exercise. Everything written by {@link #append} before
+     * the volatile store to {@code size} is visible to a reader that has read {@code size}.
+     */
+    private final class ExerciseLog {
+        private final String exerciseId;
+        private volatile ByteBuffer[] slabs = new ByteBuffer[4];
+        private volatile long[][] positions = new long[16][];
+        private volatile int size;
+        private volatile boolean ordered = true;
+        private final ExerciseIndex index = new ExerciseIndex();
+        private int slabCount;
+        private int writeOffset;
+        private long lastTimestampNanos = Long.MIN_VALUE;
+
+        ExerciseLog(String exerciseId) {
+            this.exerciseId = exerciseId;
+        }
+
+        synchronized void append(long timestampNanos, byte[] data) {
+            int recordSize = RECORD_HEADER_SIZE + data.length;
+            if (slabCount == 0 || writeOffset + recordSize > slabSize) {
+                addSlab();
+            }
+
+            ByteBuffer slab = slabs[slabCount - 1];
+            int offset = writeOffset;
+            slab.putLong(offset, timestampNanos);
+            slab.putInt(offset + 8, data.length);
+            slab.put(offset + RECORD_HEADER_SIZE, data);
+            writeOffset += recordSize;
+
+            int count = size;
+            int chunk = count >>> POSITION_CHUNK_SHIFT;
+            long[][] directory = positions;
+            if (chunk == directory.length) {
+                directory = Arrays.copyOf(directory, directory.length * 2);
+                positions = directory;
+            }
+            if (directory[chunk] == null) {
+                directory[chunk] = new long[POSITION_CHUNK_SIZE];
+            }
+            directory[chunk][count & POSITION_CHUNK_MASK] = ((long) (slabCount - 1) << 32) | offset;
+
+            if (timestampNanos < lastTimestampNanos) {
+                ordered = false;
+            } else {
+                lastTimestampNanos = timestampNanos;
+            }
+            long timestamp = Math.floorDiv(timestampNanos, 1_000_000L);
+            int pduType = PduCodec.pduType(data);
+            List<EntityKey> entities = PduCodec.entitiesOf(data);
+            index.add(timestamp, pduType, entities);
+            catalog.record(exerciseId, timestamp, pduType, data.length, entities);
+
+            // Publish the record
+            size = count + 1;
+        }
+
+        long position(int ordinal) {
+            return positions[ordinal >>> POSITION_CHUNK_SHIFT][ordinal & POSITION_CHUNK_MASK];
+        }
+
+        long timestampNanos(long position) {
+            return slabs[(int) (position >>> 32)].getLong((int) position);
+        }
+
+        int pduType(long position) {
+            return slabs[(int) (position >>> 32)].get((int) position + RECORD_HEADER_SIZE + 2) & 0xFF;
+        }
+
+        RecordedPdu read(long position) {
+            return read(position, null);
+        }
+
+        /**
+         * Read a record if it passes a query's record filter.
+         *
+         * @return The PDU, or null if it cannot be decoded or the filter rejects it
+         */
+        RecordedPdu read(long position, PduQuery query) {
+            ByteBuffer slab = slabs[(int) (position >>> 32)];
+            int offset = (int) position;
+            byte[] data = new byte[slab.getInt(offset + 8)];
+            slab.get(offset + RECORD_HEADER_SIZE, data);
+            if (query != null && !query.matchesRecord(data)) {
+                return null;
+            }
+
+            Pdu pdu = PduCodec.decode(data);
+            return pdu == null ? null : RecordedPdu.withTimestampNanos(pdu, slab.getLong(offset), exerciseId, data);
+        }
+
+        long allocatedBytes() {
+            return (long) slabCount * slabSize;
+        }
+
+        private void addSlab() {
+            ByteBuffer[] directory = slabs;
+            if (slabCount == directory.length) {
+                directory = Arrays.copyOf(directory, directory.length * 2);
+            }
+            directory[slabCount] = ByteBuffer.allocateDirect(slabSize);
+            // Publish the directory only after the new slab is in place
+            slabs = directory;
+            slabCount++;
+            writeOffset = 0;
+
+            long total = allocatedBytes.addAndGet(slabSize);
+            logger.debug("Allocated slab {} for exercise {} ({} MB off-heap in total)",
+                slabCount, exerciseId, total >> 20);
+        }
+    }
+
+    /**
+     * Cursor that walks an exercise log up to its current high-water mark, either every
+     * record or only the index candidates of a query. Query candidates are checked against
+     * the record headers in the slab and only matching records are decoded. If the log is
+     * unordered when the cursor is opened, the records below the high-water mark are served
+     * from a sorted snapshot first.
+     */
+    private static final class OffHeapCursor implements PduCursor {
+        private final ExerciseLog log;
+        private final PduQuery query;
+        private final CandidateScan scan;
+        private final List<RecordedPdu> sorted;
+        private int sortedPosition;
+        private int position;
+        // Query cursors: the next matching record, read ahead by hasNext
+        private RecordedPdu pending;
+
+        OffHeapCursor(ExerciseLog log, PduQuery query) {
+            this.log = log;
+            this.query = query;
+            if (log == null) {
+                sorted = null;
+                scan = null;
+                return;
+            }
+            // Read the high-water mark first so the ordered flag covers every record below it
+            int size = log.size;
+            if (log.ordered) {
+                sorted = null;
+            } else {
+                sorted = read(log, query != null ? query : PduQuery.all(), size);
+                sorted.sort(BY_TIMESTAMP);
+                position = size;
+            }
+            this.scan = query != null ? new CandidateScan(log.index, query, position) : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (log == null) {
+                return false;
+            }
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return true;
+            }
+            if (scan == null) {
+                return position < log.size;
+            }
+            while (pending == null) {
+                int ordinal = scan.next(log.size);
+                if (ordinal < 0) {
+                    return false;
+                }
+                long recordPosition = log.position(ordinal);
+                long timestamp = Math.floorDiv(log.timestampNanos(recordPosition), 1_000_000L);
+                if (query.matchesTime(timestamp) && query.matchesType(log.pduType(recordPosition))) {
+                    pending = log.read(recordPosition, query);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public RecordedPdu next() {
+            if (sorted != null && sortedPosition < sorted.size()) {
+                return sorted.get(sortedPosition++);
+            }
+            if (scan != null) {
+                RecordedPdu recordedPdu = hasNext() ? pending : null;
+                pending = null;
+                return recordedPdu;
+            }
+            while (hasNext()) {
+                RecordedPdu recordedPdu = log.read(log.position(position++));
+                if (recordedPdu != null) {
+                    return recordedPdu;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.techtest.recorder.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.RecordedPdu;
+
+import edu.nps.moves.dis.DetonationPdu;
+import edu.nps.moves.dis.EntityStatePdu;
+import edu.nps.moves.dis.FirePdu;
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Conversion between raw DIS datagrams and open-dis PDU objects.
+ * Shared by the recorder, the replayer and the capture file converters so
+ * that every path supports the same set of PDU types.
+ */
+public final class PduCodec {
+    private static final Logger logger = LoggerFactory.getLogger(PduCodec.class);
+
+    /** Size of the DIS PDU header in bytes. */
+    public static final int HEADER_SIZE = 12;
+    
+    static final int PDU_TYPE_ENTITY_STATE = 1;
+    static final int PDU_TYPE_FIRE = 2;
+    static final int PDU_TYPE_DETONATION = 3;
+    
+    /** Period after which DIS header timestamps wrap. */
+    static final long NANOS_PER_HOUR = 3_600_000_000_000L;
+    private static final double TIMESTAMP_UNITS_PER_NANO = (1L << 31) / (double) NANOS_PER_HOUR;
+
+    private PduCodec() {
+    }
+
+    /**
+     * Create a PDU from raw byte data.
+     * 
+     * @param data The raw PDU data
+     * @return The created PDU, or null if the data could not be parsed
+     */
+    public static Pdu decode(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) { // PDUs have at least a 12-byte header
+            return null;
+        }
+        
+        try {
+            // Create appropriate PDU based on the type byte in the header
+            Pdu pdu = newPdu(data[2] & 0xFF);
+            if (pdu == null) {
+                return null;
+            }
+            
+            pdu.unmarshal(new DataInputStream(new ByteArrayInputStream(data)));
+            return pdu;
+        } catch (Exception e) {
+            logger.warn("Error parsing PDU data: {}", e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Convert a PDU to a byte array.
+     * 
+     * @param pdu The PDU to convert
+     * @return The byte array, or null if conversion failed
+     */
+    public static byte[] encode(Pdu pdu) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            pdu.marshal(dos);
+            return baos.toByteArray();
+        } catch (Exception e) {
+            logger.warn("Error converting PDU to bytes: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Get the wire bytes of a recorded PDU, reusing the received datagram when available.
+     * 
+     * @param recordedPdu The recorded PDU
+     * @return The byte array, or null if conversion failed
+     */
+    public static byte[] toBytes(RecordedPdu recordedPdu) {
+        byte[] data = recordedPdu.getData();
+        return data != null ? data : encode(recordedPdu.getPdu());
+    }
+    
+    /**
+     * Get the entities a PDU refers to: the entity itself for entity state PDUs,
+     * and the firing and target entities for fire and detonation PDUs.
+     * 
+     * @param pdu The PDU
+     * @return The referenced entities, without duplicates
+     */
+    public static List<EntityKey> entitiesOf(Pdu pdu) {
+        if (pdu instanceof EntityStatePdu) {
+            EntityKey key = EntityKey.of(((EntityStatePdu) pdu).getEntityID());
+            return key == null ? Collections.emptyList() : Collections.singletonList(key);
+        } else if (pdu instanceof FirePdu) {
+            FirePdu fire = (FirePdu) pdu;
+            return entityPair(EntityKey.of(fire.getFiringEntityID()), EntityKey.of(fire.getTargetEntityID()));
+        } else if (pdu instanceof DetonationPdu) {
+            DetonationPdu detonation = (DetonationPdu) pdu;
+            return entityPair(EntityKey.of(detonation.getFiringEntityID()), EntityKey.of(detonation.getTargetEntityID()));
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Get the entities a raw PDU refers to without unmarshalling it.
+     * Equivalent to {@link #entitiesOf(Pdu)} for the supported PDU types.
+     * 
+     * @param data The raw PDU data
+     * @return The referenced entities, without duplicates
+     */
+    public static List<EntityKey> entitiesOf(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            return Collections.emptyList();
+        }
+        
+        switch (data[2] & 0xFF) {
+            case PDU_TYPE_ENTITY_STATE:
+                return data.length < HEADER_SIZE + 6
+                    ? Collections.emptyList()
+                    : Collections.singletonList(entityAt(data, HEADER_SIZE));
+            case PDU_TYPE_FIRE:
+            case PDU_TYPE_DETONATION:
+                // Firing entity followed by target entity
+                return data.length < HEADER_SIZE + 12
+                    ? Collections.emptyList()
+                    : entityPair(entityAt(data, HEADER_SIZE), entityAt(data, HEADER_SIZE + 6));
+            default:
+                return Collections.emptyList();
+        }
+    }
+    
+    /**
+     * Get the PDU type from a raw PDU header.
+     * 
+     * @param data The raw PDU data
+     * @return The PDU type, or -1 if the data is too short to hold a header
+     */
+    public static int pduType(byte[] data) {
+        return data == null || data.length < HEADER_SIZE ? -1 : data[2] & 0xFF;
+    }
+    
+    /**
+     * Check if {@link #decode(byte[])} can decode a PDU type.
+     * 
+     * @param pduType The PDU type from the header
+     * @return true if the type is supported
+     */
+    public static boolean isSupported(int pduType) {
+        return pduType == PDU_TYPE_ENTITY_STATE || pduType == PDU_TYPE_FIRE || pduType == PDU_TYPE_DETONATION;
+    }
+    
+    /**
+     * Convert a time to the DIS header timestamp format: units of 2^-31 hours past the hour,
+     * shifted left by one with the absolute flag in the lowest bit.
+     * 
+     * @param nanos The time in nanoseconds; only the part past the hour is used
+     * @param absolute true for an absolute (UTC-synchronized) timestamp, false for a relative one
+     * @return The 32-bit DIS timestamp
+     */
+    public static int toDisTimestamp(long nanos, boolean absolute) {
+        long units = (long) (Math.floorMod(nanos, NANOS_PER_HOUR) * TIMESTAMP_UNITS_PER_NANO);
+        return (int) (units << 1) | (absolute ? 1 : 0);
+    }
+    
+    /**
+     * Get the timestamp from a raw PDU header.
+     * 
+     * @param data The raw PDU data, at least {@link #HEADER_SIZE} bytes
+     * @return The 32-bit DIS timestamp
+     */
+    public static int disTimestamp(byte[] data) {
+        return PduBytes.getInt(data, 4);
+    }
+    
+    /**
+     * Convert a DIS header timestamp to the time past the hour it encodes.
+     * 
+     * @param timestamp The 32-bit DIS timestamp
+     * @return The time past the hour in nanoseconds, with a resolution of about 1.7 microseconds
+     */
+    public static long fromDisTimestamp(int timestamp) {
+        return (long) ((timestamp >>> 1) / TIMESTAMP_UNITS_PER_NANO);
+    }
+    
+    /**
+     * Check the absolute flag of a DIS header timestamp.
+     * 
+     * @param timestamp The 32-bit DIS timestamp
+     * @return true if the sender's clock is synchronized to UTC, false if it is relative
+     */
+    public static boolean isAbsoluteTimestamp(int timestamp) {
+        return (timestamp & 1) != 0;
+    }
+    
+    private static EntityKey entityAt(byte[] data, int offset) {
+        return new EntityKey(PduBytes.getUnsignedShort(data, offset), PduBytes.getUnsignedShort(data, offset + 2),
+            PduBytes.getUnsignedShort(data, offset + 4));
+    }
+    
+    private static List<EntityKey> entityPair(EntityKey first, EntityKey second) {
+        List<EntityKey> keys = new ArrayList<>(2);
+        if (first != null) {
+            keys.add(first);
+        }
+        if (second != null && !second.equals(first)) {
+            keys.add(second);
+        }
+        return keys;
+    }
+    
+    /**
+     * Create an empty PDU instance for a supported PDU type.
+     * 
+     * @param pduTypeValue The PDU type value from the header
+     * @return The new PDU, or null if the type is not supported
+     */
+    private static Pdu newPdu(int pduTypeValue) {
+        PduType pduType = PduType.lookup[pduTypeValue];
+        if (pduType == null) {
+            return null;
+        }
+        
+        switch (pduType) {
+            case ENTITY_STATE:
+                return new EntityStatePdu();
+            case FIRE:
+                return new FirePdu();
+            case DETONATION:
+                return new DetonationPdu();
+            // Add more PDU types as needed
+            default:
+                logger.debug("Unsupported PDU type: {}", pduType);
+                return null;
+        }
+    }
+}
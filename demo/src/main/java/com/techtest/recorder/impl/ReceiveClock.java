@@ -0,0 +1,70 @@
+package com.techtest.recorder.impl;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Converts {@link System#nanoTime()} readings to wall-clock time.
+ * <p>
+ * Receive times are read from the monotonic clock, which is cheap, has nanosecond
+ * resolution and never jumps, and are mapped to the epoch through an anchor: a wall-clock
+ * reading paired with a monotonic one. Within a recording the spacing of timestamps is
+ * therefore exact even if the wall clock is stepped; the anchor is renewed whenever a
+ * recording starts or moves to a new exercise.
+ */
+public final class ReceiveClock {
+    private static final int ANCHOR_SAMPLES = 16;
+    private static final Clock WALL_CLOCK = Clock.systemUTC();
+
+    private final long anchorEpochNanos;
+    private final long anchorMonotonicNanos;
+    private final long uncertaintyNanos;
+
+    private ReceiveClock(long anchorEpochNanos, long anchorMonotonicNanos, long uncertaintyNanos) {
+        this.anchorEpochNanos = anchorEpochNanos;
+        this.anchorMonotonicNanos = anchorMonotonicNanos;
+        this.uncertaintyNanos = uncertaintyNanos;
+    }
+
+    /**
+     * Pair the wall clock with the monotonic clock. The wall clock is read between two
+     * monotonic readings several times, and the tightest pair is kept.
+     *
+     * @return The anchored clock
+     */
+    public static ReceiveClock anchor() {
+        long bestEpoch = 0;
+        long bestMonotonic = 0;
+        long bestWindow = Long.MAX_VALUE;
+        for (int i = 0; i < ANCHOR_SAMPLES; i++) {
+            long before = System.nanoTime();
+            Instant now = WALL_CLOCK.instant();
+            long after = System.nanoTime();
+            if (after - before < bestWindow) {
+                bestWindow = after - before;
+                bestEpoch = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+                bestMonotonic = before + (after - before) / 2;
+            }
+        }
+        return new ReceiveClock(bestEpoch, bestMonotonic, bestWindow / 2);
+    }
+
+    /**
+     * Convert a monotonic clock reading to wall-clock time.
+     *
+     * @param monotonicNanos A {@link System#nanoTime()} reading
+     * @return The time in nanoseconds since the epoch
+     */
+    public long toEpochNanos(long monotonicNanos) {
+        return anchorEpochNanos + (monotonicNanos - anchorMonotonicNanos);
+    }
+
+    /**
+     * Get how far the anchor may be off, not counting the wall clock's own resolution.
+     *
+     * @return The uncertainty in nanoseconds
+     */
+    public long getUncertaintyNanos() {
+        return uncertaintyNanos;
+    }
+}
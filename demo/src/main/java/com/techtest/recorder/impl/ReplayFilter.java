@@ -0,0 +1,255 @@
+package com.techtest.recorder.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.PduQuery;
+
+/**
+ * Selects the PDUs of an exercise that are replayed, so that for example a single platform's
+ * track can be replayed from a large exercise.
+ * <p>
+ * The filter becomes a {@link PduQuery}. PDU types and entities are answered from the storage
+ * indexes, so records that cannot match are never read. Force and region filters are a record
+ * filter, checked on the raw bytes of each record that is read, before it is decoded: the force
+ * applies to Entity State PDUs, the region to the entity location of Entity State PDUs and the
+ * world location of Fire and Detonation PDUs. PDUs that do not carry the field are only
+ * filtered by type and entity.
+ * <p>
+ * Filters are written as comma-separated {@code key=value} pairs, for example
+ * {@code types=1,entities=1:1:5+1:1:6,force=1,region=36.5:-122.1:36.8:-121.7}. Supported keys:
+ * <ul>
+ * <li>{@code types} - PDU types to replay, joined with {@code +} (default all)</li>
+ * <li>{@code entities} - entities to replay as {@code site:application:entity}, joined with
+ *     {@code +}; PDUs referring to any of them match (default all)</li>
+ * <li>{@code force} - force IDs to replay, joined with {@code +} (default all)</li>
+ * <li>{@code region} - bounding box as {@code minLat:minLon:maxLat:maxLon} in degrees; a
+ *     minimum longitude above the maximum crosses the antimeridian (default everywhere)</li>
+ * </ul>
+ */
+public final class ReplayFilter {
+    private static final ReplayFilter NONE = new ReplayFilter(Collections.emptySet(), Collections.emptySet(), null, null);
+
+    private static final int ENTITY_STATE_FORCE_OFFSET = 18;
+    private static final int ENTITY_STATE_LOCATION_OFFSET = 48;
+    private static final int FIRE_LOCATION_OFFSET = 40;
+    private static final int DETONATION_LOCATION_OFFSET = 48;
+
+    private final Set<Integer> pduTypes;
+    private final Set<EntityKey> entities;
+    /** Selected force IDs as a bit per ID, or null for every force. */
+    private final long[] forces;
+    private final boolean regionSet;
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+    private final PduQuery query;
+
+    /**
+     * Create a new ReplayFilter.
+     *
+     * @param pduTypes The PDU types to replay, or an empty set for all
+     * @param entities The entities to replay, or an empty set for all
+     * @param forces The force IDs to replay as a bit per ID, or null for all
+     * @param region The bounding box as minimum latitude, minimum longitude, maximum latitude
+     *        and maximum longitude, or null for everywhere
+     */
+    private ReplayFilter(Set<Integer> pduTypes, Set<EntityKey> entities, long[] forces, double[] region) {
+        this.pduTypes = pduTypes;
+        this.entities = entities;
+        this.forces = forces;
+        this.regionSet = region != null;
+        this.minLatitude = regionSet ? region[0] : 0;
+        this.minLongitude = regionSet ? region[1] : 0;
+        this.maxLatitude = regionSet ? region[2] : 0;
+        this.maxLongitude = regionSet ? region[3] : 0;
+        PduQuery indexed = PduQuery.all().withPduTypes(pduTypes).withEntities(entities);
+        this.query = forces != null || regionSet ? indexed.withRecordFilter(this::matches) : indexed;
+    }
+
+    /**
+     * A filter that replays every PDU.
+     *
+     * @return The filter
+     */
+    public static ReplayFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Parse a filter description.
+     *
+     * @param description Comma-separated {@code key=value} pairs, or {@code none}
+     * @return The filter
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static ReplayFilter parse(String description) {
+        if (description.trim().equalsIgnoreCase("none")) {
+            return NONE;
+        }
+        KeyValues values = KeyValues.parse(description, "filter", "types", "entities", "force", "region");
+        Set<Integer> pduTypes = values.get("types", ReplayFilter::parseTypes, Collections.emptySet());
+        Set<EntityKey> entities = values.get("entities", ReplayFilter::parseEntities, Collections.emptySet());
+        long[] forces = values.get("force", ReplayFilter::parseForces, null);
+        double[] region = values.get("region", ReplayFilter::parseRegion, null);
+        if (pduTypes.isEmpty() && entities.isEmpty() && forces == null && region == null) {
+            return NONE;
+        }
+        return new ReplayFilter(pduTypes, entities, forces, region);
+    }
+
+    private static Set<Integer> parseTypes(String value) {
+        Set<Integer> types = new HashSet<>();
+        for (String type : value.split("\\+")) {
+            types.add(parseByte(type, "PDU type"));
+        }
+        return Collections.unmodifiableSet(types);
+    }
+
+    private static Set<EntityKey> parseEntities(String value) {
+        Set<EntityKey> keys = new HashSet<>();
+        for (String entity : value.split("\\+")) {
+            String[] parts = entity.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected site:application:entity: " + entity.trim());
+            }
+            keys.add(new EntityKey(parseShort(parts[0]), parseShort(parts[1]), parseShort(parts[2])));
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    private static long[] parseForces(String value) {
+        long[] forces = new long[4];
+        for (String force : value.split("\\+")) {
+            int id = parseByte(force, "Force ID");
+            forces[id >>> 6] |= 1L << (id & 63);
+        }
+        return forces;
+    }
+
+    private static double[] parseRegion(String value) {
+        String[] bounds = value.split(":");
+        if (bounds.length != 4) {
+            throw new IllegalArgumentException("Expected minLat:minLon:maxLat:maxLon: " + value);
+        }
+        double[] region = new double[4];
+        for (int i = 0; i < 4; i++) {
+            region[i] = Double.parseDouble(bounds[i].trim());
+        }
+        if (region[0] > region[2] || Math.abs(region[0]) > 90 || Math.abs(region[2]) > 90
+                || Math.abs(region[1]) > 180 || Math.abs(region[3]) > 180) {
+            throw new IllegalArgumentException("Invalid region: " + value);
+        }
+        return region;
+    }
+
+    private static int parseByte(String value, String name) {
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < 0 || parsed > 0xFF) {
+            throw new IllegalArgumentException(name + " must be between 0 and 255: " + value.trim());
+        }
+        return parsed;
+    }
+
+    private static int parseShort(String value) {
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < 0 || parsed > 0xFFFF) {
+            throw new IllegalArgumentException("Entity ID parts must be between 0 and 65535: " + value.trim());
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the storage query that selects the PDUs to replay.
+     *
+     * @return The query
+     */
+    public PduQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Check the force and region filters against a raw PDU.
+     *
+     * @param data The raw PDU
+     * @return true if the PDU is replayed
+     */
+    public boolean matches(byte[] data) {
+        switch (PduCodec.pduType(data)) {
+            case PduCodec.PDU_TYPE_ENTITY_STATE:
+                if (forces != null && data.length > ENTITY_STATE_FORCE_OFFSET) {
+                    int force = data[ENTITY_STATE_FORCE_OFFSET] & 0xFF;
+                    if ((forces[force >>> 6] & (1L << (force & 63))) == 0) {
+                        return false;
+                    }
+                }
+                return inRegion(data, ENTITY_STATE_LOCATION_OFFSET);
+            case PduCodec.PDU_TYPE_FIRE:
+                return inRegion(data, FIRE_LOCATION_OFFSET);
+            case PduCodec.PDU_TYPE_DETONATION:
+                return inRegion(data, DETONATION_LOCATION_OFFSET);
+            default:
+                return true;
+        }
+    }
+
+    private boolean inRegion(byte[] data, int offset) {
+        if (!regionSet || data.length < offset + 24) {
+            return true;
+        }
+        double x = PduBytes.getDouble(data, offset);
+        double y = PduBytes.getDouble(data, offset + 8);
+        // Longitude is cheaper than latitude and rejects most locations outside the region
+        double longitude = Wgs84.longitude(x, y);
+        boolean inLongitude = minLongitude <= maxLongitude
+            ? longitude >= minLongitude && longitude <= maxLongitude
+            : longitude >= minLongitude || longitude <= maxLongitude;
+        if (!inLongitude) {
+            return false;
+        }
+        double latitude = Wgs84.latitude(x, y, PduBytes.getDouble(data, offset + 16));
+        return latitude >= minLatitude && latitude <= maxLatitude;
+    }
+
+    /**
+     * Get the description in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        if (!pduTypes.isEmpty()) {
+            description.append(",types=").append(join(pduTypes));
+        }
+        if (!entities.isEmpty()) {
+            StringBuilder keys = new StringBuilder();
+            for (EntityKey entity : entities) {
+                keys.append(keys.length() > 0 ? "+" : "").append(entity.getSite()).append(':')
+                    .append(entity.getApplication()).append(':').append(entity.getEntity());
+            }
+            description.append(",entities=").append(keys);
+        }
+        if (forces != null) {
+            Set<Integer> ids = new HashSet<>();
+            for (int id = 0; id <= 0xFF; id++) {
+                if ((forces[id >>> 6] & (1L << (id & 63))) != 0) {
+                    ids.add(id);
+                }
+            }
+            description.append(",force=").append(join(ids));
+        }
+        if (regionSet) {
+            description.append(",region=").append(minLatitude).append(':').append(minLongitude)
+                .append(':').append(maxLatitude).append(':').append(maxLongitude);
+        }
+        return description.length() > 0 ? description.substring(1) : "none";
+    }
+
+    private static String join(Set<Integer> values) {
+        StringBuilder joined = new StringBuilder();
+        values.stream().sorted().forEach(value -> joined.append(joined.length() > 0 ? "+" : "").append(value));
+        return joined.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package com.techtest.recorder.impl;
+
+/**
+ * How often an exercise is replayed, for soak tests that need a recording sent continuously.
+ * Every pass streams the exercise from a new storage cursor, so memory use does not grow with
+ * the number of passes.
+ * <p>
+ * Receivers that track entities or simulation time may reject a recording that starts over, so
+ * later passes can be made to look like a continuation: header timestamps are moved on by the
+ * length of the passes before, and entity numbers are offset per pass so every pass appears as
+ * new entities. Like {@link HeaderRewrite}, this patches the encoded bytes of the sent copies.
+ * <p>
+ * Loops are written as comma-separated {@code key=value} pairs, for example
+ * {@code count=0,gap=5000,timestamps=continuous,entity-offset=1000}. Supported keys:
+ * <ul>
+ * <li>{@code count} - number of passes, 0 to loop until the replay is stopped (default 0)</li>
+ * <li>{@code gap} - milliseconds of recording time between the last PDU of a pass and the
+ *     first of the next (default 1000)</li>
+ * <li>{@code timestamps} - {@code continuous} to move header timestamps on by the recording
+ *     time of the passes before, keeping their absolute or relative flag, or {@code original}
+ *     (default continuous)</li>
+ * <li>{@code entity-offset} - added to entity numbers once per pass, wrapping within 1 to
+ *     65534. Applies to the entity ID of Entity State PDUs and to the firing, target and
+ *     munition entity IDs of Fire and Detonation PDUs (default 0)</li>
+ * </ul>
+ */
+public final class ReplayLoop {
+    private static final long DEFAULT_GAP_NANOS = 1_000_000_000L;
+    private static final ReplayLoop ONCE = new ReplayLoop(1, DEFAULT_GAP_NANOS, true, 0);
+
+    private static final int TIMESTAMP_OFFSET = 4;
+    /** Entity State PDU: entity number of the entity ID. */
+    private static final int[] ENTITY_STATE_NUMBER_OFFSETS = {16};
+    /** Fire and Detonation PDUs: entity numbers of the firing, target and munition IDs. */
+    private static final int[] WEAPON_EVENT_NUMBER_OFFSETS = {16, 22, 28};
+    /** Entity numbers 0 and 65535 mean no entity and all entities, and are never offset. */
+    private static final int ENTITY_NUMBERS = 0xFFFE;
+
+    private final int count;
+    private final long gapNanos;
+    private final boolean continuousTimestamps;
+    private final int entityOffset;
+
+    private ReplayLoop(int count, long gapNanos, boolean continuousTimestamps, int entityOffset) {
+        this.count = count;
+        this.gapNanos = gapNanos;
+        this.continuousTimestamps = continuousTimestamps;
+        this.entityOffset = entityOffset;
+    }
+
+    /**
+     * A single pass through the exercise.
+     *
+     * @return The loop
+     */
+    public static ReplayLoop once() {
+        return ONCE;
+    }
+
+    /**
+     * Parse a loop description.
+     *
+     * @param description Comma-separated {@code key=value} pairs, or {@code once}
+     * @return The loop
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static ReplayLoop parse(String description) {
+        if (description.trim().equalsIgnoreCase("once")) {
+            return ONCE;
+        }
+        KeyValues values = KeyValues.parse(description, "loop", "count", "gap", "timestamps", "entity-offset");
+        int count = values.get("count", value -> {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) {
+                throw new IllegalArgumentException("Loop count must not be negative: " + value);
+            }
+            return parsed;
+        }, 0);
+        long gapNanos = values.get("gap", value -> {
+            long gapMillis = Long.parseLong(value);
+            if (gapMillis < 0) {
+                throw new IllegalArgumentException("Loop gap must not be negative: " + value);
+            }
+            return gapMillis * 1_000_000L;
+        }, DEFAULT_GAP_NANOS);
+        boolean continuousTimestamps = values.getChoice("timestamps", "continuous", "original", true);
+        int entityOffset = values.get("entity-offset", value -> {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0 || parsed >= ENTITY_NUMBERS) {
+                throw new IllegalArgumentException("Entity offset must be between 0 and 65533: " + value);
+            }
+            return parsed;
+        }, 0);
+        return count == 1 ? ONCE : new ReplayLoop(count, gapNanos, continuousTimestamps, entityOffset);
+    }
+
+    /**
+     * Get the number of passes.
+     *
+     * @return The number of passes, or 0 to loop until stopped
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Check if another pass follows one.
+     *
+     * @param pass The pass that finished, counting from 0
+     * @return true if the exercise is replayed again
+     */
+    public boolean repeatsAfter(long pass) {
+        return count == 0 || pass + 1 < count;
+    }
+
+    /**
+     * Get the recording time between the last PDU of a pass and the first of the next.
+     *
+     * @return The gap in nanoseconds
+     */
+    public long getGapNanos() {
+        return gapNanos;
+    }
+
+    /**
+     * Check if a pass is sent as recorded, so its PDUs need not be copied.
+     *
+     * @param pass The pass, counting from 0
+     * @return true if {@link #apply} leaves the pass unchanged
+     */
+    public boolean leavesUnchanged(long pass) {
+        return pass == 0 || (!continuousTimestamps && entityOffset == 0);
+    }
+
+    /**
+     * Patch a PDU of a pass in place.
+     *
+     * @param data The encoded PDU
+     * @param length The length of the PDU in {@code data}
+     * @param pass The pass, counting from 0
+     * @param shiftNanos The recording time of the passes before, including gaps
+     */
+    public void apply(byte[] data, int length, long pass, long shiftNanos) {
+        if (pass == 0 || length < PduCodec.HEADER_SIZE) {
+            return;
+        }
+        if (continuousTimestamps) {
+            int timestamp = PduCodec.disTimestamp(data);
+            // A zero timestamp means the sender does not fill it in
+            if (timestamp != 0) {
+                PduBytes.putInt(data, TIMESTAMP_OFFSET, PduCodec.toDisTimestamp(
+                    PduCodec.fromDisTimestamp(timestamp) + shiftNanos, PduCodec.isAbsoluteTimestamp(timestamp)));
+            }
+        }
+        if (entityOffset > 0) {
+            int offset = (int) (pass * entityOffset % ENTITY_NUMBERS);
+            switch (data[2] & 0xFF) {
+                case PduCodec.PDU_TYPE_ENTITY_STATE:
+                    offsetEntities(data, length, ENTITY_STATE_NUMBER_OFFSETS, offset);
+                    break;
+                case PduCodec.PDU_TYPE_FIRE:
+                case PduCodec.PDU_TYPE_DETONATION:
+                    offsetEntities(data, length, WEAPON_EVENT_NUMBER_OFFSETS, offset);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void offsetEntities(byte[] data, int length, int[] offsets, int offset) {
+        for (int position : offsets) {
+            if (position + 2 > length) {
+                return;
+            }
+            int entity = PduBytes.getUnsignedShort(data, position);
+            if (entity != 0 && entity != 0xFFFF) {
+                PduBytes.putShort(data, position, 1 + (entity - 1 + offset) % ENTITY_NUMBERS);
+            }
+        }
+    }
+
+    /**
+     * Get the description in the form accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        if (count == 1) {
+            return "once";
+        }
+        return "count=" + count + ",gap=" + gapNanos / 1_000_000L
+            + ",timestamps=" + (continuousTimestamps ? "continuous" : "original")
+            + ",entity-offset=" + entityOffset;
+    }
+}
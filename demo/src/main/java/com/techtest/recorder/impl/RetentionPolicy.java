@@ -0,0 +1,65 @@
+package com.techtest.recorder.impl;
+
+/**
+ * Limits on how long and how large stored exercises may grow.
+ * Used by {@link TieredPduStorage}, both as the global policy and as per-exercise overrides.
+ */
+public final class RetentionPolicy {
+    private static final RetentionPolicy UNLIMITED = new RetentionPolicy(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long maxAgeMillis;
+    private final long maxBytes;
+
+    private RetentionPolicy(long maxAgeMillis, long maxBytes) {
+        if (maxAgeMillis <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Retention limits must be positive");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A policy that keeps everything.
+     *
+     * @return The policy
+     */
+    public static RetentionPolicy unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Create a policy.
+     *
+     * @param maxAgeMillis How long after its last PDU data is kept, in milliseconds
+     * @param maxBytes The maximum stored size in bytes
+     * @return The policy
+     */
+    public static RetentionPolicy of(long maxAgeMillis, long maxBytes) {
+        return new RetentionPolicy(maxAgeMillis, maxBytes);
+    }
+
+    /**
+     * Get how long after its last PDU an exercise is kept.
+     *
+     * @return The maximum age in milliseconds
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Get the maximum stored size. For a per-exercise policy this caps the exercise;
+     * for the global policy it caps all exercises together.
+     *
+     * @return The maximum size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "max age " + (maxAgeMillis == Long.MAX_VALUE ? "unlimited" : maxAgeMillis + " ms")
+            + ", max size " + (maxBytes == Long.MAX_VALUE ? "unlimited" : maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,493 @@
+package com.techtest.recorder.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * PduStorage with a bounded hot tier in memory, a cold tier on disk, and retention limits.
+ * <p>
+ * New exercises are recorded into the hot tier. When the hot tier grows past its budget,
+ * the least recently used idle exercises are moved to the cold tier, followed by exercises
+ * still being recorded, largest first, which then continue to be recorded on disk. Replaying
+ * a cold exercise moves it back, so recently replayed exercises stay fast. A cold copy is kept
+ * after promotion so demoting an unchanged exercise again costs nothing.
+ * <p>
+ * Retention is enforced periodically: exercises whose last PDU is older than the maximum
+ * age are deleted, and when all exercises together exceed the global size limit the least
+ * recently used idle ones are deleted. A per-exercise policy can override the age limit
+ * and caps the size of that exercise: an exercise over its cap has its oldest PDUs removed,
+ * down to three quarters of the cap so trimming is not repeated for every few PDUs. New PDUs
+ * are always stored, so an exercise can exceed its cap until the next enforcement.
+ * Exercises that received a PDU recently are never deleted. Trimming rebuilds the exercise
+ * within the tier that holds it, so trimming never adds to the hot tier.
+ * <p>
+ * Moving or trimming an exercise copies it without blocking writes; only the PDUs stored during
+ * the copy are copied while writes wait.
+ */
+public class TieredPduStorage implements PduStorage, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TieredPduStorage.class);
+    private static final long DEFAULT_ENFORCE_INTERVAL_MILLIS = 10_000;
+    private static final long ACTIVE_WINDOW_MILLIS = 30_000;
+    /** Fraction of its cap an exercise is trimmed down to. */
+    private static final double TRIM_TARGET = 0.75;
+
+    private final MemoryPduStorage hot;
+    private final FilePduStorage cold;
+    private final long hotTierBytes;
+    private final RetentionPolicy globalPolicy;
+    private final Map<String, RetentionPolicy> exercisePolicies = new ConcurrentHashMap<>();
+    private final Map<String, ExerciseState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    /** Held while an exercise switches tiers, so the hot tier budget check sees every other switch. */
+    private final Object tierSwitchMonitor = new Object();
+
+    /**
+     * Create a tiered storage and start enforcing retention every ten seconds.
+     *
+     * @param hot The memory storage used as the hot tier
+     * @param cold The file storage used as the cold tier
+     * @param hotTierBytes The size budget of the hot tier in bytes
+     * @param globalPolicy The retention policy applied to all exercises together
+     */
+    public TieredPduStorage(MemoryPduStorage hot, FilePduStorage cold, long hotTierBytes, RetentionPolicy globalPolicy) {
+        this.hot = hot;
+        this.cold = cold;
+        this.hotTierBytes = hotTierBytes;
+        this.globalPolicy = globalPolicy;
+
+        // Exercises recovered by the cold tier start out cold
+        for (String exerciseId : cold.getExerciseIds()) {
+            ExerciseState state = new ExerciseState(exerciseId);
+            state.tier = Tier.COLD;
+            state.inCold = true;
+            state.bytes = cold.getExerciseBytes(exerciseId);
+            state.lastWrite = Math.max(cold.getLastTimestamp(exerciseId), 0);
+            state.lastAccess = state.lastWrite;
+            states.put(exerciseId, state);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::enforceQuietly,
+            DEFAULT_ENFORCE_INTERVAL_MILLIS, DEFAULT_ENFORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        logger.info("Opened tiered storage: hot tier {} MB, {} cold exercises, retention {}",
+            hotTierBytes >> 20, states.size(), globalPolicy);
+    }
+
+    /**
+     * Set a retention policy for one exercise, overriding the global age limit and capping its size.
+     *
+     * @param exerciseId The exercise ID
+     * @param policy The policy, or null to remove the override
+     */
+    public void setExercisePolicy(String exerciseId, RetentionPolicy policy) {
+        if (policy == null) {
+            exercisePolicies.remove(exerciseId);
+        } else {
+            exercisePolicies.put(exerciseId, policy);
+        }
+    }
+
+    @Override
+    public void storePdu(RecordedPdu recordedPdu) {
+        String exerciseId = recordedPdu.getExerciseId();
+        ExerciseState state = states.get(exerciseId);
+        if (state == null) {
+            state = states.computeIfAbsent(exerciseId, ExerciseState::new);
+        }
+
+        byte[] data = PduCodec.toBytes(recordedPdu);
+        if (data == null) {
+            return;
+        }
+        // Keep the raw bytes so neither tier has to marshal the PDU again
+        RecordedPdu stored = recordedPdu.getData() != null ? recordedPdu
+            : RecordedPdu.withTimestampNanos(recordedPdu.getPdu(), recordedPdu.getTimestampNanos(), exerciseId, data);
+
+        synchronized (state) {
+            if (state.tier == Tier.HOT) {
+                hot.storePdu(stored);
+                state.coldStale = true;
+            } else {
+                cold.storePdu(stored);
+            }
+            state.bytes += data.length;
+            state.lastWrite = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusForExercise(String exerciseId) {
+        ExerciseState state = states.get(exerciseId);
+        if (state == null) {
+            return new ArrayList<>();
+        }
+        return promoteForRead(state).getPdusForExercise(exerciseId);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId) {
+        ExerciseState state = states.get(exerciseId);
+        if (state == null) {
+            return hot.openCursor(exerciseId);
+        }
+        return promoteForRead(state).openCursor(exerciseId);
+    }
+
+    @Override
+    public PduCursor openCursor(String exerciseId, PduQuery query) {
+        ExerciseState state = states.get(exerciseId);
+        if (state == null) {
+            return hot.openCursor(exerciseId, query);
+        }
+        // Like indexed queries, filtered cursors read little and are served from either tier
+        state.lastAccess = System.currentTimeMillis();
+        return tierOf(state).openCursor(exerciseId, query);
+    }
+
+    @Override
+    public List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime) {
+        return queryPdus(exerciseId, PduQuery.timeRange(startTime, endTime));
+    }
+
+    @Override
+    public List<RecordedPdu> queryPdus(String exerciseId, PduQuery query) {
+        ExerciseState state = states.get(exerciseId);
+        if (state == null) {
+            return new ArrayList<>();
+        }
+        // Indexed queries read little, so they are served from whichever tier holds the exercise
+        state.lastAccess = System.currentTimeMillis();
+        return tierOf(state).queryPdus(exerciseId, query);
+    }
+
+    @Override
+    public void clearExercise(String exerciseId) {
+        ExerciseState state = states.remove(exerciseId);
+        if (state != null) {
+            synchronized (state) {
+                hot.clearExercise(exerciseId);
+                cold.clearExercise(exerciseId);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getExerciseIds() {
+        return new ArrayList<>(states.keySet());
+    }
+
+    @Override
+    public ExerciseSummary getExerciseSummary(String exerciseId) {
+        ExerciseState state = states.get(exerciseId);
+        return state == null ? null : tierOf(state).getExerciseSummary(exerciseId);
+    }
+
+    @Override
+    public List<ExerciseSummary> getExerciseSummaries() {
+        List<ExerciseSummary> summaries = new ArrayList<>();
+        for (String exerciseId : states.keySet()) {
+            ExerciseSummary summary = getExerciseSummary(exerciseId);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public void flush() {
+        hot.flush();
+        cold.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        flush();
+        cold.close();
+    }
+
+    /**
+     * Get the total size of the exercises currently held in the hot tier.
+     *
+     * @return The size in bytes
+     */
+    public long getHotTierBytes() {
+        return states.values().stream().filter(s -> s.tier == Tier.HOT).mapToLong(s -> s.bytes).sum();
+    }
+
+    /**
+     * Get the total size of all stored exercises.
+     *
+     * @return The size in bytes
+     */
+    public long getTotalBytes() {
+        return states.values().stream().mapToLong(s -> s.bytes).sum();
+    }
+
+    /**
+     * Apply age limits, per-exercise size caps, the global size limit and the hot tier budget now.
+     */
+    public synchronized void enforceRetention() {
+        long now = System.currentTimeMillis();
+
+        // Age-based deletion
+        for (ExerciseState state : new ArrayList<>(states.values())) {
+            RetentionPolicy policy = exercisePolicies.getOrDefault(state.exerciseId, globalPolicy);
+            if (now - state.lastWrite > policy.getMaxAgeMillis()) {
+                logger.info("Deleting exercise {}: last PDU is older than {} ms",
+                    state.exerciseId, policy.getMaxAgeMillis());
+                clearExercise(state.exerciseId);
+            }
+        }
+
+        // Per-exercise size caps: remove the oldest PDUs
+        for (ExerciseState state : new ArrayList<>(states.values())) {
+            RetentionPolicy policy = exercisePolicies.get(state.exerciseId);
+            if (policy != null && state.bytes > policy.getMaxBytes()) {
+                trim(state, state.bytes - (long) (policy.getMaxBytes() * TRIM_TARGET));
+            }
+        }
+
+        // Global size limit: delete least recently used idle exercises
+        long total = getTotalBytes();
+        for (ExerciseState state : idleByLeastRecentUse(now)) {
+            if (total <= globalPolicy.getMaxBytes()) {
+                break;
+            }
+            logger.info("Deleting exercise {} ({} bytes) to stay within the storage limit of {} bytes",
+                state.exerciseId, state.bytes, globalPolicy.getMaxBytes());
+            total -= state.bytes;
+            clearExercise(state.exerciseId);
+        }
+
+        // Hot tier budget: demote least recently used idle exercises, then active ones, largest first
+        List<ExerciseState> candidates = idleByLeastRecentUse(now);
+        List<ExerciseState> active = new ArrayList<>(states.values());
+        active.removeAll(candidates);
+        active.sort(Comparator.comparingLong((ExerciseState s) -> s.bytes).reversed());
+        candidates.addAll(active);
+        long hotBytes = getHotTierBytes();
+        for (ExerciseState state : candidates) {
+            if (hotBytes <= hotTierBytes) {
+                break;
+            }
+            if (state.tier == Tier.HOT) {
+                long bytes = state.bytes;
+                demote(state);
+                hotBytes -= bytes;
+            }
+        }
+    }
+
+    private void enforceQuietly() {
+        try {
+            enforceRetention();
+        } catch (Exception e) {
+            logger.error("Error enforcing retention: {}", e.getMessage(), e);
+        }
+    }
+
+    private List<ExerciseState> idleByLeastRecentUse(long now) {
+        List<ExerciseState> idle = new ArrayList<>();
+        for (ExerciseState state : states.values()) {
+            if (now - state.lastWrite > ACTIVE_WINDOW_MILLIS) {
+                idle.add(state);
+            }
+        }
+        idle.sort(Comparator.comparingLong((ExerciseState s) -> s.lastAccess));
+        return idle;
+    }
+
+    private PduStorage tierOf(ExerciseState state) {
+        return state.tier == Tier.HOT ? hot : cold;
+    }
+
+    /**
+     * Move an exercise to the hot tier before a full read, if it fits the budget.
+     *
+     * @return The tier to read from
+     */
+    private PduStorage promoteForRead(ExerciseState state) {
+        state.lastAccess = System.currentTimeMillis();
+        if (state.tier == Tier.COLD && getHotTierBytes() + state.bytes <= hotTierBytes) {
+            move(state, Tier.HOT);
+        }
+        return tierOf(state);
+    }
+
+    private void demote(ExerciseState state) {
+        synchronized (state) {
+            if (state.tier != Tier.HOT || state.moving || !states.containsKey(state.exerciseId)) {
+                return;
+            }
+            if (state.inCold && !state.coldStale) {
+                state.tier = Tier.COLD;
+                hot.clearExercise(state.exerciseId);
+                logger.info("Dropped hot copy of unchanged exercise {}", state.exerciseId);
+                return;
+            }
+        }
+        move(state, Tier.COLD);
+    }
+
+    /**
+     * Remove the oldest PDUs of an exercise within the tier that holds it. Like a move, the
+     * remaining PDUs are copied while the exercise continues to be recorded.
+     *
+     * @param state The exercise
+     * @param dropBytes The size of the oldest PDUs to remove
+     */
+    private void trim(ExerciseState state, long dropBytes) {
+        Tier tier;
+        synchronized (state) {
+            if (state.moving || !states.containsKey(state.exerciseId)) {
+                return;
+            }
+            state.moving = true;
+            tier = state.tier;
+        }
+        String exerciseId = state.exerciseId;
+        try {
+            long dropped = tier == Tier.HOT
+                ? hot.trimOldest(exerciseId, dropBytes) : cold.trimOldest(exerciseId, dropBytes);
+            synchronized (state) {
+                if (!states.containsKey(exerciseId)) {
+                    // Cleared while it was being trimmed
+                    hot.clearExercise(exerciseId);
+                    cold.clearExercise(exerciseId);
+                    return;
+                }
+                state.bytes -= dropped;
+                if (tier == Tier.HOT) {
+                    // The cold copy still holds the removed PDUs
+                    state.coldStale = true;
+                }
+            }
+            if (tier == Tier.COLD) {
+                cold.flush();
+            }
+            logger.info("Trimmed exercise {} to its size limit: removed the oldest {} bytes in the {} tier",
+                exerciseId, dropped, tier == Tier.HOT ? "hot" : "cold");
+        } finally {
+            synchronized (state) {
+                state.moving = false;
+            }
+        }
+    }
+
+    /**
+     * Move an exercise to a tier. The exercise may be recorded meanwhile: PDUs are copied
+     * without holding the state's monitor, so writes continue into the current tier, and the
+     * monitor is only held to copy the PDUs stored during the copy and switch tiers. A promotion
+     * is abandoned if the exercise no longer fits the hot tier budget by then; it keeps its cold copy.
+     *
+     * @param state The exercise
+     * @param target The tier to move to, which must not be the exercise's current tier
+     */
+    private void move(ExerciseState state, Tier target) {
+        PduStorage from;
+        synchronized (state) {
+            if (state.tier == target || state.moving || !states.containsKey(state.exerciseId)) {
+                return;
+            }
+            state.moving = true;
+            from = tierOf(state);
+        }
+        PduStorage to = target == Tier.HOT ? hot : cold;
+        String exerciseId = state.exerciseId;
+        try {
+            // Any copy left in the target tier is outdated
+            to.clearExercise(exerciseId);
+            long copied = 0;
+            long copiedBytes = 0;
+            try (PduCursor cursor = from.openCursor(exerciseId)) {
+                RecordedPdu recordedPdu;
+                while ((recordedPdu = cursor.next()) != null) {
+                    to.storePdu(recordedPdu);
+                    copied++;
+                    copiedBytes += PduCodec.toBytes(recordedPdu).length;
+                }
+                synchronized (tierSwitchMonitor) {
+                    synchronized (state) {
+                        if (!states.containsKey(exerciseId)) {
+                            // Cleared while it was being copied
+                            to.clearExercise(exerciseId);
+                            return;
+                        }
+                        if (target == Tier.HOT && getHotTierBytes() + state.bytes > hotTierBytes) {
+                            // Other exercises filled the hot tier meanwhile
+                            to.clearExercise(exerciseId);
+                            return;
+                        }
+                        while ((recordedPdu = cursor.next()) != null) {
+                            to.storePdu(recordedPdu);
+                            copied++;
+                            copiedBytes += PduCodec.toBytes(recordedPdu).length;
+                        }
+                        if (target == Tier.COLD) {
+                            from.clearExercise(exerciseId);
+                        }
+                        // A promoted exercise keeps its cold copy, which is complete
+                        state.tier = target;
+                        state.inCold = true;
+                        state.coldStale = false;
+                        state.bytes = copiedBytes;
+                    }
+                }
+            }
+            if (target == Tier.COLD) {
+                cold.flush();
+                logger.info("Demoted exercise {} to the cold tier ({} PDUs)", exerciseId, copied);
+            } else {
+                logger.info("Promoted exercise {} to the hot tier ({} PDUs)", exerciseId, copied);
+            }
+        } finally {
+            synchronized (state) {
+                state.moving = false;
+            }
+        }
+    }
+
+    private enum Tier {
+        HOT,
+        COLD
+    }
+
+    /**
+     * Tier placement and usage of one exercise. Writes and tier moves hold the state's monitor.
+     */
+    private static final class ExerciseState {
+        private final String exerciseId;
+        private volatile Tier tier = Tier.HOT;
+        private volatile long bytes;
+        private volatile long lastWrite = System.currentTimeMillis();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private boolean inCold;
+        private boolean coldStale;
+        /** Set while {@link #move} or {@link #trim} copies the exercise, so it is not promoted or moved meanwhile. */
+        private boolean moving;
+
+        ExerciseState(String exerciseId) {
+            this.exerciseId = exerciseId;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.techtest.recorder.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes Fire or Detonation PDUs straight into a reusable direct buffer.
+ * <p>
+ * Like {@link EntityStateEncoder}, constant fields are written once and setters patch their
+ * fields in place. Both PDUs start with the firing, target and munition entity IDs and the
+ * event ID; they differ in where the location, velocity and burst descriptor are placed.
+ */
+public final class WeaponEventEncoder {
+    /** Size of a Fire PDU. */
+    public static final int FIRE_LENGTH = 96;
+    /** Size of a Detonation PDU without articulation parameters. */
+    public static final int DETONATION_LENGTH = 104;
+
+    private static final int PROTOCOL_VERSION = 6;
+    private static final int PROTOCOL_FAMILY_WARFARE = 2;
+    private static final int EXERCISE_ID_OFFSET = 1;
+    private static final int TIMESTAMP_OFFSET = 4;
+    private static final int FIRING_ENTITY_OFFSET = 12;
+    private static final int TARGET_ENTITY_OFFSET = 18;
+    private static final int MUNITION_OFFSET = 24;
+    private static final int EVENT_ID_OFFSET = 30;
+
+    private final ByteBuffer buffer;
+    private final int length;
+    private final int locationOffset;
+    private final int velocityOffset;
+    private final int burstOffset;
+
+    private WeaponEventEncoder(int pduType, int length, int locationOffset, int velocityOffset, int burstOffset) {
+        this.buffer = ByteBuffer.allocateDirect(length);
+        this.length = length;
+        this.locationOffset = locationOffset;
+        this.velocityOffset = velocityOffset;
+        this.burstOffset = burstOffset;
+
+        buffer.put(0, (byte) PROTOCOL_VERSION);
+        buffer.put(2, (byte) pduType);
+        buffer.put(3, (byte) PROTOCOL_FAMILY_WARFARE);
+        buffer.putShort(8, (short) length);
+        buffer.putShort(burstOffset + 12, (short) 1); // quantity
+    }
+
+    /**
+     * Create an encoder for Fire PDUs.
+     *
+     * @return The encoder
+     */
+    public static WeaponEventEncoder fire() {
+        return new WeaponEventEncoder(PduCodec.PDU_TYPE_FIRE, FIRE_LENGTH, 40, 80, 64);
+    }
+
+    /**
+     * Create an encoder for Detonation PDUs.
+     *
+     * @return The encoder
+     */
+    public static WeaponEventEncoder detonation() {
+        return new WeaponEventEncoder(PduCodec.PDU_TYPE_DETONATION, DETONATION_LENGTH, 48, 36, 72);
+    }
+
+    public void setExerciseId(int exerciseId) {
+        buffer.put(EXERCISE_ID_OFFSET, (byte) exerciseId);
+    }
+
+    /**
+     * Set the header timestamp.
+     *
+     * @param timestamp The DIS timestamp, in units of 2^-31 hours with the absolute flag in bit 0
+     */
+    public void setTimestamp(int timestamp) {
+        buffer.putInt(TIMESTAMP_OFFSET, timestamp);
+    }
+
+    public void setFiringEntityId(int site, int application, int entity) {
+        putEntityId(FIRING_ENTITY_OFFSET, site, application, entity);
+    }
+
+    public void setTargetEntityId(int site, int application, int entity) {
+        putEntityId(TARGET_ENTITY_OFFSET, site, application, entity);
+    }
+
+    public void setMunitionId(int site, int application, int entity) {
+        putEntityId(MUNITION_OFFSET, site, application, entity);
+    }
+
+    public void setEventId(int site, int application, int eventNumber) {
+        putEntityId(EVENT_ID_OFFSET, site, application, eventNumber);
+    }
+
+    public void setLocation(double x, double y, double z) {
+        buffer.putDouble(locationOffset, x);
+        buffer.putDouble(locationOffset + 8, y);
+        buffer.putDouble(locationOffset + 16, z);
+    }
+
+    public void setVelocity(float x, float y, float z) {
+        buffer.putFloat(velocityOffset, x);
+        buffer.putFloat(velocityOffset + 4, y);
+        buffer.putFloat(velocityOffset + 8, z);
+    }
+
+    /**
+     * Set the munition type in the burst descriptor.
+     *
+     * @param kind The entity kind
+     * @param domain The domain
+     * @param country The country code
+     * @param category The category
+     * @param subcategory The subcategory
+     * @param specific The specific type
+     */
+    public void setMunitionType(int kind, int domain, int country, int category, int subcategory, int specific) {
+        buffer.put(burstOffset, (byte) kind);
+        buffer.put(burstOffset + 1, (byte) domain);
+        buffer.putShort(burstOffset + 2, (short) country);
+        buffer.put(burstOffset + 4, (byte) category);
+        buffer.put(burstOffset + 5, (byte) subcategory);
+        buffer.put(burstOffset + 6, (byte) specific);
+    }
+
+    /**
+     * Get the encoded PDU.
+     *
+     * @return The encoder's buffer, positioned at the start of the PDU with the limit at its end;
+     *         it is overwritten by the next setter call
+     */
+    public ByteBuffer encode() {
+        buffer.clear();
+        return buffer.limit(length);
+    }
+
+    private void putEntityId(int offset, int site, int application, int entity) {
+        buffer.putShort(offset, (short) site);
+        buffer.putShort(offset + 2, (short) application);
+        buffer.putShort(offset + 4, (short) entity);
+    }
+}
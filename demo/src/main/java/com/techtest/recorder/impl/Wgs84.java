@@ -0,0 +1,88 @@
+package com.techtest.recorder.impl;
+
+/**
+ * Conversions between geodetic coordinates and the geocentric (ECEF) coordinates
+ * DIS uses for world locations, on the WGS 84 ellipsoid.
+ * Uses {@link StrictMath} so results are identical on every platform.
+ */
+public final class Wgs84 {
+    private static final double SEMI_MAJOR_AXIS = 6378137.0;
+    private static final double FLATTENING = 1 / 298.257223563;
+    private static final double ECCENTRICITY_SQUARED = FLATTENING * (2 - FLATTENING);
+
+    private Wgs84() {
+    }
+
+    /**
+     * Convert a geodetic position to geocentric coordinates.
+     *
+     * @param latitude The latitude in degrees
+     * @param longitude The longitude in degrees
+     * @param altitude The height above the ellipsoid in meters
+     * @return The x, y and z coordinates in meters
+     */
+    public static double[] toGeocentric(double latitude, double longitude, double altitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double sinLat = StrictMath.sin(lat);
+        double radius = SEMI_MAJOR_AXIS / StrictMath.sqrt(1 - ECCENTRICITY_SQUARED * sinLat * sinLat);
+        return new double[] {
+            (radius + altitude) * StrictMath.cos(lat) * StrictMath.cos(lon),
+            (radius + altitude) * StrictMath.cos(lat) * StrictMath.sin(lon),
+            (radius * (1 - ECCENTRICITY_SQUARED) + altitude) * sinLat
+        };
+    }
+
+    /**
+     * Get the geodetic latitude of a geocentric position, using Bowring's formula, which is
+     * accurate to well under a millimeter near the Earth's surface.
+     *
+     * @param x The x coordinate in meters
+     * @param y The y coordinate in meters
+     * @param z The z coordinate in meters
+     * @return The latitude in degrees
+     */
+    public static double latitude(double x, double y, double z) {
+        double semiMinorAxis = SEMI_MAJOR_AXIS * (1 - FLATTENING);
+        double secondEccentricitySquared = ECCENTRICITY_SQUARED / (1 - ECCENTRICITY_SQUARED);
+        double p = StrictMath.sqrt(x * x + y * y);
+        double theta = StrictMath.atan2(z * SEMI_MAJOR_AXIS, p * semiMinorAxis);
+        double sinTheta = StrictMath.sin(theta);
+        double cosTheta = StrictMath.cos(theta);
+        return Math.toDegrees(StrictMath.atan2(
+            z + secondEccentricitySquared * semiMinorAxis * sinTheta * sinTheta * sinTheta,
+            p - ECCENTRICITY_SQUARED * SEMI_MAJOR_AXIS * cosTheta * cosTheta * cosTheta));
+    }
+
+    /**
+     * Get the longitude of a geocentric position.
+     *
+     * @param x The x coordinate in meters
+     * @param y The y coordinate in meters
+     * @return The longitude in degrees
+     */
+    public static double longitude(double x, double y) {
+        return Math.toDegrees(StrictMath.atan2(y, x));
+    }
+
+    /**
+     * Get the axes of the local east-north-up frame at a geodetic position, in geocentric coordinates.
+     *
+     * @param latitude The latitude in degrees
+     * @param longitude The longitude in degrees
+     * @return The east, north and up unit vectors, each as x, y and z
+     */
+    public static double[][] localAxes(double latitude, double longitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double sinLat = StrictMath.sin(lat);
+        double cosLat = StrictMath.cos(lat);
+        double sinLon = StrictMath.sin(lon);
+        double cosLon = StrictMath.cos(lon);
+        return new double[][] {
+            {-sinLon, cosLon, 0},
+            {-sinLat * cosLon, -sinLat * sinLon, cosLat},
+            {cosLat * cosLon, cosLat * sinLon, sinLat}
+        };
+    }
+}
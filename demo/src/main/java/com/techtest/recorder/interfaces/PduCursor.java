@@ -0,0 +1,30 @@
+package com.techtest.recorder.interfaces;
+
+import com.techtest.recorder.model.RecordedPdu;
+
+/**
+ * Forward-only cursor over the PDUs of one exercise, in timestamp order.
+ * A cursor sees PDUs stored after it was opened, so it can follow an exercise
+ * that is still being recorded; those PDUs follow in the order they were stored.
+ */
+public interface PduCursor extends AutoCloseable {
+    /**
+     * Check if another PDU is available now.
+     * 
+     * @return true if {@link #next()} will return a PDU
+     */
+    boolean hasNext();
+    
+    /**
+     * Get the next PDU.
+     * 
+     * @return The next PDU, or null if no more PDUs are currently available
+     */
+    RecordedPdu next();
+    
+    /**
+     * Release any resources held by the cursor.
+     */
+    @Override
+    void close();
+}
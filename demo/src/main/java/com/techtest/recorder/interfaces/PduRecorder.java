@@ -1,5 +1,7 @@
 package com.techtest.recorder.interfaces;
 
+import com.techtest.recorder.metrics.MetricsRegistry;
+
 /**
  * Interface for PDU recording operations.
  */
@@ -16,6 +18,14 @@ public interface PduRecorder {
      */
     void stopRecording();
     
+    /**
+     * Continue recording into a different exercise without closing the socket,
+     * so no datagrams are lost between the two exercises.
+     * 
+     * @param exerciseId The exercise ID to record into from now on
+     */
+    void switchExercise(String exerciseId);
+    
     /**
      * Check if recording is active.
      * 
@@ -43,4 +53,11 @@ public interface PduRecorder {
      * @param analyzer The analyzer to remove
      */
     void removeAnalyzer(PduAnalyzer analyzer);
+    
+    /**
+     * Get the metrics the recorder maintains about received traffic.
+     * 
+     * @return The metrics registry
+     */
+    MetricsRegistry getMetrics();
 }
@@ -2,6 +2,8 @@ package com.techtest.recorder.interfaces;
 
 import java.util.List;
 
+import com.techtest.recorder.model.ExerciseSummary;
+import com.techtest.recorder.model.PduQuery;
 import com.techtest.recorder.model.RecordedPdu;
 
 /**
@@ -24,6 +26,49 @@ public interface PduStorage {
      */
     List<RecordedPdu> getPdusForExercise(String exerciseId);
     
+    /**
+     * Open a cursor over the PDUs of an exercise.
+     * The cursor reads PDUs as they are needed rather than loading the exercise,
+     * and follows PDUs that are stored while it is open. The PDUs stored before the cursor
+     * was opened are returned in timestamp order, even if they were stored out of order;
+     * PDUs stored later are returned in the order they were stored.
+     * 
+     * @param exerciseId The exercise ID
+     * @return A cursor positioned before the first PDU
+     */
+    PduCursor openCursor(String exerciseId);
+    
+    /**
+     * Open a cursor over the PDUs of an exercise that match a query.
+     * Implementations use their indexes to skip records that cannot match, so a narrow query
+     * over a large exercise reads little. Like {@link #openCursor(String)}, the cursor returns
+     * PDUs in timestamp order and follows PDUs that are stored while it is open.
+     * 
+     * @param exerciseId The exercise ID
+     * @param query The time window, PDU type and entity criteria
+     * @return A cursor positioned before the first matching PDU
+     */
+    PduCursor openCursor(String exerciseId, PduQuery query);
+    
+    /**
+     * Retrieve the PDUs for an exercise recorded within a time window.
+     * 
+     * @param exerciseId The exercise ID
+     * @param startTime The start of the window in milliseconds (inclusive)
+     * @param endTime The end of the window in milliseconds (exclusive)
+     * @return List of recorded PDUs in timestamp order
+     */
+    List<RecordedPdu> getPdusInTimeRange(String exerciseId, long startTime, long endTime);
+    
+    /**
+     * Retrieve the PDUs for an exercise that match a query.
+     * 
+     * @param exerciseId The exercise ID
+     * @param query The time window, PDU type and entity criteria
+     * @return List of matching PDUs in timestamp order
+     */
+    List<RecordedPdu> queryPdus(String exerciseId, PduQuery query);
+    
     /**
      * Clear all PDUs for a specific exercise.
      * 
@@ -31,10 +76,32 @@ public interface PduStorage {
      */
     void clearExercise(String exerciseId);
     
+    /**
+     * Make all stored PDUs durable.
+     * Storage implementations that buffer writes must persist them before returning;
+     * implementations without durable state may do nothing.
+     */
+    void flush();
+    
     /**
      * Get all available exercise IDs.
      * 
      * @return List of exercise IDs
      */
     List<String> getExerciseIds();
+    
+    /**
+     * Get the catalog details of an exercise without reading its PDUs.
+     * 
+     * @param exerciseId The exercise ID
+     * @return The exercise summary, or null if the exercise does not exist
+     */
+    ExerciseSummary getExerciseSummary(String exerciseId);
+    
+    /**
+     * Get the catalog details of all available exercises without reading their PDUs.
+     * 
+     * @return List of exercise summaries
+     */
+    List<ExerciseSummary> getExerciseSummaries();
 }
@@ -0,0 +1,23 @@
+package com.techtest.recorder.interfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Produces the PDUs a load generator sends, each with the time it is due.
+ * Sources are used by a single thread and may reuse their buffers between calls.
+ */
+public interface TrafficSource {
+    /**
+     * Get when the next PDU is due.
+     *
+     * @return The due time in nanoseconds since the start of the run
+     */
+    long nextDueNanos();
+
+    /**
+     * Encode the next PDU and advance to the one after it.
+     *
+     * @return A buffer positioned at the PDU with the limit at its end, valid until the next call
+     */
+    ByteBuffer next();
+}
@@ -0,0 +1,32 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One call of an analyzer on a received PDU. Only calls slower than the threshold,
+ * 1 ms by default, are recorded.
+ */
+@Name("com.techtest.recorder.AnalyzerInvocation")
+@Label("Analyzer Invocation")
+@Category({"DIS Recorder", "Recording"})
+@Description("An analyzer processing a received PDU")
+@StackTrace(false)
+@Threshold("1 ms")
+public class AnalyzerInvocationEvent extends jdk.jfr.Event {
+    @Label("Analyzer")
+    public String analyzer;
+
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("PDU Type")
+    public int pduType;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,63 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Time the recorder's receive thread spent on a batch of datagrams, split into waiting
+ * for datagrams, decoding, storing and analyzing. The event spans the whole batch.
+ */
+@Name("com.techtest.recorder.ReceiveBatch")
+@Label("Receive Batch")
+@Category({"DIS Recorder", "Recording"})
+@Description("Receive, decode, store and analyze timings of a batch of received datagrams")
+@StackTrace(false)
+public class ReceiveBatchEvent extends jdk.jfr.Event {
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("Datagrams")
+    public int datagrams;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("PDUs Recorded")
+    public int pdus;
+
+    @Label("Entity State PDUs")
+    public int entityStatePdus;
+
+    @Label("Fire PDUs")
+    public int firePdus;
+
+    @Label("Detonation PDUs")
+    public int detonationPdus;
+
+    @Label("Rejected Datagrams")
+    @Description("Datagrams that failed to parse or had an unsupported PDU type")
+    public int rejected;
+
+    @Label("Receive Wait")
+    @Description("Time blocked in the socket waiting for datagrams")
+    @Timespan(Timespan.NANOSECONDS)
+    public long receiveWaitNanos;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decodeNanos;
+
+    @Label("Store Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long storeNanos;
+
+    @Label("Analyze Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long analyzeNanos;
+}
@@ -0,0 +1,35 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Spans a recording session, from starting to stopping the recorder.
+ */
+@Name("com.techtest.recorder.RecordingSession")
+@Label("Recording Session")
+@Category({"DIS Recorder", "Recording"})
+@Description("An exercise being recorded from a multicast group")
+public class RecordingSessionEvent extends jdk.jfr.Event {
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("Multicast Group")
+    public String multicastGroup;
+
+    @Label("Port")
+    public int port;
+
+    @Label("Datagrams")
+    public long datagrams;
+
+    @Label("PDUs Recorded")
+    public long pdus;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,38 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Scheduling accuracy over a batch of replayed PDUs. Lateness is how long after its
+ * scheduled time, scaled by the speed factor, a PDU was sent.
+ */
+@Name("com.techtest.recorder.ReplayBatch")
+@Label("Replay Batch")
+@Category({"DIS Recorder", "Replay"})
+@Description("Tick lateness over a batch of replayed PDUs")
+@StackTrace(false)
+public class ReplayBatchEvent extends jdk.jfr.Event {
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("PDUs Sent")
+    public int pdus;
+
+    @Label("Mean Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    public long meanLatenessNanos;
+
+    @Label("Maximum Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    public long maxLatenessNanos;
+
+    @Label("Send Time")
+    @Description("Time spent encoding and sending")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sendNanos;
+}
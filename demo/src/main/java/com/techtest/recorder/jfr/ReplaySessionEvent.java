@@ -0,0 +1,37 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Spans the replay of an exercise, from its first PDU to finishing or being stopped.
+ */
+@Name("com.techtest.recorder.ReplaySession")
+@Label("Replay Session")
+@Category({"DIS Recorder", "Replay"})
+@Description("An exercise being replayed to a multicast group")
+public class ReplaySessionEvent extends jdk.jfr.Event {
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("Speed Factor")
+    public double speedFactor;
+
+    @Label("PDUs Sent")
+    public long pdus;
+
+    @Label("Passes")
+    @Description("Passes through the exercise, more than one for looped replays")
+    public long passes;
+
+    @Label("Maximum Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    public long maxLatenessNanos;
+
+    @Label("Completed")
+    @Description("false if the replay was stopped or failed before the last PDU")
+    public boolean completed;
+}
@@ -0,0 +1,36 @@
+package com.techtest.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One replayed PDU and how late it was sent. Disabled by default because replays can
+ * send hundreds of thousands of PDUs a second; {@link ReplayBatchEvent} summarizes the
+ * same information. Enable it in a custom JFR settings file to trace individual ticks.
+ */
+@Name("com.techtest.recorder.ReplayTick")
+@Label("Replay Tick")
+@Category({"DIS Recorder", "Replay"})
+@Description("A replayed PDU and its lateness against the schedule")
+@Enabled(false)
+@StackTrace(false)
+public class ReplayTickEvent extends jdk.jfr.Event {
+    @Label("Exercise")
+    public String exerciseId;
+
+    @Label("Sequence")
+    @Description("Position of the PDU in the replay, from 0")
+    public long sequence;
+
+    @Label("PDU Type")
+    public int pduType;
+
+    @Label("Lateness")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latenessNanos;
+}
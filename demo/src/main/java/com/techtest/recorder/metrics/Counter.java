@@ -0,0 +1,34 @@
+package com.techtest.recorder.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count. Increments from many threads do not contend,
+ * so counters can be updated on every received datagram.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Add one to the count.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Add to the count.
+     *
+     * @param amount The amount to add, not negative
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
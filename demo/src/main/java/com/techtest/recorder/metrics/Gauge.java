@@ -0,0 +1,14 @@
+package com.techtest.recorder.metrics;
+
+/**
+ * A value sampled when metrics are read, such as a queue depth.
+ */
+@FunctionalInterface
+public interface Gauge {
+    /**
+     * Get the current value.
+     *
+     * @return The value, or -1 if it is not available
+     */
+    long get();
+}
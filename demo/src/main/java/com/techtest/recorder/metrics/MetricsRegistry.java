@@ -0,0 +1,154 @@
+package com.techtest.recorder.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, gauges and histograms. Metrics are created on first use and live as
+ * long as the registry; callers on hot paths look a metric up once and keep it.
+ * <p>
+ * Names follow Prometheus conventions. A metric may carry one label, in which case its
+ * key is written {@code name{label="value"}}, for example
+ * {@code recorder_parse_failures_total{reason="truncated"}}.
+ */
+public class MetricsRegistry {
+    private static final double[] SNAPSHOT_PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] SNAPSHOT_PERCENTILE_SUFFIXES = {"_p50", "_p90", "_p99", "_p999"};
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name The metric name
+     * @return The counter
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Get or create a labelled counter.
+     *
+     * @param name The metric name
+     * @param label The label name
+     * @param value The label value
+     * @return The counter
+     */
+    public Counter counter(String name, String label, String value) {
+        return counter(key(name, label, value));
+    }
+
+    /**
+     * Get or create a histogram.
+     *
+     * @param name The metric name
+     * @return The histogram
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Get or create a labelled histogram.
+     *
+     * @param name The metric name
+     * @param label The label name
+     * @param value The label value
+     * @return The histogram
+     */
+    public Histogram histogram(String name, String label, String value) {
+        return histogram(key(name, label, value));
+    }
+
+    /**
+     * Register a gauge, replacing any gauge of the same name.
+     *
+     * @param name The metric name
+     * @param gauge The gauge
+     */
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public SortedMap<String, Counter> getCounters() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(counters));
+    }
+
+    public SortedMap<String, Histogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+    }
+
+    public SortedMap<String, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(gauges));
+    }
+
+    /**
+     * Read every metric as a flat map of values. Histograms contribute their count, sum,
+     * maximum and percentiles under the suffixes {@code _count}, {@code _sum}, {@code _max},
+     * {@code _p50}, {@code _p90}, {@code _p99} and {@code _p999}.
+     *
+     * @return The values by key, sorted by key
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        counters.forEach((key, counter) -> values.put(key, counter.get()));
+        gauges.forEach((key, gauge) -> values.put(key, gauge.get()));
+        histograms.forEach((key, histogram) -> {
+            values.put(withSuffix(key, "_count"), histogram.getCount());
+            values.put(withSuffix(key, "_sum"), histogram.getSum());
+            values.put(withSuffix(key, "_max"), histogram.getMax());
+            for (int i = 0; i < SNAPSHOT_PERCENTILES.length; i++) {
+                values.put(withSuffix(key, SNAPSHOT_PERCENTILE_SUFFIXES[i]),
+                    histogram.getValueAtPercentile(SNAPSHOT_PERCENTILES[i]));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Expose the registry through JMX on the platform MBean server, replacing any MBean
+     * already registered under the name.
+     *
+     * @param objectName The JMX object name, e.g. {@code com.techtest.recorder:type=Metrics}
+     * @throws JMException If the MBean could not be registered
+     */
+    public void registerMBean(String objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        MetricsMBean mbean = new MetricsMBean(this);
+        try {
+            server.registerMBean(mbean, name);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(name);
+            server.registerMBean(mbean, name);
+        }
+    }
+
+    /**
+     * Insert a suffix into a key, before its label if it has one.
+     *
+     * @param key The metric key
+     * @param suffix The suffix to add to the name
+     * @return The new key
+     */
+    public static String withSuffix(String key, String suffix) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key + suffix : key.substring(0, brace) + suffix + key.substring(brace);
+    }
+
+    private static String key(String name, String label, String value) {
+        return name + "{" + label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+}
@@ -0,0 +1,86 @@
+package com.techtest.recorder.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link MetricsRegistry} in the Prometheus text exposition format (version 0.0.4).
+ * Counters and gauges are written as they are; histograms are written as summaries with
+ * 0.5, 0.9, 0.99 and 0.999 quantiles, plus a {@code _max} gauge.
+ */
+public final class PrometheusFormat {
+    /** Content type of the exposition format. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusFormat() {
+    }
+
+    /**
+     * Format every metric in a registry.
+     *
+     * @param registry The registry
+     * @return The metrics in exposition format
+     */
+    public static String format(MetricsRegistry registry) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, List<String>> family : families(registry.getCounters().keySet()).entrySet()) {
+            out.append("# TYPE ").append(family.getKey()).append(" counter\n");
+            for (String key : family.getValue()) {
+                sample(out, key, registry.getCounters().get(key).get());
+            }
+        }
+        for (Map.Entry<String, List<String>> family : families(registry.getGauges().keySet()).entrySet()) {
+            out.append("# TYPE ").append(family.getKey()).append(" gauge\n");
+            for (String key : family.getValue()) {
+                sample(out, key, registry.getGauges().get(key).get());
+            }
+        }
+        Map<String, Histogram> histograms = registry.getHistograms();
+        for (Map.Entry<String, List<String>> family : families(histograms.keySet()).entrySet()) {
+            String name = family.getKey();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (String key : family.getValue()) {
+                Histogram histogram = histograms.get(key);
+                String labels = labelsOf(key);
+                for (double quantile : QUANTILES) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    out.append(name).append('{').append(labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel)
+                        .append("} ").append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+                }
+                sample(out, MetricsRegistry.withSuffix(key, "_sum"), histogram.getSum());
+                sample(out, MetricsRegistry.withSuffix(key, "_count"), histogram.getCount());
+            }
+            out.append("# TYPE ").append(name).append("_max gauge\n");
+            for (String key : family.getValue()) {
+                sample(out, MetricsRegistry.withSuffix(key, "_max"), histograms.get(key).getMax());
+            }
+        }
+        return out.toString();
+    }
+
+    private static Map<String, List<String>> families(Iterable<String> keys) {
+        Map<String, List<String>> families = new TreeMap<>();
+        for (String key : keys) {
+            families.computeIfAbsent(nameOf(key), k -> new ArrayList<>()).add(key);
+        }
+        return families;
+    }
+
+    private static void sample(StringBuilder out, String key, long value) {
+        out.append(key).append(' ').append(value).append('\n');
+    }
+
+    private static String nameOf(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String labelsOf(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? "" : key.substring(brace + 1, key.length() - 1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.techtest.recorder.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * System-wide UDP counters from the {@code Udp:} lines of {@code /proc/net/snmp}.
+ * Unlike {@link UdpSocketStats} they cover every UDP socket on the host, including drops
+ * that happen before a datagram is matched to a socket. Only available on Linux;
+ * elsewhere every value is -1.
+ */
+public final class UdpProtocolStats {
+    private static final Path SNMP = Paths.get("/proc/net/snmp");
+    private static final String PREFIX = "Udp:";
+    private static final UdpProtocolStats UNAVAILABLE = new UdpProtocolStats(-1, -1, -1, -1);
+
+    private final long inDatagrams;
+    private final long inErrors;
+    private final long receiveBufferErrors;
+    private final long memoryErrors;
+
+    private UdpProtocolStats(long inDatagrams, long inErrors, long receiveBufferErrors, long memoryErrors) {
+        this.inDatagrams = inDatagrams;
+        this.inErrors = inErrors;
+        this.receiveBufferErrors = receiveBufferErrors;
+        this.memoryErrors = memoryErrors;
+    }
+
+    /**
+     * Read the current counters.
+     *
+     * @return The counters, with -1 values if they are unavailable
+     */
+    public static UdpProtocolStats read() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(SNMP);
+        } catch (IOException e) {
+            return UNAVAILABLE;
+        }
+        // A header line of counter names is followed by a line of values
+        for (int i = 0; i + 1 < lines.size(); i++) {
+            if (lines.get(i).startsWith(PREFIX) && lines.get(i + 1).startsWith(PREFIX)) {
+                String[] names = lines.get(i).split("\\s+");
+                String[] values = lines.get(i + 1).split("\\s+");
+                return new UdpProtocolStats(value(names, values, "InDatagrams"), value(names, values, "InErrors"),
+                    value(names, values, "RcvbufErrors"), value(names, values, "MemErrors"));
+            }
+        }
+        return UNAVAILABLE;
+    }
+
+    /**
+     * Get the datagrams delivered to UDP sockets.
+     *
+     * @return The count since boot, or -1 if unknown
+     */
+    public long getInDatagrams() {
+        return inDatagrams;
+    }
+
+    /**
+     * Get the received datagrams that could not be delivered, for any reason.
+     *
+     * @return The count since boot, or -1 if unknown
+     */
+    public long getInErrors() {
+        return inErrors;
+    }
+
+    /**
+     * Get the datagrams dropped because a socket receive buffer was full.
+     *
+     * @return The count since boot, or -1 if unknown
+     */
+    public long getReceiveBufferErrors() {
+        return receiveBufferErrors;
+    }
+
+    /**
+     * Get the datagrams dropped because socket memory limits were reached.
+     *
+     * @return The count since boot, or -1 if unknown
+     */
+    public long getMemoryErrors() {
+        return memoryErrors;
+    }
+
+    private static long value(String[] names, String[] values, String name) {
+        for (int i = 1; i < names.length && i < values.length; i++) {
+            if (names[i].equals(name)) {
+                return Long.parseLong(values[i]);
+            }
+        }
+        return -1;
+    }
+}
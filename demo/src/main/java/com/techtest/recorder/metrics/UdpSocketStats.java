@@ -0,0 +1,82 @@
+package com.techtest.recorder.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Kernel statistics of the UDP sockets bound to a local port, read from
+ * {@code /proc/net/udp} and {@code /proc/net/udp6}. Only available on Linux;
+ * elsewhere every value is -1. When several sockets share the port their
+ * values are added together.
+ */
+public final class UdpSocketStats {
+    private static final Path[] TABLES = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+    private static final int LOCAL_ADDRESS_FIELD = 1;
+    private static final int QUEUES_FIELD = 4;
+
+    private final long receiveQueueBytes;
+    private final long drops;
+
+    private UdpSocketStats(long receiveQueueBytes, long drops) {
+        this.receiveQueueBytes = receiveQueueBytes;
+        this.drops = drops;
+    }
+
+    /**
+     * Read the current statistics of the sockets bound to a port.
+     *
+     * @param port The local port
+     * @return The statistics, with -1 values if no socket was found or the tables are unavailable
+     */
+    public static UdpSocketStats forPort(int port) {
+        long queue = 0;
+        long drops = 0;
+        boolean found = false;
+        for (Path table : TABLES) {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(table);
+            } catch (IOException e) {
+                continue;
+            }
+            // The first line is the column header
+            for (int i = 1; i < lines.size(); i++) {
+                String[] fields = lines.get(i).trim().split("\\s+");
+                if (fields.length <= QUEUES_FIELD || localPort(fields[LOCAL_ADDRESS_FIELD]) != port) {
+                    continue;
+                }
+                String queues = fields[QUEUES_FIELD];
+                queue += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+                drops += Long.parseLong(fields[fields.length - 1]);
+                found = true;
+            }
+        }
+        return found ? new UdpSocketStats(queue, drops) : new UdpSocketStats(-1, -1);
+    }
+
+    /**
+     * Get the bytes waiting in the receive queues.
+     *
+     * @return The queued bytes, or -1 if unknown
+     */
+    public long getReceiveQueueBytes() {
+        return receiveQueueBytes;
+    }
+
+    /**
+     * Get the datagrams the kernel dropped because a receive queue was full.
+     *
+     * @return The drop count since the sockets were opened, or -1 if unknown
+     */
+    public long getDrops() {
+        return drops;
+    }
+
+    private static int localPort(String address) {
+        int colon = address.lastIndexOf(':');
+        return colon < 0 ? -1 : Integer.parseInt(address.substring(colon + 1), 16);
+    }
+}
@@ -0,0 +1,74 @@
+package com.techtest.recorder.model;
+
+import edu.nps.moves.dis.EntityID;
+
+/**
+ * Immutable value form of a DIS EntityID (site, application, entity) usable as a map key.
+ */
+public final class EntityKey {
+    private final int site;
+    private final int application;
+    private final int entity;
+
+    public EntityKey(int site, int application, int entity) {
+        this.site = site;
+        this.application = application;
+        this.entity = entity;
+    }
+
+    /**
+     * Create a key from an open-dis EntityID.
+     * 
+     * @param entityId The entity ID
+     * @return The key, or null if the entity ID is null
+     */
+    public static EntityKey of(EntityID entityId) {
+        if (entityId == null) {
+            return null;
+        }
+        return new EntityKey(entityId.getSite(), entityId.getApplication(), entityId.getEntity());
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    public int getApplication() {
+        return application;
+    }
+
+    public int getEntity() {
+        return entity;
+    }
+
+    /**
+     * Pack the three 16-bit fields into a single long.
+     * 
+     * @return The packed value
+     */
+    public long pack() {
+        return ((long) (site & 0xFFFF) << 32) | ((long) (application & 0xFFFF) << 16) | (entity & 0xFFFF);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EntityKey)) {
+            return false;
+        }
+        EntityKey other = (EntityKey) o;
+        return site == other.site && application == other.application && entity == other.entity;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(pack());
+    }
+
+    @Override
+    public String toString() {
+        return site + ":" + application + ":" + entity;
+    }
+}
@@ -0,0 +1,98 @@
+package com.techtest.recorder.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Catalog details of a stored exercise: time span, size and content counts.
+ * Instances are immutable snapshots.
+ */
+public final class ExerciseSummary {
+    private final String exerciseId;
+    private final long startTime;
+    private final long endTime;
+    private final long pduCount;
+    private final long byteSize;
+    private final int entityCount;
+    private final Map<Integer, Long> pduCountsByType;
+
+    public ExerciseSummary(String exerciseId, long startTime, long endTime, long pduCount, long byteSize,
+                           int entityCount, Map<Integer, Long> pduCountsByType) {
+        this.exerciseId = exerciseId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.pduCount = pduCount;
+        this.byteSize = byteSize;
+        this.entityCount = entityCount;
+        this.pduCountsByType = Collections.unmodifiableMap(new TreeMap<>(pduCountsByType));
+    }
+
+    public String getExerciseId() {
+        return exerciseId;
+    }
+
+    /**
+     * Get the timestamp of the earliest PDU.
+     * 
+     * @return The start time in milliseconds, or 0 if the exercise is empty
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Get the timestamp of the latest PDU.
+     * 
+     * @return The end time in milliseconds, or 0 if the exercise is empty
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Get the time between the first and last PDU.
+     * 
+     * @return The duration in milliseconds
+     */
+    public long getDuration() {
+        return endTime - startTime;
+    }
+
+    public long getPduCount() {
+        return pduCount;
+    }
+
+    /**
+     * Get the total wire size of the stored PDUs.
+     * 
+     * @return The size in bytes
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Get the number of distinct entities referenced by the exercise's PDUs.
+     * 
+     * @return The number of entities
+     */
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * Get the number of PDUs of each type.
+     * 
+     * @return Map of PDU type to count, ordered by type
+     */
+    public Map<Integer, Long> getPduCountsByType() {
+        return pduCountsByType;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s  %d PDUs, %d entities, %.1f s, %.1f KB, by type %s",
+            exerciseId, pduCount, entityCount, getDuration() / 1000.0, byteSize / 1024.0, pduCountsByType);
+    }
+}
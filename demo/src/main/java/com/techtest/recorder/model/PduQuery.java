@@ -0,0 +1,151 @@
+package com.techtest.recorder.model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Selection criteria for retrieving PDUs from storage.
+ * A query combines a time window with optional PDU type and entity filters;
+ * an empty type or entity set matches every PDU. A record filter can check the raw
+ * bytes of the records the other criteria select, before they are decoded.
+ * Instances are immutable.
+ */
+public final class PduQuery {
+    private static final PduQuery ALL = new PduQuery(Long.MIN_VALUE, Long.MAX_VALUE,
+        Collections.emptySet(), Collections.emptySet());
+
+    private final long startTime;
+    private final long endTime;
+    private final Set<Integer> pduTypes;
+    private final Set<EntityKey> entities;
+    private final Predicate<byte[]> recordFilter;
+
+    /**
+     * Create a new query.
+     * 
+     * @param startTime The start of the time window in milliseconds (inclusive)
+     * @param endTime The end of the time window in milliseconds (exclusive)
+     * @param pduTypes The PDU types to match, or empty for all types
+     * @param entities The entities to match, or empty for all entities
+     */
+    public PduQuery(long startTime, long endTime, Set<Integer> pduTypes, Set<EntityKey> entities) {
+        this(startTime, endTime, pduTypes, entities, null);
+    }
+
+    private PduQuery(long startTime, long endTime, Set<Integer> pduTypes, Set<EntityKey> entities,
+            Predicate<byte[]> recordFilter) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.pduTypes = Collections.unmodifiableSet(new HashSet<>(pduTypes));
+        this.entities = Collections.unmodifiableSet(new HashSet<>(entities));
+        this.recordFilter = recordFilter;
+    }
+
+    /**
+     * Create a query that matches every PDU.
+     * 
+     * @return The query
+     */
+    public static PduQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Create a query for a time window.
+     * 
+     * @param startTime The start of the time window in milliseconds (inclusive)
+     * @param endTime The end of the time window in milliseconds (exclusive)
+     * @return The query
+     */
+    public static PduQuery timeRange(long startTime, long endTime) {
+        return new PduQuery(startTime, endTime, Collections.emptySet(), Collections.emptySet());
+    }
+
+    /**
+     * Create a copy of this query restricted to a set of PDU types.
+     * 
+     * @param types The PDU types to match
+     * @return The new query
+     */
+    public PduQuery withPduTypes(Set<Integer> types) {
+        return new PduQuery(startTime, endTime, types, entities, recordFilter);
+    }
+
+    /**
+     * Create a copy of this query restricted to a set of entities.
+     * 
+     * @param entityKeys The entities to match
+     * @return The new query
+     */
+    public PduQuery withEntities(Set<EntityKey> entityKeys) {
+        return new PduQuery(startTime, endTime, pduTypes, entityKeys, recordFilter);
+    }
+    
+    /**
+     * Create a copy of this query that also checks the raw bytes of each record.
+     * 
+     * @param filter Returns true for the raw PDUs to match
+     * @return The new query
+     */
+    public PduQuery withRecordFilter(Predicate<byte[]> filter) {
+        return new PduQuery(startTime, endTime, pduTypes, entities, filter);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public Set<Integer> getPduTypes() {
+        return pduTypes;
+    }
+
+    public Set<EntityKey> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Check whether a timestamp falls inside the query's time window.
+     * 
+     * @param timestamp The timestamp in milliseconds
+     * @return true if inside the window
+     */
+    public boolean matchesTime(long timestamp) {
+        return timestamp >= startTime && timestamp < endTime;
+    }
+
+    /**
+     * Check whether a PDU type is selected by the query.
+     * 
+     * @param pduType The PDU type
+     * @return true if selected
+     */
+    public boolean matchesType(int pduType) {
+        return pduTypes.isEmpty() || pduTypes.contains(pduType);
+    }
+    
+    /**
+     * Check whether the query has a record filter, so callers that keep decoded PDUs only
+     * need their raw bytes when it does.
+     * 
+     * @return true if {@link #matchesRecord(byte[])} checks the record
+     */
+    public boolean hasRecordFilter() {
+        return recordFilter != null;
+    }
+    
+    /**
+     * Check whether a record passes the record filter.
+     * 
+     * @param data The raw PDU
+     * @return true if there is no record filter or it accepts the record
+     */
+    public boolean matchesRecord(byte[] data) {
+        return recordFilter == null || recordFilter.test(data);
+    }
+}
@@ -4,27 +4,111 @@ import edu.nps.moves.dis.Pdu;
 
 /**
  * Represents a recorded PDU with its timestamp.
+ * The raw datagram the PDU was decoded from is kept when available, so storage
+ * and replay can use the wire bytes without marshalling the PDU again.
+ * <p>
+ * Timestamps are kept in nanoseconds since the epoch. For PDUs taken off the network the
+ * timestamp is taken from the monotonic clock as soon as the datagram is received and
+ * converted to wall-clock time with an anchor (see {@code ReceiveClock}), so spacing between
+ * PDUs reflects their arrival and not the recorder's processing. Such PDUs also carry the raw
+ * {@link System#nanoTime()} reading at receipt, for measuring latency through the recorder.
  */
 public class RecordedPdu {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
     private final Pdu pdu;
-    private final long timestamp;
+    private final long timestampNanos;
     private final String exerciseId;
+    private final byte[] data;
+    private final long receiveNanos;
 
     public RecordedPdu(Pdu pdu, long timestamp, String exerciseId) {
+        this(pdu, timestamp, exerciseId, null);
+    }
+
+    public RecordedPdu(Pdu pdu, long timestamp, String exerciseId, byte[] data) {
+        this(pdu, exerciseId, data, timestamp * NANOS_PER_MILLI, 0);
+    }
+
+    private RecordedPdu(Pdu pdu, String exerciseId, byte[] data, long timestampNanos, long receiveNanos) {
         this.pdu = pdu;
-        this.timestamp = timestamp;
+        this.timestampNanos = timestampNanos;
         this.exerciseId = exerciseId;
+        this.data = data;
+        this.receiveNanos = receiveNanos;
+    }
+
+    /**
+     * Create a recorded PDU with a nanosecond timestamp, as loaded from storage.
+     * 
+     * @param pdu The PDU
+     * @param timestampNanos The time the PDU was recorded, in nanoseconds since the epoch
+     * @param exerciseId The exercise ID
+     * @param data The raw PDU bytes, or null
+     * @return The recorded PDU
+     */
+    public static RecordedPdu withTimestampNanos(Pdu pdu, long timestampNanos, String exerciseId, byte[] data) {
+        return new RecordedPdu(pdu, exerciseId, data, timestampNanos, 0);
+    }
+
+    /**
+     * Create a recorded PDU for a datagram just taken off the network.
+     * 
+     * @param pdu The PDU
+     * @param timestampNanos The wall-clock receive time, in nanoseconds since the epoch
+     * @param receiveNanos The {@link System#nanoTime()} at receipt
+     * @param exerciseId The exercise ID
+     * @param data The raw datagram
+     * @return The recorded PDU
+     */
+    public static RecordedPdu received(Pdu pdu, long timestampNanos, long receiveNanos, String exerciseId,
+                                       byte[] data) {
+        return new RecordedPdu(pdu, exerciseId, data, timestampNanos, receiveNanos);
     }
 
     public Pdu getPdu() {
         return pdu;
     }
 
+    /**
+     * Get the time the PDU was recorded.
+     * 
+     * @return The timestamp in milliseconds since the epoch
+     */
     public long getTimestamp() {
-        return timestamp;
+        return Math.floorDiv(timestampNanos, NANOS_PER_MILLI);
+    }
+
+    /**
+     * Get the time the PDU was recorded with full resolution.
+     * 
+     * @return The timestamp in nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     public String getExerciseId() {
         return exerciseId;
     }
+
+    /**
+     * Get the raw datagram the PDU was received or loaded as.
+     * 
+     * @return The raw PDU bytes, or null if the PDU was created without them
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Get the monotonic clock reading taken when the PDU was received. Only meaningful
+     * within the process that received it, and not kept by storage; storage keeps
+     * {@link #getTimestampNanos()} instead.
+     * 
+     * @return The {@link System#nanoTime()} at receipt, or 0 if the PDU was not received live
+     */
+    public long getReceiveNanos() {
+        return receiveNanos;
+    }
 }
@@ -0,0 +1,86 @@
+package com.techtest.recorder.model;
+
+/**
+ * Statistics of one pass of a looped replay: how many PDUs were sent and how closely the
+ * schedule was kept. Instances are immutable snapshots.
+ */
+public final class ReplayLoopStats {
+    private final String exerciseId;
+    private final long pass;
+    private final long pdus;
+    private final long durationNanos;
+    private final long meanLatenessNanos;
+    private final long maxLatenessNanos;
+    private final boolean completed;
+
+    public ReplayLoopStats(String exerciseId, long pass, long pdus, long durationNanos,
+                           long meanLatenessNanos, long maxLatenessNanos, boolean completed) {
+        this.exerciseId = exerciseId;
+        this.pass = pass;
+        this.pdus = pdus;
+        this.durationNanos = durationNanos;
+        this.meanLatenessNanos = meanLatenessNanos;
+        this.maxLatenessNanos = maxLatenessNanos;
+        this.completed = completed;
+    }
+
+    public String getExerciseId() {
+        return exerciseId;
+    }
+
+    /**
+     * Get the number of the pass.
+     *
+     * @return The pass, counting from 0
+     */
+    public long getPass() {
+        return pass;
+    }
+
+    public long getPdus() {
+        return pdus;
+    }
+
+    /**
+     * Get the time from the first to the last PDU sent in the pass.
+     *
+     * @return The duration in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Get how late PDUs were sent against the schedule on average.
+     *
+     * @return The mean lateness in nanoseconds
+     */
+    public long getMeanLatenessNanos() {
+        return meanLatenessNanos;
+    }
+
+    /**
+     * Get how late the latest PDU was sent against the schedule.
+     *
+     * @return The maximum lateness in nanoseconds
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * Check if the pass reached the last PDU.
+     *
+     * @return false if the replay was stopped or failed during the pass
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s pass %d  %d PDUs in %.1f s, lateness mean %.3f ms, max %.3f ms%s",
+            exerciseId, pass, pdus, durationNanos / 1e9, meanLatenessNanos / 1e6, maxLatenessNanos / 1e6,
+            completed ? "" : ", stopped");
+    }
+}
@@ -0,0 +1,134 @@
+package com.techtest.recorder.pcap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.techtest.recorder.impl.PduCodec;
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.interfaces.PduStorage;
+import com.techtest.recorder.model.RecordedPdu;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * Converts between pcap capture files and exercises held in a PduStorage.
+ * Both directions stream one PDU at a time, so exercises of any size can be converted.
+ */
+public final class PcapConverter {
+    private static final Logger logger = LoggerFactory.getLogger(PcapConverter.class);
+    private static final String DEFAULT_SOURCE_ADDRESS = "10.0.0.1";
+    private static final String DEFAULT_MULTICAST_GROUP = "239.1.2.3";
+    private static final int DEFAULT_PORT = 3000;
+
+    private PcapConverter() {
+    }
+
+    /**
+     * Import every decodable DIS PDU in a capture file into an exercise.
+     *
+     * @param file The capture file
+     * @param storage The storage to import into
+     * @param exerciseId The exercise ID to store the PDUs under
+     * @param port The UDP destination port to import, or 0 to import datagrams on any port
+     * @return The number of PDUs imported
+     * @throws IOException If the capture file cannot be read
+     */
+    public static long importExercise(Path file, PduStorage storage, String exerciseId, int port) throws IOException {
+        long imported = 0;
+        long undecodable = 0;
+
+        try (PcapReader reader = new PcapReader(file)) {
+            while (reader.next()) {
+                if (port != 0 && reader.getDestinationPort() != port) {
+                    continue;
+                }
+
+                byte[] payload = reader.getPayload();
+                Pdu pdu = PduCodec.decode(payload);
+                if (pdu == null) {
+                    undecodable++;
+                    continue;
+                }
+
+                storage.storePdu(RecordedPdu.withTimestampNanos(pdu, reader.getTimestampNanos(), exerciseId, payload));
+                imported++;
+            }
+
+            logger.info("Imported {} PDUs into exercise {} from {} ({} records read, {} non-UDP, {} not decodable)",
+                imported, exerciseId, file, reader.getPacketsRead(), reader.getPacketsSkipped(), undecodable);
+        }
+
+        return imported;
+    }
+
+    /**
+     * Export an exercise to a new capture file addressed to the default multicast group and port.
+     *
+     * @param storage The storage holding the exercise
+     * @param exerciseId The exercise ID
+     * @param file The capture file to write
+     * @return The number of PDUs exported
+     * @throws IOException If the capture file cannot be written or already exists
+     */
+    public static long exportExercise(PduStorage storage, String exerciseId, Path file) throws IOException {
+        return exportExercise(storage, exerciseId, file, false);
+    }
+
+    /**
+     * Export an exercise to a capture file addressed to the default multicast group and port.
+     *
+     * @param storage The storage holding the exercise
+     * @param exerciseId The exercise ID
+     * @param file The capture file to write
+     * @param overwrite true to replace an existing file
+     * @return The number of PDUs exported
+     * @throws IOException If the capture file cannot be written, or exists and is not overwritten
+     */
+    public static long exportExercise(PduStorage storage, String exerciseId, Path file, boolean overwrite)
+            throws IOException {
+        return exportExercise(storage, exerciseId, file,
+            InetAddress.getByName(DEFAULT_MULTICAST_GROUP), DEFAULT_PORT, overwrite);
+    }
+
+    /**
+     * Export an exercise to a capture file.
+     *
+     * @param storage The storage holding the exercise
+     * @param exerciseId The exercise ID
+     * @param file The capture file to write
+     * @param destination The destination address recorded in each frame
+     * @param port The UDP port recorded in each frame
+     * @param overwrite true to replace an existing file
+     * @return The number of PDUs exported
+     * @throws IOException If the capture file cannot be written, or exists and is not overwritten
+     */
+    public static long exportExercise(PduStorage storage, String exerciseId, Path file,
+                                      InetAddress destination, int port, boolean overwrite) throws IOException {
+        long failed = 0;
+
+        try (PduCursor cursor = storage.openCursor(exerciseId);
+                PcapWriter writer = new PcapWriter(file, InetAddress.getByName(DEFAULT_SOURCE_ADDRESS), port,
+                    destination, port, overwrite)) {
+            while (cursor.hasNext()) {
+                RecordedPdu recordedPdu = cursor.next();
+                if (recordedPdu == null) {
+                    break;
+                }
+                byte[] data = PduCodec.toBytes(recordedPdu);
+                if (data == null) {
+                    failed++;
+                    continue;
+                }
+                writer.write(recordedPdu.getTimestampNanos(), data, 0, data.length);
+            }
+
+            logger.info("Exported {} PDUs from exercise {} to {} ({} could not be encoded)",
+                writer.getPacketsWritten(), exerciseId, file, failed);
+            return writer.getPacketsWritten();
+        }
+    }
+}
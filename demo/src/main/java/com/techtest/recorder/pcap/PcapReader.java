@@ -0,0 +1,336 @@
+package com.techtest.recorder.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming reader for classic libpcap capture files that yields the UDP payloads they contain.
+ * The file is read through a fixed-size direct buffer, so captures of any size are processed
+ * in a single pass without being loaded into memory.
+ * <p>
+ * Supported link types are Ethernet (with 802.1Q tags), raw IP, BSD loopback and Linux cooked
+ * captures (SLL and SLL2). Both IPv4 and IPv6 are understood; fragmented IPv4 datagrams and
+ * non-UDP traffic are skipped.
+ */
+public class PcapReader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PcapReader.class);
+
+    static final int MAGIC_MICROS = 0xa1b2c3d4;
+    static final int MAGIC_NANOS = 0xa1b23c4d;
+    static final int GLOBAL_HEADER_SIZE = 24;
+    static final int RECORD_HEADER_SIZE = 16;
+
+    static final int LINKTYPE_NULL = 0;
+    static final int LINKTYPE_ETHERNET = 1;
+    static final int LINKTYPE_RAW = 101;
+    static final int LINKTYPE_LINUX_SLL = 113;
+    static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+    private static final int IP_PROTOCOL_UDP = 17;
+    private static final int UDP_HEADER_SIZE = 8;
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteOrder fileOrder;
+    private final boolean nanosecondTimestamps;
+    private final int linkType;
+
+    // Current packet
+    private long timestampNanos;
+    private int sourcePort;
+    private int destinationPort;
+    private byte[] payload;
+    private long packetsRead;
+    private long packetsSkipped;
+
+    /**
+     * Open a capture file for reading.
+     *
+     * @param file The capture file
+     * @throws IOException If the file cannot be opened or is not a pcap file
+     */
+    public PcapReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Truncated pcap header in " + file);
+                }
+            }
+            header.flip();
+
+            int magic = header.order(ByteOrder.BIG_ENDIAN).getInt(0);
+            if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+                fileOrder = ByteOrder.BIG_ENDIAN;
+            } else if (Integer.reverseBytes(magic) == MAGIC_MICROS || Integer.reverseBytes(magic) == MAGIC_NANOS) {
+                fileOrder = ByteOrder.LITTLE_ENDIAN;
+                magic = Integer.reverseBytes(magic);
+            } else {
+                throw new IOException("Not a pcap file (magic " + Integer.toHexString(magic) + "): " + file);
+            }
+            header.order(fileOrder);
+
+            nanosecondTimestamps = magic == MAGIC_NANOS;
+            int snapLength = header.getInt(16);
+            linkType = header.getInt(20) & 0x0FFFFFFF;
+
+            // Large enough for a whole record so a packet never straddles a refill
+            int bufferSize = Math.max(DEFAULT_BUFFER_SIZE, snapLength + RECORD_HEADER_SIZE);
+            buffer = ByteBuffer.allocateDirect(bufferSize).order(fileOrder);
+            buffer.flip();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        logger.debug("Opened pcap file {} (link type {}, {} timestamps)",
+            file, linkType, nanosecondTimestamps ? "nanosecond" : "microsecond");
+    }
+
+    /**
+     * Advance to the next UDP datagram in the capture.
+     *
+     * @return true if a datagram is available, false at end of file
+     * @throws IOException If the file cannot be read or a record is truncated
+     */
+    public boolean next() throws IOException {
+        while (fill(RECORD_HEADER_SIZE)) {
+            long seconds = buffer.getInt() & 0xFFFFFFFFL;
+            long fraction = buffer.getInt() & 0xFFFFFFFFL;
+            int capturedLength = buffer.getInt();
+            buffer.getInt(); // original length
+
+            if (capturedLength < 0 || capturedLength > buffer.capacity() - RECORD_HEADER_SIZE) {
+                throw new IOException("Corrupt pcap record length: " + capturedLength);
+            }
+            if (!fill(capturedLength)) {
+                logger.warn("Truncated final pcap record ignored");
+                return false;
+            }
+
+            int recordStart = buffer.position();
+            int recordEnd = recordStart + capturedLength;
+            packetsRead++;
+
+            boolean isUdp = parseRecord(recordStart, recordEnd);
+            buffer.position(recordEnd);
+
+            if (isUdp) {
+                timestampNanos = seconds * 1_000_000_000L + (nanosecondTimestamps ? fraction : fraction * 1000L);
+                return true;
+            }
+            packetsSkipped++;
+        }
+        return false;
+    }
+
+    /**
+     * Get the capture timestamp of the current datagram.
+     *
+     * @return The timestamp in nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Get the capture timestamp of the current datagram.
+     *
+     * @return The timestamp in milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampNanos / 1_000_000L;
+    }
+
+    /**
+     * Get the UDP source port of the current datagram.
+     *
+     * @return The source port
+     */
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    /**
+     * Get the UDP destination port of the current datagram.
+     *
+     * @return The destination port
+     */
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    /**
+     * Get the UDP payload of the current datagram.
+     *
+     * @return A new array holding the payload
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Get the number of capture records read so far.
+     *
+     * @return The number of records
+     */
+    public long getPacketsRead() {
+        return packetsRead;
+    }
+
+    /**
+     * Get the number of capture records skipped because they were not UDP datagrams.
+     *
+     * @return The number of skipped records
+     */
+    public long getPacketsSkipped() {
+        return packetsSkipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Make sure the given number of bytes is available in the buffer, reading more of the file if needed.
+     *
+     * @param length The number of bytes required
+     * @return true if the bytes are available, false at end of file
+     * @throws IOException If the file cannot be read
+     */
+    private boolean fill(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return true;
+        }
+
+        buffer.compact();
+        try {
+            while (buffer.position() < length) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+        return true;
+    }
+
+    /**
+     * Decode the link, network and transport headers of a record.
+     *
+     * @param start The buffer position of the first byte of the record
+     * @param end The buffer position after the last byte of the record
+     * @return true if the record holds a complete UDP datagram
+     */
+    private boolean parseRecord(int start, int end) {
+        // Link-layer headers are always in network byte order except the BSD loopback family
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            int offset;
+            int etherType;
+            switch (linkType) {
+                case LINKTYPE_ETHERNET:
+                    offset = start + 12;
+                    if (offset + 2 > end) {
+                        return false;
+                    }
+                    etherType = buffer.getShort(offset) & 0xFFFF;
+                    offset += 2;
+                    while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ) && offset + 4 <= end) {
+                        etherType = buffer.getShort(offset + 2) & 0xFFFF;
+                        offset += 4;
+                    }
+                    break;
+                case LINKTYPE_RAW:
+                    offset = start;
+                    etherType = offset < end && (buffer.get(offset) & 0xF0) == 0x60 ? ETHERTYPE_IPV6 : ETHERTYPE_IPV4;
+                    break;
+                case LINKTYPE_NULL:
+                    offset = start + 4;
+                    etherType = offset < end && (buffer.get(offset) & 0xF0) == 0x60 ? ETHERTYPE_IPV6 : ETHERTYPE_IPV4;
+                    break;
+                case LINKTYPE_LINUX_SLL:
+                    offset = start + 16;
+                    etherType = start + 16 <= end ? buffer.getShort(start + 14) & 0xFFFF : 0;
+                    break;
+                case LINKTYPE_LINUX_SLL2:
+                    offset = start + 20;
+                    etherType = start + 20 <= end ? buffer.getShort(start) & 0xFFFF : 0;
+                    break;
+                default:
+                    return false;
+            }
+
+            if (etherType == ETHERTYPE_IPV4) {
+                return parseIpv4(offset, end);
+            } else if (etherType == ETHERTYPE_IPV6) {
+                return parseIpv6(offset, end);
+            }
+            return false;
+        } finally {
+            buffer.order(fileOrder);
+        }
+    }
+
+    private boolean parseIpv4(int offset, int end) {
+        if (offset + 20 > end || (buffer.get(offset) & 0xF0) != 0x40) {
+            return false;
+        }
+        int headerLength = (buffer.get(offset) & 0x0F) * 4;
+        int totalLength = buffer.getShort(offset + 2) & 0xFFFF;
+        int flagsAndFragment = buffer.getShort(offset + 6) & 0xFFFF;
+        int protocol = buffer.get(offset + 9) & 0xFF;
+
+        // More-fragments flag or a non-zero fragment offset
+        if (protocol != IP_PROTOCOL_UDP || (flagsAndFragment & 0x3FFF) != 0) {
+            return false;
+        }
+        // Some capture stacks report a zero total length for offloaded segments
+        int packetEnd = totalLength == 0 ? end : Math.min(end, offset + totalLength);
+        return parseUdp(offset + headerLength, packetEnd);
+    }
+
+    private boolean parseIpv6(int offset, int end) {
+        if (offset + 40 > end || buffer.get(offset + 6) != IP_PROTOCOL_UDP) {
+            return false;
+        }
+        int payloadLength = buffer.getShort(offset + 4) & 0xFFFF;
+        int packetEnd = payloadLength == 0 ? end : Math.min(end, offset + 40 + payloadLength);
+        return parseUdp(offset + 40, packetEnd);
+    }
+
+    private boolean parseUdp(int offset, int end) {
+        if (offset + UDP_HEADER_SIZE > end) {
+            return false;
+        }
+        sourcePort = buffer.getShort(offset) & 0xFFFF;
+        destinationPort = buffer.getShort(offset + 2) & 0xFFFF;
+        int udpLength = buffer.getShort(offset + 4) & 0xFFFF;
+
+        // A payload cut short by the snap length cannot be decoded as a PDU
+        if (udpLength < UDP_HEADER_SIZE || offset + udpLength > end) {
+            return false;
+        }
+
+        payload = new byte[udpLength - UDP_HEADER_SIZE];
+        buffer.get(offset + UDP_HEADER_SIZE, payload);
+        return true;
+    }
+}
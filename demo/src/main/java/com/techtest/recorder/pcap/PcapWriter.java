@@ -0,0 +1,205 @@
+package com.techtest.recorder.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming writer for classic libpcap capture files, with nanosecond timestamps.
+ * Each payload is written as an Ethernet/IPv4/UDP frame so the result opens directly in
+ * Wireshark, tcpdump and other network tools. Output goes through a fixed-size direct
+ * buffer, so arbitrarily long recordings are exported without being held in memory.
+ */
+public class PcapWriter implements Closeable {
+    private static final int SNAP_LENGTH = 65535;
+    private static final int ETHERNET_HEADER_SIZE = 14;
+    private static final int IPV4_HEADER_SIZE = 20;
+    private static final int UDP_HEADER_SIZE = 8;
+    private static final int FRAME_OVERHEAD = ETHERNET_HEADER_SIZE + IPV4_HEADER_SIZE + UDP_HEADER_SIZE;
+    private static final int MAX_PAYLOAD = SNAP_LENGTH - FRAME_OVERHEAD;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int DEFAULT_TTL = 32;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private final byte[] sourceAddress;
+    private final byte[] destinationAddress;
+    private final int sourcePort;
+    private final int destinationPort;
+    private final byte[] destinationMac;
+    private int identification;
+    private long packetsWritten;
+
+    /**
+     * Create a capture file, replacing any existing file.
+     *
+     * @param file The capture file to write
+     * @param source The source address recorded in each frame
+     * @param sourcePort The UDP source port recorded in each frame
+     * @param destination The destination address recorded in each frame
+     * @param destinationPort The UDP destination port recorded in each frame
+     * @throws IOException If the file cannot be created
+     */
+    public PcapWriter(Path file, InetAddress source, int sourcePort,
+                      InetAddress destination, int destinationPort) throws IOException {
+        this(file, source, sourcePort, destination, destinationPort, true);
+    }
+
+    /**
+     * Create a capture file.
+     *
+     * @param file The capture file to write
+     * @param source The source address recorded in each frame
+     * @param sourcePort The UDP source port recorded in each frame
+     * @param destination The destination address recorded in each frame
+     * @param destinationPort The UDP destination port recorded in each frame
+     * @param overwrite true to replace an existing file, false to fail if the file exists
+     * @throws IOException If the file cannot be created, or exists and is not overwritten
+     */
+    public PcapWriter(Path file, InetAddress source, int sourcePort,
+                      InetAddress destination, int destinationPort, boolean overwrite) throws IOException {
+        if (!(source instanceof Inet4Address) || !(destination instanceof Inet4Address)) {
+            throw new IllegalArgumentException("Only IPv4 addresses are supported");
+        }
+        this.sourceAddress = source.getAddress();
+        this.destinationAddress = destination.getAddress();
+        this.sourcePort = sourcePort;
+        this.destinationPort = destinationPort;
+        this.destinationMac = macFor(destinationAddress);
+        this.channel = overwrite
+            ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)
+            : FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        buffer.putInt(PcapReader.MAGIC_NANOS);
+        buffer.putShort((short) 2); // version major
+        buffer.putShort((short) 4); // version minor
+        buffer.putInt(0);           // this zone
+        buffer.putInt(0);           // timestamp accuracy
+        buffer.putInt(SNAP_LENGTH);
+        buffer.putInt(PcapReader.LINKTYPE_ETHERNET);
+    }
+
+    /**
+     * Append a UDP datagram to the capture.
+     *
+     * @param timestampMillis The capture time in milliseconds since the epoch
+     * @param payload The UDP payload
+     * @throws IOException If the file cannot be written
+     */
+    public void write(long timestampMillis, byte[] payload) throws IOException {
+        write(timestampMillis * 1_000_000L, payload, 0, payload.length);
+    }
+
+    /**
+     * Append a UDP datagram to the capture.
+     *
+     * @param timestampNanos The capture time in nanoseconds since the epoch
+     * @param payload The array holding the UDP payload
+     * @param offset The offset of the payload in the array
+     * @param length The payload length
+     * @throws IOException If the file cannot be written
+     */
+    public void write(long timestampNanos, byte[] payload, int offset, int length) throws IOException {
+        if (length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload too large for a single frame: " + length);
+        }
+
+        int frameLength = FRAME_OVERHEAD + length;
+        if (buffer.remaining() < PcapReader.RECORD_HEADER_SIZE + frameLength) {
+            flush();
+        }
+
+        // Record header
+        buffer.putInt((int) (timestampNanos / 1_000_000_000L));
+        buffer.putInt((int) (timestampNanos % 1_000_000_000L));
+        buffer.putInt(frameLength);
+        buffer.putInt(frameLength);
+
+        // Ethernet header
+        buffer.put(destinationMac);
+        buffer.put((byte) 0x02).put((byte) 0).put(sourceAddress); // locally administered source MAC
+        buffer.putShort((short) 0x0800);
+
+        // IPv4 header
+        int ipStart = buffer.position();
+        buffer.put((byte) 0x45);
+        buffer.put((byte) 0);
+        buffer.putShort((short) (IPV4_HEADER_SIZE + UDP_HEADER_SIZE + length));
+        buffer.putShort((short) identification++);
+        buffer.putShort((short) 0x4000); // don't fragment
+        buffer.put((byte) DEFAULT_TTL);
+        buffer.put((byte) 17);
+        buffer.putShort((short) 0);
+        buffer.put(sourceAddress);
+        buffer.put(destinationAddress);
+        buffer.putShort(ipStart + 10, ipv4Checksum(ipStart));
+
+        // UDP header; a zero checksum means "not computed" for IPv4
+        buffer.putShort((short) sourcePort);
+        buffer.putShort((short) destinationPort);
+        buffer.putShort((short) (UDP_HEADER_SIZE + length));
+        buffer.putShort((short) 0);
+
+        buffer.put(payload, offset, length);
+        packetsWritten++;
+    }
+
+    /**
+     * Get the number of datagrams written so far.
+     *
+     * @return The number of datagrams
+     */
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    /**
+     * Write any buffered frames to the file.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private short ipv4Checksum(int start) {
+        int sum = 0;
+        for (int i = 0; i < IPV4_HEADER_SIZE; i += 2) {
+            sum += buffer.getShort(start + i) & 0xFFFF;
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        }
+        return (short) ~sum;
+    }
+
+    /**
+     * Derive the destination MAC address, using the standard IPv4 multicast mapping where applicable.
+     */
+    private static byte[] macFor(byte[] address) {
+        if ((address[0] & 0xF0) == 0xE0) {
+            return new byte[] {0x01, 0x00, 0x5E, (byte) (address[1] & 0x7F), address[2], address[3]};
+        }
+        return new byte[] {0x02, 0x00, address[0], address[1], address[2], address[3]};
+    }
+}
@@ -0,0 +1,110 @@
+package com.techtest.recorder.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ScenarioTrafficTest {
+    private static final String SCENARIO =
+        "entities=60,rate=600,movement=static+linear+circle+random-walk,fire=30,detonation=20,seed=7";
+    private static final long RUN_NANOS = 5_000_000_000L;
+
+    /**
+     * A PDU with the simulated time it was due.
+     */
+    private static final class Sent {
+        private final long dueNanos;
+        private final byte[] data;
+
+        Sent(long dueNanos, byte[] data) {
+            this.dueNanos = dueNanos;
+            this.data = data;
+        }
+    }
+
+    private static List<Sent> run(ScenarioTraffic traffic) {
+        List<Sent> sent = new ArrayList<>();
+        while (traffic.nextDueNanos() < RUN_NANOS) {
+            long due = traffic.nextDueNanos();
+            ByteBuffer pdu = traffic.next();
+            byte[] data = new byte[pdu.remaining()];
+            pdu.get(data);
+            sent.add(new Sent(due, data));
+        }
+        return sent;
+    }
+
+    @Test
+    void sameScenarioProducesIdenticalTraffic() {
+        List<Sent> first = run(new ScenarioTraffic(Scenario.parse(SCENARIO)));
+        List<Sent> second = run(new ScenarioTraffic(Scenario.parse(SCENARIO)));
+
+        // Heartbeats alone are rate * seconds PDUs
+        assertTrue(first.size() > 3000, "Expected heartbeats and events, got " + first.size());
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).dueNanos, second.get(i).dueNanos);
+            assertArrayEquals(first.get(i).data, second.get(i).data, "PDU " + i);
+        }
+    }
+
+    @Test
+    void differentSeedsProduceDifferentTraffic() {
+        List<Sent> first = run(new ScenarioTraffic(Scenario.parse(SCENARIO)));
+        List<Sent> other = run(new ScenarioTraffic(Scenario.parse(SCENARIO.replace("seed=7", "seed=8"))));
+
+        boolean differs = first.size() != other.size();
+        for (int i = 0; !differs && i < first.size(); i++) {
+            differs = !Arrays.equals(first.get(i).data, other.get(i).data);
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    void dueTimesNeverGoBackwards() {
+        List<Sent> sent = run(new ScenarioTraffic(Scenario.parse(SCENARIO)));
+
+        for (int i = 1; i < sent.size(); i++) {
+            assertFalse(sent.get(i).dueNanos < sent.get(i - 1).dueNanos, "PDU " + i + " is due before its predecessor");
+        }
+    }
+
+    @Test
+    void shardsTogetherProduceTheUnshardedTraffic() {
+        Scenario scenario = Scenario.parse(SCENARIO);
+        List<Sent> unsharded = run(new ScenarioTraffic(scenario));
+        List<Sent> sharded = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            sharded.addAll(run(new ScenarioTraffic(scenario, shard, 3)));
+        }
+
+        // PDUs due at the same time may come out of different shards in either order
+        Comparator<Sent> order = Comparator.<Sent>comparingLong(s -> s.dueNanos)
+            .thenComparing((a, b) -> Arrays.compare(a.data, b.data));
+        unsharded.sort(order);
+        sharded.sort(order);
+        assertEquals(unsharded.size(), sharded.size());
+        for (int i = 0; i < unsharded.size(); i++) {
+            assertEquals(unsharded.get(i).dueNanos, sharded.get(i).dueNanos);
+            assertArrayEquals(unsharded.get(i).data, sharded.get(i).data, "PDU " + i);
+        }
+    }
+
+    @Test
+    void invalidShardsAreRejected() {
+        Scenario scenario = Scenario.parse("entities=2");
+
+        assertThrows(IllegalArgumentException.class, () -> new ScenarioTraffic(scenario, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new ScenarioTraffic(scenario, 0, 3));
+    }
+}
@@ -0,0 +1,110 @@
+package com.techtest.recorder.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.techtest.recorder.model.RecordedPdu;
+
+class DisTimestampScheduleTest {
+    private static final String EXERCISE = "exercise-1";
+    private static final long PERIOD_NANOS = 100_000_000L;
+    private static final long NETWORK_DELAY_NANOS = 1_000_000L;
+    /** Timestamp resolution plus the drift the offset estimate may follow over a few seconds. */
+    private static final long TOLERANCE_NANOS = 1_000_000L;
+    /** Whole hours since the epoch, so tests can place PDUs relative to the hour. */
+    private static final long HOUR_NANOS = 472_000L * PduCodec.NANOS_PER_HOUR;
+
+    private final MemoryPduStorage storage = new MemoryPduStorage();
+    /** When each stored PDU was sent, by entity number. */
+    private final Map<Integer, Long> sentNanos = new HashMap<>();
+
+    private void store(int entity, long sent, long received, boolean timestamped) {
+        EntityStateEncoder encoder = new EntityStateEncoder();
+        encoder.setEntityId(1, 1, entity);
+        encoder.setTimestamp(timestamped ? PduCodec.toDisTimestamp(sent, true) : 0);
+        ByteBuffer buffer = encoder.encode();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        storage.storePdu(RecordedPdu.withTimestampNanos(PduCodec.decode(data), received, EXERCISE, data));
+        sentNanos.put(entity, sent);
+    }
+
+    /**
+     * Check that every PDU is scheduled at its send time plus the network delay.
+     */
+    private void assertScheduledAtSendTime(int count) {
+        DisTimestampSchedule schedule = new DisTimestampSchedule(storage.openCursor(EXERCISE));
+        long previous = Long.MIN_VALUE;
+        int scheduled = 0;
+        while (schedule.hasNext()) {
+            int entity = PduBytes.getUnsignedShort(schedule.next().getData(), 16);
+            long expected = sentNanos.get(entity) + NETWORK_DELAY_NANOS;
+            assertEquals(expected, schedule.getScheduledNanos(), TOLERANCE_NANOS, "PDU of entity " + entity);
+            assertTrue(schedule.getScheduledNanos() >= previous);
+            previous = schedule.getScheduledNanos();
+            scheduled++;
+        }
+        assertEquals(count, scheduled);
+    }
+
+    @Test
+    void burstOfQueuedPdusIsSpreadOutAgain() {
+        long start = HOUR_NANOS + 10 * 60_000_000_000L;
+        // PDUs 10 to 19 were queued and all received with PDU 19
+        long burstReceived = start + 19 * PERIOD_NANOS + NETWORK_DELAY_NANOS;
+        for (int i = 0; i < 30; i++) {
+            long sent = start + i * PERIOD_NANOS;
+            boolean queued = i >= 10 && i < 20;
+            store(i + 1, sent, queued ? burstReceived : sent + NETWORK_DELAY_NANOS, true);
+        }
+
+        assertScheduledAtSendTime(30);
+    }
+
+    @Test
+    void exerciseStartingWithABurstIsScheduledCorrectly() {
+        long start = HOUR_NANOS + 60_000_000_000L;
+        long burstReceived = start + 9 * PERIOD_NANOS + NETWORK_DELAY_NANOS;
+        for (int i = 0; i < 20; i++) {
+            long sent = start + i * PERIOD_NANOS;
+            store(i + 1, sent, i < 10 ? burstReceived : sent + NETWORK_DELAY_NANOS, true);
+        }
+
+        assertScheduledAtSendTime(20);
+    }
+
+    @Test
+    void timestampsAreUnwrappedAcrossTheHour() {
+        long start = HOUR_NANOS + PduCodec.NANOS_PER_HOUR - 1_000_000_000L;
+        for (int i = 0; i < 20; i++) {
+            long sent = start + i * PERIOD_NANOS;
+            store(i + 1, sent, sent + NETWORK_DELAY_NANOS, true);
+        }
+
+        assertScheduledAtSendTime(20);
+    }
+
+    @Test
+    void pdusWithoutTimestampKeepTheirReceiveTime() {
+        long start = HOUR_NANOS;
+        long received = start + 5 * PERIOD_NANOS;
+        for (int i = 0; i < 5; i++) {
+            store(i + 1, start + i * PERIOD_NANOS, received, false);
+        }
+
+        DisTimestampSchedule schedule = new DisTimestampSchedule(storage.openCursor(EXERCISE));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(schedule.hasNext());
+            schedule.next();
+            assertEquals(received, schedule.getScheduledNanos());
+        }
+        assertFalse(schedule.hasNext());
+    }
+}
@@ -0,0 +1,127 @@
+package com.techtest.recorder.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.techtest.recorder.model.EntityKey;
+import com.techtest.recorder.model.PduQuery;
+
+class ExerciseIndexTest {
+    private static final int ENTITY_STATE = 1;
+    private static final int FIRE = 2;
+
+    private static EntityKey entity(int number) {
+        return new EntityKey(1, 1, number);
+    }
+
+    @Test
+    void entityCandidatesAreExactlyThePostingList() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 3000; i++) {
+            index.add(i, ENTITY_STATE, List.of(entity(i % 5)));
+        }
+
+        int[] candidates = index.candidates(PduQuery.all().withEntities(Set.of(entity(2))));
+
+        assertArrayEquals(IntStream.range(0, 3000).filter(i -> i % 5 == 2).toArray(), candidates);
+    }
+
+    @Test
+    void postingListsOfSeveralEntitiesAreMergedInOrder() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 100; i++) {
+            // Fire PDUs refer to the firing and the target entity
+            index.add(i, FIRE, List.of(entity(i % 3), entity(i % 4 + 10)));
+        }
+
+        int[] candidates = index.candidates(PduQuery.all().withEntities(Set.of(entity(0), entity(10))));
+
+        assertArrayEquals(IntStream.range(0, 100).filter(i -> i % 3 == 0 || i % 4 == 0).toArray(), candidates);
+    }
+
+    @Test
+    void timeFilterSkipsSegmentsOutsideTheWindow() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 4 * ExerciseIndex.SEGMENT_SIZE; i++) {
+            index.add(i, ENTITY_STATE, List.of());
+        }
+
+        int[] candidates = index.candidates(PduQuery.timeRange(1100, 1200));
+
+        // Only the second segment can hold timestamps in the window
+        assertArrayEquals(IntStream.range(ExerciseIndex.SEGMENT_SIZE, 2 * ExerciseIndex.SEGMENT_SIZE).toArray(),
+            candidates);
+    }
+
+    @Test
+    void typeFilterSkipsSegmentsWithoutTheType() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 3 * ExerciseIndex.SEGMENT_SIZE; i++) {
+            index.add(i, i == ExerciseIndex.SEGMENT_SIZE + 7 ? FIRE : ENTITY_STATE, List.of());
+        }
+
+        int[] candidates = index.candidates(PduQuery.all().withPduTypes(Set.of(FIRE)));
+
+        assertArrayEquals(IntStream.range(ExerciseIndex.SEGMENT_SIZE, 2 * ExerciseIndex.SEGMENT_SIZE).toArray(),
+            candidates);
+    }
+
+    @Test
+    void candidatesStayWithinTheRequestedRange() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 500; i++) {
+            index.add(i, ENTITY_STATE, List.of(entity(i % 2)));
+        }
+
+        assertArrayEquals(IntStream.range(100, 200).toArray(), index.candidates(PduQuery.all(), 100, 200));
+        assertArrayEquals(IntStream.range(100, 200).filter(i -> i % 2 == 1).toArray(),
+            index.candidates(PduQuery.all().withEntities(Set.of(entity(1))), 100, 200));
+        // Limits past the end are clamped to the records indexed so far
+        assertEquals(500, index.candidates(PduQuery.all(), 0, 10_000).length);
+    }
+
+    @Test
+    void scanReturnsTheSameCandidatesAcrossWindows() {
+        ExerciseIndex index = new ExerciseIndex();
+        int records = 70 * ExerciseIndex.SEGMENT_SIZE;
+        for (int i = 0; i < records; i++) {
+            index.add(i, ENTITY_STATE, List.of(entity(i % 7)));
+        }
+        PduQuery query = PduQuery.all().withEntities(Set.of(entity(3)));
+
+        assertArrayEquals(index.candidates(query), drain(new CandidateScan(index, query), records));
+    }
+
+    @Test
+    void scanStartsAtTheGivenOrdinalAndFollowsNewRecords() {
+        ExerciseIndex index = new ExerciseIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i, ENTITY_STATE, List.of());
+        }
+        CandidateScan scan = new CandidateScan(index, PduQuery.all(), 60);
+
+        assertArrayEquals(IntStream.range(60, 100).toArray(), drain(scan, index.size()));
+        assertEquals(-1, scan.next(index.size()));
+
+        for (int i = 100; i < 110; i++) {
+            index.add(i, ENTITY_STATE, List.of());
+        }
+        assertArrayEquals(IntStream.range(100, 110).toArray(), drain(scan, index.size()));
+    }
+
+    private static int[] drain(CandidateScan scan, int size) {
+        List<Integer> ordinals = new ArrayList<>();
+        int ordinal;
+        while ((ordinal = scan.next(size)) >= 0) {
+            ordinals.add(ordinal);
+        }
+        return ordinals.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
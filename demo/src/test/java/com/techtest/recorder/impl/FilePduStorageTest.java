@@ -0,0 +1,190 @@
+package com.techtest.recorder.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.techtest.recorder.interfaces.PduCursor;
+import com.techtest.recorder.model.RecordedPdu;
+
+class FilePduStorageTest {
+    private static final String EXERCISE = "exercise-1";
+    private static final long START_NANOS = 1_700_000_000_000_000_000L;
+    private static final int RECORD_SIZE = FilePduStorage.RECORD_HEADER_SIZE + 8 + EntityStateEncoder.LENGTH;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Create an Entity State PDU whose entity number identifies it.
+     */
+    static RecordedPdu entityState(int entity, long timestampNanos) {
+        EntityStateEncoder encoder = new EntityStateEncoder();
+        encoder.setEntityId(1, 1, entity);
+        ByteBuffer buffer = encoder.encode();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return RecordedPdu.withTimestampNanos(PduCodec.decode(data), timestampNanos, EXERCISE, data);
+    }
+
+    static int entityOf(RecordedPdu recordedPdu) {
+        return PduBytes.getUnsignedShort(recordedPdu.getData(), 16);
+    }
+
+    private static void store(FilePduStorage storage, int count) {
+        for (int i = 0; i < count; i++) {
+            storage.storePdu(entityState(i + 1, START_NANOS + i * 1_000_000L));
+        }
+    }
+
+    private Path logFile() {
+        return directory.resolve(EXERCISE + FilePduStorage.FILE_SUFFIX);
+    }
+
+    private static List<Integer> entities(List<RecordedPdu> pdus) {
+        List<Integer> entities = new ArrayList<>();
+        for (RecordedPdu recordedPdu : pdus) {
+            entities.add(entityOf(recordedPdu));
+        }
+        return entities;
+    }
+
+    private static List<Integer> range(int first, int last) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = first; i <= last; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    @Test
+    void recordsSurviveReopening() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            store(storage, 100);
+        }
+
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            List<RecordedPdu> pdus = storage.getPdusForExercise(EXERCISE);
+            assertEquals(range(1, 100), entities(pdus));
+            assertEquals(START_NANOS + 99 * 1_000_000L, pdus.get(99).getTimestampNanos());
+            assertEquals(100, storage.getExerciseSummary(EXERCISE).getPduCount());
+        }
+    }
+
+    @Test
+    void recoveryTruncatesATornRecord() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            store(storage, 10);
+        }
+        long intactSize = Files.size(logFile());
+        // A crash in the middle of a write leaves part of a record behind
+        Files.write(logFile(), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            assertEquals(range(1, 10), entities(storage.getPdusForExercise(EXERCISE)));
+            assertEquals(10, storage.getExerciseSummary(EXERCISE).getPduCount());
+        }
+        assertEquals(intactSize, Files.size(logFile()));
+    }
+
+    @Test
+    void recoveryStopsAtARecordWithABadChecksum() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            store(storage, 10);
+        }
+        // Corrupt the PDU bytes of the sixth record
+        try (FileChannel channel = FileChannel.open(logFile(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}),
+                FilePduStorage.FILE_HEADER_SIZE + 5L * RECORD_SIZE + FilePduStorage.RECORD_HEADER_SIZE + 8 + 50);
+        }
+
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            assertEquals(range(1, 5), entities(storage.getPdusForExercise(EXERCISE)));
+        }
+        assertEquals(FilePduStorage.FILE_HEADER_SIZE + 5L * RECORD_SIZE, Files.size(logFile()));
+    }
+
+    @Test
+    void cleanlyClosedExerciseCanBeAppendedToAfterReopening() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            store(storage, 3);
+        }
+
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            assertEquals(3, storage.getExerciseSummary(EXERCISE).getPduCount());
+            storage.storePdu(entityState(4, START_NANOS + 3 * 1_000_000L));
+            assertEquals(range(1, 4), entities(storage.getPdusForExercise(EXERCISE)));
+        }
+    }
+
+    @Test
+    void cursorFollowsBufferedRecordsWithoutWritingThem() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory, FsyncPolicy.interval(3_600_000))) {
+            storage.storePdu(entityState(1, START_NANOS));
+            List<RecordedPdu> read = new ArrayList<>();
+            try (PduCursor cursor = storage.openCursor(EXERCISE)) {
+                for (int i = 2; i <= 50; i++) {
+                    storage.storePdu(entityState(i, START_NANOS + i * 1_000_000L));
+                    while (cursor.hasNext()) {
+                        read.add(cursor.next());
+                    }
+                }
+            }
+
+            assertEquals(range(1, 50), entities(read));
+            // Everything is still in the write buffer
+            assertEquals(FilePduStorage.FILE_HEADER_SIZE, Files.size(logFile()));
+        }
+    }
+
+    @Test
+    void cursorServesAnUnorderedLogSortedThenFollowsAppends() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            int[] order = {5, 3, 9, 1, 7};
+            for (int entity : order) {
+                storage.storePdu(entityState(entity, START_NANOS + entity * 1_000_000L));
+            }
+
+            List<RecordedPdu> read = new ArrayList<>();
+            try (PduCursor cursor = storage.openCursor(EXERCISE)) {
+                storage.storePdu(entityState(2, START_NANOS + 2 * 1_000_000L));
+                while (cursor.hasNext()) {
+                    read.add(cursor.next());
+                }
+            }
+
+            assertEquals(List.of(1, 3, 5, 7, 9, 2), entities(read));
+            assertEquals(List.of(1, 2, 3, 5, 7, 9), entities(storage.getPdusForExercise(EXERCISE)));
+        }
+    }
+
+    @Test
+    void trimmingKeepsTheNewestRecords() throws IOException {
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            store(storage, 100);
+
+            long dropped = storage.trimOldest(EXERCISE, 40L * EntityStateEncoder.LENGTH);
+
+            assertEquals(40L * EntityStateEncoder.LENGTH, dropped);
+            assertEquals(range(41, 100), entities(storage.getPdusForExercise(EXERCISE)));
+            assertEquals(60, storage.getExerciseSummary(EXERCISE).getPduCount());
+            storage.storePdu(entityState(101, START_NANOS + 100 * 1_000_000L));
+        }
+
+        try (FilePduStorage storage = new FilePduStorage(directory)) {
+            assertEquals(range(41, 101), entities(storage.getPdusForExercise(EXERCISE)));
+        }
+        assertFalse(Files.exists(directory.resolve(EXERCISE + FilePduStorage.FILE_SUFFIX + ".trim")));
+    }
+}
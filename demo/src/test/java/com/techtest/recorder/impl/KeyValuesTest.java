@@ -0,0 +1,73 @@
+package com.techtest.recorder.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class KeyValuesTest {
+    private static KeyValues parse(String description) {
+        return KeyValues.parse(description, "test", "count", "rate", "mode");
+    }
+
+    @Test
+    void keysAreCaseInsensitiveAndValuesTrimmed() {
+        KeyValues values = parse(" Count = 3 ,RATE=2.5");
+
+        assertEquals(3, values.getInt("count", 0));
+        assertEquals(2.5, values.getDouble("rate", 0), 0);
+    }
+
+    @Test
+    void missingKeysUseTheDefault() {
+        KeyValues values = parse("count=3");
+
+        assertFalse(values.contains("rate"));
+        assertEquals(7L, values.getLong("rate", 7L));
+        assertTrue(values.getChoice("mode", "fast", "slow", true));
+    }
+
+    @Test
+    void laterValuesWin() {
+        assertEquals(2, parse("count=1,count=2").getInt("count", 0));
+    }
+
+    @Test
+    void emptyPairsAreSkipped() {
+        KeyValues values = parse(",count=1,,");
+
+        assertTrue(values.contains("count"));
+        assertTrue(parse("").getChoice("mode", "fast", "slow", true));
+    }
+
+    @Test
+    void choiceIsEitherWordInAnyCase() {
+        assertTrue(parse("mode=FAST").getChoice("mode", "fast", "slow", false));
+        assertFalse(parse("mode=slow").getChoice("mode", "fast", "slow", true));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> parse("mode=medium").getChoice("mode", "fast", "slow", true));
+        assertEquals("Expected fast or slow for mode: medium", e.getMessage());
+    }
+
+    @Test
+    void unknownKeysAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parse("count=1,speed=2"));
+        assertEquals("Unknown test key: speed", e.getMessage());
+    }
+
+    @Test
+    void pairsWithoutValueAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parse("count"));
+        assertEquals("Expected key=value: count", e.getMessage());
+    }
+
+    @Test
+    void unparsableValuesNameTheKey() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> parse("count=many").getInt("count", 0));
+        assertEquals("Invalid value for count: many", e.getMessage());
+    }
+}
@@ -0,0 +1,160 @@
+package com.techtest.recorder.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class ReplayLoopTest {
+    private static final long MINUTE_NANOS = 60_000_000_000L;
+    /** Resolution of a DIS timestamp, rounded up. */
+    private static final long TIMESTAMP_RESOLUTION_NANOS = 2_000;
+
+    private static byte[] entityState(int entity, int timestamp) {
+        EntityStateEncoder encoder = new EntityStateEncoder();
+        encoder.setEntityId(1, 1, entity);
+        encoder.setTimestamp(timestamp);
+        ByteBuffer buffer = encoder.encode();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    private static byte[] weaponEvent(int pduType, int firing, int target, int munition) {
+        byte[] data = new byte[96];
+        data[2] = (byte) pduType;
+        PduBytes.putShort(data, 16, firing);
+        PduBytes.putShort(data, 22, target);
+        PduBytes.putShort(data, 28, munition);
+        return data;
+    }
+
+    @Test
+    void entityNumbersAreOffsetOncePerPass() {
+        ReplayLoop loop = ReplayLoop.parse("count=0,timestamps=original,entity-offset=1000");
+        byte[] data = entityState(5, 0);
+
+        loop.apply(data, data.length, 3, 0);
+
+        assertEquals(3005, PduBytes.getUnsignedShort(data, 16));
+    }
+
+    @Test
+    void entityNumbersWrapWithinTheValidRange() {
+        ReplayLoop loop = ReplayLoop.parse("timestamps=original,entity-offset=1000");
+        byte[] data = entityState(65000, 0);
+
+        loop.apply(data, data.length, 1, 0);
+
+        assertEquals(1 + (64999 + 1000) % 0xFFFE, PduBytes.getUnsignedShort(data, 16));
+    }
+
+    @Test
+    void noEntityAndAllEntitiesAreNotOffset() {
+        ReplayLoop loop = ReplayLoop.parse("timestamps=original,entity-offset=7");
+        byte[] data = weaponEvent(PduCodec.PDU_TYPE_FIRE, 0, 0xFFFF, 10);
+
+        loop.apply(data, data.length, 1, 0);
+
+        assertEquals(0, PduBytes.getUnsignedShort(data, 16));
+        assertEquals(0xFFFF, PduBytes.getUnsignedShort(data, 22));
+        assertEquals(17, PduBytes.getUnsignedShort(data, 28));
+    }
+
+    @Test
+    void detonationEntitiesAreOffset() {
+        ReplayLoop loop = ReplayLoop.parse("timestamps=original,entity-offset=100");
+        byte[] data = weaponEvent(PduCodec.PDU_TYPE_DETONATION, 1, 2, 3);
+
+        loop.apply(data, data.length, 2, 0);
+
+        assertEquals(201, PduBytes.getUnsignedShort(data, 16));
+        assertEquals(202, PduBytes.getUnsignedShort(data, 22));
+        assertEquals(203, PduBytes.getUnsignedShort(data, 28));
+    }
+
+    @Test
+    void otherPduTypesAreNotOffset() {
+        ReplayLoop loop = ReplayLoop.parse("timestamps=original,entity-offset=100");
+        byte[] data = weaponEvent(20, 1, 2, 3);
+        byte[] original = data.clone();
+
+        loop.apply(data, data.length, 1, 0);
+
+        assertArrayEquals(original, data);
+    }
+
+    @Test
+    void continuousTimestampsMoveOnByTheShift() {
+        ReplayLoop loop = ReplayLoop.parse("count=2");
+        byte[] data = entityState(5, PduCodec.toDisTimestamp(10 * MINUTE_NANOS, true));
+
+        loop.apply(data, data.length, 1, 55 * MINUTE_NANOS);
+
+        int timestamp = PduCodec.disTimestamp(data);
+        assertTrue(PduCodec.isAbsoluteTimestamp(timestamp));
+        // 65 minutes wraps to 5 minutes past the hour
+        assertEquals(5 * MINUTE_NANOS, PduCodec.fromDisTimestamp(timestamp), TIMESTAMP_RESOLUTION_NANOS);
+        assertEquals(5, PduBytes.getUnsignedShort(data, 16));
+    }
+
+    @Test
+    void zeroTimestampsAreLeftAlone() {
+        ReplayLoop loop = ReplayLoop.parse("count=2");
+        byte[] data = entityState(5, 0);
+
+        loop.apply(data, data.length, 1, MINUTE_NANOS);
+
+        assertEquals(0, PduCodec.disTimestamp(data));
+    }
+
+    @Test
+    void firstPassIsSentAsRecorded() {
+        ReplayLoop loop = ReplayLoop.parse("count=3,entity-offset=10");
+        byte[] data = entityState(5, PduCodec.toDisTimestamp(MINUTE_NANOS, false));
+        byte[] original = data.clone();
+
+        loop.apply(data, data.length, 0, MINUTE_NANOS);
+
+        assertArrayEquals(original, data);
+        assertTrue(loop.leavesUnchanged(0));
+        assertFalse(loop.leavesUnchanged(1));
+        assertTrue(ReplayLoop.parse("count=3,timestamps=original").leavesUnchanged(1));
+    }
+
+    @Test
+    void passCountDecidesWhetherToRepeat() {
+        ReplayLoop loop = ReplayLoop.parse("count=2");
+
+        assertTrue(loop.repeatsAfter(0));
+        assertFalse(loop.repeatsAfter(1));
+        assertTrue(ReplayLoop.parse("count=0").repeatsAfter(1_000_000));
+        assertFalse(ReplayLoop.once().repeatsAfter(0));
+    }
+
+    @Test
+    void descriptionRoundTrips() {
+        ReplayLoop loop = ReplayLoop.parse("entity-offset=12,count=4,gap=250,timestamps=original");
+
+        assertEquals("count=4,gap=250,timestamps=original,entity-offset=12", loop.toString());
+        assertEquals(loop.toString(), ReplayLoop.parse(loop.toString()).toString());
+        assertEquals(250_000_000L, loop.getGapNanos());
+        assertSame(ReplayLoop.once(), ReplayLoop.parse(" ONCE "));
+        assertSame(ReplayLoop.once(), ReplayLoop.parse("count=1"));
+    }
+
+    @Test
+    void invalidLoopsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ReplayLoop.parse("count=-1"));
+        assertThrows(IllegalArgumentException.class, () -> ReplayLoop.parse("gap=-5"));
+        assertThrows(IllegalArgumentException.class, () -> ReplayLoop.parse("entity-offset=65534"));
+        assertThrows(IllegalArgumentException.class, () -> ReplayLoop.parse("timestamps=shifted"));
+        assertThrows(IllegalArgumentException.class, () -> ReplayLoop.parse("passes=2"));
+    }
+}
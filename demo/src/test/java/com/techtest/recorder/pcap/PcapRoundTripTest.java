@@ -0,0 +1,112 @@
+package com.techtest.recorder.pcap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.techtest.recorder.impl.EntityStateEncoder;
+import com.techtest.recorder.impl.MemoryPduStorage;
+import com.techtest.recorder.impl.PduCodec;
+import com.techtest.recorder.model.RecordedPdu;
+
+class PcapRoundTripTest {
+    private static final long START_NANOS = 1_700_000_000_123_456_789L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenDatagramsAreReadBack() throws IOException {
+        Path file = directory.resolve("datagrams.pcap");
+        byte[][] payloads = {new byte[] {1, 2, 3}, new byte[0], new byte[1400]};
+        payloads[2][1399] = 42;
+
+        try (PcapWriter writer = new PcapWriter(file, InetAddress.getByName("10.0.0.1"), 3001,
+                InetAddress.getByName("239.1.2.3"), 3000)) {
+            for (int i = 0; i < payloads.length; i++) {
+                writer.write(START_NANOS + i * 1_000L, payloads[i], 0, payloads[i].length);
+            }
+            assertEquals(payloads.length, writer.getPacketsWritten());
+        }
+
+        try (PcapReader reader = new PcapReader(file)) {
+            for (int i = 0; i < payloads.length; i++) {
+                assertTrue(reader.next());
+                assertArrayEquals(payloads[i], reader.getPayload());
+                assertEquals(START_NANOS + i * 1_000L, reader.getTimestampNanos());
+                assertEquals(3001, reader.getSourcePort());
+                assertEquals(3000, reader.getDestinationPort());
+            }
+            assertFalse(reader.next());
+            assertEquals(payloads.length, reader.getPacketsRead());
+            assertEquals(0, reader.getPacketsSkipped());
+        }
+    }
+
+    @Test
+    void exerciseSurvivesExportAndImport() throws IOException {
+        MemoryPduStorage source = new MemoryPduStorage();
+        EntityStateEncoder encoder = new EntityStateEncoder();
+        for (int i = 0; i < 20; i++) {
+            encoder.setEntityId(1, 2, i + 1);
+            ByteBuffer buffer = encoder.encode();
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            source.storePdu(RecordedPdu.withTimestampNanos(PduCodec.decode(data), START_NANOS + i * 20_000_000L,
+                "original", data));
+        }
+        Path file = directory.resolve("exercise.pcap");
+
+        assertEquals(20, PcapConverter.exportExercise(source, "original", file));
+        MemoryPduStorage target = new MemoryPduStorage();
+        assertEquals(20, PcapConverter.importExercise(file, target, "imported", 0));
+
+        List<RecordedPdu> exported = source.getPdusForExercise("original");
+        List<RecordedPdu> imported = target.getPdusForExercise("imported");
+        assertEquals(exported.size(), imported.size());
+        for (int i = 0; i < exported.size(); i++) {
+            assertArrayEquals(exported.get(i).getData(), imported.get(i).getData());
+            assertEquals(exported.get(i).getTimestampNanos(), imported.get(i).getTimestampNanos());
+        }
+    }
+
+    @Test
+    void importSkipsOtherPorts() throws IOException {
+        MemoryPduStorage source = new MemoryPduStorage();
+        ByteBuffer buffer = new EntityStateEncoder().encode();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        source.storePdu(RecordedPdu.withTimestampNanos(PduCodec.decode(data), START_NANOS, "original", data));
+        Path file = directory.resolve("exercise.pcap");
+        PcapConverter.exportExercise(source, "original", file, InetAddress.getByName("239.1.2.3"), 3000, false);
+
+        assertEquals(0, PcapConverter.importExercise(file, new MemoryPduStorage(), "imported", 3001));
+    }
+
+    @Test
+    void exportDoesNotReplaceAnExistingFile() throws IOException {
+        Path file = Files.writeString(directory.resolve("existing.pcap"), "keep");
+
+        assertThrows(IOException.class, () -> PcapConverter.exportExercise(new MemoryPduStorage(), "missing", file));
+        assertEquals("keep", Files.readString(file));
+    }
+
+    @Test
+    void readerRejectsFilesThatAreNotCaptures() throws IOException {
+        Path file = Files.write(directory.resolve("not-a-capture.pcap"), new byte[64]);
+
+        assertThrows(IOException.class, () -> new PcapReader(file).close());
+    }
+}